@@ -18,6 +18,11 @@ package org.pageseeder.bastille.cache;
 import java.io.IOException;
 
 import org.jspecify.annotations.Nullable;
+import org.pageseeder.bastille.cache.bus.Invalidation;
+import org.pageseeder.bastille.cache.bus.InvalidationBus;
+import org.pageseeder.bastille.cache.store.CacheStore;
+import org.pageseeder.bastille.cache.store.CacheStores;
+import org.pageseeder.bastille.cache.util.SoftPurge;
 import org.pageseeder.berlioz.Beta;
 import org.pageseeder.berlioz.content.ContentGenerator;
 import org.pageseeder.berlioz.content.ContentRequest;
@@ -32,6 +37,12 @@ import net.sf.ehcache.Ehcache;
  * <p>If a cache name is specified, then only this cache is cleared.
  * <p>Otherwise, all caches are cleared.
  *
+ * <p>If the <code>soft</code> parameter is set to <code>true</code>, the caches used by caching
+ * filters are soft purged: their elements are marked as stale and lazily revalidated instead of
+ * being removed. Other caches are cleared.
+ *
+ * <p>The invalidation is broadcast to the other nodes if the {@link InvalidationBus} is enabled.
+ *
  * @author Christophe Lauret
  * @version Bastille 0.6.7
  */
@@ -43,6 +54,7 @@ public final class ClearCache implements ContentGenerator {
 
     // Grab the cache name
     String name = req.getParameter("name", "");
+    boolean soft = "true".equals(req.getParameter("soft", "false"));
 
     // Get the cache manager
     CacheManager manager = CacheManager.getInstance();
@@ -52,24 +64,57 @@ public final class ClearCache implements ContentGenerator {
 
       // Clear a specific cache
       Ehcache cache = manager.getEhcache(name);
-      cache.removeAll();
-      toXML(cache, xml);
+      clear(cache, soft, xml);
+      // The cache may be held in memory outside Ehcache
+      CacheStore<?, ?> store = cache == null ? CacheStores.find(name) : null;
+      if (store != null) store.clear();
+
+    } else if (soft) {
+
+      // Soft purge or clear each cache
+      String[] names = manager.getCacheNames();
+      for (String n : names) {
+        Ehcache cache = manager.getEhcache(n);
+        clear(cache, true, xml);
+      }
 
     } else {
 
       // clear all cache
       manager.clearAll();
+      CacheStores.clearMemoryStores();
       // Iterate over the caches in EH Cache
       String[] names = manager.getCacheNames();
       for (String n : names) {
         Ehcache cache = manager.getEhcache(n);
-        toXML(cache, xml);
+        toXML(cache, xml, null);
       }
 
     }
 
     xml.closeElement();
 
+    InvalidationBus.broadcast(Invalidation.all(name, soft));
+  }
+
+  /**
+   * Clears or soft purges the specified cache.
+   *
+   * @param cache The cache
+   * @param soft  Whether to soft purge the cache if it supports it
+   * @param xml   The XML Writer
+   *
+   * @throws IOException If an error occurs while writing the XML
+   */
+  private static void clear(@Nullable Ehcache cache, boolean soft, XMLWriter xml) throws IOException {
+    if (cache == null) return;
+    SoftPurge purge = soft ? SoftPurge.get(cache.getName()) : null;
+    if (purge != null) {
+      purge.purgeAll();
+    } else {
+      cache.removeAll();
+    }
+    toXML(cache, xml, purge);
   }
 
   /**
@@ -77,14 +122,19 @@ public final class ClearCache implements ContentGenerator {
    *
    * @param cache The cache
    * @param xml   The XML Writer
+   * @param purge The soft purge if the cache was soft purged
    *
    * @throws IOException If an error occurs while writing the XML
    */
-  private static void toXML(@Nullable Ehcache cache, XMLWriter xml) throws IOException {
+  private static void toXML(@Nullable Ehcache cache, XMLWriter xml, @Nullable SoftPurge purge) throws IOException {
     if (cache == null) return;
     xml.openElement("cache", true);
     xml.attribute("name", cache.getName());
     xml.attribute("guid", cache.getGuid());
+    xml.attribute("purge", purge != null ? "soft" : "hard");
+    if (purge != null) {
+      xml.attribute("generation", Long.toString(purge.getGeneration()));
+    }
     xml.closeElement();
   }
 
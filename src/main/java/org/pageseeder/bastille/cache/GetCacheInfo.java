@@ -19,6 +19,8 @@ import java.io.IOException;
 
 import org.jspecify.annotations.Nullable;
 
+import org.pageseeder.bastille.cache.util.CacheStatistics;
+import org.pageseeder.bastille.cache.util.CacheUsage;
 import org.pageseeder.bastille.cache.util.SizeEstimator;
 import org.pageseeder.berlioz.Beta;
 import org.pageseeder.berlioz.content.ContentGenerator;
@@ -81,7 +83,10 @@ public final class GetCacheInfo implements ContentGenerator {
       xml.attribute("size", cache.getSize());
       xml.attribute("memory-store-size",    Long.toString(cache.getStatistics().getLocalHeapSize()));
       xml.attribute("disk-store-size",      Long.toString(cache.getStatistics().getLocalDiskSize()));
-      xml.attribute("in-memory-size",       Long.toString(estimator.getInMemorySize(cache)));
+      // Use the exact byte count when available to avoid sampling the cache
+      CacheUsage usage = CacheUsage.get(cache.getName());
+      xml.attribute("in-memory-size",       Long.toString(usage != null ? usage.getBytes() : estimator.getInMemorySize(cache)));
+      xml.attribute("size-accounting",      usage != null ? "exact" : "estimated");
       xml.attribute("on-disk-size",         Long.toString(estimator.getOnDiskSize(cache)));
       xml.closeElement();
     }
@@ -91,9 +96,7 @@ public final class GetCacheInfo implements ContentGenerator {
 
     // Statistics
     if (status == Status.STATUS_ALIVE) {
-      xml.openElement("statistics");
-      xml.attribute("enabled", "false");
-      xml.closeElement();
+      CacheStatistics.forCache(cache).toXML(xml);
     }
 
     xml.closeElement();
@@ -20,6 +20,8 @@ import java.util.List;
 
 import org.jspecify.annotations.Nullable;
 
+import org.pageseeder.bastille.cache.util.CacheStatistics;
+import org.pageseeder.bastille.cache.util.CacheUsage;
 import org.pageseeder.bastille.cache.util.SizeEstimator;
 import org.pageseeder.berlioz.Beta;
 import org.pageseeder.berlioz.content.ContentGenerator;
@@ -78,14 +80,19 @@ public final class GetCachingOverview implements ContentGenerator {
     // Basic info
     if (status == Status.STATUS_ALIVE) {
       SizeEstimator estimator = SizeEstimator.singleton();
+      CacheStatistics statistics = CacheStatistics.forCache(cache);
       xml.openElement("info");
       xml.attribute("size", cache.getSize());
       xml.attribute("memory-store-size",    Long.toString(cache.getStatistics().getLocalHeapSize()));
       xml.attribute("disk-store-size",      Long.toString(cache.getStatistics().getLocalDiskSize()));
-      xml.attribute("in-memory-size",       Long.toString(estimator.getInMemorySize(cache)));
+      // Use the exact byte count when available to avoid sampling the cache
+      CacheUsage usage = CacheUsage.get(cache.getName());
+      xml.attribute("in-memory-size",       Long.toString(usage != null ? usage.getBytes() : estimator.getInMemorySize(cache)));
+      xml.attribute("size-accounting",      usage != null ? "exact" : "estimated");
       xml.attribute("on-disk-size",         Long.toString(estimator.getOnDiskSize(cache)));
-      xml.attribute("statistics-enabled",  "false");
+      xml.attribute("statistics-enabled",  Boolean.toString(statistics.isEnabled()));
       xml.closeElement();
+      statistics.toXML(xml);
     }
 
     xml.closeElement();
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache;
+
+import java.io.IOException;
+
+import org.pageseeder.bastille.cache.util.HeavyHitters;
+import org.pageseeder.bastille.util.Errors;
+import org.pageseeder.berlioz.Beta;
+import org.pageseeder.berlioz.content.ContentGenerator;
+import org.pageseeder.berlioz.content.ContentRequest;
+import org.pageseeder.berlioz.content.ContentStatus;
+import org.pageseeder.xmlwriter.XMLWriter;
+
+/**
+ * Display the hottest keys of the caches over the recent window.
+ *
+ * <p>Keys are ranked by number of requests, bytes served and build time. The <code>metric</code>
+ * parameter restricts the ranking to one of <code>requests</code>, <code>bytes</code> or
+ * <code>build-time</code>, and the <code>top</code> parameter sets the number of keys returned
+ * for each metric (defaults to 20).
+ *
+ * <p>If a cache name is specified, only the keys of this cache are returned; otherwise the keys of
+ * all the tracked caches are returned.
+ *
+ * <p>The counters for a cache can be discarded by setting the <code>reset</code> parameter to <code>true</code>.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+@Beta
+public final class GetHotKeys implements ContentGenerator {
+
+  /** The default number of keys returned for each metric */
+  private static final int DEFAULT_TOP = 20;
+
+  @Override
+  public void process(ContentRequest req, XMLWriter xml) throws IOException {
+    String name = req.getParameter("name", "");
+    String metricName = req.getParameter("metric", "");
+    int top = req.getIntParameter("top", DEFAULT_TOP);
+    boolean reset = "true".equals(req.getParameter("reset", "false"));
+    HeavyHitters.Metric metric = HeavyHitters.Metric.forName(metricName);
+    if (!metricName.isEmpty() && metric == null) {
+      Errors.invalidParameter(req, xml, "metric");
+      return;
+    }
+    xml.openElement("hot-keys", true);
+    if (!name.isEmpty()) {
+      HeavyHitters hitters = HeavyHitters.get(name);
+      if (hitters == null) {
+        req.setStatus(ContentStatus.NOT_FOUND);
+      } else {
+        hitters.toXML(xml, metric, top);
+        if (reset) hitters.reset();
+      }
+    } else {
+      for (HeavyHitters hitters : HeavyHitters.all()) {
+        hitters.toXML(xml, metric, top);
+        if (reset) hitters.reset();
+      }
+    }
+    xml.closeElement();
+  }
+
+}
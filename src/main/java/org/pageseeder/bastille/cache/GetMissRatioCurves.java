@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import org.jspecify.annotations.Nullable;
+
+import org.pageseeder.bastille.cache.util.MissRatioCurve;
+import org.pageseeder.berlioz.Beta;
+import org.pageseeder.berlioz.content.ContentGenerator;
+import org.pageseeder.berlioz.content.ContentRequest;
+import org.pageseeder.berlioz.content.ContentStatus;
+import org.pageseeder.xmlwriter.XMLWriter;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+
+/**
+ * Display the estimated miss ratio curves of the caches.
+ *
+ * <p>If a cache name is specified, only the curve of this cache is returned; otherwise the curves
+ * of all the caches are returned. For each curve, the current size of the cache and the estimated
+ * miss ratio at that size are included so that the effect of resizing the cache can be compared.
+ *
+ * <p>The curve for a cache can be discarded by setting the <code>reset</code> parameter to <code>true</code>.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+@Beta
+public final class GetMissRatioCurves implements ContentGenerator {
+
+  @Override
+  public void process(ContentRequest req, XMLWriter xml) throws IOException {
+    String name = req.getParameter("name", "");
+    boolean reset = "true".equals(req.getParameter("reset", "false"));
+    CacheManager manager = CacheManager.getInstance();
+    xml.openElement("miss-ratio-curves", true);
+    if (!name.isEmpty()) {
+      MissRatioCurve curve = MissRatioCurve.get(name);
+      if (curve == null) {
+        req.setStatus(ContentStatus.NOT_FOUND);
+      } else {
+        toXML(curve, manager.getEhcache(name), reset, xml);
+      }
+    } else {
+      for (MissRatioCurve curve : MissRatioCurve.all()) {
+        toXML(curve, manager.getEhcache(curve.name()), reset, xml);
+      }
+    }
+    xml.closeElement();
+  }
+
+  /**
+   * Writes the curve with the current size of the cache.
+   *
+   * @param curve The miss ratio curve
+   * @param cache The corresponding cache if it exists
+   * @param reset Whether to reset the curve after writing it
+   * @param xml   The XML Writer
+   *
+   * @throws IOException If an error occurs while writing the XML
+   */
+  private static void toXML(MissRatioCurve curve, @Nullable Ehcache cache, boolean reset, XMLWriter xml) throws IOException {
+    xml.openElement("cache", true);
+    xml.attribute("name", curve.name());
+    if (cache != null) {
+      int size = cache.getSize();
+      xml.attribute("size", size);
+      xml.attribute("estimated-miss-ratio", String.format(Locale.ROOT, "%.4f", curve.getMissRatio(size)));
+    }
+    curve.toXML(xml);
+    xml.closeElement();
+    if (reset) {
+      curve.reset();
+    }
+  }
+
+}
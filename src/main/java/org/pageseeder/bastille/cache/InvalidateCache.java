@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache;
+
+import java.io.IOException;
+
+import org.pageseeder.bastille.cache.bus.Invalidation;
+import org.pageseeder.bastille.cache.bus.InvalidationBus;
+import org.pageseeder.bastille.cache.util.InvalidationIndex;
+import org.pageseeder.bastille.cache.util.SoftPurge;
+import org.pageseeder.bastille.util.Errors;
+import org.pageseeder.berlioz.Beta;
+import org.pageseeder.berlioz.content.ContentGenerator;
+import org.pageseeder.berlioz.content.ContentRequest;
+import org.pageseeder.berlioz.content.ContentStatus;
+import org.pageseeder.xmlwriter.XMLWriter;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+
+/**
+ * Removes the entries matching a path prefix or a tag from a cache used by a caching filter.
+ *
+ * <p>The <code>name</code> parameter is required as well as either the <code>prefix</code> or
+ * the <code>tag</code> parameter. Tags are taken from the <code>Surrogate-Key</code> header of
+ * the cached responses.
+ *
+ * <p>If the <code>soft</code> parameter is set to <code>true</code>, the entries are soft purged
+ * instead of being removed.
+ *
+ * <p>The invalidation is broadcast to the other nodes if the {@link InvalidationBus} is enabled.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+@Beta
+public final class InvalidateCache implements ContentGenerator {
+
+  @Override
+  public void process(ContentRequest req, XMLWriter xml) throws IOException {
+
+    // Grab the parameters
+    String name = req.getParameter("name", null);
+    String prefix = req.getParameter("prefix", null);
+    String tag = req.getParameter("tag", null);
+    boolean soft = "true".equals(req.getParameter("soft", "false"));
+
+    // Check required parameters
+    if (name == null) {
+      Errors.noParameter(req, xml, "name");
+      return;
+    }
+    if (prefix == null && tag == null) {
+      Errors.noParameter(req, xml, "prefix");
+      return;
+    }
+
+    // Get the cache and its index
+    Ehcache cache = CacheManager.getInstance().getEhcache(name);
+    InvalidationIndex index = InvalidationIndex.get(name);
+    xml.openElement("invalidate-cache", true);
+
+    if (cache != null && index != null) {
+
+      Invalidation invalidation = prefix != null
+          ? new Invalidation(Invalidation.Type.PREFIX, name, prefix, soft)
+          : new Invalidation(Invalidation.Type.TAG, name, tag, soft);
+      int count = invalidation.applyTo(cache);
+      InvalidationBus.broadcast(invalidation);
+
+      // The cache
+      xml.openElement("cache");
+      xml.attribute("name", cache.getName());
+      xml.attribute("guid", cache.getGuid());
+      xml.closeElement();
+      // The invalidated entries
+      xml.openElement("invalidated");
+      if (prefix != null) {
+        xml.attribute("prefix", prefix);
+      } else {
+        xml.attribute("tag", tag);
+      }
+      xml.attribute("count", count);
+      xml.attribute("purge", soft && SoftPurge.get(name) != null ? "soft" : "hard");
+      xml.closeElement();
+
+    } else {
+      // No cache or not used by a caching filter
+      xml.openElement("no-cache");
+      xml.attribute("name", name);
+      xml.closeElement();
+      req.setStatus(ContentStatus.NOT_FOUND);
+    }
+
+    xml.closeElement();
+  }
+
+}
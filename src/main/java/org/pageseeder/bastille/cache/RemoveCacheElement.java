@@ -17,6 +17,9 @@ package org.pageseeder.bastille.cache;
 
 import java.io.IOException;
 
+import org.pageseeder.bastille.cache.bus.Invalidation;
+import org.pageseeder.bastille.cache.bus.InvalidationBus;
+import org.pageseeder.bastille.cache.util.SoftPurge;
 import org.pageseeder.bastille.util.Errors;
 import org.pageseeder.berlioz.Beta;
 import org.pageseeder.berlioz.content.ContentGenerator;
@@ -30,6 +33,11 @@ import net.sf.ehcache.Ehcache;
 /**
  * Removes an entry from the cache content.
  *
+ * <p>If the <code>soft</code> parameter is set to <code>true</code> and the cache is used by a
+ * caching filter, the entry is marked as stale and lazily revalidated instead of being removed.
+ *
+ * <p>The invalidation is broadcast to the other nodes if the {@link InvalidationBus} is enabled.
+ *
  * @author Christophe Lauret
  * @version Bastille 0.8.4
  */
@@ -42,6 +50,7 @@ public final class RemoveCacheElement implements ContentGenerator {
     // Grab the cache name
     String name = req.getParameter("name", null);
     String key = req.getParameter("key", null);
+    boolean soft = "true".equals(req.getParameter("soft", "false"));
 
     // Check required parameters
     if (name == null) {
@@ -61,7 +70,12 @@ public final class RemoveCacheElement implements ContentGenerator {
     Ehcache cache = manager.getEhcache(name);
     if (cache != null) {
 
-      boolean removed = cache.remove(key);
+      SoftPurge purge = soft ? SoftPurge.get(cache.getName()) : null;
+      boolean purged = purge != null && cache.isKeyInCache(key);
+      if (purged) {
+        purge.purge(key);
+      }
+      boolean removed = purge == null && cache.remove(key);
 
       // The cache
       xml.openElement("cache");
@@ -72,7 +86,11 @@ public final class RemoveCacheElement implements ContentGenerator {
       xml.openElement("element");
       xml.attribute("key", key);
       xml.attribute("removed", Boolean.toString(removed));
+      if (purge != null) {
+        xml.attribute("purged", Boolean.toString(purged));
+      }
       xml.closeElement();
+      InvalidationBus.broadcast(new Invalidation(Invalidation.Type.KEY, name, key, soft));
     } else {
       // No cache
       xml.openElement("no-cache");
@@ -18,6 +18,7 @@ package org.pageseeder.bastille.cache;
 import java.io.IOException;
 
 import org.jspecify.annotations.Nullable;
+import org.pageseeder.bastille.cache.util.CacheStatistics;
 import org.pageseeder.berlioz.content.ContentGenerator;
 import org.pageseeder.berlioz.content.ContentRequest;
 import org.pageseeder.xmlwriter.XMLWriter;
@@ -28,6 +29,10 @@ import net.sf.ehcache.Ehcache;
 /**
  * Toggles cache statistics On and Off.
  *
+ * <p>If the <code>enabled</code> parameter is specified, statistics are turned on or off
+ * accordingly, otherwise they are toggled. If the <code>name</code> parameter is specified,
+ * only the statistics of that cache are affected.
+ *
  * @author Christophe Lauret
  * @version Bastille 0.8.4
  */
@@ -38,6 +43,7 @@ public final class ToggleCacheStatistics implements ContentGenerator {
 
     // Grab the cache name
     String name = req.getParameter("name", "");
+    String enabled = req.getParameter("enabled", "");
 
     // Get the cache manager
     CacheManager manager = CacheManager.getInstance();
@@ -45,8 +51,9 @@ public final class ToggleCacheStatistics implements ContentGenerator {
 
     if (!name.isEmpty()) {
 
-      // Clear a specific cache
+      // Toggle a specific cache
       Ehcache cache = manager.getEhcache(name);
+      toggle(cache, enabled);
       toXML(cache, xml);
 
     } else {
@@ -55,6 +62,7 @@ public final class ToggleCacheStatistics implements ContentGenerator {
       String[] names = manager.getCacheNames();
       for (String n : names) {
         Ehcache cache = manager.getEhcache(n);
+        toggle(cache, enabled);
         toXML(cache, xml);
       }
 
@@ -63,6 +71,22 @@ public final class ToggleCacheStatistics implements ContentGenerator {
     xml.closeElement();
   }
 
+  /**
+   * Toggles the statistics of the specified cache.
+   *
+   * @param cache   The cache
+   * @param enabled "true" or "false" to turn the statistics on or off, anything else to toggle.
+   */
+  private static void toggle(@Nullable Ehcache cache, String enabled) {
+    if (cache == null) return;
+    CacheStatistics statistics = CacheStatistics.forCache(cache);
+    if ("true".equals(enabled) || "false".equals(enabled)) {
+      statistics.setEnabled(Boolean.parseBoolean(enabled));
+    } else {
+      statistics.setEnabled(!statistics.isEnabled());
+    }
+  }
+
   /**
    * Returns basic information about the cache.
    *
@@ -76,9 +100,7 @@ public final class ToggleCacheStatistics implements ContentGenerator {
     xml.openElement("cache", true);
     xml.attribute("name", cache.getName());
     xml.attribute("guid", cache.getGuid());
-    xml.openElement("statistics", true);
-    xml.attribute("enabled", "false");
-    xml.closeElement();
+    CacheStatistics.forCache(cache).toXML(xml);
     xml.closeElement();
   }
 
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.bus;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A transport delivering messages synchronously to the other transports of the same group in
+ * the same JVM.
+ *
+ * <p>This transport is intended for testing: create a transport, then use {@link #connect()} to
+ * create other transports in the same group.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class InProcessTransport implements InvalidationTransport {
+
+  /** The transports in the group */
+  private final List<InProcessTransport> group;
+
+  /** The receiver, set when started */
+  private volatile @Nullable Receiver receiver;
+
+  /**
+   * Creates a transport in a new group.
+   */
+  public InProcessTransport() {
+    this(new CopyOnWriteArrayList<>());
+  }
+
+  /**
+   * Creates a transport in the specified group.
+   *
+   * @param group The transports in the group
+   */
+  private InProcessTransport(List<InProcessTransport> group) {
+    this.group = group;
+  }
+
+  /**
+   * @return a new transport in the same group as this transport.
+   */
+  public InProcessTransport connect() {
+    return new InProcessTransport(this.group);
+  }
+
+  @Override
+  public void start(Receiver receiver) {
+    this.receiver = receiver;
+    this.group.add(this);
+  }
+
+  @Override
+  public void send(byte[] message) {
+    for (InProcessTransport transport : this.group) {
+      Receiver r = transport.receiver;
+      if (transport != this && r != null) {
+        r.receive(message.clone());
+      }
+    }
+  }
+
+  @Override
+  public int getMaxMessageSize() {
+    return Integer.MAX_VALUE;
+  }
+
+  @Override
+  public void close() {
+    this.group.remove(this);
+    this.receiver = null;
+  }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.bus;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.bastille.cache.util.InvalidationIndex;
+import org.pageseeder.bastille.cache.util.SoftPurge;
+
+import net.sf.ehcache.Ehcache;
+
+/**
+ * A cache invalidation to broadcast to other nodes.
+ *
+ * <p>Invalidations are immutable and two invalidations are equal if they would have the same
+ * effect, so that they can be de-duplicated.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class Invalidation {
+
+  /**
+   * The type of invalidation.
+   */
+  public enum Type {
+
+    /** All the entries in the cache */
+    ALL,
+
+    /** A single entry by key */
+    KEY,
+
+    /** The entries by path prefix */
+    PREFIX,
+
+    /** The entries by tag */
+    TAG
+  }
+
+  /** The type of invalidation */
+  private final Type type;
+
+  /** The name of the cache (empty for all caches) */
+  private final String cache;
+
+  /** The key, prefix or tag (empty for ALL) */
+  private final String value;
+
+  /** Whether to soft purge the entries */
+  private final boolean soft;
+
+  /**
+   * Creates a new invalidation.
+   *
+   * @param type  The type of invalidation
+   * @param cache The name of the cache (empty for all caches)
+   * @param value The key, prefix or tag (empty for ALL)
+   * @param soft  Whether to soft purge the entries when the cache supports it
+   */
+  public Invalidation(Type type, String cache, String value, boolean soft) {
+    this.type = Objects.requireNonNull(type);
+    this.cache = Objects.requireNonNull(cache);
+    this.value = Objects.requireNonNull(value);
+    this.soft = soft;
+  }
+
+  /**
+   * Invalidates all the entries in the specified cache.
+   *
+   * @param cache The name of the cache (empty for all caches)
+   * @param soft  Whether to soft purge the entries
+   *
+   * @return the corresponding invalidation
+   */
+  public static Invalidation all(String cache, boolean soft) {
+    return new Invalidation(Type.ALL, cache, "", soft);
+  }
+
+  /**
+   * @return the type of invalidation
+   */
+  public Type type() {
+    return this.type;
+  }
+
+  /**
+   * @return the name of the cache (empty for all caches)
+   */
+  public String cache() {
+    return this.cache;
+  }
+
+  /**
+   * @return the key, prefix or tag (empty for ALL)
+   */
+  public String value() {
+    return this.value;
+  }
+
+  /**
+   * @return whether to soft purge the entries
+   */
+  public boolean isSoft() {
+    return this.soft;
+  }
+
+  /**
+   * Indicates whether this invalidation includes the specified invalidation, in other words
+   * whether applying both is the same as applying only this one.
+   *
+   * @param other The other invalidation
+   *
+   * @return <code>true</code> if this invalidation includes the other one.
+   */
+  public boolean includes(Invalidation other) {
+    if (equals(other)) return true;
+    return this.type == Type.ALL && !this.soft
+        && (this.cache.isEmpty() || this.cache.equals(other.cache));
+  }
+
+  /**
+   * Applies this invalidation to the specified cache.
+   *
+   * <p>Soft purges only apply to caches registered with {@link SoftPurge}, the entries of other
+   * caches are removed. Prefix and tag invalidations only apply to caches with an
+   * {@link InvalidationIndex}.
+   *
+   * @param cache The cache
+   *
+   * @return the number of entries invalidated or -1 if all entries were invalidated
+   */
+  public int applyTo(Ehcache cache) {
+    SoftPurge purge = this.soft ? SoftPurge.get(cache.getName()) : null;
+    switch (this.type) {
+      case ALL:
+        if (purge != null) {
+          purge.purgeAll();
+        } else {
+          cache.removeAll();
+        }
+        return -1;
+      case KEY:
+        return invalidate(cache, this.value, purge) ? 1 : 0;
+      default:
+        InvalidationIndex index = InvalidationIndex.get(cache.getName());
+        if (index == null) return 0;
+        List<Object> keys = this.type == Type.PREFIX ? index.keysWithPrefix(this.value) : index.keysWithTag(this.value);
+        int count = 0;
+        for (Object key : keys) {
+          if (invalidate(cache, key, purge)) {
+            count++;
+          }
+        }
+        return count;
+    }
+  }
+
+  /**
+   * Writes this invalidation.
+   *
+   * @param out The data output
+   *
+   * @throws IOException If thrown by the output
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeByte(this.type.ordinal());
+    out.writeBoolean(this.soft);
+    out.writeUTF(this.cache);
+    out.writeUTF(this.value);
+  }
+
+  /**
+   * Reads an invalidation.
+   *
+   * @param in The data input
+   *
+   * @return the invalidation
+   *
+   * @throws IOException If thrown by the input or if the type is unknown
+   */
+  public static Invalidation read(DataInput in) throws IOException {
+    int ordinal = in.readUnsignedByte();
+    Type[] types = Type.values();
+    if (ordinal >= types.length) throw new IOException("Unknown invalidation type "+ordinal);
+    boolean soft = in.readBoolean();
+    String cache = in.readUTF();
+    String value = in.readUTF();
+    return new Invalidation(types[ordinal], cache, value, soft);
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (this == o) return true;
+    if (!(o instanceof Invalidation)) return false;
+    Invalidation other = (Invalidation)o;
+    return this.type == other.type && this.soft == other.soft
+        && this.cache.equals(other.cache) && this.value.equals(other.value);
+  }
+
+  @Override
+  public int hashCode() {
+    return ((this.type.hashCode()*31 + this.cache.hashCode())*31 + this.value.hashCode())*2 + (this.soft ? 1 : 0);
+  }
+
+  @Override
+  public String toString() {
+    return this.type+(this.soft ? "~" : ":")+(this.cache.isEmpty() ? "*" : this.cache)+(this.value.isEmpty() ? "" : ":"+this.value);
+  }
+
+  /**
+   * Removes or soft purges a single entry.
+   *
+   * @return <code>true</code> if the entry was invalidated
+   */
+  private static boolean invalidate(Ehcache cache, Object key, @Nullable SoftPurge purge) {
+    if (purge == null) return cache.remove(key);
+    if (!cache.isKeyInCache(key)) return false;
+    purge.purge(key);
+    return true;
+  }
+
+}
@@ -0,0 +1,497 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.bus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.berlioz.GlobalSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+
+/**
+ * Broadcasts cache invalidations to the other nodes of a cluster and applies the invalidations
+ * received from them.
+ *
+ * <p>Invalidations are published after being applied locally. They are batched for a short
+ * delay and de-duplicated before being sent: an invalidation is dropped if an identical one or
+ * one clearing the whole cache is already pending. An invalidation too large to fit in a message
+ * is replaced by an invalidation of its whole cache.
+ *
+ * <p>When a shared secret is specified, each message is signed with an HMAC-SHA256 and the
+ * messages which are not signed with the same secret are ignored.
+ *
+ * <p>The default bus is configured with the following global settings:
+ * <ul>
+ *   <li><code>bastille.cache.bus.transport</code>: <code>udp</code> to enable the bus (disabled by default);</li>
+ *   <li><code>bastille.cache.bus.address</code>: the address to listen on (defaults to 127.0.0.1);</li>
+ *   <li><code>bastille.cache.bus.port</code>: the UDP port to listen on (defaults to 7625);</li>
+ *   <li><code>bastille.cache.bus.peers</code>: the comma separated list of <code>host:port</code> of the other nodes;</li>
+ *   <li><code>bastille.cache.bus.delay</code>: how long to batch invalidations in milliseconds (defaults to 100);</li>
+ *   <li><code>bastille.cache.bus.secret</code>: the secret shared by all nodes to sign the messages.</li>
+ * </ul>
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class InvalidationBus implements Closeable {
+
+  /** Logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(InvalidationBus.class);
+
+  /** Identifies the messages ("BINV") */
+  private static final int MAGIC = 0x42494E56;
+
+  /** The version of the message format */
+  private static final int VERSION = 1;
+
+  /** The size of the message header: magic, version, node and count */
+  private static final int HEADER_SIZE = 4 + 1 + 8 + 4;
+
+  /** The algorithm used to sign the messages */
+  private static final String MAC_ALGORITHM = "HmacSHA256";
+
+  /** The size of the signature appended to signed messages */
+  private static final int MAC_SIZE = 32;
+
+  /** The default bus, created lazily */
+  private static volatile @Nullable InvalidationBus defaultBus;
+
+  /** Whether the default bus has been initialised */
+  private static volatile boolean initialized = false;
+
+  /**
+   * Applies the invalidations received by the bus.
+   */
+  @FunctionalInterface
+  public interface Handler {
+
+    /**
+     * @param invalidation The invalidation received from another node
+     */
+    void apply(Invalidation invalidation);
+  }
+
+  /** The transport */
+  private final InvalidationTransport transport;
+
+  /** Applies the invalidations received */
+  private final Handler handler;
+
+  /** How long to batch invalidations in milliseconds */
+  private final long delay;
+
+  /** The key to sign messages with (messages are not signed if null) */
+  private final @Nullable SecretKeySpec key;
+
+  /** Identifies this node to ignore its own messages */
+  private final long node = ThreadLocalRandom.current().nextLong();
+
+  /** The invalidations waiting to be sent (guarded by itself) */
+  private final Set<Invalidation> pending = new LinkedHashSet<>();
+
+  /** Sends the pending invalidations */
+  private final ScheduledExecutorService scheduler;
+
+  /** The number of invalidations sent */
+  private final AtomicLong sent = new AtomicLong();
+
+  /** The number of invalidations received */
+  private final AtomicLong received = new AtomicLong();
+
+  /**
+   * Creates a new bus applying received invalidations to the caches of the default cache manager.
+   *
+   * @param transport The transport
+   * @param delay     How long to batch invalidations in milliseconds
+   */
+  public InvalidationBus(InvalidationTransport transport, long delay) {
+    this(transport, delay, InvalidationBus::applyLocally);
+  }
+
+  /**
+   * Creates a new bus.
+   *
+   * @param transport The transport
+   * @param delay     How long to batch invalidations in milliseconds
+   * @param handler   Applies the invalidations received
+   */
+  public InvalidationBus(InvalidationTransport transport, long delay, Handler handler) {
+    this(transport, delay, handler, null);
+  }
+
+  /**
+   * Creates a new bus signing its messages.
+   *
+   * @param transport The transport
+   * @param delay     How long to batch invalidations in milliseconds
+   * @param handler   Applies the invalidations received
+   * @param secret    The secret shared by all nodes (<code>null</code> or empty not to sign messages)
+   */
+  public InvalidationBus(InvalidationTransport transport, long delay, Handler handler, byte @Nullable[] secret) {
+    this.transport = transport;
+    this.delay = Math.max(0, delay);
+    this.handler = handler;
+    this.key = secret != null && secret.length > 0 ? new SecretKeySpec(secret, MAC_ALGORITHM) : null;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "bastille-invalidation-bus");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Returns the default bus configured from the global settings.
+   *
+   * <p>The default bus is started when it is first requested, the caching filters and cache
+   * stores request it when they are initialised so that a node receives the invalidations of the
+   * other nodes before publishing any.
+   *
+   * @return the default bus or <code>null</code> if it is not enabled.
+   */
+  public static @Nullable InvalidationBus getDefault() {
+    if (!initialized) {
+      synchronized (InvalidationBus.class) {
+        if (!initialized) {
+          defaultBus = newDefault();
+          initialized = true;
+        }
+      }
+    }
+    return defaultBus;
+  }
+
+  /**
+   * Publishes the specified invalidation using the default bus if it is enabled.
+   *
+   * @param invalidation The invalidation already applied locally
+   */
+  public static void broadcast(Invalidation invalidation) {
+    InvalidationBus bus = getDefault();
+    if (bus != null) {
+      bus.publish(invalidation);
+    }
+  }
+
+  /**
+   * Starts the transport.
+   *
+   * @throws IOException If thrown by the transport
+   */
+  public void start() throws IOException {
+    this.transport.start(this::receive);
+  }
+
+  /**
+   * Publishes an invalidation which was already applied locally.
+   *
+   * <p>The invalidation is sent with the other invalidations published during the batching delay.
+   *
+   * @param invalidation The invalidation
+   */
+  public void publish(Invalidation invalidation) {
+    synchronized (this.pending) {
+      for (Invalidation p : this.pending) {
+        if (p.includes(invalidation)) return;
+      }
+      this.pending.removeIf(invalidation::includes);
+      boolean schedule = this.pending.isEmpty();
+      this.pending.add(invalidation);
+      if (schedule) {
+        this.scheduler.schedule(this::flush, this.delay, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  /**
+   * Sends the pending invalidations immediately.
+   */
+  public void flush() {
+    List<Invalidation> batch;
+    synchronized (this.pending) {
+      if (this.pending.isEmpty()) return;
+      batch = new ArrayList<>(this.pending);
+      this.pending.clear();
+    }
+    try {
+      int maxSize = this.transport.getMaxMessageSize() - (this.key != null ? MAC_SIZE : 0);
+      for (byte[] message : encode(this.node, batch, maxSize)) {
+        this.transport.send(sign(message));
+      }
+      this.sent.addAndGet(batch.size());
+      LOGGER.debug("Sent {} invalidations", batch.size());
+    } catch (IOException ex) {
+      LOGGER.warn("Unable to send invalidations", ex);
+    }
+  }
+
+  /**
+   * @return the number of invalidations sent by this bus.
+   */
+  public long getSent() {
+    return this.sent.get();
+  }
+
+  /**
+   * @return the number of invalidations received by this bus.
+   */
+  public long getReceived() {
+    return this.received.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+    this.scheduler.shutdown();
+    this.transport.close();
+  }
+
+  /**
+   * Applies the invalidations in a message received from the transport.
+   *
+   * @param message The message
+   */
+  void receive(byte[] message) {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(message, 0, verify(message)))) {
+      if (in.readInt() != MAGIC) throw new IOException("Not an invalidation message");
+      int version = in.readUnsignedByte();
+      if (version != VERSION) throw new IOException("Unsupported invalidation message version "+version);
+      if (in.readLong() == this.node) return;
+      int count = in.readInt();
+      Set<Invalidation> invalidations = new LinkedHashSet<>();
+      for (int i = 0; i < count; i++) {
+        invalidations.add(Invalidation.read(in));
+      }
+      for (Invalidation invalidation : invalidations) {
+        LOGGER.debug("Applying invalidation {}", invalidation);
+        this.handler.apply(invalidation);
+      }
+      this.received.addAndGet(invalidations.size());
+    } catch (IOException ex) {
+      LOGGER.warn("Ignoring invalid invalidation message: {}", ex.getMessage());
+    }
+  }
+
+  /**
+   * Encodes the invalidations into messages no larger than the specified size.
+   *
+   * @param node          The node sending the invalidations
+   * @param invalidations The invalidations to encode
+   * @param maxSize       The maximum size of a message
+   *
+   * @return the messages
+   *
+   * @throws IOException Should an error occur while writing to the byte array
+   */
+  static List<byte[]> encode(long node, Collection<Invalidation> invalidations, int maxSize) throws IOException {
+    List<byte[]> messages = new ArrayList<>();
+    List<byte[]> entries = new ArrayList<>();
+    int size = HEADER_SIZE;
+    Iterator<Invalidation> i = invalidations.iterator();
+    while (i.hasNext()) {
+      Invalidation invalidation = i.next();
+      byte[] entry = toEntry(invalidation);
+      if (HEADER_SIZE + entry.length > maxSize) {
+        LOGGER.warn("Invalidation larger than maximum message size - invalidating cache '{}' instead", invalidation.cache());
+        entry = toEntry(Invalidation.all(invalidation.cache(), invalidation.isSoft()));
+        if (HEADER_SIZE + entry.length > maxSize) {
+          LOGGER.warn("Dropping invalidation larger than maximum message size");
+          continue;
+        }
+      }
+      if (size + entry.length > maxSize) {
+        messages.add(toMessage(node, entries));
+        entries.clear();
+        size = HEADER_SIZE;
+      }
+      entries.add(entry);
+      size += entry.length;
+    }
+    if (!entries.isEmpty()) {
+      messages.add(toMessage(node, entries));
+    }
+    return messages;
+  }
+
+  /**
+   * Encodes a single invalidation.
+   */
+  private static byte[] toEntry(Invalidation invalidation) throws IOException {
+    ByteArrayOutputStream entry = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(entry);
+    invalidation.write(out);
+    out.flush();
+    return entry.toByteArray();
+  }
+
+  /**
+   * Appends the signature to the message if this bus signs its messages.
+   *
+   * @param message The message
+   *
+   * @return the signed message
+   *
+   * @throws IOException If the message could not be signed
+   */
+  private byte[] sign(byte[] message) throws IOException {
+    SecretKeySpec k = this.key;
+    if (k == null) return message;
+    byte[] signed = Arrays.copyOf(message, message.length + MAC_SIZE);
+    System.arraycopy(mac(k, message, message.length), 0, signed, message.length, MAC_SIZE);
+    return signed;
+  }
+
+  /**
+   * Verifies the signature of the message if this bus signs its messages.
+   *
+   * @param message The message received
+   *
+   * @return the length of the message without its signature
+   *
+   * @throws IOException If the signature is missing or invalid
+   */
+  private int verify(byte[] message) throws IOException {
+    SecretKeySpec k = this.key;
+    if (k == null) return message.length;
+    int length = message.length - MAC_SIZE;
+    if (length < HEADER_SIZE) throw new IOException("Unsigned invalidation message");
+    byte[] signature = Arrays.copyOfRange(message, length, message.length);
+    if (!MessageDigest.isEqual(mac(k, message, length), signature))
+      throw new IOException("Invalid invalidation message signature");
+    return length;
+  }
+
+  /**
+   * Computes the HMAC of the first bytes of a message.
+   */
+  private static byte[] mac(SecretKeySpec key, byte[] message, int length) throws IOException {
+    try {
+      Mac mac = Mac.getInstance(MAC_ALGORITHM);
+      mac.init(key);
+      mac.update(message, 0, length);
+      return mac.doFinal();
+    } catch (GeneralSecurityException ex) {
+      throw new IOException("Unable to compute the signature of the invalidation message", ex);
+    }
+  }
+
+  /**
+   * Assembles a message from the encoded invalidations.
+   */
+  private static byte[] toMessage(long node, List<byte[]> entries) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    out.writeLong(node);
+    out.writeInt(entries.size());
+    for (byte[] entry : entries) {
+      out.write(entry);
+    }
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Applies an invalidation to the caches of the default cache manager.
+   *
+   * @param invalidation The invalidation to apply
+   */
+  private static void applyLocally(Invalidation invalidation) {
+    CacheManager manager = CacheManager.getInstance();
+    if (invalidation.cache().isEmpty()) {
+      for (String name : manager.getCacheNames()) {
+        Ehcache cache = manager.getEhcache(name);
+        if (cache != null) {
+          invalidation.applyTo(cache);
+        }
+      }
+    } else {
+      Ehcache cache = manager.getEhcache(invalidation.cache());
+      if (cache != null) {
+        invalidation.applyTo(cache);
+      }
+    }
+  }
+
+  /**
+   * Creates the default bus from the global settings.
+   *
+   * @return the bus or <code>null</code> if it is disabled or could not be started.
+   */
+  private static @Nullable InvalidationBus newDefault() {
+    return newBus(GlobalSettings::get);
+  }
+
+  /**
+   * Creates and starts a bus applying invalidations to the default cache manager.
+   *
+   * @param settings Returns the value of a setting given its name and default value
+   *
+   * @return the bus or <code>null</code> if it is disabled or could not be started.
+   */
+  static @Nullable InvalidationBus newBus(BinaryOperator<String> settings) {
+    String transport = settings.apply("bastille.cache.bus.transport", "");
+    if (!"udp".equals(transport)) return null;
+    try {
+      String address = settings.apply("bastille.cache.bus.address", "127.0.0.1").trim();
+      int port = Integer.parseInt(settings.apply("bastille.cache.bus.port", "7625").trim());
+      long delay = Long.parseLong(settings.apply("bastille.cache.bus.delay", "100").trim());
+      String peers = settings.apply("bastille.cache.bus.peers", "");
+      String secret = settings.apply("bastille.cache.bus.secret", "");
+      if (secret.isEmpty()) {
+        LOGGER.warn("No secret specified for the invalidation bus, messages will not be signed");
+      }
+      UDPTransport udp = new UDPTransport(new InetSocketAddress(address, port), UDPTransport.parsePeers(peers));
+      InvalidationBus bus = new InvalidationBus(udp, delay, InvalidationBus::applyLocally, secret.getBytes(StandardCharsets.UTF_8));
+      bus.start();
+      return bus;
+    } catch (IOException | IllegalArgumentException ex) {
+      LOGGER.error("Unable to start the invalidation bus", ex);
+      return null;
+    }
+  }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.bus;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A transport for the messages of the invalidation bus.
+ *
+ * <p>Messages are opaque byte arrays encoded by the {@link InvalidationBus}; a transport must
+ * deliver each message sent by a node to the other nodes, it may also deliver it back to the
+ * sender. Delivery does not need to be reliable.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public interface InvalidationTransport extends Closeable {
+
+  /**
+   * Receives the messages delivered by a transport.
+   */
+  @FunctionalInterface
+  interface Receiver {
+
+    /**
+     * Invoked when a message is received.
+     *
+     * @param message The message
+     */
+    void receive(byte[] message);
+  }
+
+  /**
+   * Starts the transport.
+   *
+   * @param receiver The receiver for the messages from other nodes
+   *
+   * @throws IOException If the transport could not be started
+   */
+  void start(Receiver receiver) throws IOException;
+
+  /**
+   * Sends a message to the other nodes.
+   *
+   * @param message The message
+   *
+   * @throws IOException If the message could not be sent
+   */
+  void send(byte[] message) throws IOException;
+
+  /**
+   * @return the maximum size of a message in bytes
+   */
+  int getMaxMessageSize();
+
+}
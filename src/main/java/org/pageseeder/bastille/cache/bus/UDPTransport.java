@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.bus;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A transport sending each message as a UDP datagram to a list of peers.
+ *
+ * <p>Each node listens on a port and sends its messages to the other nodes; the list of peers
+ * can include the node itself since the bus ignores its own messages, so that the same list can
+ * be used on all nodes.
+ *
+ * <p>The socket is bound to a single address rather than to every interface and datagrams are
+ * only accepted from the peers: since each node sends from the socket it listens on, the source
+ * of a datagram must match the <code>host:port</code> of a peer exactly.
+ *
+ * <p>UDP does not guarantee delivery, messages may be lost; the time to live of the cached
+ * elements remains the upper bound for the staleness of the content.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class UDPTransport implements InvalidationTransport {
+
+  /** Logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(UDPTransport.class);
+
+  /** Maximum payload of a UDP datagram */
+  private static final int MAX_DATAGRAM_SIZE = 65507;
+
+  /** The address to listen on */
+  private final InetSocketAddress address;
+
+  /** The peers to send messages to */
+  private final List<InetSocketAddress> peers;
+
+  /** The peers to accept messages from */
+  private final Set<InetSocketAddress> accepted;
+
+  /** The socket, created when started */
+  private volatile @Nullable DatagramSocket socket;
+
+  /**
+   * Creates a new UDP transport.
+   *
+   * @param address The address to listen on (port 0 for an ephemeral port)
+   * @param peers   The addresses of the other nodes
+   */
+  public UDPTransport(InetSocketAddress address, List<InetSocketAddress> peers) {
+    this.address = address;
+    this.peers = Collections.unmodifiableList(new ArrayList<>(peers));
+    this.accepted = new HashSet<>(peers);
+  }
+
+  /**
+   * Parses a list of peers.
+   *
+   * @param peers A comma or space separated list of <code>host:port</code>
+   *
+   * @return the corresponding addresses
+   *
+   * @throws IllegalArgumentException If a peer does not include a valid port
+   */
+  public static List<InetSocketAddress> parsePeers(String peers) {
+    List<InetSocketAddress> addresses = new ArrayList<>();
+    for (String peer : peers.split("[,\\s]+")) {
+      if (peer.isEmpty()) continue;
+      int colon = peer.lastIndexOf(':');
+      if (colon <= 0) throw new IllegalArgumentException("Missing port for peer "+peer);
+      try {
+        addresses.add(new InetSocketAddress(peer.substring(0, colon), Integer.parseInt(peer.substring(colon+1))));
+      } catch (NumberFormatException ex) {
+        throw new IllegalArgumentException("Invalid port for peer "+peer, ex);
+      }
+    }
+    return addresses;
+  }
+
+  @Override
+  public void start(Receiver receiver) throws IOException {
+    DatagramSocket s = new DatagramSocket(this.address);
+    this.socket = s;
+    Thread listener = new Thread(() -> listen(s, receiver), "bastille-invalidation-udp");
+    listener.setDaemon(true);
+    listener.start();
+    LOGGER.info("Listening for invalidations on UDP {}", s.getLocalSocketAddress());
+  }
+
+  @Override
+  public void send(byte[] message) throws IOException {
+    DatagramSocket s = this.socket;
+    if (s == null) throw new IOException("Transport not started");
+    for (InetSocketAddress peer : this.peers) {
+      try {
+        s.send(new DatagramPacket(message, message.length, peer));
+      } catch (IOException ex) {
+        LOGGER.warn("Unable to send invalidations to {}: {}", peer, ex.getMessage());
+      }
+    }
+  }
+
+  @Override
+  public int getMaxMessageSize() {
+    return MAX_DATAGRAM_SIZE;
+  }
+
+  /**
+   * @return the local port or -1 if the transport is not started.
+   */
+  public int getLocalPort() {
+    DatagramSocket s = this.socket;
+    return s != null ? s.getLocalPort() : -1;
+  }
+
+  @Override
+  public void close() {
+    DatagramSocket s = this.socket;
+    if (s != null) {
+      this.socket = null;
+      s.close();
+    }
+  }
+
+  /**
+   * Receives datagrams until the socket is closed, ignoring datagrams which are not from a peer.
+   *
+   * @param s        The socket
+   * @param receiver The receiver
+   */
+  private void listen(DatagramSocket s, Receiver receiver) {
+    byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+    while (!s.isClosed()) {
+      DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+      try {
+        s.receive(packet);
+        if (!this.accepted.contains(packet.getSocketAddress())) {
+          LOGGER.debug("Ignoring datagram from {} which is not a peer", packet.getSocketAddress());
+          continue;
+        }
+        receiver.receive(Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset()+packet.getLength()));
+      } catch (SocketException ex) {
+        if (!s.isClosed()) {
+          LOGGER.warn("Invalidation socket error", ex);
+        }
+      } catch (IOException | RuntimeException ex) {
+        LOGGER.warn("Unable to process invalidation message", ex);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * An invalidation bus broadcasting cache invalidations to the other nodes of a cluster.
+ *
+ * <p>Each node has its own cache manager; the bus sends the invalidations made by the cache
+ * generators on one node to the other nodes so that they do not serve divergent content until
+ * the cached elements expire.
+ *
+ * <p>The transport is pluggable, this package includes a UDP transport and an in-process
+ * transport for testing.
+ */
+@NullMarked
+package org.pageseeder.bastille.cache.bus;
+import org.jspecify.annotations.NullMarked;
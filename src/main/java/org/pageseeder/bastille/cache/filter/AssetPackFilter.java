@@ -0,0 +1,212 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.filter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.bastille.cache.util.AssetPack;
+import org.pageseeder.bastille.cache.util.GZIPUtils;
+import org.pageseeder.bastille.cache.util.HttpDates;
+import org.pageseeder.bastille.cache.util.HttpHeaderParser;
+import org.pageseeder.berlioz.http.HttpHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A filter serving static assets from a precompressed {@link AssetPack}.
+ *
+ * <p>Unlike the {@link StaticCachingFilter}, this filter does not use Ehcache: the pack is created
+ * at build time using the {@link org.pageseeder.bastille.cache.util.AssetPacker} and memory-mapped
+ * when the filter is initialized, so that assets are served without any file access or compression.
+ * The content of the assets is not held on the heap: since the servlet API only accepts byte arrays,
+ * it is copied to the response through a small transient buffer.
+ *
+ * <p>Requests for assets which are not in the pack are passed to the rest of the filter chain,
+ * so this filter can be mapped in front of the static caching filter.
+ *
+ * <p>This filter accepts the following initialization parameters:
+ * <ul>
+ *   <li><code>pack</code>: the path to the pack file relative to the root of the Web application
+ *   (defaults to <code>/WEB-INF/assets.pack</code>);</li>
+ *   <li><code>cache-control</code>: the value of the <code>Cache-Control</code> header
+ *   (defaults to <code>max-age=3600, must-revalidate</code>).</li>
+ * </ul>
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class AssetPackFilter implements Filter {
+
+  /** Logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(AssetPackFilter.class);
+
+  /** The default location of the pack file. */
+  public static final String DEFAULT_PACK = "/WEB-INF/assets.pack";
+
+  /** The default value of the Cache-Control header. */
+  public static final String DEFAULT_CACHE_CONTROL = "max-age=3600, must-revalidate";
+
+  /** The asset pack (null if it could not be loaded) */
+  private @Nullable AssetPack pack;
+
+  /** The value of the Cache-Control header */
+  private String cacheControl = DEFAULT_CACHE_CONTROL;
+
+  @Override
+  public void init(FilterConfig config) throws ServletException {
+    ServletContext context = config.getServletContext();
+    String path = config.getInitParameter("pack");
+    if (path == null || path.isEmpty()) {
+      path = DEFAULT_PACK;
+    }
+    String cc = config.getInitParameter("cache-control");
+    if (cc != null && !cc.isEmpty()) {
+      this.cacheControl = cc;
+    }
+    String realPath = context.getRealPath(path);
+    File file = realPath != null ? new File(realPath) : null;
+    if (file != null && file.isFile()) {
+      try {
+        this.pack = AssetPack.open(file);
+        LOGGER.info("Loaded {} assets from {}", this.pack.size(), path);
+      } catch (IOException ex) {
+        LOGGER.error("Unable to load asset pack {}, all requests will pass through", path, ex);
+      }
+    } else {
+      LOGGER.warn("Asset pack {} not found, all requests will pass through", path);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    AssetPack pack = this.pack;
+    this.pack = null;
+    if (pack != null) {
+      try {
+        pack.close();
+      } catch (IOException ex) {
+        LOGGER.warn("Unable to close asset pack", ex);
+      }
+    }
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    HttpServletRequest req = (HttpServletRequest) request;
+    HttpServletResponse res = (HttpServletResponse) response;
+    AssetPack pack = this.pack;
+    AssetPack.Entry entry = null;
+    String method = req.getMethod();
+    if (pack != null && ("GET".equals(method) || "HEAD".equals(method))) {
+      String path = decode(req.getRequestURI().substring(req.getContextPath().length()));
+      entry = pack.get(path);
+    }
+    if (pack == null || entry == null) {
+      chain.doFilter(request, response);
+    } else {
+      serve(pack, entry, req, res);
+    }
+  }
+
+  /**
+   * Serves the specified asset.
+   *
+   * @param pack  The asset pack
+   * @param entry The asset to serve
+   * @param req   The HTTP request
+   * @param res   The HTTP response
+   *
+   * @throws IOException If thrown while writing the response.
+   * @throws ServletException If thrown while writing the response.
+   */
+  private void serve(AssetPack pack, AssetPack.Entry entry, HttpServletRequest req, HttpServletResponse res)
+      throws IOException, ServletException {
+    boolean gzip = entry.hasGzippedContent() && HttpHeaderParser.acceptsGzip(req);
+    String etag = entry.etag(gzip);
+
+    // Common headers
+    res.setHeader(HttpHeaders.ETAG, etag);
+    res.setDateHeader(HttpHeaders.LAST_MODIFIED, entry.lastModified());
+    res.setHeader(HttpHeaders.CACHE_CONTROL, this.cacheControl);
+    if (entry.hasGzippedContent()) {
+      res.setHeader(HttpHeaders.VARY, "Accept-Encoding");
+    }
+
+    // Conditional requests
+    String ifNoneMatch = req.getHeader(HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch != null ? HttpHeaderParser.matchesIfNoneMatch(ifNoneMatch, etag) : isNotModifiedSince(req, entry)) {
+      LOGGER.debug("Returning Not Modified (304) for {} from asset pack", req.getRequestURI());
+      res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    // Content
+    res.setContentType(entry.contentType());
+    res.setContentLength(entry.length(gzip));
+    if (gzip) {
+      GZIPUtils.addGzipHeader(res);
+    }
+    if (!"HEAD".equals(req.getMethod())) {
+      // The channel copies the mapped content through its own buffer of at most 8 KB
+      ByteBuffer content = pack.content(entry, gzip);
+      WritableByteChannel channel = Channels.newChannel(res.getOutputStream());
+      while (content.hasRemaining()) {
+        channel.write(content);
+      }
+    }
+  }
+
+  /**
+   * Indicates whether the asset has been modified since the date specified by the client.
+   */
+  private static boolean isNotModifiedSince(HttpServletRequest req, AssetPack.Entry entry) {
+    long ifModifiedSince = HttpDates.parse(req.getHeader(HttpHeaders.IF_MODIFIED_SINCE));
+    return ifModifiedSince != -1 && ifModifiedSince >= entry.lastModified();
+  }
+
+  /**
+   * Try to decode a URL's encoded path.
+   *
+   * @param encoded the encoded path
+   * @return the decoded path
+   */
+  private static String decode(String encoded) {
+    try {
+      return URLDecoder.decode(encoded, "utf-8");
+    } catch (IllegalArgumentException | UnsupportedEncodingException ex) {
+      return encoded;
+    }
+  }
+}
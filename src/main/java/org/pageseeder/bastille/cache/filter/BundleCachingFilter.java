@@ -0,0 +1,341 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.filter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.bastille.cache.util.CachedResource;
+import org.pageseeder.bastille.cache.util.ContentTransformers;
+import org.pageseeder.bastille.cache.util.ResourceValidator;
+import org.pageseeder.bastille.cache.util.StaticResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheManager;
+
+/**
+ * A caching filter serving a named bundle of several styles or scripts as a single resource.
+ *
+ * <p>Bundles are defined using initialization parameters starting with <code>bundle.</code>
+ * followed by the name of the bundle, the value is the list of paths to the files to include
+ * relative to the root of the Web application, separated by commas:
+ * <pre>{@code
+ * <init-param>
+ *   <param-name>bundle.global.css</param-name>
+ *   <param-value>/style/base.css, /style/layout.css, /style/print.css</param-value>
+ * </init-param>
+ * }</pre>
+ *
+ * <p>The bundle is identified by the last segment of the request path, so if this filter is
+ * mapped to <code>/bundle/*</code>, the bundle above is served for <code>/bundle/global.css</code>.
+ * Requests which do not match a bundle are passed to the rest of the filter chain.
+ *
+ * <p>The concatenated content is cached as a {@link StaticResource}, so that it is compressed
+ * and served with the same ETag, conditional GET and caching headers as resources cached by the
+ * {@link StaticCachingFilter}. The bundle is rebuilt whenever any of its files is modified.
+ *
+ * <p>If none of the files of the bundle can be found, the filter responds with a 404. If only
+ * some of them can be found, the partial bundle is served but not cached, so that it is rebuilt
+ * once the missing files are available.
+ *
+ * <p>This filter also supports the <code>cache-control</code> and <code>transform</code>
+ * initialization parameters of the static caching filter.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class BundleCachingFilter extends CachingFilterBase implements CachingFilter {
+
+  /**
+   * The default of the cache to use.
+   */
+  public static final String DEFAULT_CACHE_NAME = "BundleCachingFilter";
+
+  /**
+   * The prefix for the initialization parameters defining a bundle.
+   */
+  public static final String BUNDLE_PARAMETER_PREFIX = "bundle.";
+
+  /** Logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(BundleCachingFilter.class);
+
+  /** Useful constant */
+  private static final int MILLISECONDS_PER_SECOND = 1000;
+
+  /** The bundles mapped to their name */
+  private Map<String, List<String>> bundles = Collections.emptyMap();
+
+  /** The cache control pattern */
+  private String cacheControlPattern = StaticCachingFilter.DEFAULT_CACHE_CONTROL;
+
+  /** The transformations to apply to the content before it is cached */
+  private ContentTransformers transformers = ContentTransformers.NONE;
+
+  /**
+   * The servlet context.
+   */
+  private @Nullable ServletContext context = null;
+
+  @Override
+  public CacheManager getCacheManager() {
+    return CacheManager.getInstance();
+  }
+
+  @Override
+  public String getDefaultCacheName() {
+    return DEFAULT_CACHE_NAME;
+  }
+
+  @Override
+  public void init(FilterConfig config) throws CacheException {
+    super.init(config);
+    this.context = config.getServletContext();
+    String cc = config.getInitParameter("cache-control");
+    if (cc != null && !cc.isEmpty()) {
+      this.cacheControlPattern = cc;
+    }
+    this.transformers = ContentTransformers.parse(config.getInitParameter("transform"));
+    // Load the bundle definitions
+    Map<String, List<String>> definitions = new HashMap<>();
+    Enumeration<String> names = config.getInitParameterNames();
+    while (names.hasMoreElements()) {
+      String name = names.nextElement();
+      if (name.startsWith(BUNDLE_PARAMETER_PREFIX) && name.length() > BUNDLE_PARAMETER_PREFIX.length()) {
+        List<String> paths = new ArrayList<>();
+        for (String path : config.getInitParameter(name).split(",")) {
+          if (!path.trim().isEmpty()) {
+            paths.add(path.trim());
+          }
+        }
+        definitions.put(name.substring(BUNDLE_PARAMETER_PREFIX.length()), Collections.unmodifiableList(paths));
+      }
+    }
+    this.bundles = definitions;
+    LOGGER.debug("Bundles defined: {}", this.bundles.keySet());
+  }
+
+  @Override
+  public void destroy() {
+    // No cleanup required: this filter holds no resources that need explicit release
+  }
+
+  /**
+   * Get the bundle either from the cache or by concatenating the files.
+   * <p>
+   * {@inheritDoc}
+   */
+  @Override
+  public CachedResource getResource(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
+      throws ServletException, CacheException {
+    String key = calculateKey(req);
+    String name = toBundleName(req);
+    List<String> paths = this.bundles.get(name);
+    List<File> files = getFiles(paths);
+    int found = countFiles(files);
+
+    // Missing files: do not look up or update the cache
+    if (found == 0 || paths == null) {
+      LOGGER.warn("Unable to find any file for bundle {}", name);
+      return new StaticResource(HttpServletResponse.SC_NOT_FOUND, null, new byte[0], 0, "no-cache", 0);
+    } else if (found < paths.size()) {
+      LOGGER.warn("Serving partial bundle {} without caching it: {} of {} files found", name, found, paths.size());
+      return buildUncached(key, () -> buildResource(name, files));
+    }
+
+    // Check for freshness (rounded to the second)
+    CachedResource resource = getResourceFromCache(key);
+    if (resource != null) {
+      long modified = resource.getLastModified() / MILLISECONDS_PER_SECOND;
+      long fmodified = lastModified(files) / MILLISECONDS_PER_SECOND;
+      if (fmodified > modified) {
+        LOGGER.debug("Bundle {} updated since last cached", name);
+      } else return resource;
+    }
+
+    return buildAndCache(key, resource, () -> buildResource(name, files));
+  }
+
+  /**
+   * Only bundles which are defined are cacheable, unless the "berlioz-cache" parameter is set to "false".
+   * <p>
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isCacheable(HttpServletRequest req) {
+    if ("false".equals(req.getParameter("berlioz-cache"))) return false;
+    return this.bundles.containsKey(toBundleName(req));
+  }
+
+  /**
+   * The bundle is still valid unless any of its files has been modified since it was cached.
+   * <p>
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isStillValid(HttpServletRequest req, ResourceValidator validator) {
+    long fmodified = lastModified(getFiles(this.bundles.get(toBundleName(req)))) / MILLISECONDS_PER_SECOND;
+    return fmodified != 0 && fmodified <= validator.getLastModified() / MILLISECONDS_PER_SECOND;
+  }
+
+  @Override
+  public void writeResponse(HttpServletRequest req, HttpServletResponse res, CachedResource resource)
+      throws IOException, ServletException {
+    writeStaticResponse(req, res, resource);
+  }
+
+  /**
+   * Returns the key for this cache.
+   *
+   * @param req the HTTP Servlet request.
+   * @return the request URI.
+   */
+  @Override
+  public String calculateKey(HttpServletRequest req) {
+    return req.getMethod() + '_' + req.getRequestURI();
+  }
+
+  // Private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Concatenate the files in the bundle.
+   *
+   * @param name  The name of the bundle
+   * @param files The files in the bundle
+   *
+   * @return the corresponding static resource
+   *
+   * @throws IOException If thrown while reading the files
+   */
+  private CachedResource buildResource(String name, List<File> files) throws IOException {
+    LOGGER.debug("Building bundle {} from {} files", name, files.size());
+    String contentType = getContentType(name, files);
+    byte[] separator = (contentType != null && contentType.contains("javascript") ? ";\n" : "\n").getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    for (File f : files) {
+      if (f.isFile()) {
+        content.write(Files.readAllBytes(f.toPath()));
+        content.write(separator);
+      } else {
+        LOGGER.warn("Unable to find file {} for bundle {}", f, name);
+      }
+    }
+    long ttlMilliseconds = getTimeToLiveMilliseconds();
+    String cacheControl = this.cacheControlPattern.replace("%TTL", Long.toString(ttlMilliseconds / MILLISECONDS_PER_SECOND));
+    long expires = System.currentTimeMillis() + ttlMilliseconds;
+    byte[] body = this.transformers.transform(content.toByteArray(), contentType);
+    return newStaticResource(HttpServletResponse.SC_OK, contentType, body, lastModified(files), cacheControl, expires);
+  }
+
+  /**
+   * Returns the content type of the bundle based on its name or the first file.
+   *
+   * @param name  The name of the bundle
+   * @param files The files in the bundle
+   *
+   * @return the content type or <code>null</code>
+   */
+  private @Nullable String getContentType(String name, List<File> files) {
+    ServletContext ctx = this.context;
+    if (ctx == null) return null;
+    String contentType = ctx.getMimeType(name);
+    if (contentType == null && !files.isEmpty()) {
+      contentType = ctx.getMimeType(files.get(0).getName());
+    }
+    return contentType;
+  }
+
+  /**
+   * Returns the files for the specified paths.
+   *
+   * @param paths The paths of the files in the bundle
+   *
+   * @return the corresponding files
+   */
+  private List<File> getFiles(@Nullable List<String> paths) {
+    ServletContext ctx = this.context;
+    if (paths == null || ctx == null) return Collections.emptyList();
+    List<File> files = new ArrayList<>(paths.size());
+    for (String path : paths) {
+      String filepath = ctx.getRealPath(path);
+      if (filepath != null) {
+        files.add(new File(filepath));
+      } else {
+        LOGGER.warn("Unable to resolve path {}", path);
+      }
+    }
+    return files;
+  }
+
+  /**
+   * @param req the HTTP servlet request
+   * @return the last segment of the request path.
+   */
+  private static String toBundleName(HttpServletRequest req) {
+    String uri = req.getRequestURI();
+    return uri.substring(uri.lastIndexOf('/') + 1);
+  }
+
+  /**
+   * @param files the list of files to check
+   * @return the number of files in the list which exist.
+   */
+  private static int countFiles(List<File> files) {
+    int count = 0;
+    for (File f : files) {
+      if (f.isFile()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @param files the list of files to check
+   * @return the date of the last modified file in the list.
+   */
+  private static long lastModified(List<File> files) {
+    long mostRecent = 0;
+    for (File f : files) {
+      long date = f.lastModified();
+      if (date > mostRecent) {
+        mostRecent = date;
+      }
+    }
+    return mostRecent;
+  }
+
+}
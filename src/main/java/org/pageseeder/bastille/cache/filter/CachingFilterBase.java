@@ -16,8 +16,13 @@
 package org.pageseeder.bastille.cache.filter;
 
 import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -29,16 +34,41 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.jspecify.annotations.Nullable;
+import org.pageseeder.bastille.cache.bus.InvalidationBus;
+import org.pageseeder.bastille.cache.util.AccessTrace;
+import org.pageseeder.bastille.cache.util.BuildLimiter;
+import org.pageseeder.bastille.cache.util.CacheBudget;
+import org.pageseeder.bastille.cache.util.CacheSnapshots;
+import org.pageseeder.bastille.cache.util.CacheStatistics;
+import org.pageseeder.bastille.cache.util.CacheUsage;
 import org.pageseeder.bastille.cache.util.CachedResource;
+import org.pageseeder.bastille.cache.util.GDSFPolicy;
 import org.pageseeder.bastille.cache.util.GZIPUtils;
-import org.pageseeder.berlioz.http.HttpHeaderUtils;
+import org.pageseeder.bastille.cache.util.HeavyHitters;
+import org.pageseeder.bastille.cache.util.HttpDates;
+import org.pageseeder.bastille.cache.util.HttpHeaderParser;
+import org.pageseeder.bastille.cache.util.InvalidationIndex;
+import org.pageseeder.bastille.cache.util.MemoryPressureMonitor;
+import org.pageseeder.bastille.cache.util.MissRatioCurve;
+import org.pageseeder.bastille.cache.util.NearCache;
+import org.pageseeder.bastille.cache.util.RequestTrace;
+import org.pageseeder.bastille.cache.util.ResourceValidator;
+import org.pageseeder.bastille.cache.util.SoftPurge;
+import org.pageseeder.bastille.cache.util.StaticResource;
+import org.pageseeder.bastille.cache.util.TinyLFUPolicy;
+import org.pageseeder.bastille.cache.util.ValidatorIndex;
+import org.pageseeder.berlioz.http.HttpHeaders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
+import net.sf.ehcache.Status;
+import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.constructs.blocking.BlockingCache;
+import net.sf.ehcache.store.Policy;
 
 /**
  * A base class for caching filters.
@@ -51,6 +81,37 @@ import net.sf.ehcache.constructs.blocking.BlockingCache;
  *   <li>blockingTimeoutMillis - the time, in milliseconds, to wait for the filter chain to return
  * with a response on a cache miss. This is useful to fail fast in the event of an infrastructure
  * failure.
+ *   <li><code>trace</code> - the diagnostic headers to include in responses: <code>server-timing</code>
+ * for a <code>Server-Timing</code> header with the cache lookup, build, compression and write times,
+ * and <code>x-cache</code> for the <code>X-Cache</code> (HIT, MISS, STALE or BYPASS) and <code>Age</code> headers.
+ *   <li><code>trace-sample</code> - the proportion of requests to trace, between 0 and 1 (defaults to 1).
+ *   <li><code>max-builds</code> - the maximum number of resources this filter builds concurrently
+ * (defaults to 0 for unlimited); builds are also subject to the global {@link BuildLimiter}.
+ *   <li><code>max-queued-builds</code> - the maximum number of builds waiting when the limit is reached (defaults to 0).
+ *   <li><code>build-timeout</code> - the maximum time to wait to start a build in milliseconds (defaults to 1000).
+ *   <li><code>build-overflow</code> - what to do when a build is rejected: <code>stale</code> to serve
+ * the stale resource if there is one, <code>pass-through</code> to invoke the filter chain without caching,
+ * or <code>unavailable</code> to return a 503 (default).
+ *   <li><code>retry-after</code> - the value of the <code>Retry-After</code> header in seconds for
+ * 503 responses (defaults to 5).
+ *   <li><code>admission</code> - set to <code>tinylfu</code> to replace the eviction policy of the
+ * cache with a {@link TinyLFUPolicy} so that newly built resources are only kept if they are
+ * requested more often than the resources they would displace.
+ *   <li><code>eviction</code> - set to <code>gdsf</code> to replace the eviction policy of the
+ * cache with a {@link GDSFPolicy} so that resources which are expensive to build relative to their
+ * size and popularity are evicted last; it is ignored if an admission policy is set.
+ *   <li><code>near-cache</code> - the maximum number of resources to keep in a {@link NearCache}
+ * looked up before the cache (defaults to 0 for no near cache).
+ *   <li><code>mrc-sample</code> - the proportion of keys sampled to estimate the {@link MissRatioCurve}
+ * of the cache, between 0 and 1, for example 0.01 (defaults to 0 for no curve).
+ *   <li><code>access-trace</code> - the directory where the {@link AccessTrace} of the cache is
+ * recorded for offline simulation (defaults to none for no trace).
+ *   <li><code>access-trace-max-size</code> - the maximum size of a trace file in megabytes before it
+ * is rotated (defaults to 64).
+ *   <li><code>hot-keys</code> - the number of counters used to track the {@link HeavyHitters} of the
+ * cache by requests, bytes served and build time, for example 128 (defaults to 0 for no tracking).
+ *   <li><code>hot-keys-window</code> - the duration of the window over which hot keys are tracked
+ * in seconds (defaults to 300).
  * </ul>
  *
  * @author Christophe Lauret
@@ -61,6 +122,25 @@ public abstract class CachingFilterBase implements Filter, CachingFilter {
   /** Logger will report caching problems */
   private static final Logger LOGGER = LoggerFactory.getLogger(CachingFilterBase.class);
 
+  /**
+   * Name of the request attribute holding the number of bytes of content written.
+   */
+  private static final String BYTES_SERVED_ATTRIBUTE = CachingFilterBase.class.getName()+".bytes";
+
+  /**
+   * The caches decorated by the filters mapped to their name.
+   *
+   * <p>The blocking cache does not expose the cache it decorates, so it is kept here in order to
+   * set the eviction policy on the cache itself.
+   */
+  private static final Map<String, Cache> UNDERLYING_CACHES = new ConcurrentHashMap<>();
+
+  /** Useful constant */
+  private static final long ONE_YEAR_IN_MILLISECONDS = 60 * 60 * 24 * 365 * 1000L;
+
+  /** Useful constant */
+  private static final int MILLISECONDS_PER_SECOND = 1000;
+
   /**
    * The cache name can be set through init parameters. If it is set it is stored here.
    */
@@ -80,6 +160,86 @@ public abstract class CachingFilterBase implements Filter, CachingFilter {
    */
   private final VisitedFlag visits = new VisitedFlag();
 
+  /**
+   * The validators of the resources in the cache, to answer conditional requests without locking.
+   */
+  private @Nullable ValidatorIndex validators;
+
+  /**
+   * The statistics for the cache.
+   */
+  private @Nullable CacheStatistics statistics;
+
+  /**
+   * The soft purges of the cache.
+   */
+  private @Nullable SoftPurge purges;
+
+  /**
+   * The soft purged resource being revalidated by the current thread.
+   */
+  private final ThreadLocal<@Nullable Revalidation> revalidation = new ThreadLocal<>();
+
+  /**
+   * Whether to include the Server-Timing header in responses.
+   */
+  private boolean traceServerTiming = false;
+
+  /**
+   * Whether to include the X-Cache and Age headers in responses.
+   */
+  private boolean traceXCache = false;
+
+  /**
+   * The proportion of requests to trace between 0 and 1.
+   */
+  private double traceSampleRate = 1.0;
+
+  /**
+   * Limits the number of resources built concurrently by this filter.
+   */
+  private BuildLimiter buildLimiter = BuildLimiter.UNLIMITED;
+
+  /**
+   * What to do when a build is rejected.
+   */
+  private BuildLimiter.Overflow buildOverflow = BuildLimiter.Overflow.UNAVAILABLE;
+
+  /**
+   * The value of the Retry-After header in seconds when a build is rejected.
+   */
+  private int retryAfter = 5;
+
+  /**
+   * The TinyLFU admission policy if enabled.
+   */
+  private @Nullable TinyLFUPolicy admission;
+
+  /**
+   * The cost-aware eviction policy if enabled.
+   */
+  private @Nullable GDSFPolicy eviction;
+
+  /**
+   * The near cache looked up before the cache if enabled.
+   */
+  private @Nullable NearCache nearCache;
+
+  /**
+   * The miss ratio curve of the cache if enabled.
+   */
+  private @Nullable MissRatioCurve missRatioCurve;
+
+  /**
+   * The access trace of the cache if enabled.
+   */
+  private @Nullable AccessTrace accessTrace;
+
+  /**
+   * The hot keys of the cache if tracked.
+   */
+  private @Nullable HeavyHitters hotKeys;
+
   /**
    * Initialises blockingCache to use.
    *
@@ -111,14 +271,36 @@ public abstract class CachingFilterBase implements Filter, CachingFilter {
         Ehcache cache = getCacheManager().getEhcache(localCacheName);
         if (cache == null) throw new CacheException("cache '" + localCacheName + "' not found in configuration");
         if (!(cache instanceof BlockingCache)) {
+          if (cache instanceof Cache) {
+            UNDERLYING_CACHES.put(localCacheName, (Cache)cache);
+          }
           // decorate and substitute
           BlockingCache newBlockingCache = new BlockingCache(cache);
           getCacheManager().replaceCacheWithDecoratedCache(cache, newBlockingCache);
         }
         this.blockingCache = (BlockingCache) getCacheManager().getEhcache(localCacheName);
         this.blockingCache.setTimeoutMillis(5000);
+        this.validators = ValidatorIndex.forCache(this.blockingCache);
+        this.statistics = CacheStatistics.forCache(this.blockingCache);
+        this.purges = SoftPurge.forCache(this.blockingCache);
+        InvalidationIndex.forCache(this.blockingCache);
+        CacheUsage.forCache(this.blockingCache);
+        CacheBudget.register(this.blockingCache);
+        CacheSnapshots.register(this.blockingCache);
+        // Start monitoring memory pressure if enabled
+        MemoryPressureMonitor.getDefault();
+        // Start receiving invalidations from other nodes if enabled
+        InvalidationBus.getDefault();
       }
     }
+    initTrace(config);
+    initBuildLimits(config);
+    initAdmission(config);
+    initEviction(config);
+    initNearCache(config);
+    initMissRatioCurve(config);
+    initAccessTrace(config);
+    initHotKeys(config);
   }
 
   /**
@@ -167,6 +349,12 @@ public abstract class CachingFilterBase implements Filter, CachingFilter {
     // Request indicates underlying resource cannot be cached
     } else if (!isCacheable(req)) {
       LOGGER.info("Request not cacheable, invoking underlying servlet");
+      RequestTrace trace = startTrace();
+      if (trace != null) {
+        trace.outcome(RequestTrace.Outcome.BYPASS);
+        trace.writeTo(res);
+        trace.end();
+      }
       chain.doFilter(req, res);
 
     // This filter already been used (probably a configuration error)
@@ -177,22 +365,40 @@ public abstract class CachingFilterBase implements Filter, CachingFilter {
 
     // Let's go
     } else {
+      RequestTrace trace = startTrace();
       try {
         this.visits.markAsVisited();
+        if (writeNotModified(req, res)) return;
         CachedResource resource = getResource(req, res, chain);
         if (resource.isOK()) {
           if (res.isCommitted()) {
             LOGGER.warn("Response already committed after fetching resource but before writing response.");
           } else {
+            if (trace != null) {
+              trace.startWrite();
+            }
             writeResponse(req, res, resource);
+            Object bytes = req.getAttribute(BYTES_SERVED_ATTRIBUTE);
+            if (bytes instanceof Integer) {
+              getStatistics().served((Integer)bytes);
+              recordServed(req, (Integer)bytes);
+            }
           }
+        } else if (!res.isCommitted() && resource.getStatusCode() >= HttpServletResponse.SC_BAD_REQUEST) {
+          res.sendError(resource.getStatusCode());
         } else {
           LOGGER.warn("Status cached resource was for {} was {}", req.getRequestURI(), resource.getStatusCode());
         }
+      } catch (BuildRejectedException ex) {
+        handleRejectedBuild(req, res, chain);
       } catch (CacheException ex) {
         LOGGER.error("Unable to construct cache entry", ex);
       } finally {
         this.visits.remove();
+        endRevalidation();
+        if (trace != null) {
+          trace.end();
+        }
       }
     }
   }
@@ -200,14 +406,272 @@ public abstract class CachingFilterBase implements Filter, CachingFilter {
   // Useful methods for extending classes
   // ----------------------------------------------------------------------------------------------
 
+  /**
+   * Indicates whether the cached resource for the request is still valid.
+   *
+   * <p>This method is invoked before answering a conditional request from the validators of the
+   * cached resource, without retrieving the resource from the cache. Implementations should
+   * override this method if the resource may have changed since it was cached, for example
+   * when it is based on a file.
+   *
+   * @param req       The HTTP servlet request
+   * @param validator The validators of the cached resource
+   *
+   * @return <code>true</code> by default.
+   */
+  protected boolean isStillValid(HttpServletRequest req, ResourceValidator validator) {
+    return true;
+  }
+
   /**
    * @param key The key for the cached resource
    * @return The cached resource for the specified key.
    */
   protected final @Nullable CachedResource getResourceFromCache(String key) {
-    Element element = this.blockingCache.get(key);
-    if (element == null || element.getObjectValue() == null) return null;
-    return (CachedResource)element.getObjectValue();
+    recordLookup(key);
+    long start = System.nanoTime();
+    NearCache near = this.nearCache;
+    Element element = near != null ? near.lookup(key) : null;
+    if (element == null) {
+      long stamp = near != null ? near.stamp() : 0;
+      element = this.blockingCache.get(key);
+      if (element == null) {
+        element = CacheSnapshots.restore(this.blockingCache, key, entry -> entry.value() instanceof CachedResource);
+      }
+      if (near != null && element != null && element.getObjectValue() != null) {
+        near.promote(key, element, stamp);
+      }
+    }
+    RequestTrace trace = RequestTrace.current();
+    if (trace != null) {
+      trace.lookup(System.nanoTime() - start);
+    }
+    if (element == null || element.getObjectValue() == null) {
+      getStatistics().miss();
+      return null;
+    }
+    CachedResource resource = (CachedResource)element.getObjectValue();
+    if (trace != null) {
+      trace.created(element.getCreationTime());
+    }
+    SoftPurge purge = this.purges;
+    if (purge != null && purge.isStale(key, element.getVersion())) {
+      if (purge.startRevalidation(key)) {
+        LOGGER.debug("Revalidating soft purged resource {}", key);
+        this.revalidation.set(new Revalidation(key, resource));
+        getStatistics().miss();
+        return null;
+      }
+      LOGGER.debug("Serving soft purged resource {} while it is revalidated", key);
+      getStatistics().stale();
+      if (trace != null) {
+        trace.outcome(RequestTrace.Outcome.STALE);
+      }
+      return resource;
+    }
+    recordHit(key, resource.getRetainedSize());
+    getStatistics().hit();
+    return resource;
+  }
+
+  /**
+   * Builds the resource and stores it in the cache.
+   *
+   * <p>Only resources which are OK (200) are cached, for any other status or if an error occurs
+   * while building the resource, a <code>null</code> element is put in the cache in order to
+   * release the lock acquired by the blocking cache.
+   *
+   * @param key     The key for the cached resource
+   * @param builder The function building the resource
+   *
+   * @return the resource built
+   *
+   * @throws ServletException If thrown by the builder or wrapping any other error
+   */
+  protected final CachedResource buildAndCache(String key, ResourceBuilder builder) throws ServletException {
+    return buildAndCache(key, null, builder);
+  }
+
+  /**
+   * Builds the resource and stores it in the cache, falling back on the stale resource if the
+   * build is rejected because too many resources are being built.
+   *
+   * <p>When revalidating a soft purged resource, the soft purged resource is used as the stale
+   * resource.
+   *
+   * <p>If the build is rejected and the stale resource cannot be used, the filter responds
+   * according to the <code>build-overflow</code> parameter.
+   *
+   * @param key     The key for the cached resource
+   * @param stale   The stale resource in the cache, if any
+   * @param builder The function building the resource
+   *
+   * @return the resource built
+   *
+   * @throws ServletException If thrown by the builder or wrapping any other error
+   */
+  protected final CachedResource buildAndCache(String key, @Nullable CachedResource stale, ResourceBuilder builder)
+      throws ServletException {
+    Ehcache cache = getCache();
+    BuildLimiter global = BuildLimiter.global();
+    if (!acquireBuild(global)) {
+      Revalidation r = this.revalidation.get();
+      if (stale == null && r != null && r.key.equals(key)) {
+        stale = r.stale;
+      }
+      if (stale != null && this.buildOverflow == BuildLimiter.Overflow.STALE) {
+        LOGGER.debug("Build rejected for {} - serving stale resource", key);
+        getStatistics().stale();
+        RequestTrace trace = RequestTrace.current();
+        if (trace != null) {
+          trace.outcome(RequestTrace.Outcome.STALE);
+        }
+        return stale;
+      }
+      // Release the lock acquired by the blocking cache (only held when there is no element)
+      if (stale == null) {
+        cache.put(new Element(key, null));
+      }
+      throw new BuildRejectedException(key);
+    }
+    try {
+      // Read before the build so that a purge during the build leaves the element stale
+      SoftPurge purge = this.purges;
+      long generation = purge != null ? purge.getGeneration() : 1L;
+      long start = System.nanoTime();
+      CachedResource resource = builder.build();
+      long nanos = System.nanoTime() - start;
+      recordBuild(nanos);
+      AccessTrace accessTrace = this.accessTrace;
+      if (accessTrace != null) {
+        accessTrace.record(key, false, resource.getRetainedSize(), nanos);
+      }
+      HeavyHitters hotKeys = this.hotKeys;
+      if (hotKeys != null) {
+        hotKeys.record(key, 0, nanos);
+      }
+      if (resource.isOK()) {
+        LOGGER.debug("Resource OK (200) - adding to cache {} with key {}", cache.getName(), key);
+        GDSFPolicy eviction = this.eviction;
+        if (eviction != null) {
+          eviction.record(key, nanos, resource.getRetainedSize());
+        }
+        cache.put(new Element(key, resource, generation));
+      } else {
+        LOGGER.debug("Resource was not OK(200) - putting null into cache {} with key {}", cache.getName(), key);
+        cache.put(new Element(key, null));
+      }
+      return resource;
+    } catch (Exception throwable) {
+      cache.put(new Element(key, null));
+      throw new ServletException(throwable);
+    } finally {
+      global.release();
+      this.buildLimiter.release();
+    }
+  }
+
+  /**
+   * Builds a resource which must not be cached, for example because it is incomplete.
+   *
+   * <p>The build is subject to the same limits and recorded in the same statistics as the
+   * resources which are cached, but the cache is not looked up or updated.
+   *
+   * @param key     The key for the resource
+   * @param builder The function building the resource
+   *
+   * @return the resource built
+   *
+   * @throws ServletException If thrown by the builder or wrapping any other error
+   */
+  protected final CachedResource buildUncached(String key, ResourceBuilder builder) throws ServletException {
+    BuildLimiter global = BuildLimiter.global();
+    if (!acquireBuild(global)) throw new BuildRejectedException(key);
+    try {
+      long start = System.nanoTime();
+      CachedResource resource = builder.build();
+      recordBuild(System.nanoTime() - start);
+      return resource;
+    } catch (ServletException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      throw new ServletException(ex);
+    } finally {
+      global.release();
+      this.buildLimiter.release();
+    }
+  }
+
+  /**
+   * Creates a new static resource, recording the time taken to compress it.
+   *
+   * @param status       The HTTP status code of the response
+   * @param contentType  The content type
+   * @param body         The body in bytes to store
+   * @param modified     The last modified date of the resource.
+   * @param cacheControl The cache control header for this static resource
+   * @param expires      When this resource expires
+   *
+   * @return the new static resource
+   */
+  protected final StaticResource newStaticResource(int status, @Nullable String contentType, byte[] body,
+      long modified, String cacheControl, long expires) {
+    return newStaticResource(status, contentType, body, modified, cacheControl, expires, null);
+  }
+
+  /**
+   * Creates a new static resource tagged with surrogate keys, recording the time taken to compress it.
+   *
+   * @param status       The HTTP status code of the response
+   * @param contentType  The content type
+   * @param body         The body in bytes to store
+   * @param modified     The last modified date of the resource.
+   * @param cacheControl The cache control header for this static resource
+   * @param expires      When this resource expires
+   * @param surrogateKey The value of the "Surrogate-Key" header (may be <code>null</code>)
+   *
+   * @return the new static resource
+   */
+  protected final StaticResource newStaticResource(int status, @Nullable String contentType, byte[] body,
+      long modified, String cacheControl, long expires, @Nullable String surrogateKey) {
+    long start = System.nanoTime();
+    StaticResource resource = new StaticResource(status, contentType, body, modified, cacheControl, expires, surrogateKey);
+    long nanos = System.nanoTime() - start;
+    getStatistics().compression(nanos);
+    RequestTrace trace = RequestTrace.current();
+    if (trace != null) {
+      trace.compression(nanos);
+    }
+    return resource;
+  }
+
+  /**
+   * Returns the statistics of the cache used by this filter.
+   *
+   * @return the statistics for the cache.
+   */
+  protected final CacheStatistics getStatistics() {
+    CacheStatistics s = this.statistics;
+    if (s == null) {
+      s = CacheStatistics.forCache(getCache());
+      this.statistics = s;
+    }
+    return s;
+  }
+
+  /**
+   * Get the time to live for the resources in the cache, in milliseconds.
+   *
+   * @return time to live in milliseconds
+   */
+  protected final long getTimeToLiveMilliseconds() {
+    Ehcache cache = getCache();
+    if (cache.isDisabled()) return -1;
+    else {
+      CacheConfiguration config = cache.getCacheConfiguration();
+      if (config.isEternal()) return ONE_YEAR_IN_MILLISECONDS;
+      else return config.getTimeToLiveSeconds() * MILLISECONDS_PER_SECOND;
+    }
   }
 
   /**
@@ -234,9 +698,182 @@ public abstract class CachingFilterBase implements Filter, CachingFilter {
     return this.cacheName;
   }
 
+  /**
+   * Writes the response for a static resource.
+   *
+   * <p>This method actually performs the conditional GET and returns 304 if not modified,
+   * short-circuiting the normal response.
+   *
+   * @param req      The HTTP servlet request.
+   * @param res      The HTTP servlet response.
+   * @param resource The cached resource build previously.
+   *
+   * @throws IOException      For I/O errors only
+   * @throws ServletException For all other errors.
+   */
+  protected static void writeStaticResponse(HttpServletRequest req, HttpServletResponse res, CachedResource resource)
+      throws IOException, ServletException {
+
+    boolean sendGzip = resource.hasContent() && resource.hasGzippedBody() && HttpHeaderParser.acceptsGzip(req);
+
+    // Reset the headers
+    res.reset();
+
+    // Check "If-None-Match" header (If-Modified-Since is ignored when present)
+    String ifNoneMatch = req.getHeader(HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch != null) {
+      String etag = resource.getETag(ifNoneMatch.contains("-gzip"));
+      if (HttpHeaderParser.matchesIfNoneMatch(ifNoneMatch, etag)) {
+        LOGGER.debug("Returning Not Modified (304) for {} from {}", req.getRequestURI(), HttpHeaders.IF_NONE_MATCH);
+        resource.copyHeadersTo(res, sendGzip);
+        writeTrace(res);
+        res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        res.flushBuffer();
+        return;
+      }
+
+    // Check "If-Modified-Since" header
+    } else {
+      long ifModifiedSince = HttpDates.parse(req.getHeader(HttpHeaders.IF_MODIFIED_SINCE));
+      if (ifModifiedSince != -1 && ifModifiedSince >= resource.getLastModified()) {
+        LOGGER.debug("Returning Not Modified (304) for {} from {}", req.getRequestURI(), HttpHeaders.IF_MODIFIED_SINCE);
+        resource.copyHeadersTo(res, sendGzip);
+        writeTrace(res);
+        res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        res.flushBuffer();
+        return;
+      }
+    }
+
+    // Normal process
+    LOGGER.debug("Writing response OK (200) for {}", req.getRequestURI());
+    res.setStatus(resource.getStatusCode());
+    String contentType = resource.getContentType();
+    if (contentType != null && !contentType.isEmpty()) {
+      res.setContentType(contentType);
+    }
+    resource.copyHeadersTo(res, sendGzip);
+    res.setCharacterEncoding("utf-8");
+    writeContent(req, res, resource);
+  }
+
   // private helpers
   // ----------------------------------------------------------------------------------------------
 
+  /**
+   * Answers a conditional request with a 304 using only the validators of the cached resource.
+   *
+   * <p>This method does not wait for the lock of the blocking cache if the resource is being
+   * rebuilt: the element is only read quietly to update its access statistics, so that the
+   * eviction of the cache still sees the resources which are revalidated.
+   *
+   * @param req The HTTP servlet request
+   * @param res The HTTP servlet response
+   *
+   * @return <code>true</code> if the response was written; <code>false</code> to continue normally.
+   *
+   * @throws IOException If thrown while flushing the response
+   */
+  private boolean writeNotModified(HttpServletRequest req, HttpServletResponse res) throws IOException {
+    ValidatorIndex index = this.validators;
+    if (index == null) return false;
+    String ifNoneMatch = req.getHeader(HttpHeaders.IF_NONE_MATCH);
+    long ifModifiedSince = ifNoneMatch == null ? HttpDates.parse(req.getHeader(HttpHeaders.IF_MODIFIED_SINCE)) : -1;
+    if (ifNoneMatch == null && ifModifiedSince == -1) return false;
+    String key = calculateKey(req);
+    ResourceValidator validator = index.get(key);
+    if (validator == null || validator.isExpired(System.currentTimeMillis()) || !isStillValid(req, validator)) return false;
+    SoftPurge purge = this.purges;
+    if (purge != null && purge.isStale(key, validator.getGeneration())) return false;
+    boolean notModified = ifNoneMatch != null
+        ? HttpHeaderParser.matchesIfNoneMatch(ifNoneMatch, validator.getETag(ifNoneMatch.contains("-gzip")))
+        : ifModifiedSince >= validator.getLastModified();
+    if (!notModified) return false;
+    LOGGER.debug("Returning Not Modified (304) for {} from validators", req.getRequestURI());
+    recordLookup(key);
+    recordHit(key, validator.getSize());
+    Element element = this.blockingCache.getQuiet(key);
+    if (element != null) {
+      element.updateAccessStatistics();
+    }
+    getStatistics().notModified();
+    boolean sendGzip = validator.hasGzippedBody() && HttpHeaderParser.acceptsGzip(req);
+    res.reset();
+    validator.getHeaders(sendGzip).writeTo(res);
+    RequestTrace trace = RequestTrace.current();
+    if (trace != null) {
+      trace.created(validator.getCreated());
+      trace.writeTo(res);
+    }
+    res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    res.flushBuffer();
+    return true;
+  }
+
+  /**
+   * Records a lookup of the cache for the policies and tools tracking all accesses.
+   *
+   * @param key The key for the cached resource
+   */
+  private void recordLookup(String key) {
+    TinyLFUPolicy policy = this.admission;
+    if (policy != null) {
+      policy.record(key);
+    }
+    MissRatioCurve curve = this.missRatioCurve;
+    if (curve != null) {
+      curve.record(key);
+    }
+  }
+
+  /**
+   * Records the time taken to build a resource in the statistics and the trace of the request.
+   *
+   * @param nanos The build time in nanoseconds
+   */
+  private void recordBuild(long nanos) {
+    getStatistics().build(nanos);
+    RequestTrace trace = RequestTrace.current();
+    if (trace != null) {
+      trace.outcome(RequestTrace.Outcome.MISS);
+      trace.build(nanos);
+    }
+  }
+
+  /**
+   * Records that a resource was served from the cache, including from its validators.
+   *
+   * @param key  The key for the cached resource
+   * @param size The retained size of the resource in bytes
+   */
+  private void recordHit(String key, long size) {
+    GDSFPolicy eviction = this.eviction;
+    if (eviction != null) {
+      eviction.touch(key);
+    }
+    AccessTrace accessTrace = this.accessTrace;
+    if (accessTrace != null) {
+      accessTrace.record(key, true, size, 0);
+    }
+    HeavyHitters hotKeys = this.hotKeys;
+    if (hotKeys != null) {
+      hotKeys.record(key, 0, 0);
+    }
+  }
+
+  /**
+   * Records the bytes written for the resource served, once the response has been written.
+   *
+   * @param req   The HTTP servlet request
+   * @param bytes The number of bytes written
+   */
+  private void recordServed(HttpServletRequest req, int bytes) {
+    HeavyHitters hotKeys = this.hotKeys;
+    if (hotKeys != null) {
+      hotKeys.recordBytes(calculateKey(req), bytes);
+    }
+  }
+
   /**
    * Writes the response content.
    *
@@ -261,7 +898,7 @@ public abstract class CachingFilterBase implements Filter, CachingFilter {
       // Discarding returned body and returning a 0-length body content
       body = new byte[0];
 
-    } else if (resource.hasGzippedBody() && HttpHeaderUtils.acceptsGZipCompression(req)) {
+    } else if (resource.hasGzippedBody() && HttpHeaderParser.acceptsGzip(req)) {
       // Client accepts GZIP, let's send it compressed
       body = resource.getBody(true);
       GZIPUtils.addGzipHeader(res);
@@ -272,7 +909,9 @@ public abstract class CachingFilterBase implements Filter, CachingFilter {
     }
 
     // Writing out content
+    writeTrace(res);
     if (body != null) {
+      req.setAttribute(BYTES_SERVED_ATTRIBUTE, body.length);
       res.setContentLength(body.length);
       OutputStream out = new BufferedOutputStream(res.getOutputStream());
       out.write(body);
@@ -280,6 +919,308 @@ public abstract class CachingFilterBase implements Filter, CachingFilter {
     }
   }
 
+  /**
+   * Writes the headers of the trace of the current request if any.
+   *
+   * @param res The HTTP Servlet response
+   */
+  private static void writeTrace(HttpServletResponse res) {
+    RequestTrace trace = RequestTrace.current();
+    if (trace != null) {
+      trace.writeTo(res);
+    }
+  }
+
+  /**
+   * Initializes the tracing options from the filter configuration.
+   *
+   * <p>The <code>trace</code> parameter is a list of headers to include among
+   * <code>server-timing</code> and <code>x-cache</code> (which also includes <code>Age</code>),
+   * and the <code>trace-sample</code> parameter is the proportion of requests to trace
+   * (defaults to 1).
+   *
+   * @param config this filter's configuration.
+   */
+  private void initTrace(FilterConfig config) {
+    String trace = config.getInitParameter("trace");
+    if (trace != null) {
+      for (String t : trace.split("[,\\s]+")) {
+        if ("server-timing".equalsIgnoreCase(t)) {
+          this.traceServerTiming = true;
+        } else if ("x-cache".equalsIgnoreCase(t)) {
+          this.traceXCache = true;
+        } else if (!t.isEmpty()) {
+          LOGGER.warn("Ignoring unknown trace option '{}'", t);
+        }
+      }
+    }
+    String sample = config.getInitParameter("trace-sample");
+    if (sample != null && !sample.isEmpty()) {
+      try {
+        this.traceSampleRate = Math.max(0, Math.min(1, Double.parseDouble(sample)));
+      } catch (NumberFormatException ex) {
+        LOGGER.warn("Invalid trace-sample value '{}', tracing all requests", sample);
+      }
+    }
+  }
+
+  /**
+   * Initialises the build limits from the filter configuration.
+   *
+   * @param config this filter's configuration.
+   */
+  private void initBuildLimits(FilterConfig config) {
+    int maxBuilds = intParameter(config, "max-builds", 0);
+    if (maxBuilds > 0) {
+      int maxQueued = intParameter(config, "max-queued-builds", 0);
+      int timeout = intParameter(config, "build-timeout", 1000);
+      this.buildLimiter = new BuildLimiter(maxBuilds, maxQueued, timeout);
+    }
+    this.buildOverflow = BuildLimiter.Overflow.forName(config.getInitParameter("build-overflow"), BuildLimiter.Overflow.UNAVAILABLE);
+    this.retryAfter = intParameter(config, "retry-after", 5);
+    LOGGER.debug("Build limits for {}: {} ({})", config.getFilterName(), this.buildLimiter, this.buildOverflow);
+  }
+
+  /**
+   * Initialises the admission policy from the filter configuration.
+   *
+   * <p>Filters sharing the same cache share the same policy.
+   *
+   * @param config this filter's configuration.
+   */
+  private void initAdmission(FilterConfig config) {
+    String admission = config.getInitParameter("admission");
+    if (admission == null || admission.isEmpty()) return;
+    if (!"tinylfu".equalsIgnoreCase(admission)) {
+      LOGGER.warn("Ignoring unknown admission policy '{}'", admission);
+      return;
+    }
+    this.admission = installPolicy(config, TinyLFUPolicy.class, cache -> {
+      long capacity = cache.getCacheConfiguration().getMaxEntriesLocalHeap();
+      return new TinyLFUPolicy(capacity > 0 ? capacity : 10000);
+    });
+  }
+
+  /**
+   * Initialises the eviction policy from the filter configuration.
+   *
+   * <p>Filters sharing the same cache share the same policy.
+   *
+   * @param config this filter's configuration.
+   */
+  private void initEviction(FilterConfig config) {
+    String eviction = config.getInitParameter("eviction");
+    if (eviction == null || eviction.isEmpty()) return;
+    if (!"gdsf".equalsIgnoreCase(eviction)) {
+      LOGGER.warn("Ignoring unknown eviction policy '{}'", eviction);
+      return;
+    }
+    if (this.admission != null) {
+      LOGGER.warn("Ignoring eviction policy '{}' for {}: cache already uses TinyLFU admission", eviction, config.getFilterName());
+      return;
+    }
+    this.eviction = installPolicy(config, GDSFPolicy.class, cache -> {
+      GDSFPolicy policy = new GDSFPolicy();
+      cache.getCacheEventNotificationService().registerListener(policy);
+      return policy;
+    });
+  }
+
+  /**
+   * Installs an eviction policy on the cache decorated by this filter.
+   *
+   * <p>If the cache already uses a policy of the same type, it is shared by this filter.
+   *
+   * @param config  this filter's configuration.
+   * @param type    the type of policy
+   * @param factory creates the policy for the cache
+   *
+   * @param <P> the type of policy
+   *
+   * @return the policy used by the cache or <code>null</code> if it cannot be replaced.
+   */
+  private <P extends Policy> @Nullable P installPolicy(FilterConfig config, Class<P> type, Function<Cache, P> factory) {
+    Cache cache = getUnderlyingCache();
+    if (cache == null) {
+      LOGGER.warn("Ignoring {} policy for {}: the eviction policy of the cache cannot be replaced", type.getSimpleName(), config.getFilterName());
+      return null;
+    }
+    synchronized (CachingFilterBase.class) {
+      Policy current = cache.getMemoryStoreEvictionPolicy();
+      if (type.isInstance(current)) return type.cast(current);
+      P policy = factory.apply(cache);
+      cache.setMemoryStoreEvictionPolicy(policy);
+      LOGGER.debug("Using {} policy for cache {}", policy.getName(), cache.getName());
+      return policy;
+    }
+  }
+
+  /**
+   * Initialises the near cache from the filter configuration.
+   *
+   * <p>Filters sharing the same cache share the same near cache.
+   *
+   * @param config this filter's configuration.
+   */
+  private void initNearCache(FilterConfig config) {
+    int capacity = intParameter(config, "near-cache", 0);
+    if (capacity > 0) {
+      this.nearCache = NearCache.forCache(getCache(), capacity);
+    }
+  }
+
+  /**
+   * Initialises the miss ratio curve from the filter configuration.
+   *
+   * <p>Filters sharing the same cache share the same curve.
+   *
+   * @param config this filter's configuration.
+   */
+  private void initMissRatioCurve(FilterConfig config) {
+    double rate = 0;
+    String sample = config.getInitParameter("mrc-sample");
+    if (sample != null && !sample.isEmpty()) {
+      try {
+        rate = Math.max(0, Math.min(1, Double.parseDouble(sample)));
+      } catch (NumberFormatException ex) {
+        LOGGER.warn("Invalid mrc-sample value '{}', using {}", sample, rate);
+      }
+    }
+    if (rate > 0) {
+      this.missRatioCurve = MissRatioCurve.forName(getCache().getName(), rate);
+    }
+  }
+
+  /**
+   * Initialises the access trace from the filter configuration.
+   *
+   * <p>Filters sharing the same cache share the same trace.
+   *
+   * @param config this filter's configuration.
+   */
+  private void initAccessTrace(FilterConfig config) {
+    String directory = config.getInitParameter("access-trace");
+    if (directory != null && !directory.isEmpty()) {
+      long maxSize = (long)intParameter(config, "access-trace-max-size", 64) << 20;
+      this.accessTrace = AccessTrace.forCache(getCache().getName(), new File(directory), maxSize);
+    }
+  }
+
+  /**
+   * Initialises the hot keys tracker from the filter configuration.
+   *
+   * <p>Filters sharing the same cache share the same tracker.
+   *
+   * @param config this filter's configuration.
+   */
+  private void initHotKeys(FilterConfig config) {
+    int capacity = intParameter(config, "hot-keys", 0);
+    if (capacity > 0) {
+      long window = intParameter(config, "hot-keys-window", (int)(HeavyHitters.DEFAULT_WINDOW / 1000)) * 1000L;
+      this.hotKeys = HeavyHitters.forName(getCache().getName(), capacity, window);
+    }
+  }
+
+  /**
+   * Returns the cache decorated by the blocking cache.
+   *
+   * <p>Eviction policies can only be set on the cache itself, not on its decorators.
+   *
+   * @return the underlying cache or <code>null</code> if it was not decorated by a filter
+   */
+  private @Nullable Cache getUnderlyingCache() {
+    Cache cache = UNDERLYING_CACHES.get(getCacheName());
+    return cache != null && cache.getStatus() == Status.STATUS_ALIVE ? cache : null;
+  }
+
+  /**
+   * Returns the value of a numeric init parameter.
+   *
+   * @param config this filter's configuration.
+   * @param name   the name of the parameter
+   * @param def    the default value
+   *
+   * @return the value of the parameter or the default value if undefined or invalid.
+   */
+  private static int intParameter(FilterConfig config, String name, int def) {
+    String value = config.getInitParameter(name);
+    if (value == null || value.isEmpty()) return def;
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException ex) {
+      LOGGER.warn("Invalid {} value '{}', using {}", name, value, def);
+      return def;
+    }
+  }
+
+  /**
+   * Acquires a permit from this filter's limiter and the global limiter.
+   *
+   * @param global the global limiter
+   *
+   * @return <code>true</code> if both permits were acquired; <code>false</code> otherwise.
+   */
+  private boolean acquireBuild(BuildLimiter global) {
+    if (!this.buildLimiter.acquire()) return false;
+    if (global.acquire()) return true;
+    this.buildLimiter.release();
+    return false;
+  }
+
+  /**
+   * Responds to a request for which the build was rejected.
+   *
+   * @param req   The HTTP servlet request
+   * @param res   The HTTP servlet response
+   * @param chain The servlet chain
+   *
+   * @throws IOException      For I/O errors only
+   * @throws ServletException For all other errors.
+   */
+  private void handleRejectedBuild(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
+      throws IOException, ServletException {
+    RequestTrace trace = RequestTrace.current();
+    if (this.buildOverflow == BuildLimiter.Overflow.PASS_THROUGH) {
+      LOGGER.debug("Build rejected for {} - invoking underlying servlet", req.getRequestURI());
+      if (trace != null) {
+        trace.outcome(RequestTrace.Outcome.BYPASS);
+        trace.writeTo(res);
+      }
+      chain.doFilter(req, res);
+    } else {
+      LOGGER.warn("Build rejected for {} - too many concurrent builds", req.getRequestURI());
+      if (!res.isCommitted()) {
+        res.setHeader("Retry-After", Integer.toString(this.retryAfter));
+        res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      }
+    }
+  }
+
+  /**
+   * Releases the revalidation claimed by the current thread, if any.
+   */
+  private void endRevalidation() {
+    Revalidation r = this.revalidation.get();
+    SoftPurge purge = this.purges;
+    if (r != null) {
+      this.revalidation.remove();
+      if (purge != null) {
+        purge.endRevalidation(r.key);
+      }
+    }
+  }
+
+  /**
+   * Starts tracing the current request if tracing is enabled and the request is sampled.
+   *
+   * @return the trace or <code>null</code>
+   */
+  private @Nullable RequestTrace startTrace() {
+    if (!this.traceServerTiming && !this.traceXCache) return null;
+    if (this.traceSampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= this.traceSampleRate) return null;
+    return RequestTrace.start(this.traceServerTiming, this.traceXCache);
+  }
+
   /**
    * Check whether the response should have any content according to RFC 2616.
    *
@@ -302,6 +1243,43 @@ public abstract class CachingFilterBase implements Filter, CachingFilter {
   // Inner classes
   // ----------------------------------------------------------------------------------------------
 
+  /**
+   * A soft purged resource being revalidated.
+   */
+  private static final class Revalidation {
+
+    /** The cache key */
+    private final String key;
+
+    /** The soft purged resource */
+    private final CachedResource stale;
+
+    /**
+     * @param key   The cache key
+     * @param stale The soft purged resource
+     */
+    Revalidation(String key, CachedResource stale) {
+      this.key = key;
+      this.stale = stale;
+    }
+  }
+
+  /**
+   * Thrown when a resource cannot be built because too many resources are being built.
+   */
+  private static final class BuildRejectedException extends CacheException {
+
+    /** As per requirement for the Serializable interface */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param key The key of the resource which could not be built.
+     */
+    BuildRejectedException(String key) {
+      super("Build rejected for "+key);
+    }
+  }
+
   /**
    * A <code>ThreadLocal</code> class to check if the filter was invoked twice for the same
    * request.
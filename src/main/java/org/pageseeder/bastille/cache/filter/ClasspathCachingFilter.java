@@ -0,0 +1,278 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.filter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.bastille.cache.util.CachedResource;
+import org.pageseeder.bastille.cache.util.ContentTransformers;
+import org.pageseeder.bastille.cache.util.StaticResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheManager;
+
+/**
+ * A caching filter serving static assets packaged on the classpath, typically in jars.
+ *
+ * <p>The path of the request relative to the Web application is resolved against a classpath
+ * prefix, so that with the default prefix <code>META-INF/resources</code>, a request for
+ * <code>/admin/script/app.js</code> is served from <code>META-INF/resources/admin/script/app.js</code>.
+ * Requests which do not match a classpath resource are passed to the rest of the filter chain.
+ *
+ * <p>Resources are loaded lazily when first requested, then compressed and cached as a
+ * {@link StaticResource}, so that they are served with the same ETag, conditional GET and
+ * caching headers as resources cached by the {@link StaticCachingFilter}. Since classpath
+ * resources only change when the application is redeployed, cached resources are only
+ * reloaded when they expire from the cache.
+ *
+ * <p>This filter accepts the following initialization parameters:
+ * <ul>
+ *   <li><code>prefix</code>: the classpath prefix (defaults to <code>META-INF/resources</code>);</li>
+ *   <li><code>cache-control</code> and <code>transform</code>: as for the static caching filter.</li>
+ * </ul>
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class ClasspathCachingFilter extends CachingFilterBase implements CachingFilter {
+
+  /**
+   * The default of the cache to use.
+   */
+  public static final String DEFAULT_CACHE_NAME = "ClasspathCachingFilter";
+
+  /**
+   * The default classpath prefix.
+   */
+  public static final String DEFAULT_PREFIX = "META-INF/resources";
+
+  /** Logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClasspathCachingFilter.class);
+
+  /** Useful constant */
+  private static final int MILLISECONDS_PER_SECOND = 1000;
+
+  /** The maximum number of missing resource names remembered */
+  private static final int MAX_MISSING = 4096;
+
+  /** The classpath prefix (without trailing '/') */
+  private String prefix = DEFAULT_PREFIX;
+
+  /** The class loader to load the resources from */
+  private ClassLoader loader = ClasspathCachingFilter.class.getClassLoader();
+
+  /** The names of the resources known not to be on the classpath */
+  private final Set<String> missing = ConcurrentHashMap.newKeySet();
+
+  /** The cache control pattern */
+  private String cacheControlPattern = StaticCachingFilter.DEFAULT_CACHE_CONTROL;
+
+  /** The transformations to apply to the content before it is cached */
+  private ContentTransformers transformers = ContentTransformers.NONE;
+
+  /**
+   * The servlet context.
+   */
+  private @Nullable ServletContext context = null;
+
+  @Override
+  public CacheManager getCacheManager() {
+    return CacheManager.getInstance();
+  }
+
+  @Override
+  public String getDefaultCacheName() {
+    return DEFAULT_CACHE_NAME;
+  }
+
+  @Override
+  public void init(FilterConfig config) throws CacheException {
+    super.init(config);
+    this.context = config.getServletContext();
+    String p = config.getInitParameter("prefix");
+    String normalized = p != null ? p.trim().replaceAll("^/+|/+$", "") : "";
+    if (!normalized.isEmpty()) {
+      this.prefix = normalized;
+    }
+    String cc = config.getInitParameter("cache-control");
+    if (cc != null && !cc.isEmpty()) {
+      this.cacheControlPattern = cc;
+    }
+    this.transformers = ContentTransformers.parse(config.getInitParameter("transform"));
+    ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+    if (contextLoader != null) {
+      this.loader = contextLoader;
+    }
+    LOGGER.debug("Serving classpath resources from {}", this.prefix);
+  }
+
+  @Override
+  public void destroy() {
+    // No cleanup required: this filter holds no resources that need explicit release
+  }
+
+  /**
+   * Get the requested resource either from the cache or by loading it from the classpath.
+   * <p>
+   * {@inheritDoc}
+   */
+  @Override
+  public CachedResource getResource(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
+      throws ServletException, CacheException {
+    String key = calculateKey(req);
+    CachedResource resource = getResourceFromCache(key);
+    if (resource != null) return resource;
+    String name = toResourceName(req);
+    return buildAndCache(key, () -> buildResource(name));
+  }
+
+  /**
+   * Only GET and HEAD requests for resources which exist on the classpath are cacheable, unless
+   * the "berlioz-cache" parameter is set to "false".
+   * <p>
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isCacheable(HttpServletRequest req) {
+    if ("false".equals(req.getParameter("berlioz-cache"))) return false;
+    String method = req.getMethod();
+    if (!"GET".equals(method) && !"HEAD".equals(method)) return false;
+    String name = toResourceName(req);
+    if (name == null) return false;
+    return getCache().isKeyInCache(calculateKey(req)) || exists(name);
+  }
+
+  @Override
+  public void writeResponse(HttpServletRequest req, HttpServletResponse res, CachedResource resource)
+      throws IOException, ServletException {
+    writeStaticResponse(req, res, resource);
+  }
+
+  /**
+   * Returns the key for this cache.
+   *
+   * @param req the HTTP Servlet request.
+   * @return the request URI.
+   */
+  @Override
+  public String calculateKey(HttpServletRequest req) {
+    return req.getMethod() + '_' + req.getRequestURI();
+  }
+
+  // Private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Load the resource from the classpath.
+   *
+   * @param name The name of the classpath resource
+   *
+   * @return the corresponding static resource
+   *
+   * @throws IOException If thrown while reading the resource
+   */
+  private CachedResource buildResource(@Nullable String name) throws IOException {
+    URL url = name != null ? this.loader.getResource(name) : null;
+    if (name == null || url == null) throw new IOException("Classpath resource not found: "+name);
+    LOGGER.debug("Loading classpath resource {}", name);
+    URLConnection connection = url.openConnection();
+    connection.setUseCaches(false);
+    byte[] content;
+    try (InputStream in = connection.getInputStream()) {
+      content = IOUtils.toByteArray(in);
+    }
+    long modified = connection.getLastModified();
+    if (modified <= 0) {
+      modified = System.currentTimeMillis();
+    }
+    ServletContext ctx = this.context;
+    String contentType = ctx != null ? ctx.getMimeType(name.substring(name.lastIndexOf('/') + 1)) : null;
+    long ttlMilliseconds = getTimeToLiveMilliseconds();
+    String cacheControl = this.cacheControlPattern.replace("%TTL", Long.toString(ttlMilliseconds / MILLISECONDS_PER_SECOND));
+    long expires = System.currentTimeMillis() + ttlMilliseconds;
+    byte[] body = this.transformers.transform(content, contentType);
+    return newStaticResource(HttpServletResponse.SC_OK, contentType, body, modified, cacheControl, expires);
+  }
+
+  /**
+   * Indicates whether the resource exists on the classpath.
+   *
+   * <p>Looking up a resource may scan every jar, so names which could not be found are
+   * remembered; they are forgotten all at once when there are too many of them.
+   *
+   * @param name The name of the classpath resource
+   *
+   * @return <code>true</code> if the resource exists
+   */
+  private boolean exists(String name) {
+    if (this.missing.contains(name)) return false;
+    if (this.loader.getResource(name) != null) return true;
+    if (this.missing.size() >= MAX_MISSING) {
+      this.missing.clear();
+    }
+    this.missing.add(name);
+    return false;
+  }
+
+  /**
+   * Returns the name of the classpath resource for the request.
+   *
+   * <p>Paths which could escape the prefix, directories and class files are rejected.
+   *
+   * @param req the HTTP servlet request
+   * @return the name of the classpath resource or <code>null</code> if the path is not allowed.
+   */
+  private @Nullable String toResourceName(HttpServletRequest req) {
+    String path = decode(req.getRequestURI().substring(req.getContextPath().length()));
+    if (path.isEmpty() || path.endsWith("/") || path.endsWith(".class")
+        || path.contains("..") || path.contains("\\") || path.contains("//")) return null;
+    return this.prefix + (path.charAt(0) == '/' ? path : '/' + path);
+  }
+
+  /**
+   * Try to decode a URL's encoded path.
+   *
+   * @param encoded the encoded path
+   * @return the decoded path
+   */
+  private static String decode(String encoded) {
+    try {
+      return URLDecoder.decode(encoded, "utf-8");
+    } catch (IllegalArgumentException | UnsupportedEncodingException ex) {
+      return encoded;
+    }
+  }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.filter;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+
+import org.pageseeder.bastille.cache.util.CachedResource;
+
+/**
+ * A function building the resource to cache on a cache miss.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+@FunctionalInterface
+public interface ResourceBuilder {
+
+  /**
+   * Builds the resource, typically by invoking the rest of the filter chain.
+   *
+   * @return the resource to cache.
+   *
+   * @throws IOException      For I/O errors
+   * @throws ServletException For general errors or errors while invoking the filter chain.
+   */
+  CachedResource build() throws IOException, ServletException;
+
+}
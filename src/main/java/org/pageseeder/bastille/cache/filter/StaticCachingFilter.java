@@ -17,9 +17,10 @@ package org.pageseeder.bastille.cache.filter;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
-import java.util.Date;
+import java.util.List;
 
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -31,8 +32,11 @@ import javax.servlet.http.HttpServletResponse;
 import org.jspecify.annotations.Nullable;
 import org.pageseeder.bastille.cache.util.CachedResource;
 import org.pageseeder.bastille.cache.util.CachedResponseWrapper;
+import org.pageseeder.bastille.cache.util.ContentTransformers;
 import org.pageseeder.bastille.cache.util.GenericResource;
 import org.pageseeder.bastille.cache.util.HttpDateFormat;
+import org.pageseeder.bastille.cache.util.InvalidationIndex;
+import org.pageseeder.bastille.cache.util.ResourceValidator;
 import org.pageseeder.bastille.cache.util.StaticRequestWrapper;
 import org.pageseeder.bastille.cache.util.StaticResource;
 import org.pageseeder.berlioz.http.HttpHeaderUtils;
@@ -42,9 +46,6 @@ import org.slf4j.LoggerFactory;
 
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.CacheManager;
-import net.sf.ehcache.Ehcache;
-import net.sf.ehcache.Element;
-import net.sf.ehcache.config.CacheConfiguration;
 
 /**
  * A caching filter for static resources such as scripts, images, styles, etc..
@@ -58,6 +59,13 @@ import net.sf.ehcache.config.CacheConfiguration;
  * images uncompressed. This is done based on the media type of the resource.
  * <p>If this use agent does not support GZip encoding, the resource is served uncompressed.
  *
+ * <h3>Minification</h3>
+ * <p>The <code>transform</code> initialization parameter lists the media types of resources
+ * which should be transformed before they are cached, for example
+ * <code>text/css, application/javascript</code> to use the built-in minifiers for styles and
+ * scripts. Since the transformed content is cached, the transformation only occurs once for each
+ * version of the file. See {@link ContentTransformers} for details.
+ *
  * <h3>Cache Key</h3>
  * <p>The key for each resource is the path component of the URI. The scheme, host port, query
  * string and fragment are ignored. The HTTP method is also ignored, so that <code>GET</code>
@@ -93,9 +101,6 @@ public final class StaticCachingFilter extends CachingFilterBase implements Cach
   /** Logger for this class. */
   private static final Logger LOGGER = LoggerFactory.getLogger(StaticCachingFilter.class);
 
-  /** Useful constant */
-  private static final long ONE_YEAR_IN_MILLISECONDS = 60 * 60 * 24 * 365 * 1000L;
-
   /** Useful constant */
   private static final int MILLISECONDS_PER_SECOND = 1000;
 
@@ -108,6 +113,9 @@ public final class StaticCachingFilter extends CachingFilterBase implements Cach
   /** The cache control pattern */
   private long sizeThreshold;
 
+  /** The transformations to apply to the content before it is cached */
+  private ContentTransformers transformers = ContentTransformers.NONE;
+
   /**
    * The servlet context.
    */
@@ -148,6 +156,9 @@ public final class StaticCachingFilter extends CachingFilterBase implements Cach
       this.sizeThreshold = DEFAULT_FILESIZE_THRESHOLD;
     }
     this.sizeThreshold = 1024*1024L;
+    // Setting the content transformations
+    this.transformers = ContentTransformers.parse(config.getInitParameter("transform"));
+    LOGGER.debug("Using content transformers for: {}", this.transformers);
   }
 
   @Override
@@ -188,30 +199,11 @@ public final class StaticCachingFilter extends CachingFilterBase implements Cach
 
     // Let's invoke the underlying page
     if (doBuild) {
-      resource = buildAndCache(key, req, res, chain);
+      resource = buildAndCache(key, resource, () -> buildResource(req, res, chain));
     }
     return resource;
   }
 
-  private CachedResource buildAndCache(String key, HttpServletRequest req, HttpServletResponse res, FilterChain chain)
-      throws ServletException {
-    Ehcache cache = getCache();
-    try {
-      CachedResource resource = buildResource(req, res, chain);
-      if (resource.isOK()) {
-        LOGGER.debug("Resource OK (200) - adding to cache {} with key {}", cache.getName(), key);
-        cache.put(new Element(key, resource));
-      } else {
-        LOGGER.debug("Resource was not OK(200) - putting null into cache {} with key {}", cache.getName(), key);
-        cache.put(new Element(key, null));
-      }
-      return resource;
-    } catch (Exception throwable) {
-      cache.put(new Element(key, null));
-      throw new ServletException(throwable);
-    }
-  }
-
   /**
    * Generate the cached resource
    *
@@ -254,11 +246,13 @@ public final class StaticCachingFilter extends CachingFilterBase implements Cach
       // Return a static cached resource
       LOGGER.debug("Building static cached resource for {}", req.getRequestURI());
       long lastModified = r.getDateHeader(HttpHeaders.LAST_MODIFIED);
-      long ttlMilliseconds = computeTimeToLiveMilliseconds(getCache());
+      long ttlMilliseconds = getTimeToLiveMilliseconds();
       String pattern = this.cacheControlPattern != null ? this.cacheControlPattern : DEFAULT_CACHE_CONTROL;
       String cacheControl = pattern.replace("%TTL", Long.toString(ttlMilliseconds / MILLISECONDS_PER_SECOND));
       long expires = System.currentTimeMillis() + ttlMilliseconds;
-      resource = new StaticResource(r.getStatus(), r.getContentType(), r.toByteArray(), lastModified, cacheControl, expires);
+      byte[] body = this.transformers.transform(r.toByteArray(), r.getContentType());
+      String surrogateKey = toSurrogateKey(r.getHeaderValues(InvalidationIndex.SURROGATE_KEY));
+      resource = newStaticResource(r.getStatus(), r.getContentType(), body, lastModified, cacheControl, expires, surrogateKey);
 
     } else {
 
@@ -271,6 +265,25 @@ public final class StaticCachingFilter extends CachingFilterBase implements Cach
 
   }
 
+  /**
+   * Joins the values of the "Surrogate-Key" headers set by the response.
+   *
+   * @param values The header values (may be <code>null</code>)
+   *
+   * @return the space-separated surrogate keys or <code>null</code> if none were set
+   */
+  private static @Nullable String toSurrogateKey(@Nullable List<Serializable> values) {
+    if (values == null || values.isEmpty()) return null;
+    StringBuilder keys = new StringBuilder();
+    for (Serializable value : values) {
+      if (keys.length() > 0) {
+        keys.append(' ');
+      }
+      keys.append(value);
+    }
+    return keys.toString();
+  }
+
   /**
    * Always return <code>true</code> unless the "berlioz-cache" parameter is set to "false"
    * or the file is too large or does not exist.
@@ -286,6 +299,18 @@ public final class StaticCachingFilter extends CachingFilterBase implements Cach
     return f != null && f.length() <= this.sizeThreshold;
   }
 
+  /**
+   * The resource is still valid unless the file has been modified since it was cached.
+   * <p>
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isStillValid(HttpServletRequest req, ResourceValidator validator) {
+    File f = getResourceFile(this.context, req);
+    long fmodified = f == null? 0 : f.lastModified() / MILLISECONDS_PER_SECOND;
+    return fmodified != 0 && fmodified <= validator.getLastModified() / MILLISECONDS_PER_SECOND;
+  }
+
   /**
    * Writes the response from a PageInfo object.
    *
@@ -302,53 +327,9 @@ public final class StaticCachingFilter extends CachingFilterBase implements Cach
   @Override
   public void writeResponse(HttpServletRequest req, HttpServletResponse res, CachedResource resource)
       throws IOException, ServletException {
-
-    boolean sendGzip = resource.hasContent() && resource.hasGzippedBody() && HttpHeaderUtils.acceptsGZipCompression(req);
-
     if (resource instanceof StaticResource) {
-
-      // Reset the headers
-      res.reset();
-
-      // Check "If-None-Match" header
-      String ifNoneMatch = req.getHeader(HttpHeaders.IF_NONE_MATCH);
-      if (ifNoneMatch != null) {
-        String etag = resource.getETag(ifNoneMatch.contains("-gzip"));
-        if (ifNoneMatch.equals(etag)) {
-          LOGGER.debug("Returning Not Modified (304) for {} from {}", req.getRequestURI(), HttpHeaders.IF_NONE_MATCH);
-          resource.copyHeadersTo(res, sendGzip);
-          res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-          res.flushBuffer();
-          return;
-        }
-      }
-
-      // Check "If-Modified-Since" header
-      long ifModifiedSince = req.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
-      if (ifModifiedSince != -1) {
-        Date requestDate = new Date(ifModifiedSince);
-        Date resourceDate = new Date(resource.getLastModified());
-        if (!requestDate.before(resourceDate)) {
-          LOGGER.debug("Returning Not Modified (304) for {} from {}", req.getRequestURI(), HttpHeaders.IF_MODIFIED_SINCE);
-          resource.copyHeadersTo(res, sendGzip);
-          res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-          res.flushBuffer();
-          return;
-        }
-      }
-
-      // Normal process
-      LOGGER.debug("Writing response OK (200) for {}", req.getRequestURI());
-      res.setStatus(resource.getStatusCode());
-      String contentType = resource.getContentType();
-      if (contentType != null && !contentType.isEmpty()) {
-        res.setContentType(contentType);
-      }
-      resource.copyHeadersTo(res, sendGzip);
-      res.setCharacterEncoding("utf-8");
-      writeContent(req, res, resource);
+      writeStaticResponse(req, res, resource);
     }
-
   }
 
   /**
@@ -386,21 +367,6 @@ public final class StaticCachingFilter extends CachingFilterBase implements Cach
     return f;
   }
 
-  /**
-   * Get the time to live for a page, in milliseconds
-   *
-   * @param cache The cache instance
-   * @return time to live in milliseconds
-   */
-  private static long computeTimeToLiveMilliseconds(Ehcache cache) {
-    if (cache.isDisabled()) return -1;
-    else {
-      CacheConfiguration config = cache.getCacheConfiguration();
-      if (config.isEternal()) return ONE_YEAR_IN_MILLISECONDS;
-      else return config.getTimeToLiveSeconds() * MILLISECONDS_PER_SECOND;
-    }
-  }
-
   /**
    * Try to decode a URL's encoded path.
    *
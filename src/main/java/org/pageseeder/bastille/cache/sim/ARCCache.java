@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.sim;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A simulated cache using the Adaptive Replacement Cache policy (ARC), adapted to entries of
+ * different sizes.
+ *
+ * <p>Resident entries are split between a list of entries accessed once recently (T1) and a list
+ * of entries accessed at least twice (T2). Ghost lists (B1 and B2) remember the keys recently
+ * evicted from each list: a hit in a ghost list moves the target size of T1 towards the list
+ * which would have kept the entry. Sizes and targets are measured in bytes.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class ARCCache implements SimulatedCache {
+
+  /** The maximum number of bytes */
+  private final long capacity;
+
+  /** Recent entries accessed once */
+  private final Segment t1 = new Segment();
+
+  /** Frequent entries accessed at least twice */
+  private final Segment t2 = new Segment();
+
+  /** Ghosts of the entries evicted from T1 */
+  private final Segment b1 = new Segment();
+
+  /** Ghosts of the entries evicted from T2 */
+  private final Segment b2 = new Segment();
+
+  /** The target size of T1 in bytes */
+  private double target = 0;
+
+  /**
+   * @param capacity The maximum number of bytes
+   */
+  public ARCCache(long capacity) {
+    this.capacity = capacity;
+  }
+
+  @Override
+  public String policy() {
+    return "ARC";
+  }
+
+  @Override
+  public boolean access(long key, int size, int cost) {
+    if (this.t1.remove(key) != null || this.t2.remove(key) != null) {
+      this.t2.put(key, size);
+      return true;
+    }
+    if (size > this.capacity) return false;
+    if (this.b1.contains(key)) {
+      double delta = Math.max((double)this.b2.bytes / Math.max(this.b1.bytes, 1), 1) * size;
+      this.target = Math.min(this.target + delta, this.capacity);
+      this.b1.remove(key);
+      replace(size, false);
+      this.t2.put(key, size);
+    } else if (this.b2.contains(key)) {
+      double delta = Math.max((double)this.b1.bytes / Math.max(this.b2.bytes, 1), 1) * size;
+      this.target = Math.max(this.target - delta, 0);
+      this.b2.remove(key);
+      replace(size, true);
+      this.t2.put(key, size);
+    } else {
+      replace(size, false);
+      this.t1.put(key, size);
+      // Keep the ghosts within the capacity
+      while (this.t1.bytes + this.b1.bytes > this.capacity && this.b1.removeEldest() != null) {
+        // Trimmed
+      }
+      while (this.t1.bytes + this.t2.bytes + this.b1.bytes + this.b2.bytes > 2 * this.capacity
+          && this.b2.removeEldest() != null) {
+        // Trimmed
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Evicts resident entries to their ghost lists until there is room for the new entry.
+   *
+   * @param size      The size of the new entry
+   * @param inGhostT2 Whether the new entry was found in B2
+   */
+  private void replace(int size, boolean inGhostT2) {
+    while (this.t1.bytes + this.t2.bytes + size > this.capacity) {
+      boolean fromT1 = this.t1.bytes > 0
+          && (this.t1.bytes > this.target || (inGhostT2 && this.t1.bytes >= this.target) || this.t2.bytes == 0);
+      Segment from = fromT1 ? this.t1 : this.t2;
+      Segment ghost = fromT1 ? this.b1 : this.b2;
+      Map.@Nullable Entry<Long, Integer> victim = from.removeEldest();
+      if (victim == null) break;
+      ghost.put(victim.getKey(), victim.getValue());
+    }
+  }
+
+  /**
+   * A list of entries in LRU order with their total size.
+   */
+  private static final class Segment {
+
+    final LinkedHashMap<Long, Integer> entries = new LinkedHashMap<>();
+    long bytes = 0;
+
+    boolean contains(long key) {
+      return this.entries.containsKey(key);
+    }
+
+    void put(long key, int size) {
+      Integer previous = this.entries.put(key, size);
+      this.bytes += size - (previous != null ? previous : 0);
+    }
+
+    @Nullable Integer remove(long key) {
+      Integer size = this.entries.remove(key);
+      if (size != null) this.bytes -= size;
+      return size;
+    }
+
+    Map.@Nullable Entry<Long, Integer> removeEldest() {
+      Iterator<Map.Entry<Long, Integer>> eldest = this.entries.entrySet().iterator();
+      if (!eldest.hasNext()) return null;
+      Map.Entry<Long, Integer> entry = eldest.next();
+      eldest.remove();
+      this.bytes -= entry.getValue();
+      return entry;
+    }
+  }
+
+}
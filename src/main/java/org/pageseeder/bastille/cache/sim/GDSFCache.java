@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.sim;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A simulated cache using the cost-aware GreedyDual-Size-Frequency policy.
+ *
+ * <p>Each entry has the priority <code>clock + frequency * cost / size</code>, the entry with the
+ * lowest priority is evicted and the clock is raised to its priority. This is the policy
+ * implemented by {@link org.pageseeder.bastille.cache.util.GDSFPolicy}.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class GDSFCache implements SimulatedCache {
+
+  /** The maximum number of bytes */
+  private final long capacity;
+
+  /** The entries mapped to their key */
+  private final Map<Long, Node> entries = new HashMap<>();
+
+  /** The entries ordered by priority */
+  private final TreeSet<Node> order = new TreeSet<>((a, b) -> {
+    int compare = Double.compare(a.priority, b.priority);
+    return compare != 0 ? compare : Long.compare(a.key, b.key);
+  });
+
+  /** The number of bytes used */
+  private long used = 0;
+
+  /** The priority of the last entry evicted */
+  private double clock = 0;
+
+  /**
+   * @param capacity The maximum number of bytes
+   */
+  public GDSFCache(long capacity) {
+    this.capacity = capacity;
+  }
+
+  @Override
+  public String policy() {
+    return "GDSF";
+  }
+
+  @Override
+  public boolean access(long key, int size, int cost) {
+    Node node = this.entries.get(key);
+    if (node != null) {
+      this.order.remove(node);
+      node.frequency++;
+      node.priority = priority(node);
+      this.order.add(node);
+      return true;
+    }
+    if (size > this.capacity) return false;
+    while (this.used + size > this.capacity) {
+      Node victim = this.order.pollFirst();
+      this.entries.remove(victim.key);
+      this.used -= victim.size;
+      this.clock = Math.max(this.clock, victim.priority);
+    }
+    node = new Node(key, size, cost);
+    node.priority = priority(node);
+    this.entries.put(key, node);
+    this.order.add(node);
+    this.used += size;
+    return false;
+  }
+
+  /**
+   * @return the priority of the node with the current clock.
+   */
+  private double priority(Node node) {
+    return this.clock + node.frequency * (double)Math.max(node.cost, 1) / Math.max(node.size, 1);
+  }
+
+  /**
+   * An entry in the cache.
+   */
+  private static final class Node {
+
+    final long key;
+    final int size;
+    final int cost;
+    long frequency = 1;
+    double priority;
+
+    Node(long key, int size, int cost) {
+      this.key = key;
+      this.size = size;
+      this.cost = cost;
+    }
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.sim;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A simulated cache evicting the least frequently used entries, ties are broken by recency.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class LFUCache implements SimulatedCache {
+
+  /** The maximum number of bytes */
+  private final long capacity;
+
+  /** The entries mapped to their key */
+  private final Map<Long, Node> entries = new HashMap<>();
+
+  /** The entries ordered by frequency then recency */
+  private final TreeSet<Node> order = new TreeSet<>((a, b) -> {
+    int compare = Long.compare(a.frequency, b.frequency);
+    return compare != 0 ? compare : Long.compare(a.tick, b.tick);
+  });
+
+  /** The number of bytes used */
+  private long used = 0;
+
+  /** Incremented on each access */
+  private long tick = 0;
+
+  /**
+   * @param capacity The maximum number of bytes
+   */
+  public LFUCache(long capacity) {
+    this.capacity = capacity;
+  }
+
+  @Override
+  public String policy() {
+    return "LFU";
+  }
+
+  @Override
+  public boolean access(long key, int size, int cost) {
+    this.tick++;
+    Node node = this.entries.get(key);
+    if (node != null) {
+      this.order.remove(node);
+      node.frequency++;
+      node.tick = this.tick;
+      this.order.add(node);
+      return true;
+    }
+    if (size > this.capacity) return false;
+    while (this.used + size > this.capacity) {
+      Node victim = this.order.pollFirst();
+      this.entries.remove(victim.key);
+      this.used -= victim.size;
+    }
+    node = new Node(key, size, this.tick);
+    this.entries.put(key, node);
+    this.order.add(node);
+    this.used += size;
+    return false;
+  }
+
+  /**
+   * An entry in the cache.
+   */
+  private static final class Node {
+
+    final long key;
+    final int size;
+    long frequency = 1;
+    long tick;
+
+    Node(long key, int size, long tick) {
+      this.key = key;
+      this.size = size;
+      this.tick = tick;
+    }
+  }
+
+}
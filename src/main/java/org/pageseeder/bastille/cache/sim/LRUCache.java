@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.sim;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A simulated cache evicting the least recently used entries.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public class LRUCache implements SimulatedCache {
+
+  /** The maximum number of bytes */
+  protected final long capacity;
+
+  /** The sizes of the entries in access order */
+  protected final LinkedHashMap<Long, Integer> entries = new LinkedHashMap<>(1024, 0.75f, true);
+
+  /** The number of bytes used */
+  protected long used = 0;
+
+  /**
+   * @param capacity The maximum number of bytes
+   */
+  public LRUCache(long capacity) {
+    this.capacity = capacity;
+  }
+
+  @Override
+  public String policy() {
+    return "LRU";
+  }
+
+  @Override
+  public boolean access(long key, int size, int cost) {
+    if (this.entries.get(key) != null) return true;
+    if (size > this.capacity || !admit(key, size)) return false;
+    Iterator<Map.Entry<Long, Integer>> eldest = this.entries.entrySet().iterator();
+    while (this.used + size > this.capacity && eldest.hasNext()) {
+      this.used -= eldest.next().getValue();
+      eldest.remove();
+    }
+    this.entries.put(key, size);
+    this.used += size;
+    return false;
+  }
+
+  /**
+   * Indicates whether a new entry should be added to the cache.
+   *
+   * @param key  The hash of the key
+   * @param size The size of the entry
+   *
+   * @return always <code>true</code> for LRU
+   */
+  protected boolean admit(long key, int size) {
+    return true;
+  }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.sim;
+
+/**
+ * A simulated cache bounded by the total size of its entries in bytes.
+ *
+ * <p>Simulated caches only keep the hashes and sizes of the keys, they are not thread-safe.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public interface SimulatedCache {
+
+  /**
+   * @return the name of the eviction policy.
+   */
+  String policy();
+
+  /**
+   * Accesses the specified key, adding it to the cache on a miss if the policy admits it.
+   *
+   * @param key  The hash of the key
+   * @param size The size of the entry in bytes
+   * @param cost The cost of a miss, typically the build time
+   *
+   * @return <code>true</code> if the key was in the cache
+   */
+  boolean access(long key, int size, int cost);
+
+}
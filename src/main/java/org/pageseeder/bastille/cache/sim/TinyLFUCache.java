@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.sim;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.pageseeder.bastille.cache.util.FrequencySketch;
+
+/**
+ * A simulated LRU cache with TinyLFU admission.
+ *
+ * <p>The frequency of every key accessed is recorded in a {@link FrequencySketch}, a new entry is
+ * only admitted if it is accessed more often than the entries it would evict.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class TinyLFUCache extends LRUCache {
+
+  /** The frequencies of the keys */
+  private final FrequencySketch sketch;
+
+  /**
+   * @param capacity The maximum number of bytes
+   * @param entries  The expected number of entries to size the sketch
+   */
+  public TinyLFUCache(long capacity, long entries) {
+    super(capacity);
+    this.sketch = new FrequencySketch(Math.max(entries, 1024));
+  }
+
+  @Override
+  public String policy() {
+    return "TinyLFU";
+  }
+
+  @Override
+  public boolean access(long key, int size, int cost) {
+    this.sketch.increment(key);
+    return super.access(key, size, cost);
+  }
+
+  @Override
+  protected boolean admit(long key, int size) {
+    int frequency = this.sketch.frequency(key);
+    long freed = this.capacity - this.used;
+    Iterator<Map.Entry<Long, Integer>> eldest = this.entries.entrySet().iterator();
+    while (freed < size && eldest.hasNext()) {
+      Map.Entry<Long, Integer> victim = eldest.next();
+      if (this.sketch.frequency(victim.getKey()) >= frequency) return false;
+      freed += victim.getValue();
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.pageseeder.bastille.cache.util.AccessTrace;
+
+/**
+ * Replays access traces recorded by the caching filters against simulated caches of different
+ * policies and sizes.
+ *
+ * <p>For each policy and size, the simulator reports the hit ratio, the byte hit ratio and the
+ * total build time of the misses, so that policies can be chosen to minimise either the number of
+ * misses or the time spent building resources.
+ *
+ * <p>The build cost of a key is the last build time recorded for it: since hits do not record
+ * a build time, the cost of keys which were only ever hits in the trace is unknown and counted as 1.
+ *
+ * <p>Usage:
+ * <pre>
+ * java org.pageseeder.bastille.cache.sim.TraceSimulator [-sizes 16m,64m] [-policies lru,lfu,tinylfu,arc,gdsf] file...
+ * </pre>
+ * Trace files are replayed in the order they are specified, so rotated files should be listed
+ * from the oldest to the newest.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class TraceSimulator {
+
+  /** The policies supported */
+  public static final List<String> POLICIES = Arrays.asList("lru", "lfu", "tinylfu", "arc", "gdsf");
+
+  /** The simulated caches */
+  private final List<SimulatedCache> caches = new ArrayList<>();
+
+  /** The capacity of each simulated cache */
+  private final List<Long> capacities = new ArrayList<>();
+
+  /** The results of each simulated cache */
+  private final List<Result> results = new ArrayList<>();
+
+  /** The last known build cost of each key */
+  private final Map<Long, Integer> costs = new HashMap<>();
+
+  /**
+   * Creates a simulator for the specified policies and sizes.
+   *
+   * @param policies The names of the policies
+   * @param sizes    The capacities in bytes
+   *
+   * @throws IllegalArgumentException If a policy is unknown
+   */
+  public TraceSimulator(List<String> policies, List<Long> sizes) {
+    for (String policy : policies) {
+      for (long size : sizes) {
+        this.caches.add(newCache(policy, size));
+        this.capacities.add(size);
+        this.results.add(new Result());
+      }
+    }
+  }
+
+  /**
+   * Creates a simulated cache.
+   *
+   * @param policy   The name of the policy
+   * @param capacity The capacity in bytes
+   *
+   * @return the corresponding cache
+   *
+   * @throws IllegalArgumentException If the policy is unknown
+   */
+  public static SimulatedCache newCache(String policy, long capacity) {
+    switch (policy.toLowerCase(Locale.ROOT)) {
+      case "lru": return new LRUCache(capacity);
+      case "lfu": return new LFUCache(capacity);
+      case "tinylfu": return new TinyLFUCache(capacity, capacity / 4096);
+      case "arc": return new ARCCache(capacity);
+      case "gdsf": return new GDSFCache(capacity);
+      default: throw new IllegalArgumentException("Unknown policy " + policy);
+    }
+  }
+
+  /**
+   * Replays an access against all the simulated caches.
+   *
+   * @param record The access
+   */
+  public void replay(AccessTrace.Record record) {
+    int cost = record.cost();
+    if (cost > 0) {
+      this.costs.put(record.key(), cost);
+    } else {
+      Integer known = this.costs.get(record.key());
+      cost = known != null ? known : 1;
+    }
+    for (int i = 0; i < this.caches.size(); i++) {
+      boolean hit = this.caches.get(i).access(record.key(), record.size(), cost);
+      this.results.get(i).add(hit, record.size(), cost);
+    }
+  }
+
+  /**
+   * Replays all the accesses in the trace file.
+   *
+   * @param file The trace file
+   *
+   * @throws IOException If the file could not be read
+   */
+  public void replay(File file) throws IOException {
+    AccessTrace.read(file, this::replay);
+  }
+
+  /**
+   * Prints the results as a table.
+   *
+   * @param out Where to print the results
+   */
+  public void print(PrintStream out) {
+    out.println(String.format(Locale.ROOT, "%-8s %12s %10s %10s %14s", "policy", "size", "hit-ratio", "byte-hit", "miss-cost-ms"));
+    for (int i = 0; i < this.caches.size(); i++) {
+      Result result = this.results.get(i);
+      out.println(String.format(Locale.ROOT, "%-8s %12d %10.4f %10.4f %14d", this.caches.get(i).policy(),
+          this.capacities.get(i), result.getHitRatio(), result.getByteHitRatio(), result.missCost / 1000));
+    }
+  }
+
+  /**
+   * @param index The index of the simulated cache in the order policies and sizes were specified
+   *
+   * @return the hit ratio of the simulated cache
+   */
+  public double getHitRatio(int index) {
+    return this.results.get(index).getHitRatio();
+  }
+
+  /**
+   * @param index The index of the simulated cache in the order policies and sizes were specified
+   *
+   * @return the total cost of the misses of the simulated cache
+   */
+  public long getMissCost(int index) {
+    return this.results.get(index).missCost;
+  }
+
+  /**
+   * Runs the simulator from the command line.
+   *
+   * @param args The command line arguments
+   *
+   * @throws IOException If a trace file could not be read
+   */
+  public static void main(String[] args) throws IOException {
+    List<String> policies = POLICIES;
+    List<Long> sizes = Arrays.asList(16L << 20, 64L << 20, 256L << 20);
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if ("-policies".equals(args[i]) && i + 1 < args.length) {
+        policies = Arrays.asList(args[++i].split(","));
+      } else if ("-sizes".equals(args[i]) && i + 1 < args.length) {
+        sizes = new ArrayList<>();
+        for (String size : args[++i].split(",")) {
+          sizes.add(parseSize(size));
+        }
+      } else {
+        files.add(new File(args[i]));
+      }
+    }
+    if (files.isEmpty()) {
+      System.err.println("Usage: TraceSimulator [-sizes 16m,64m] [-policies " + String.join(",", POLICIES) + "] file...");
+      System.exit(1);
+    }
+    Set<String> unknown = new HashSet<>(policies);
+    unknown.removeAll(POLICIES);
+    if (!unknown.isEmpty()) {
+      System.err.println("Unknown policies: " + unknown);
+      System.exit(1);
+    }
+    TraceSimulator simulator = new TraceSimulator(policies, sizes);
+    for (File file : files) {
+      simulator.replay(file);
+    }
+    simulator.print(System.out);
+  }
+
+  /**
+   * Parses a size in bytes with an optional <code>k</code>, <code>m</code> or <code>g</code> suffix.
+   *
+   * @param value The value to parse
+   *
+   * @return the number of bytes
+   */
+  static long parseSize(String value) {
+    String v = value.trim().toLowerCase(Locale.ROOT);
+    int shift = v.endsWith("k") ? 10 : v.endsWith("m") ? 20 : v.endsWith("g") ? 30 : 0;
+    if (shift > 0) {
+      v = v.substring(0, v.length() - 1);
+    }
+    return Long.parseLong(v.trim()) << shift;
+  }
+
+  /**
+   * The results of a simulated cache.
+   */
+  private static final class Result {
+
+    long accesses = 0;
+    long hits = 0;
+    long bytes = 0;
+    long hitBytes = 0;
+    long missCost = 0;
+
+    void add(boolean hit, int size, int cost) {
+      this.accesses++;
+      this.bytes += size;
+      if (hit) {
+        this.hits++;
+        this.hitBytes += size;
+      } else {
+        this.missCost += cost;
+      }
+    }
+
+    double getHitRatio() {
+      return this.accesses > 0 ? (double)this.hits / this.accesses : 0;
+    }
+
+    double getByteHitRatio() {
+      return this.bytes > 0 ? (double)this.hitBytes / this.bytes : 0;
+    }
+  }
+
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * An offline simulator replaying cache access traces against different eviction policies.
+ *
+ * <p>Traces are recorded by the caching filters with {@link org.pageseeder.bastille.cache.util.AccessTrace};
+ * the {@link org.pageseeder.bastille.cache.sim.TraceSimulator} replays them against simulated caches
+ * of different sizes to compare their hit ratios and the build time they would save.
+ */
+@NullMarked
+package org.pageseeder.bastille.cache.sim;
+import org.jspecify.annotations.NullMarked;
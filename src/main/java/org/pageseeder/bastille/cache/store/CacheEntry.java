@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.store;
+
+/**
+ * A value in a cache store with the time it was put in the cache.
+ *
+ * @param <V> The type of value
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class CacheEntry<V> {
+
+  /** The value */
+  private final V value;
+
+  /** When the value was put in the cache */
+  private final long updated;
+
+  /** When the value expires (0 if it does not expire) */
+  private final long expires;
+
+  /**
+   * @param value   The value
+   * @param updated When the value was put in the cache
+   * @param expires When the value expires (0 if it does not expire)
+   */
+  public CacheEntry(V value, long updated, long expires) {
+    this.value = value;
+    this.updated = updated;
+    this.expires = expires;
+  }
+
+  /**
+   * @return the value
+   */
+  public V value() {
+    return this.value;
+  }
+
+  /**
+   * @return when the value was put in the cache.
+   */
+  public long updated() {
+    return this.updated;
+  }
+
+  /**
+   * @return when the value expires (0 if it does not expire).
+   */
+  public long expires() {
+    return this.expires;
+  }
+
+  /**
+   * @param now The current time
+   *
+   * @return <code>true</code> if the value has expired.
+   */
+  public boolean isExpired(long now) {
+    return this.expires > 0 && now >= this.expires;
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.store;
+
+import java.util.function.Function;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.bastille.cache.util.CacheStatistics;
+
+/**
+ * A cache storing values by key.
+ *
+ * <p>Implementations must be thread-safe. Values may be evicted at any time to keep the cache
+ * within its size limits or because they have expired.
+ *
+ * @param <K> The type of keys
+ * @param <V> The type of values
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public interface CacheStore<K, V> {
+
+  /**
+   * @return the name of the cache.
+   */
+  String getName();
+
+  /**
+   * Returns the value for the specified key.
+   *
+   * @param key The key
+   *
+   * @return the value or <code>null</code> if not in the cache or expired.
+   */
+  default @Nullable V get(K key) {
+    CacheEntry<V> entry = getEntry(key);
+    return entry != null ? entry.value() : null;
+  }
+
+  /**
+   * Returns the entry for the specified key.
+   *
+   * @param key The key
+   *
+   * @return the entry or <code>null</code> if not in the cache or expired.
+   */
+  @Nullable CacheEntry<V> getEntry(K key);
+
+  /**
+   * Puts a value in the cache, replacing any previous value for the key.
+   *
+   * @param key   The key
+   * @param value The value
+   */
+  void put(K key, V value);
+
+  /**
+   * Returns the value for the specified key, loading it if it is not in the cache.
+   *
+   * <p>Concurrent calls for the same key wait for the value to be loaded once.
+   *
+   * @param key    The key
+   * @param loader Loads the value
+   *
+   * @return the value in the cache or loaded
+   */
+  V computeIfAbsent(K key, Function<? super K, ? extends V> loader);
+
+  /**
+   * Removes the value for the specified key.
+   *
+   * @param key The key
+   *
+   * @return <code>true</code> if a value was removed.
+   */
+  boolean remove(K key);
+
+  /**
+   * Removes all the values from the cache.
+   */
+  void clear();
+
+  /**
+   * @return the number of values in the cache.
+   */
+  int size();
+
+  /**
+   * @return the statistics of this cache.
+   */
+  CacheStatistics getStatistics();
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.store;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.bastille.cache.bus.InvalidationBus;
+import org.pageseeder.bastille.cache.util.ByteSizes;
+import org.pageseeder.bastille.cache.util.CacheBudget;
+import org.pageseeder.bastille.cache.util.CacheSnapshot;
+import org.pageseeder.bastille.cache.util.CacheSnapshots;
+import org.pageseeder.bastille.cache.util.CacheUsage;
+import org.pageseeder.bastille.cache.util.MemoryPressureMonitor;
+import org.pageseeder.berlioz.GlobalSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+/**
+ * Provides the cache stores by name.
+ *
+ * <p>The store for each cache is configured with the following global settings:
+ * <ul>
+ *   <li><code>bastille.cache.store.[name]</code>: <code>ehcache</code> (default) to use the cache
+ *   with the same name in the Ehcache configuration, or <code>memory</code> to use a {@link ConcurrentStore};</li>
+ *   <li><code>bastille.cache.store.[name].max-weight</code>: the maximum weight of a memory store,
+ *   in approximate bytes (defaults to 64MB);</li>
+ *   <li><code>bastille.cache.store.[name].ttl</code>: the time to live of the entries in seconds
+ *   (defaults to 0 for no expiry beyond the Ehcache configuration).</li>
+ * </ul>
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class CacheStores {
+
+  /** Logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(CacheStores.class);
+
+  /** The default maximum weight of memory stores */
+  private static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024;
+
+  /** The stores mapped to their name */
+  private static final Map<String, CacheStore<?, ?>> STORES = new ConcurrentHashMap<>();
+
+  /**
+   * Utility class.
+   */
+  private CacheStores() {
+  }
+
+  /**
+   * Returns the store for the specified cache name, creating it if necessary.
+   *
+   * @param name The name of the cache
+   *
+   * @param <K> The type of keys
+   * @param <V> The type of values
+   *
+   * @return the corresponding store
+   */
+  public static <K, V> CacheStore<K, V> get(String name) {
+    return get(name, CacheStores::estimate);
+  }
+
+  /**
+   * Returns the store for the specified cache name, creating it if necessary.
+   *
+   * @param name    The name of the cache
+   * @param weigher Estimates the size of entries in bytes if the store is a memory store
+   *
+   * @param <K> The type of keys
+   * @param <V> The type of values
+   *
+   * @return the corresponding store
+   */
+  @SuppressWarnings("unchecked")
+  public static <K, V> CacheStore<K, V> get(String name, Weigher<? super K, ? super V> weigher) {
+    CacheStore<?, ?> existing = STORES.get(name);
+    if (existing == null) {
+      existing = STORES.computeIfAbsent(name, n -> newStore(n, weigher));
+    }
+    return (CacheStore<K, V>)existing;
+  }
+
+  /**
+   * Returns the store for the specified cache name if it has already been created.
+   *
+   * @param name The name of the cache
+   *
+   * @return the store or <code>null</code>
+   */
+  public static @Nullable CacheStore<?, ?> find(String name) {
+    return STORES.get(name);
+  }
+
+  /**
+   * Clears all the memory stores; Ehcache stores are cleared with the cache manager.
+   */
+  public static void clearMemoryStores() {
+    for (CacheStore<?, ?> store : STORES.values()) {
+      if (store instanceof ConcurrentStore) {
+        store.clear();
+      }
+    }
+  }
+
+  /**
+   * Restores the entry for the specified key from the snapshot of the cache.
+   *
+   * <p>Only stores backed by Ehcache support snapshots.
+   *
+   * @param store   The store
+   * @param key     The key missing from the cache
+   * @param isFresh Whether the entry restored is still fresh
+   *
+   * @param <V> The type of values
+   *
+   * @return the entry put back in the cache or <code>null</code>
+   *
+   * @see CacheSnapshots
+   */
+  public static <V> @Nullable CacheEntry<V> restore(CacheStore<String, V> store, String key, Predicate<CacheSnapshot.Entry> isFresh) {
+    if (!(store instanceof EhcacheStore)) return null;
+    Element element = CacheSnapshots.restore(((EhcacheStore<String, V>)store).getEhcache(), key, isFresh);
+    return element != null ? EhcacheStore.toEntry(element) : null;
+  }
+
+  /**
+   * Creates the store for the specified cache from the global settings.
+   *
+   * @param name    The name of the cache
+   * @param weigher Estimates the size of entries in bytes
+   *
+   * @param <K> The type of keys
+   * @param <V> The type of values
+   *
+   * @return the store
+   */
+  private static <K, V> CacheStore<K, V> newStore(String name, Weigher<? super K, ? super V> weigher) {
+    String type = GlobalSettings.get("bastille.cache.store."+name, "ehcache");
+    long ttl = setting("bastille.cache.store."+name+".ttl", 0) * 1000;
+    Expiry<K, V> expiry = ttl > 0 ? Expiry.afterWrite(ttl) : Expiry.eternal();
+    if ("memory".equals(type)) {
+      long maxWeight = setting("bastille.cache.store."+name+".max-weight", DEFAULT_MAX_WEIGHT);
+      LOGGER.info("Using memory store for cache {} with maximum weight {}", name, maxWeight);
+      return ConcurrentStore.<K, V>builder(name).maximumWeight(maxWeight).weigher(weigher).expiry(expiry).build();
+    }
+    if (!"ehcache".equals(type)) {
+      LOGGER.warn("Unknown store type '{}' for cache {}, using ehcache", type, name);
+    }
+    CacheManager manager = CacheManager.getInstance();
+    Ehcache cache = manager.getEhcache(name);
+    if (cache == null) {
+      LOGGER.warn("No cache exists for {}! Create a new cache entry for {} in your cache config!", name, name);
+      manager.addCache(name);
+      LOGGER.info("Created new cache named {}", name);
+      cache = manager.getEhcache(name);
+    }
+    CacheUsage.forCache(cache);
+    CacheBudget.register(cache);
+    CacheSnapshots.register(cache);
+    // Start monitoring memory pressure if enabled
+    MemoryPressureMonitor.getDefault();
+    // Start receiving invalidations from other nodes if enabled
+    InvalidationBus.getDefault();
+    return new EhcacheStore<>(cache, expiry);
+  }
+
+  /**
+   * Returns the retained size of an entry in bytes, assuming 1KB for values whose size is unknown.
+   */
+  private static int estimate(Object key, Object value) {
+    long size = Math.max(ByteSizes.of(key), 0);
+    long valueSize = ByteSizes.of(value);
+    size += valueSize >= 0 ? valueSize : 1024;
+    return (int)Math.min(size, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns the numeric value of a global setting.
+   */
+  private static long setting(String name, long def) {
+    String value = GlobalSettings.get(name, Long.toString(def));
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException ex) {
+      LOGGER.warn("Invalid value '{}' for {}, using {}", value, name, def);
+      return def;
+    }
+  }
+
+}
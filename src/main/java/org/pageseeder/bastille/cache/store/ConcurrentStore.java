@@ -0,0 +1,420 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.store;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.bastille.cache.util.CacheStatistics;
+
+/**
+ * An in-memory cache store split into independently locked segments.
+ *
+ * <p>Each key is assigned to a segment by its hash; each segment is a map in access order
+ * guarded by its own lock and holds an equal share of the maximum weight. When a segment exceeds
+ * its share, its least recently used entries are evicted. Operations on keys in different
+ * segments never contend, unlike a cache with a single lock.
+ *
+ * <p>Values are stored by reference and never serialized.
+ *
+ * @param <K> The type of keys
+ * @param <V> The type of values
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class ConcurrentStore<K, V> implements CacheStore<K, V> {
+
+  /** The name of the cache */
+  private final String name;
+
+  /** The segments */
+  private final Segment<K, V>[] segments;
+
+  /** The mask for the index of segments */
+  private final int segmentMask;
+
+  /** Calculates the weight of entries */
+  private final Weigher<? super K, ? super V> weigher;
+
+  /** Calculates how long entries remain valid */
+  private final Expiry<? super K, ? super V> expiry;
+
+  /** The values being loaded by key */
+  private final Map<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+  /** The statistics for this cache */
+  private final CacheStatistics statistics;
+
+  /**
+   * Use the builder.
+   */
+  private ConcurrentStore(Builder<K, V> builder) {
+    this.name = builder.name;
+    this.weigher = builder.weigher;
+    this.expiry = builder.expiry;
+    int stripes = Integer.highestOneBit(Math.max(1, Math.min(builder.stripes, 1 << 16)));
+    this.segments = newSegments(stripes);
+    long share = Math.max(1, builder.maximumWeight / stripes);
+    this.statistics = CacheStatistics.forName(builder.name);
+    for (int i = 0; i < stripes; i++) {
+      this.segments[i] = new Segment<>(share, this.statistics);
+    }
+    this.segmentMask = stripes - 1;
+  }
+
+  /**
+   * Returns a builder for a new store.
+   *
+   * @param name The name of the cache
+   *
+   * @param <K> The type of keys
+   * @param <V> The type of values
+   *
+   * @return the builder
+   */
+  public static <K, V> Builder<K, V> builder(String name) {
+    return new Builder<>(name);
+  }
+
+  @Override
+  public String getName() {
+    return this.name;
+  }
+
+  @Override
+  public @Nullable CacheEntry<V> getEntry(K key) {
+    return segmentFor(key).get(key, System.currentTimeMillis());
+  }
+
+  @Override
+  public void put(K key, V value) {
+    long now = System.currentTimeMillis();
+    long ttl = this.expiry.expireAfterWrite(key, value);
+    CacheEntry<V> entry = new CacheEntry<>(value, now, ttl > 0 ? now + ttl : 0);
+    segmentFor(key).put(key, entry, this.weigher.weigh(key, value));
+  }
+
+  @Override
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+    CacheEntry<V> entry = getEntry(key);
+    if (entry != null) return entry.value();
+    CompletableFuture<V> future = new CompletableFuture<>();
+    CompletableFuture<V> pending = this.loading.putIfAbsent(key, future);
+    if (pending != null) return join(pending);
+    try {
+      // Check again in case it was loaded in the meantime
+      entry = getEntry(key);
+      V value;
+      if (entry != null) {
+        value = entry.value();
+      } else {
+        value = Objects.requireNonNull(loader.apply(key), "loader returned null");
+        put(key, value);
+      }
+      future.complete(value);
+      return value;
+    } catch (RuntimeException | Error ex) {
+      future.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      this.loading.remove(key, future);
+    }
+  }
+
+  @Override
+  public boolean remove(K key) {
+    return segmentFor(key).remove(key);
+  }
+
+  @Override
+  public void clear() {
+    for (Segment<K, V> segment : this.segments) {
+      segment.clear();
+    }
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (Segment<K, V> segment : this.segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  /**
+   * @return the total weight of the entries in this store.
+   */
+  public long weight() {
+    long weight = 0;
+    for (Segment<K, V> segment : this.segments) {
+      weight += segment.weight();
+    }
+    return weight;
+  }
+
+  @Override
+  public CacheStatistics getStatistics() {
+    return this.statistics;
+  }
+
+  @Override
+  public String toString() {
+    return "ConcurrentStore("+this.name+", segments="+this.segments.length+")";
+  }
+
+  /**
+   * Returns the segment for the specified key.
+   */
+  private Segment<K, V> segmentFor(K key) {
+    int h = key.hashCode();
+    h ^= (h >>> 16);
+    return this.segments[h & this.segmentMask];
+  }
+
+  /**
+   * Creates the array of segments, arrays of a generic type cannot be created directly.
+   */
+  @SuppressWarnings("unchecked")
+  private static <K, V> Segment<K, V>[] newSegments(int stripes) {
+    return (Segment<K, V>[])new Segment<?, ?>[stripes];
+  }
+
+  /**
+   * Waits for a value loaded by another thread.
+   */
+  private static <V> V join(CompletableFuture<V> future) {
+    try {
+      return future.join();
+    } catch (CompletionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+      if (cause instanceof Error) throw (Error)cause;
+      throw ex;
+    }
+  }
+
+  /**
+   * A builder for the concurrent store.
+   *
+   * @param <K> The type of keys
+   * @param <V> The type of values
+   */
+  public static final class Builder<K, V> {
+
+    /** The name of the cache */
+    private final String name;
+
+    /** The maximum total weight */
+    private long maximumWeight = 10000;
+
+    /** The number of segments */
+    private int stripes = 16;
+
+    /** Calculates the weight of entries */
+    private Weigher<? super K, ? super V> weigher = Weigher.singleton();
+
+    /** Calculates how long entries remain valid */
+    private Expiry<? super K, ? super V> expiry = Expiry.eternal();
+
+    /**
+     * @param name The name of the cache
+     */
+    private Builder(String name) {
+      this.name = name;
+    }
+
+    /**
+     * @param maximumWeight The maximum total weight of the entries (defaults to 10000)
+     * @return this builder
+     */
+    public Builder<K, V> maximumWeight(long maximumWeight) {
+      this.maximumWeight = maximumWeight;
+      return this;
+    }
+
+    /**
+     * @param stripes The number of segments, rounded down to a power of two (defaults to 16)
+     * @return this builder
+     */
+    public Builder<K, V> stripes(int stripes) {
+      this.stripes = stripes;
+      return this;
+    }
+
+    /**
+     * @param weigher Calculates the weight of entries (defaults to 1 per entry)
+     * @return this builder
+     */
+    public Builder<K, V> weigher(Weigher<? super K, ? super V> weigher) {
+      this.weigher = weigher;
+      return this;
+    }
+
+    /**
+     * @param expiry Calculates how long entries remain valid (defaults to no expiry)
+     * @return this builder
+     */
+    public Builder<K, V> expiry(Expiry<? super K, ? super V> expiry) {
+      this.expiry = expiry;
+      return this;
+    }
+
+    /**
+     * @return a new store
+     */
+    public ConcurrentStore<K, V> build() {
+      return new ConcurrentStore<>(this);
+    }
+  }
+
+  /**
+   * A segment of the store.
+   */
+  private static final class Segment<K, V> {
+
+    /** Guards the map and weight */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** The entries in access order */
+    private final LinkedHashMap<K, Node<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The maximum weight of this segment */
+    private final long maximumWeight;
+
+    /** The statistics for the store */
+    private final CacheStatistics statistics;
+
+    /** The current weight of this segment */
+    private long weight = 0;
+
+    Segment(long maximumWeight, CacheStatistics statistics) {
+      this.maximumWeight = maximumWeight;
+      this.statistics = statistics;
+    }
+
+    @Nullable CacheEntry<V> get(K key, long now) {
+      this.lock.lock();
+      try {
+        Node<V> node = this.map.get(key);
+        if (node == null) return null;
+        if (node.entry.isExpired(now)) {
+          this.map.remove(key);
+          this.weight -= node.weight;
+          this.statistics.expired();
+          return null;
+        }
+        return node.entry;
+      } finally {
+        this.lock.unlock();
+      }
+    }
+
+    void put(K key, CacheEntry<V> entry, int entryWeight) {
+      this.lock.lock();
+      try {
+        Node<V> previous = this.map.remove(key);
+        if (previous != null) {
+          this.weight -= previous.weight;
+        }
+        if (entryWeight > this.maximumWeight) {
+          // Too large to be cached
+          this.statistics.evicted();
+          return;
+        }
+        this.map.put(key, new Node<>(entry, entryWeight));
+        this.weight += entryWeight;
+        Iterator<Node<V>> eldest = this.map.values().iterator();
+        while (this.weight > this.maximumWeight && eldest.hasNext()) {
+          Node<V> node = eldest.next();
+          eldest.remove();
+          this.weight -= node.weight;
+          this.statistics.evicted();
+        }
+      } finally {
+        this.lock.unlock();
+      }
+    }
+
+    boolean remove(K key) {
+      this.lock.lock();
+      try {
+        Node<V> node = this.map.remove(key);
+        if (node == null) return false;
+        this.weight -= node.weight;
+        return true;
+      } finally {
+        this.lock.unlock();
+      }
+    }
+
+    void clear() {
+      this.lock.lock();
+      try {
+        this.map.clear();
+        this.weight = 0;
+      } finally {
+        this.lock.unlock();
+      }
+    }
+
+    int size() {
+      this.lock.lock();
+      try {
+        return this.map.size();
+      } finally {
+        this.lock.unlock();
+      }
+    }
+
+    long weight() {
+      this.lock.lock();
+      try {
+        return this.weight;
+      } finally {
+        this.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * An entry with its weight.
+   */
+  private static final class Node<V> {
+
+    /** The entry */
+    private final CacheEntry<V> entry;
+
+    /** The weight of the entry */
+    private final int weight;
+
+    Node(CacheEntry<V> entry, int weight) {
+      this.entry = entry;
+      this.weight = weight;
+    }
+  }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.store;
+
+import java.util.function.Function;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.bastille.cache.util.CacheStatistics;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+/**
+ * A cache store backed by an Ehcache cache.
+ *
+ * <p>The size of the cache is configured in the Ehcache configuration, so the weight of entries
+ * is ignored. The expiry is applied as the time to live of each element.
+ *
+ * @param <K> The type of keys
+ * @param <V> The type of values
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class EhcacheStore<K, V> implements CacheStore<K, V> {
+
+  /** The underlying cache */
+  private final Ehcache cache;
+
+  /** Calculates how long entries remain valid */
+  private final Expiry<? super K, ? super V> expiry;
+
+  /**
+   * Creates a store for the specified cache using the expiry configured in Ehcache.
+   *
+   * @param cache The underlying cache
+   */
+  public EhcacheStore(Ehcache cache) {
+    this(cache, Expiry.eternal());
+  }
+
+  /**
+   * Creates a store for the specified cache.
+   *
+   * @param cache  The underlying cache
+   * @param expiry Calculates how long entries remain valid (0 to use the time to live of the cache)
+   */
+  public EhcacheStore(Ehcache cache, Expiry<? super K, ? super V> expiry) {
+    this.cache = cache;
+    this.expiry = expiry;
+  }
+
+  /**
+   * @return the underlying cache.
+   */
+  public Ehcache getEhcache() {
+    return this.cache;
+  }
+
+  @Override
+  public String getName() {
+    return this.cache.getName();
+  }
+
+  @Override
+  public @Nullable CacheEntry<V> getEntry(K key) {
+    Element element = this.cache.get(key);
+    return element != null ? toEntry(element) : null;
+  }
+
+  @Override
+  public void put(K key, V value) {
+    this.cache.put(toElement(key, value));
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+    CacheEntry<V> entry = getEntry(key);
+    if (entry != null) return entry.value();
+    V value = loader.apply(key);
+    Element existing = this.cache.putIfAbsent(toElement(key, value));
+    return existing != null && existing.getObjectValue() != null ? (V)existing.getObjectValue() : value;
+  }
+
+  @Override
+  public boolean remove(K key) {
+    return this.cache.remove(key);
+  }
+
+  @Override
+  public void clear() {
+    this.cache.removeAll();
+  }
+
+  @Override
+  public int size() {
+    return this.cache.getSize();
+  }
+
+  @Override
+  public CacheStatistics getStatistics() {
+    return CacheStatistics.forCache(this.cache);
+  }
+
+  @Override
+  public String toString() {
+    return "EhcacheStore("+this.cache.getName()+")";
+  }
+
+  /**
+   * Returns the entry corresponding to the specified element.
+   *
+   * @param element The element
+   *
+   * @param <V> The type of value
+   *
+   * @return the entry or <code>null</code> if the element has no value
+   */
+  @SuppressWarnings("unchecked")
+  static <V> @Nullable CacheEntry<V> toEntry(Element element) {
+    Object value = element.getObjectValue();
+    if (value == null) return null;
+    long updated = Math.max(element.getCreationTime(), element.getLastUpdateTime());
+    long expires = element.isEternal() ? 0 : element.getExpirationTime();
+    return new CacheEntry<>((V)value, updated, expires);
+  }
+
+  /**
+   * Creates the element for the specified entry applying the expiry.
+   */
+  private Element toElement(K key, V value) {
+    Element element = new Element(key, value);
+    long ttl = this.expiry.expireAfterWrite(key, value);
+    if (ttl > 0) {
+      element.setTimeToLive((int)Math.min(Integer.MAX_VALUE, (ttl + 999) / 1000));
+    }
+    return element;
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.store;
+
+/**
+ * Calculates how long the values in a cache store remain valid after they are put in the cache.
+ *
+ * @param <K> The type of keys
+ * @param <V> The type of values
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+@FunctionalInterface
+public interface Expiry<K, V> {
+
+  /**
+   * Returns how long an entry remains valid after it is put in the cache.
+   *
+   * @param key   The key
+   * @param value The value
+   *
+   * @return the time to live in milliseconds, 0 or less if the entry does not expire.
+   */
+  long expireAfterWrite(K key, V value);
+
+  /**
+   * @param <K> The type of keys
+   * @param <V> The type of values
+   *
+   * @return an expiry for entries which do not expire.
+   */
+  static <K, V> Expiry<K, V> eternal() {
+    return (key, value) -> 0;
+  }
+
+  /**
+   * @param millis The time to live in milliseconds
+   *
+   * @param <K> The type of keys
+   * @param <V> The type of values
+   *
+   * @return an expiry for entries which expire after the same time.
+   */
+  static <K, V> Expiry<K, V> afterWrite(long millis) {
+    return (key, value) -> millis;
+  }
+
+}
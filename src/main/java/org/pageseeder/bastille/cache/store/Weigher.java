@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.store;
+
+/**
+ * Calculates the weight of the values in a cache store, the store evicts values to keep the
+ * total weight within its limit.
+ *
+ * @param <K> The type of keys
+ * @param <V> The type of values
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+
+  /**
+   * Returns the weight of an entry, typically an estimate of its size in bytes.
+   *
+   * @param key   The key
+   * @param value The value
+   *
+   * @return the weight of the entry (must not be negative)
+   */
+  int weigh(K key, V value);
+
+  /**
+   * @param <K> The type of keys
+   * @param <V> The type of values
+   *
+   * @return a weigher giving the same weight of 1 to all entries so that the weight is the number of entries.
+   */
+  static <K, V> Weigher<K, V> singleton() {
+    return (key, value) -> 1;
+  }
+
+}
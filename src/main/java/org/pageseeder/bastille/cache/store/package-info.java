@@ -0,0 +1,26 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * A small cache SPI used by the Bastille caches which are not bound to a caching filter.
+ *
+ * <p>A {@link org.pageseeder.bastille.cache.store.CacheStore} can either be backed by Ehcache or
+ * by the built-in {@link org.pageseeder.bastille.cache.store.ConcurrentStore}; the store used for
+ * each cache is chosen with the global settings read by
+ * {@link org.pageseeder.bastille.cache.store.CacheStores}.
+ */
+@NullMarked
+package org.pageseeder.bastille.cache.store;
+import org.jspecify.annotations.NullMarked;
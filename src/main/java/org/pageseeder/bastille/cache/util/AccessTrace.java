@@ -0,0 +1,385 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the accesses to a cache in a compact binary trace file so that eviction policies can be
+ * compared offline by replaying real workloads.
+ *
+ * <p>Each access is recorded as a fixed size record with the time, a 64-bit hash of the key, the
+ * size of the resource in bytes, the time it took to build in microseconds and whether it was a
+ * hit. Keys are hashed so that traces do not contain any URL.
+ *
+ * <p>Recording only queues the record: a background thread writes the records to the trace file,
+ * and records are dropped if the queue is full rather than slowing down requests. When the file
+ * reaches its maximum size, it is rotated: <code>name.trace</code> is renamed
+ * <code>name.trace.1</code> and so on up to the maximum number of files.
+ *
+ * <p>There is a single trace per cache, use {@link #forCache(String, File, long)} to get it.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class AccessTrace implements Closeable {
+
+  /** Logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(AccessTrace.class);
+
+  /** Identifies trace files ("BSTLTRCE") */
+  static final long MAGIC = 0x4253544C54524345L;
+
+  /** The version of the file format */
+  static final int VERSION = 1;
+
+  /** The size of the file header: magic and version */
+  static final int HEADER_SIZE = 12;
+
+  /** The size of each record: time, key, size, cost and flags */
+  static final int RECORD_SIZE = 25;
+
+  /** The default maximum size of a trace file */
+  public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+  /** The number of rotated files kept */
+  private static final int MAX_FILES = 4;
+
+  /** The maximum number of records waiting to be written */
+  private static final int QUEUE_SIZE = 8192;
+
+  /** The traces mapped to the name of their cache. */
+  private static final Map<String, AccessTrace> TRACES = new ConcurrentHashMap<>();
+
+  /** The trace file */
+  private final File file;
+
+  /** The maximum size of a trace file */
+  private final long maxSize;
+
+  /** The records waiting to be written */
+  private final BlockingQueue<Record> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+
+  /** The number of records dropped because the queue was full */
+  private final LongAdder dropped = new LongAdder();
+
+  /** The thread writing the records */
+  private final Thread writer;
+
+  /** Whether this trace has been closed */
+  private volatile boolean closed = false;
+
+  /**
+   * Creates a new trace writing to the specified file.
+   *
+   * @param file    The trace file
+   * @param maxSize The maximum size of the file before it is rotated
+   */
+  public AccessTrace(File file, long maxSize) {
+    this.file = file;
+    this.maxSize = Math.max(maxSize, HEADER_SIZE + RECORD_SIZE);
+    this.writer = new Thread(this::write, "bastille-cache-trace-" + file.getName());
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * Returns the trace for the specified cache, creating it if necessary.
+   *
+   * @param name      The name of the cache
+   * @param directory The directory for the trace files
+   * @param maxSize   The maximum size of a trace file
+   *
+   * @return the trace for that cache
+   */
+  public static AccessTrace forCache(String name, File directory, long maxSize) {
+    AccessTrace existing = TRACES.get(name);
+    if (existing != null) return existing;
+    return TRACES.computeIfAbsent(name, n -> {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        LOGGER.warn("Unable to create trace directory {}", directory);
+      }
+      File file = new File(directory, n.replaceAll("[^A-Za-z0-9._-]", "_") + ".trace");
+      LOGGER.info("Recording access trace of cache {} to {}", n, file);
+      return new AccessTrace(file, maxSize);
+    });
+  }
+
+  /**
+   * Returns the trace for the specified cache.
+   *
+   * @param name The name of the cache
+   *
+   * @return the trace or <code>null</code> if the cache is not traced.
+   */
+  public static @Nullable AccessTrace get(String name) {
+    return TRACES.get(name);
+  }
+
+  /**
+   * Records an access to the cache.
+   *
+   * @param key   The key
+   * @param hit   Whether the resource was in the cache
+   * @param size  The size of the resource in bytes
+   * @param nanos The time it took to build the resource in nanoseconds, 0 for hits
+   */
+  public void record(Object key, boolean hit, long size, long nanos) {
+    if (this.closed) return;
+    Record record = new Record(System.currentTimeMillis(), hash(key.toString()),
+        (int)Math.min(size, Integer.MAX_VALUE), (int)Math.min(nanos / 1000, Integer.MAX_VALUE), hit);
+    if (!this.queue.offer(record)) {
+      this.dropped.increment();
+    }
+  }
+
+  /**
+   * @return the number of records dropped because they could not be written fast enough.
+   */
+  public long getDropped() {
+    return this.dropped.sum();
+  }
+
+  /**
+   * @return the current trace file.
+   */
+  public File getFile() {
+    return this.file;
+  }
+
+  /**
+   * Stops recording and writes the remaining records.
+   */
+  @Override
+  public void close() {
+    this.closed = true;
+    TRACES.values().remove(this);
+    this.writer.interrupt();
+    try {
+      this.writer.join(5000);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Reads all the records of a trace file.
+   *
+   * @param file     The trace file
+   * @param consumer Receives each record in order
+   *
+   * @throws IOException If the file is not a trace file or could not be read
+   */
+  public static void read(File file, Consumer<Record> consumer) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      read(in, consumer);
+    }
+  }
+
+  /**
+   * Reads all the records from a trace.
+   *
+   * @param in       The input stream
+   * @param consumer Receives each record in order
+   *
+   * @throws IOException If the stream is not a trace or could not be read
+   */
+  public static void read(InputStream in, Consumer<Record> consumer) throws IOException {
+    DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+    if (data.readLong() != MAGIC) throw new IOException("Not an access trace");
+    int version = data.readInt();
+    if (version != VERSION) throw new IOException("Unsupported access trace version " + version);
+    while (true) {
+      long time;
+      try {
+        time = data.readLong();
+      } catch (EOFException ex) {
+        break;
+      }
+      long key = data.readLong();
+      int size = data.readInt();
+      int cost = data.readInt();
+      boolean hit = data.readByte() != 0;
+      consumer.accept(new Record(time, key, size, cost, hit));
+    }
+  }
+
+  /**
+   * Returns the 64-bit FNV-1a hash of the key, it is stable across runs.
+   *
+   * @param key The key
+   *
+   * @return the hash of the key
+   */
+  static long hash(String key) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < key.length(); i++) {
+      hash ^= key.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  // Private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Writes the records as they are queued until the trace is closed.
+   */
+  private void write() {
+    DataOutputStream out = null;
+    long written = 0;
+    try {
+      while (!this.closed || !this.queue.isEmpty()) {
+        Record record;
+        try {
+          record = this.queue.poll(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+          // Closing: write the remaining records
+          record = this.queue.poll();
+          if (record == null) break;
+        }
+        if (record == null) {
+          if (out != null) out.flush();
+          continue;
+        }
+        if (out == null || written + RECORD_SIZE > this.maxSize) {
+          if (out != null) {
+            out.close();
+            rotate();
+          }
+          written = this.file.length();
+          out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file, true), 64 * 1024));
+          if (written == 0) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            written = HEADER_SIZE;
+          }
+        }
+        out.writeLong(record.time);
+        out.writeLong(record.key);
+        out.writeInt(record.size);
+        out.writeInt(record.cost);
+        out.writeByte(record.hit ? 1 : 0);
+        written += RECORD_SIZE;
+      }
+    } catch (IOException ex) {
+      LOGGER.error("Unable to write access trace {}, recording stopped", this.file, ex);
+      this.closed = true;
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException ex) {
+          LOGGER.warn("Unable to close access trace {}", this.file, ex);
+        }
+      }
+    }
+  }
+
+  /**
+   * Rotates the trace files.
+   *
+   * @throws IOException If a file could not be renamed
+   */
+  private void rotate() throws IOException {
+    String name = this.file.getName();
+    File directory = this.file.getAbsoluteFile().getParentFile();
+    for (int i = MAX_FILES - 1; i > 0; i--) {
+      File source = new File(directory, i == 1 ? name : name + "." + (i - 1));
+      if (source.exists()) {
+        Files.move(source.toPath(), new File(directory, name + "." + i).toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+  }
+
+  /**
+   * An access to the cache.
+   */
+  public static final class Record {
+
+    private final long time;
+    private final long key;
+    private final int size;
+    private final int cost;
+    private final boolean hit;
+
+    /**
+     * @param time The time of the access
+     * @param key  The hash of the key
+     * @param size The size of the resource in bytes
+     * @param cost The time it took to build the resource in microseconds
+     * @param hit  Whether the resource was in the cache
+     */
+    public Record(long time, long key, int size, int cost, boolean hit) {
+      this.time = time;
+      this.key = key;
+      this.size = size;
+      this.cost = cost;
+      this.hit = hit;
+    }
+
+    /** @return the time of the access in milliseconds */
+    public long time() {
+      return this.time;
+    }
+
+    /** @return the hash of the key */
+    public long key() {
+      return this.key;
+    }
+
+    /** @return the size of the resource in bytes */
+    public int size() {
+      return this.size;
+    }
+
+    /** @return the time it took to build the resource in microseconds, 0 if unknown */
+    public int cost() {
+      return this.cost;
+    }
+
+    /** @return whether the resource was in the cache */
+    public boolean hit() {
+      return this.hit;
+    }
+  }
+
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A read-only pack of precompressed static assets backed by a memory-mapped file.
+ *
+ * <p>Packs are created at build time by the {@link AssetPacker}. Each entry holds the raw
+ * (identity) content and optionally the gzipped content of an asset along with its content type,
+ * last modified date and a hash-based etag, so that no I/O, lookup or compression is required to
+ * serve the asset.
+ *
+ * <p>Since the content is memory-mapped, it is not loaded on the heap and the operating system
+ * page cache is shared across all processes serving the same pack.
+ *
+ * <h3>Format</h3>
+ * <pre>
+ * pack   = magic version count entry* data
+ * magic  = "BSTLPACK" (8 bytes)
+ * entry  = path content-type etag last-modified identity-offset identity-length gzip-offset gzip-length
+ * </pre>
+ * <p>Strings are written in modified UTF-8 as per {@link java.io.DataOutput#writeUTF(String)}, offsets are
+ * relative to the start of the data section and the gzip length is -1 if there is no gzipped content.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class AssetPack implements Closeable {
+
+  /** The magic number at the start of the pack file */
+  static final byte[] MAGIC = { 'B', 'S', 'T', 'L', 'P', 'A', 'C', 'K' };
+
+  /** The current version of the format */
+  static final int VERSION = 1;
+
+  /** The file channel */
+  private final FileChannel channel;
+
+  /** The memory-mapped data section */
+  private final ByteBuffer data;
+
+  /** The entries mapped to their path */
+  private final Map<String, Entry> entries;
+
+  /**
+   * @param channel The file channel
+   * @param data    The data section
+   * @param entries The entries
+   */
+  private AssetPack(FileChannel channel, ByteBuffer data, Map<String, Entry> entries) {
+    this.channel = channel;
+    this.data = data;
+    this.entries = entries;
+  }
+
+  /**
+   * Opens the specified pack file.
+   *
+   * @param file The pack file
+   *
+   * @return the corresponding asset pack
+   *
+   * @throws IOException If the file could not be read or is not a valid pack.
+   */
+  @SuppressWarnings("resource")
+  public static AssetPack open(File file) throws IOException {
+    FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+    try {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) throw new IOException("Asset pack is too large: "+file);
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+      // Read the index directly from the mapped file
+      DataInputStream in = new DataInputStream(new BufferInputStream(mapped));
+      byte[] magic = new byte[MAGIC.length];
+      in.readFully(magic);
+      if (!Arrays.equals(MAGIC, magic)) throw new IOException("Not an asset pack: "+file);
+      int version = in.readInt();
+      if (version != VERSION) throw new IOException("Unsupported asset pack version "+version);
+      int count = in.readInt();
+      Map<String, Entry> entries = new HashMap<>(count * 2);
+      for (int i = 0; i < count; i++) {
+        Entry entry = new Entry(in.readUTF(), in.readUTF(), in.readUTF(), in.readLong(),
+            in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        entries.put(entry.path(), entry);
+      }
+
+      // The data section starts where the index ends
+      ByteBuffer data = mapped.slice();
+      return new AssetPack(channel, data, Collections.unmodifiableMap(entries));
+    } catch (IOException | RuntimeException ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Returns the entry for the specified path.
+   *
+   * @param path The path of the asset relative to the root of the Web application, starting with '/'
+   *
+   * @return the corresponding entry or <code>null</code>
+   */
+  public @Nullable Entry get(String path) {
+    return this.entries.get(path);
+  }
+
+  /**
+   * @return all the entries in this pack.
+   */
+  public Collection<Entry> entries() {
+    return this.entries.values();
+  }
+
+  /**
+   * @return the number of assets in this pack.
+   */
+  public int size() {
+    return this.entries.size();
+  }
+
+  /**
+   * Returns a read-only view of the content of the specified entry.
+   *
+   * @param entry   The entry
+   * @param gzipped <code>true</code> for the gzipped content; <code>false</code> for the identity.
+   *
+   * @return the corresponding content
+   *
+   * @throws IllegalArgumentException If the gzipped content is requested but not available.
+   */
+  public ByteBuffer content(Entry entry, boolean gzipped) {
+    if (gzipped && !entry.hasGzippedContent()) throw new IllegalArgumentException("No gzipped content for "+entry.path());
+    int offset = gzipped ? entry.gzipOffset : entry.identityOffset;
+    int length = gzipped ? entry.gzipLength : entry.identityLength;
+    ByteBuffer view = this.data.asReadOnlyBuffer();
+    view.position(offset);
+    view.limit(offset + length);
+    return view.slice();
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.channel.close();
+  }
+
+  /**
+   * An entry in the asset pack.
+   *
+   * <p>This class is immutable.
+   */
+  public static final class Entry {
+
+    private final String path;
+    private final String contentType;
+    private final String etag;
+    private final long lastModified;
+    private final int identityOffset;
+    private final int identityLength;
+    private final int gzipOffset;
+    private final int gzipLength;
+
+    /**
+     * Creates a new entry.
+     */
+    Entry(String path, String contentType, String etag, long lastModified,
+        int identityOffset, int identityLength, int gzipOffset, int gzipLength) {
+      this.path = path;
+      this.contentType = contentType;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.identityOffset = identityOffset;
+      this.identityLength = identityLength;
+      this.gzipOffset = gzipOffset;
+      this.gzipLength = gzipLength;
+    }
+
+    /**
+     * @return The path of the asset relative to the root of the Web application.
+     */
+    public String path() {
+      return this.path;
+    }
+
+    /**
+     * @return The content type of the asset.
+     */
+    public String contentType() {
+      return this.contentType;
+    }
+
+    /**
+     * @param gzipped <code>true</code> to get the etag of the gzipped content.
+     * @return The etag of the asset.
+     */
+    public String etag(boolean gzipped) {
+      return gzipped ? this.etag.substring(0, this.etag.length()-1) + "-gzip\"" : this.etag;
+    }
+
+    /**
+     * @return The last modified date of the asset (rounded to the second).
+     */
+    public long lastModified() {
+      return this.lastModified;
+    }
+
+    /**
+     * @param gzipped <code>true</code> to get the length of the gzipped content.
+     * @return The length of the content.
+     */
+    public int length(boolean gzipped) {
+      return gzipped ? this.gzipLength : this.identityLength;
+    }
+
+    /**
+     * @return <code>true</code> if this entry includes a gzipped version of the content.
+     */
+    public boolean hasGzippedContent() {
+      return this.gzipLength >= 0;
+    }
+
+    @Override
+    public String toString() {
+      return this.path+" ("+this.contentType+", "+this.identityLength+" bytes)";
+    }
+  }
+
+  /**
+   * An input stream reading from a byte buffer, advancing its position.
+   */
+  private static final class BufferInputStream extends InputStream {
+
+    /** The buffer to read from */
+    private final ByteBuffer buffer;
+
+    BufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) return 0;
+      if (!this.buffer.hasRemaining()) return -1;
+      int n = Math.min(len, this.buffer.remaining());
+      this.buffer.get(b, off, n);
+      return n;
+    }
+  }
+
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Creates an {@link AssetPack} from the static assets of a Web application.
+ *
+ * <p>This class is meant to be used at build time, for example:
+ * <pre>
+ * java org.pageseeder.bastille.cache.util.AssetPacker src/main/webapp build/assets.pack
+ * </pre>
+ *
+ * <p>All the files under the specified directory are included, except those under
+ * <code>WEB-INF</code> and <code>META-INF</code>. The gzipped content is only included when it
+ * is at least 10% smaller than the raw content, so that images, fonts and other formats which
+ * are already compressed are only stored once.
+ *
+ * <p>The etag is computed from a SHA-1 hash of the content so that it does not change when the
+ * same content is redeployed.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class AssetPacker {
+
+  /**
+   * Content types of common Web assets which are not always known to the JDK.
+   */
+  private static final Map<String, String> CONTENT_TYPES = new HashMap<>();
+  static {
+    CONTENT_TYPES.put("css",   "text/css");
+    CONTENT_TYPES.put("js",    "application/javascript");
+    CONTENT_TYPES.put("mjs",   "application/javascript");
+    CONTENT_TYPES.put("json",  "application/json");
+    CONTENT_TYPES.put("map",   "application/json");
+    CONTENT_TYPES.put("svg",   "image/svg+xml");
+    CONTENT_TYPES.put("ico",   "image/x-icon");
+    CONTENT_TYPES.put("webp",  "image/webp");
+    CONTENT_TYPES.put("woff",  "font/woff");
+    CONTENT_TYPES.put("woff2", "font/woff2");
+    CONTENT_TYPES.put("ttf",   "font/ttf");
+    CONTENT_TYPES.put("otf",   "font/otf");
+    CONTENT_TYPES.put("html",  "text/html");
+    CONTENT_TYPES.put("xml",   "application/xml");
+    CONTENT_TYPES.put("txt",   "text/plain");
+  }
+
+  /** Content type to use when it cannot be determined */
+  private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+  /** Minimum ratio between the gzipped and raw lengths to include the gzipped content */
+  private static final double MAX_GZIP_RATIO = 0.9;
+
+  /** The assets to pack */
+  private final List<Asset> assets = new ArrayList<>();
+
+  /**
+   * Adds all the static assets in the specified directory to this packer.
+   *
+   * @param root The root directory of the Web application.
+   *
+   * @throws IOException If a file could not be read.
+   */
+  public void addDirectory(File root) throws IOException {
+    if (!root.isDirectory()) throw new IOException("Not a directory: "+root);
+    addFiles(root, "");
+  }
+
+  /**
+   * Adds an asset to this packer.
+   *
+   * @param path         The path of the asset relative to the root of the Web application, starting with '/'
+   * @param contentType  The content type of the asset (if <code>null</code> it is guessed from the path)
+   * @param lastModified The last modified date of the asset
+   * @param content      The content of the asset
+   *
+   * @throws IOException If the content could not be compressed.
+   */
+  public void add(String path, @Nullable String contentType, long lastModified, byte[] content) throws IOException {
+    String type = contentType != null ? contentType : getContentType(path);
+    byte @Nullable[] gzip = null;
+    if (!GZIPUtils.isGzipped(content)) {
+      byte[] gzipped = GZIPUtils.gzip(content);
+      if (gzipped.length < content.length * MAX_GZIP_RATIO) {
+        gzip = gzipped;
+      }
+    }
+    long modified = (lastModified / 1000) * 1000;
+    this.assets.add(new Asset(path, type, toETag(content), modified, content, gzip));
+  }
+
+  /**
+   * @return the number of assets added to this packer so far.
+   */
+  public int size() {
+    return this.assets.size();
+  }
+
+  /**
+   * Writes the pack to the specified file.
+   *
+   * @param file The file to write
+   *
+   * @throws IOException If the file could not be written or the pack is too large.
+   */
+  public void write(File file) throws IOException {
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+      write(out);
+    }
+  }
+
+  /**
+   * Writes the pack to the specified output.
+   *
+   * @param o The output stream
+   *
+   * @throws IOException If the pack could not be written or is too large.
+   */
+  public void write(OutputStream o) throws IOException {
+    DataOutputStream out = new DataOutputStream(o);
+    out.write(AssetPack.MAGIC);
+    out.writeInt(AssetPack.VERSION);
+    out.writeInt(this.assets.size());
+
+    // Index
+    long offset = 0;
+    for (Asset asset : this.assets) {
+      out.writeUTF(asset.path);
+      out.writeUTF(asset.contentType);
+      out.writeUTF(asset.etag);
+      out.writeLong(asset.lastModified);
+      out.writeInt(toOffset(offset));
+      out.writeInt(asset.identity.length);
+      offset += asset.identity.length;
+      byte[] gzip = asset.gzip;
+      out.writeInt(toOffset(offset));
+      out.writeInt(gzip != null ? gzip.length : -1);
+      if (gzip != null) {
+        offset += gzip.length;
+      }
+    }
+    toOffset(offset);
+
+    // Data
+    for (Asset asset : this.assets) {
+      out.write(asset.identity);
+      byte[] gzip = asset.gzip;
+      if (gzip != null) {
+        out.write(gzip);
+      }
+    }
+    out.flush();
+  }
+
+  /**
+   * Creates an asset pack from the command line.
+   *
+   * @param args The Web application directory and the pack file to create.
+   *
+   * @throws IOException If the pack could not be created
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: AssetPacker [webapp-directory] [pack-file]");
+      System.exit(1);
+      return;
+    }
+    AssetPacker packer = new AssetPacker();
+    packer.addDirectory(new File(args[0]));
+    packer.write(new File(args[1]));
+    System.out.println("Packed "+packer.size()+" assets into "+args[1]);
+  }
+
+  // private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Adds the files in the specified directory recursively.
+   */
+  private void addFiles(File dir, String path) throws IOException {
+    File[] files = dir.listFiles();
+    if (files == null) return;
+    Arrays.sort(files);
+    for (File f : files) {
+      String p = path + '/' + f.getName();
+      if (f.isDirectory()) {
+        if (!"/WEB-INF".equals(p) && !"/META-INF".equals(p)) {
+          addFiles(f, p);
+        }
+      } else {
+        add(p, null, f.lastModified(), Files.readAllBytes(f.toPath()));
+      }
+    }
+  }
+
+  /**
+   * Returns the content type for the specified path.
+   */
+  private static String getContentType(String path) {
+    int dot = path.lastIndexOf('.');
+    String ext = dot >= 0 ? path.substring(dot+1).toLowerCase(Locale.ENGLISH) : "";
+    String type = CONTENT_TYPES.get(ext);
+    if (type == null) {
+      type = URLConnection.getFileNameMap().getContentTypeFor(path);
+    }
+    return type != null ? type : DEFAULT_CONTENT_TYPE;
+  }
+
+  /**
+   * Computes the etag from a hash of the content.
+   */
+  private static String toETag(byte[] content) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-1").digest(content);
+      StringBuilder etag = new StringBuilder(18).append('"');
+      for (int i = 0; i < 8; i++) {
+        etag.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+        etag.append(Character.forDigit(hash[i] & 0xF, 16));
+      }
+      return etag.append('"').toString();
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException("SHA-1 is not supported", ex);
+    }
+  }
+
+  /**
+   * Checks that the offset can be mapped.
+   */
+  private static int toOffset(long offset) throws IOException {
+    if (offset > Integer.MAX_VALUE) throw new IOException("Asset pack is too large");
+    return (int)offset;
+  }
+
+  /**
+   * An asset to pack.
+   */
+  private static final class Asset {
+
+    private final String path;
+    private final String contentType;
+    private final String etag;
+    private final long lastModified;
+    private final byte[] identity;
+    private final byte @Nullable[] gzip;
+
+    Asset(String path, String contentType, String etag, long lastModified, byte[] identity, byte @Nullable[] gzip) {
+      this.path = path;
+      this.contentType = contentType;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.identity = identity;
+      this.gzip = gzip;
+    }
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.berlioz.GlobalSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of resources being built concurrently.
+ *
+ * <p>When all permits are in use, up to a maximum number of threads can wait for a permit for a
+ * limited time; any other thread is rejected immediately so that a cold cache does not result in
+ * an unbounded number of concurrent requests to the origin.
+ *
+ * <p>In addition to the limiter of each filter, a global limiter shared by all filters can be
+ * configured using the following global settings:
+ * <ul>
+ *   <li><code>bastille.cache.max-builds</code>: the maximum number of concurrent builds (0 for unlimited);</li>
+ *   <li><code>bastille.cache.max-queued-builds</code>: the maximum number of builds waiting for a permit;</li>
+ *   <li><code>bastille.cache.build-timeout</code>: the maximum time to wait for a permit in milliseconds.</li>
+ * </ul>
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class BuildLimiter {
+
+  /** Logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(BuildLimiter.class);
+
+  /**
+   * What to do when a build is rejected.
+   */
+  public enum Overflow {
+
+    /** Serve the stale resource if there is one, or a 503 otherwise */
+    STALE,
+
+    /** Invoke the filter chain without caching */
+    PASS_THROUGH,
+
+    /** Return a 503 with a Retry-After header */
+    UNAVAILABLE;
+
+    /**
+     * Returns the overflow corresponding to the specified name.
+     *
+     * @param name the name of the overflow in lower case with dashes (e.g. "pass-through")
+     * @param def  the default value
+     *
+     * @return the corresponding overflow or the default
+     */
+    public static Overflow forName(@Nullable String name, Overflow def) {
+      if (name == null || name.isEmpty()) return def;
+      try {
+        return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException ex) {
+        LOGGER.warn("Unknown overflow '{}', using {}", name, def);
+        return def;
+      }
+    }
+  }
+
+  /** A limiter without limits. */
+  public static final BuildLimiter UNLIMITED = new BuildLimiter(0, 0, 0);
+
+  /** The global limiter, created lazily. */
+  private static volatile @Nullable BuildLimiter global;
+
+  /** The permits (not used if unlimited) */
+  private final Semaphore permits;
+
+  /** The maximum number of concurrent builds */
+  private final int maxBuilds;
+
+  /** The maximum number of threads waiting for a permit */
+  private final int maxQueued;
+
+  /** The maximum time to wait for a permit in milliseconds */
+  private final long timeout;
+
+  /** The number of threads currently waiting for a permit */
+  private final AtomicInteger queued = new AtomicInteger();
+
+  /**
+   * Creates a new limiter.
+   *
+   * @param maxBuilds The maximum number of concurrent builds (0 or less for unlimited)
+   * @param maxQueued The maximum number of threads waiting for a permit
+   * @param timeout   The maximum time to wait for a permit in milliseconds
+   */
+  public BuildLimiter(int maxBuilds, int maxQueued, long timeout) {
+    this.maxBuilds = Math.max(0, maxBuilds);
+    this.maxQueued = Math.max(0, maxQueued);
+    this.timeout = Math.max(0, timeout);
+    this.permits = new Semaphore(Math.max(1, this.maxBuilds), true);
+  }
+
+  /**
+   * Returns the global limiter shared by all filters.
+   *
+   * @return the global limiter.
+   */
+  public static BuildLimiter global() {
+    BuildLimiter limiter = global;
+    if (limiter == null) {
+      synchronized (BuildLimiter.class) {
+        limiter = global;
+        if (limiter == null) {
+          limiter = new BuildLimiter(setting("bastille.cache.max-builds", 0),
+              setting("bastille.cache.max-queued-builds", 0), setting("bastille.cache.build-timeout", 0));
+          LOGGER.debug("Global build limiter: {}", limiter);
+          global = limiter;
+        }
+      }
+    }
+    return limiter;
+  }
+
+  /**
+   * @return <code>true</code> if this limiter does not limit builds.
+   */
+  public boolean isUnlimited() {
+    return this.maxBuilds == 0;
+  }
+
+  /**
+   * Acquires a permit to build a resource, waiting if allowed.
+   *
+   * <p>If this method returns <code>true</code>, {@link #release()} must be called when the build is complete.
+   *
+   * @return <code>true</code> if a permit was acquired; <code>false</code> if the build is rejected.
+   */
+  public boolean acquire() {
+    if (this.maxBuilds == 0) return true;
+    if (this.permits.tryAcquire()) return true;
+    if (this.queued.incrementAndGet() > this.maxQueued) {
+      this.queued.decrementAndGet();
+      return false;
+    }
+    try {
+      return this.permits.tryAcquire(this.timeout, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      this.queued.decrementAndGet();
+    }
+  }
+
+  /**
+   * Releases a permit acquired with {@link #acquire()}.
+   */
+  public void release() {
+    if (this.maxBuilds == 0) return;
+    this.permits.release();
+  }
+
+  /**
+   * @return the number of builds currently in progress.
+   */
+  public int getActive() {
+    return this.maxBuilds == 0 ? 0 : this.maxBuilds - this.permits.availablePermits();
+  }
+
+  /**
+   * @return the number of threads waiting for a permit.
+   */
+  public int getQueued() {
+    return this.queued.get();
+  }
+
+  @Override
+  public String toString() {
+    if (this.maxBuilds == 0) return "unlimited";
+    return "max-builds="+this.maxBuilds+", max-queued="+this.maxQueued+", timeout="+this.timeout+"ms";
+  }
+
+  /**
+   * Returns the numeric value of a global setting.
+   */
+  private static int setting(String name, int def) {
+    String value = GlobalSettings.get(name, Integer.toString(def));
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException ex) {
+      LOGGER.warn("Invalid value '{}' for {}, using {}", value, name, def);
+      return def;
+    }
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Utility functions to calculate the number of bytes retained on the heap by cached values.
+ *
+ * <p>Sizes assume the layout of a 64-bit JVM with compressed references: 12-byte object headers,
+ * 16-byte array headers, 4-byte references and objects aligned on 8 bytes. Strings are assumed
+ * to use one byte per character when all their characters are Latin-1 on Java 9 and later
+ * (compact strings).
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class ByteSizes {
+
+  /** The size of an object header */
+  public static final int OBJECT_HEADER = 12;
+
+  /** The size of an array header */
+  public static final int ARRAY_HEADER = 16;
+
+  /** The size of a reference */
+  public static final int REFERENCE = 4;
+
+  /** The shallow size of a String */
+  private static final int STRING = 24;
+
+  /** The shallow size of a boxed number */
+  private static final int BOXED = 16;
+
+  /** The shallow size of an array list */
+  private static final int ARRAY_LIST = 24;
+
+  /** Whether strings use one byte per Latin-1 character */
+  private static final boolean COMPACT_STRINGS = !System.getProperty("java.specification.version", "1.8").startsWith("1.");
+
+  /** Utility class */
+  private ByteSizes() {
+  }
+
+  /**
+   * Aligns the size on 8 bytes.
+   *
+   * @param size The unaligned size
+   *
+   * @return the size rounded up to the next multiple of 8.
+   */
+  public static long align(long size) {
+    return (size + 7) & ~7L;
+  }
+
+  /**
+   * @param length The number of elements in the array
+   * @param width  The size of each element
+   *
+   * @return the size of an array.
+   */
+  public static long array(int length, int width) {
+    return align(ARRAY_HEADER + (long)length * width);
+  }
+
+  /**
+   * @param bytes The byte array
+   *
+   * @return the size of the byte array or 0 if <code>null</code>.
+   */
+  public static long of(byte @Nullable [] bytes) {
+    return bytes != null ? array(bytes.length, 1) : 0;
+  }
+
+  /**
+   * @param s The string
+   *
+   * @return the size of the string including its character array or 0 if <code>null</code>.
+   */
+  public static long of(@Nullable String s) {
+    if (s == null) return 0;
+    return STRING + array(s.length(), COMPACT_STRINGS && isLatin1(s) ? 1 : 2);
+  }
+
+  /**
+   * @param strings The strings
+   *
+   * @return the size of the array of strings including the strings.
+   */
+  public static long of(String[] strings) {
+    long size = array(strings.length, REFERENCE);
+    for (String s : strings) {
+      size += of(s);
+    }
+    return size;
+  }
+
+  /**
+   * @param headers The headers
+   *
+   * @return the size of the list of headers including the headers.
+   */
+  public static long of(Collection<HttpHeader<? extends Serializable>> headers) {
+    long size = ARRAY_LIST + array(headers.size(), REFERENCE);
+    for (HttpHeader<? extends Serializable> header : headers) {
+      size += align(OBJECT_HEADER + 3 * REFERENCE) + of(header.name());
+      Serializable value = header.value();
+      size += value instanceof String ? of((String)value) : BOXED;
+    }
+    return size;
+  }
+
+  /**
+   * Returns the size of a cached key or value.
+   *
+   * <p>Only strings, byte arrays and {@link Sized} objects are supported.
+   *
+   * @param o The object
+   *
+   * @return the size of the object or -1 if it cannot be calculated.
+   */
+  public static long of(@Nullable Object o) {
+    if (o == null) return 0;
+    if (o instanceof Sized) return ((Sized)o).getRetainedSize();
+    if (o instanceof String) return of((String)o);
+    if (o instanceof byte[]) return of((byte[])o);
+    return -1;
+  }
+
+  /**
+   * @param s The string
+   * @return <code>true</code> if all the characters of the string are Latin-1.
+   */
+  private static boolean isLatin1(String s) {
+    for (int i = 0; i < s.length(); i++) {
+      if (s.charAt(i) > 0xFF) return false;
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * A conservative minifier for CSS which removes comments and unnecessary whitespace.
+ *
+ * <p>This minifier operates directly on bytes, so that it works with any ASCII-compatible
+ * character encoding without decoding the content.
+ *
+ * <p>The following transformations are applied:
+ * <ul>
+ *   <li>Comments are removed, except comments starting with <code>/*!</code> which
+ *   usually contain licensing information;</li>
+ *   <li>Sequences of whitespace are collapsed into a single space;</li>
+ *   <li>Whitespace around <code>{ } ; , &gt;</code> and after <code>:</code> is removed;</li>
+ *   <li>The last semicolon in a block is removed.</li>
+ * </ul>
+ *
+ * <p>Strings are copied verbatim and whitespace before <code>:</code> as well as around
+ * <code>+</code> and <code>-</code> is preserved since it may be significant in selectors and
+ * <code>calc()</code> expressions.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class CSSMinifier implements ContentTransformer {
+
+  @Override
+  public byte[] transform(byte[] content, String contentType) throws IOException {
+    return minify(content);
+  }
+
+  /**
+   * Minifies the specified CSS.
+   *
+   * @param css The CSS content as bytes
+   *
+   * @return The minified CSS
+   *
+   * @throws IOException If a comment or string is not terminated.
+   */
+  public static byte[] minify(byte[] css) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(css.length);
+    boolean space = false;
+    int last = -1;
+    int i = 0;
+    while (i < css.length) {
+      int c = css[i];
+      if (c == '/' && i+1 < css.length && css[i+1] == '*') {
+        int end = indexOfCommentEnd(css, i+2);
+        if (end == -1) throw new IOException("Unterminated comment at "+i);
+        if (i+2 < css.length && css[i+2] == '!') {
+          // Preserve important comments
+          if (space && last != -1) out.write(' ');
+          out.write(css, i, end-i);
+          last = -1;
+          space = false;
+        }
+        i = end;
+      } else if (isWhitespace(c)) {
+        space = true;
+        i++;
+      } else {
+        if (space && last != -1 && !dropsSpaceAfter(last) && !dropsSpaceBefore(c)) {
+          out.write(' ');
+        }
+        space = false;
+        if (c == '"' || c == '\'') {
+          int end = indexOfStringEnd(css, i);
+          if (end == -1) throw new IOException("Unterminated string at "+i);
+          out.write(css, i, end-i);
+          i = end;
+        } else if (c == ';' && nextSignificant(css, i+1) == '}') {
+          // Skip the last semicolon in the block
+          i++;
+          continue;
+        } else {
+          out.write(c);
+          i++;
+        }
+        last = c;
+      }
+    }
+    return out.toByteArray();
+  }
+
+  // private helpers
+  // ---------------------------------------------------------------------------------------------
+
+  /**
+   * @return the index after the end of the comment or -1.
+   */
+  private static int indexOfCommentEnd(byte[] css, int from) {
+    for (int i = from; i+1 < css.length; i++) {
+      if (css[i] == '*' && css[i+1] == '/') return i+2;
+    }
+    return -1;
+  }
+
+  /**
+   * @return the index after the closing quote of the string starting at the specified index or -1.
+   */
+  private static int indexOfStringEnd(byte[] css, int start) {
+    byte quote = css[start];
+    for (int i = start+1; i < css.length; i++) {
+      byte c = css[i];
+      if (c == '\\') {
+        i++;
+      } else if (c == quote) return i+1;
+      else if (c == '\n') return -1;
+    }
+    return -1;
+  }
+
+  /**
+   * @return the next character which is not whitespace or part of a comment or -1.
+   */
+  private static int nextSignificant(byte[] css, int from) {
+    int i = from;
+    while (i < css.length) {
+      int c = css[i];
+      if (isWhitespace(c)) {
+        i++;
+      } else if (c == '/' && i+1 < css.length && css[i+1] == '*' && (i+2 >= css.length || css[i+2] != '!')) {
+        int end = indexOfCommentEnd(css, i+2);
+        if (end == -1) return -1;
+        i = end;
+      } else return c;
+    }
+    return -1;
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+  }
+
+  private static boolean dropsSpaceBefore(int c) {
+    return c == '{' || c == '}' || c == ';' || c == ',' || c == '>';
+  }
+
+  private static boolean dropsSpaceAfter(int c) {
+    return c == '{' || c == '}' || c == ';' || c == ',' || c == '>' || c == ':';
+  }
+
+}
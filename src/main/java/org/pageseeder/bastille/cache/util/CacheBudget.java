@@ -0,0 +1,387 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.berlioz.GlobalSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Status;
+import net.sf.ehcache.config.CacheConfiguration;
+
+/**
+ * Shares a total memory budget between caches, moving memory to the caches where it reduces misses.
+ *
+ * <p>The budget is initially split evenly between the caches. Periodically, the budget manager
+ * calculates the marginal utility of each cache as the number of misses since the last round per
+ * byte allocated: a cache which is not full has no use for more memory. A step of the budget is
+ * then moved from the cache with the lowest utility to the cache with the highest utility, as long
+ * as the difference is significant and each cache keeps a minimum share.
+ *
+ * <p>The limits are applied by updating the configuration of the caches at runtime: caches sized
+ * in bytes get the limit in bytes, caches sized in entries get the limit divided by their average
+ * entry size as measured by their {@link CacheUsage}. Since the average entry size is only known
+ * once a cache holds entries, the limits are applied again in each round.
+ *
+ * <p>Caches are not rebalanced while the {@link MemoryPressureMonitor} has shed them.
+ *
+ * <p>The budget is configured with the following global settings:
+ * <ul>
+ *   <li><code>bastille.cache.budget</code>: the total budget in bytes, with an optional
+ *   <code>k</code>, <code>m</code> or <code>g</code> suffix (the budget manager is disabled if not specified);</li>
+ *   <li><code>bastille.cache.budget.caches</code>: the comma separated names of the caches sharing
+ *   the budget (defaults to <code>StaticCachingFilter,PSML,PSMLOverview,PSMLProcessed</code>);</li>
+ *   <li><code>bastille.cache.budget.interval</code>: the interval between rounds in seconds (defaults to 60);</li>
+ *   <li><code>bastille.cache.budget.min-share</code>: the minimum share of the budget for each cache (defaults to 0.05);</li>
+ *   <li><code>bastille.cache.budget.step</code>: the share of the budget moved in each round (defaults to 0.05).</li>
+ * </ul>
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class CacheBudget {
+
+  /** Logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(CacheBudget.class);
+
+  /** A cache is considered full when it uses this proportion of its limit. */
+  private static final double FULL = 0.9;
+
+  /** How much higher the utility of the receiver must be than that of the donor. */
+  private static final double HYSTERESIS = 1.25;
+
+  /** The default budget, created lazily */
+  private static volatile @Nullable CacheBudget defaultBudget;
+
+  /** Whether the default budget has been initialised */
+  private static volatile boolean initialized = false;
+
+  /** The total budget in bytes */
+  private final long budget;
+
+  /** The names of the caches sharing the budget */
+  private final Set<String> names;
+
+  /** The minimum number of bytes for each cache */
+  private final long minimum;
+
+  /** The number of bytes moved in each round */
+  private final long step;
+
+  /** The allocations of the caches registered so far mapped to their name */
+  private final Map<String, Allocation> allocations = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new budget.
+   *
+   * @param budget   The total budget in bytes
+   * @param names    The names of the caches sharing the budget
+   * @param minShare The minimum share of the budget for each cache
+   * @param step     The share of the budget moved in each round
+   */
+  public CacheBudget(long budget, Set<String> names, double minShare, double step) {
+    this.budget = budget;
+    this.names = names;
+    this.minimum = (long)(budget * minShare);
+    this.step = Math.max((long)(budget * step), 1);
+  }
+
+  /**
+   * Returns the default budget configured from the global settings.
+   *
+   * @return the default budget or <code>null</code> if the budget manager is disabled.
+   */
+  public static @Nullable CacheBudget getDefault() {
+    if (!initialized) {
+      synchronized (CacheBudget.class) {
+        if (!initialized) {
+          defaultBudget = newDefault();
+          initialized = true;
+        }
+      }
+    }
+    return defaultBudget;
+  }
+
+  /**
+   * Registers the cache with the default budget if the budget manager is enabled.
+   *
+   * @param cache The cache
+   */
+  public static void register(Ehcache cache) {
+    CacheBudget budget = getDefault();
+    if (budget != null) {
+      budget.add(cache);
+    }
+  }
+
+  /**
+   * Adds the cache to this budget if it is one of the caches sharing it.
+   *
+   * <p>The budget is split evenly between the caches registered so far.
+   *
+   * @param cache The cache
+   */
+  public synchronized void add(Ehcache cache) {
+    if (!this.names.contains(cache.getName()) || this.allocations.containsKey(cache.getName())) return;
+    CacheUsage.forCache(cache);
+    CacheStatistics statistics = CacheStatistics.forCache(cache);
+    this.allocations.put(cache.getName(), new Allocation(cache, statistics.getMisses()));
+    long share = this.budget / this.allocations.size();
+    for (Allocation allocation : this.allocations.values()) {
+      allocation.limit = share;
+      apply(allocation);
+    }
+    LOGGER.info("Added cache {} to budget of {} bytes", cache.getName(), this.budget);
+  }
+
+  /**
+   * Moves part of the budget from the cache with the lowest utility to the cache with the highest
+   * and applies the limits to the caches.
+   */
+  public synchronized void rebalance() {
+    MemoryPressureMonitor monitor = MemoryPressureMonitor.getDefault();
+    if (monitor != null && monitor.isUnderPressure()) return;
+    List<Allocation> list = new ArrayList<>();
+    for (Allocation allocation : this.allocations.values()) {
+      if (allocation.cache.getStatus() == Status.STATUS_ALIVE) {
+        list.add(allocation);
+      }
+    }
+    if (list.size() >= 2) {
+      reallocate(list);
+    }
+    // Caches sized in entries only get their limit once their average entry size is known
+    for (Allocation allocation : list) {
+      apply(allocation);
+    }
+  }
+
+  /**
+   * Returns the limit currently allocated to the specified cache.
+   *
+   * @param name The name of the cache
+   *
+   * @return the limit in bytes or -1 if the cache is not managed by this budget.
+   */
+  public long getLimit(String name) {
+    Allocation allocation = this.allocations.get(name);
+    return allocation != null ? allocation.limit : -1;
+  }
+
+  /**
+   * @return the total budget in bytes.
+   */
+  public long getBudget() {
+    return this.budget;
+  }
+
+  /**
+   * Updates the limits of the specified allocations according to the utility of their cache.
+   *
+   * @param list The allocations of the live caches
+   */
+  private void reallocate(List<Allocation> list) {
+    int n = list.size();
+    long[] limits = new long[n];
+    long[] used = new long[n];
+    long[] misses = new long[n];
+    for (int i = 0; i < n; i++) {
+      Allocation allocation = list.get(i);
+      long total = CacheStatistics.forCache(allocation.cache).getMisses();
+      limits[i] = allocation.limit;
+      used[i] = CacheUsage.forCache(allocation.cache).getBytes();
+      misses[i] = Math.max(total - allocation.misses, 0);
+      allocation.misses = total;
+    }
+    long[] updated = rebalance(limits, used, misses, this.minimum, this.step);
+    for (int i = 0; i < n; i++) {
+      if (updated[i] != limits[i]) {
+        Allocation allocation = list.get(i);
+        LOGGER.debug("Cache {} limit changed from {} to {} bytes", allocation.cache.getName(), limits[i], updated[i]);
+        allocation.limit = updated[i];
+      }
+    }
+  }
+
+  /**
+   * Calculates the new limits of the caches.
+   *
+   * @param limits  The current limits of the caches in bytes
+   * @param used    The number of bytes used by each cache
+   * @param misses  The number of misses for each cache since the last round
+   * @param minimum The minimum limit for each cache
+   * @param step    The number of bytes to move
+   *
+   * @return the new limits, the sum of the limits is unchanged
+   */
+  static long[] rebalance(long[] limits, long[] used, long[] misses, long minimum, long step) {
+    long[] updated = Arrays.copyOf(limits, limits.length);
+    double[] utility = new double[limits.length];
+    int receiver = -1;
+    for (int i = 0; i < limits.length; i++) {
+      boolean full = used[i] >= limits[i] * FULL;
+      utility[i] = full ? (double)misses[i] / Math.max(limits[i], 1) : 0;
+      if (full && misses[i] > 0 && (receiver < 0 || utility[i] > utility[receiver])) {
+        receiver = i;
+      }
+    }
+    if (receiver < 0) return updated;
+    int donor = -1;
+    for (int i = 0; i < limits.length; i++) {
+      if (i != receiver && limits[i] > minimum && (donor < 0 || utility[i] < utility[donor])) {
+        donor = i;
+      }
+    }
+    if (donor < 0 || utility[receiver] <= utility[donor] * HYSTERESIS) return updated;
+    long amount = Math.min(step, limits[donor] - minimum);
+    updated[donor] -= amount;
+    updated[receiver] += amount;
+    return updated;
+  }
+
+  /**
+   * Parses a number of bytes with an optional <code>k</code>, <code>m</code> or <code>g</code> suffix.
+   *
+   * @param value The value to parse
+   *
+   * @return the number of bytes
+   *
+   * @throws NumberFormatException If the value is not a valid number of bytes
+   */
+  static long parseBytes(String value) {
+    String v = value.trim().toLowerCase(Locale.ROOT);
+    long unit = 1;
+    if (v.endsWith("k")) unit = 1024;
+    else if (v.endsWith("m")) unit = 1024 * 1024;
+    else if (v.endsWith("g")) unit = 1024 * 1024 * 1024;
+    if (unit > 1) {
+      v = v.substring(0, v.length() - 1).trim();
+    }
+    return Long.parseLong(v) * unit;
+  }
+
+  // Private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Applies the limit of the allocation to the configuration of its cache.
+   *
+   * <p>Caches sized in entries are left unchanged until their average entry size is known.
+   *
+   * @param allocation The allocation
+   */
+  private static void apply(Allocation allocation) {
+    Ehcache cache = allocation.cache;
+    try {
+      CacheConfiguration config = cache.getCacheConfiguration();
+      if (config.getMaxBytesLocalHeap() > 0) {
+        if (config.getMaxBytesLocalHeap() != allocation.limit) {
+          config.setMaxBytesLocalHeap(allocation.limit);
+        }
+      } else {
+        CacheUsage usage = CacheUsage.forCache(cache);
+        int count = usage.getCount();
+        long average = count > 0 ? usage.getBytes() / count : 0;
+        long entries = average > 0 ? Math.max(allocation.limit / average, 1) : 0;
+        if (entries > 0 && config.getMaxEntriesLocalHeap() != entries) {
+          config.setMaxEntriesLocalHeap(entries);
+        }
+      }
+    } catch (RuntimeException ex) {
+      LOGGER.warn("Unable to apply limit of {} bytes to cache {}", allocation.limit, cache.getName(), ex);
+    }
+  }
+
+  /**
+   * Creates the default budget from the global settings.
+   *
+   * @return the budget or <code>null</code> if it is disabled.
+   */
+  private static @Nullable CacheBudget newDefault() {
+    String value = GlobalSettings.get("bastille.cache.budget", "");
+    if (value.isEmpty()) return null;
+    long bytes;
+    long interval;
+    double minShare;
+    double step;
+    try {
+      bytes = parseBytes(value);
+      interval = Long.parseLong(GlobalSettings.get("bastille.cache.budget.interval", "60").trim());
+      minShare = Double.parseDouble(GlobalSettings.get("bastille.cache.budget.min-share", "0.05").trim());
+      step = Double.parseDouble(GlobalSettings.get("bastille.cache.budget.step", "0.05").trim());
+    } catch (NumberFormatException ex) {
+      LOGGER.error("Invalid cache budget settings, budget manager disabled", ex);
+      return null;
+    }
+    if (bytes <= 0) return null;
+    String caches = GlobalSettings.get("bastille.cache.budget.caches", "StaticCachingFilter,PSML,PSMLOverview,PSMLProcessed");
+    Set<String> names = new HashSet<>(Arrays.asList(caches.trim().split("\\s*,\\s*")));
+    CacheBudget budget = new CacheBudget(bytes, names, minShare, step);
+    if (interval > 0) {
+      ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "bastille-cache-budget");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.scheduleWithFixedDelay(() -> {
+        try {
+          budget.rebalance();
+        } catch (RuntimeException ex) {
+          LOGGER.warn("Unable to rebalance cache budget", ex);
+        }
+      }, interval, interval, TimeUnit.SECONDS);
+    }
+    LOGGER.info("Cache budget of {} bytes enabled for {}", bytes, names);
+    return budget;
+  }
+
+  /**
+   * The allocation of a cache.
+   */
+  private static final class Allocation {
+
+    /** The cache */
+    final Ehcache cache;
+
+    /** The limit in bytes */
+    volatile long limit;
+
+    /** The number of misses at the last round */
+    long misses;
+
+    Allocation(Ehcache cache, long misses) {
+      this.cache = cache;
+      this.misses = misses;
+    }
+  }
+
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jspecify.annotations.Nullable;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+/**
+ * A snapshot of the live entries of a cache stored in a local file.
+ *
+ * <p>The file contains the encoded values followed by an index of the keys; when a snapshot is
+ * opened, the file is memory-mapped and only the index is read. Each value is decoded when it
+ * is taken from the snapshot, so that a large snapshot can be restored lazily as the entries are
+ * requested.
+ *
+ * <p>Cached resources are encoded with the {@link CachedResourceCodec}, strings as UTF-8 and any
+ * other serializable value using Java serialization. Entries with other values or non-string
+ * keys are not included in the snapshot.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class CacheSnapshot implements Closeable {
+
+  /** Identifies snapshot files ("BSTLSNAP") */
+  private static final long MAGIC = 0x4253544C534E4150L;
+
+  /** The version of the snapshot format */
+  public static final int VERSION = 1;
+
+  /** The size of the trailer: index offset, entry count, version and magic */
+  private static final int TRAILER_SIZE = 8 + 4 + 4 + 8;
+
+  /** Value encoded with the cached resource codec */
+  private static final byte RESOURCE = 1;
+
+  /** String value encoded as UTF-8 */
+  private static final byte STRING = 2;
+
+  /** Value encoded with Java serialization */
+  private static final byte SERIALIZED = 3;
+
+  /** The mapped file */
+  private final ByteBuffer buffer;
+
+  /** The entries not taken yet by key */
+  private final Map<String, Slot> index;
+
+  /**
+   * @param buffer The mapped file
+   * @param index  The index of the entries
+   */
+  private CacheSnapshot(ByteBuffer buffer, Map<String, Slot> index) {
+    this.buffer = buffer;
+    this.index = index;
+  }
+
+  /**
+   * Writes a snapshot of the live entries of the specified cache.
+   *
+   * <p>The snapshot is written to a temporary file which then replaces the specified file.
+   *
+   * @param cache The cache
+   * @param file  The snapshot file
+   *
+   * @return the number of entries written
+   *
+   * @throws IOException If an error occurs while writing the file
+   */
+  public static int write(Ehcache cache, File file) throws IOException {
+    File tmp = new File(file.getPath()+".tmp");
+    int count;
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+      count = write(cache, out);
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return count;
+  }
+
+  /**
+   * Writes a snapshot of the live entries of the specified cache.
+   *
+   * @param cache The cache
+   * @param out   The output stream
+   *
+   * @return the number of entries written
+   *
+   * @throws IOException If an error occurs while writing
+   */
+  public static int write(Ehcache cache, OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    ByteArrayOutputStream index = new ByteArrayOutputStream();
+    DataOutputStream indexData = new DataOutputStream(index);
+    int count = 0;
+    for (Object key : cache.getKeys()) {
+      if (!(key instanceof String)) continue;
+      Element element = cache.getQuiet(key);
+      if (element == null || element.isExpired()) continue;
+      Object value = element.getObjectValue();
+      byte type = typeOf(value);
+      if (type == 0) continue;
+      byte[] bytes = encode(type, value);
+      indexData.writeUTF((String)key);
+      indexData.writeByte(type);
+      indexData.writeLong(Math.max(element.getCreationTime(), element.getLastUpdateTime()));
+      indexData.writeLong(data.size());
+      indexData.writeInt(bytes.length);
+      data.write(bytes);
+      count++;
+    }
+    long indexOffset = data.size();
+    indexData.flush();
+    index.writeTo(data);
+    data.writeLong(indexOffset);
+    data.writeInt(count);
+    data.writeInt(VERSION);
+    data.writeLong(MAGIC);
+    data.flush();
+    return count;
+  }
+
+  /**
+   * Opens the specified snapshot file.
+   *
+   * @param file The snapshot file
+   *
+   * @return the snapshot
+   *
+   * @throws IOException If the file cannot be read or is not a valid snapshot
+   */
+  public static CacheSnapshot open(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return open(buffer);
+    }
+  }
+
+  /**
+   * Opens a snapshot from the specified buffer.
+   *
+   * @param buffer The snapshot data
+   *
+   * @return the snapshot
+   *
+   * @throws IOException If the buffer does not contain a valid snapshot
+   */
+  public static CacheSnapshot open(ByteBuffer buffer) throws IOException {
+    int size = buffer.limit();
+    if (size < TRAILER_SIZE) throw new IOException("Not a cache snapshot");
+    int trailer = size - TRAILER_SIZE;
+    long indexOffset = buffer.getLong(trailer);
+    int count = buffer.getInt(trailer + 8);
+    int version = buffer.getInt(trailer + 12);
+    if (buffer.getLong(trailer + 16) != MAGIC) throw new IOException("Not a cache snapshot");
+    if (version != VERSION) throw new IOException("Unsupported snapshot version "+version);
+    if (indexOffset < 0 || indexOffset > trailer) throw new IOException("Corrupted snapshot index");
+    ByteBuffer indexBuffer = buffer.duplicate();
+    indexBuffer.position((int)indexOffset);
+    indexBuffer.limit(trailer);
+    byte[] indexBytes = new byte[indexBuffer.remaining()];
+    indexBuffer.get(indexBytes);
+    DataInput in = new DataInputStream(new ByteArrayInputStream(indexBytes));
+    Map<String, Slot> index = new ConcurrentHashMap<>(Math.max(16, count * 2));
+    for (int i = 0; i < count; i++) {
+      String key = in.readUTF();
+      byte type = in.readByte();
+      long updated = in.readLong();
+      long offset = in.readLong();
+      int length = in.readInt();
+      if (offset < 0 || offset + length > indexOffset) throw new IOException("Corrupted snapshot entry "+key);
+      index.put(key, new Slot(type, updated, (int)offset, length));
+    }
+    return new CacheSnapshot(buffer, index);
+  }
+
+  /**
+   * Takes the entry for the specified key from this snapshot.
+   *
+   * <p>The entry is removed from the snapshot, so that it is restored at most once.
+   *
+   * @param key The cache key
+   *
+   * @return the entry or <code>null</code> if this snapshot does not include the key.
+   *
+   * @throws IOException If the value could not be decoded
+   */
+  public @Nullable Entry take(Object key) throws IOException {
+    Slot slot = this.index.remove(key);
+    if (slot == null) return null;
+    ByteBuffer slice = this.buffer.duplicate();
+    slice.position(slot.offset);
+    slice.limit(slot.offset + slot.length);
+    byte[] bytes = new byte[slot.length];
+    slice.get(bytes);
+    return new Entry(decode(slot.type, bytes), slot.updated);
+  }
+
+  /**
+   * Discards the entry for the specified key.
+   *
+   * @param key The cache key
+   */
+  public void discard(Object key) {
+    this.index.remove(key);
+  }
+
+  /**
+   * @return the number of entries which have not been taken yet.
+   */
+  public int size() {
+    return this.index.size();
+  }
+
+  /**
+   * Discards all the entries.
+   */
+  @Override
+  public void close() {
+    this.index.clear();
+  }
+
+  /**
+   * An entry restored from a snapshot.
+   */
+  public static final class Entry {
+
+    /** The cached value */
+    private final Object value;
+
+    /** When the value was last put in the cache */
+    private final long updated;
+
+    /**
+     * @param value   The cached value
+     * @param updated When the value was last put in the cache
+     */
+    Entry(Object value, long updated) {
+      this.value = value;
+      this.updated = updated;
+    }
+
+    /**
+     * @return the cached value
+     */
+    public Object value() {
+      return this.value;
+    }
+
+    /**
+     * @return when the value was last put in the cache.
+     */
+    public long updated() {
+      return this.updated;
+    }
+  }
+
+  // Private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * The location of an entry in the snapshot.
+   */
+  private static final class Slot {
+
+    /** How the value is encoded */
+    private final byte type;
+
+    /** When the value was last put in the cache */
+    private final long updated;
+
+    /** The offset of the value in the file */
+    private final int offset;
+
+    /** The length of the value in bytes */
+    private final int length;
+
+    Slot(byte type, long updated, int offset, int length) {
+      this.type = type;
+      this.updated = updated;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+  /**
+   * @return how the specified value should be encoded or 0 if it cannot be encoded.
+   */
+  private static byte typeOf(@Nullable Object value) {
+    if (value instanceof CachedResource) return RESOURCE;
+    if (value instanceof String) return STRING;
+    if (value instanceof Serializable) return SERIALIZED;
+    return 0;
+  }
+
+  /**
+   * Encodes the specified value.
+   */
+  private static byte[] encode(byte type, Object value) throws IOException {
+    switch (type) {
+      case RESOURCE:
+        return CachedResourceCodec.encode((CachedResource)value);
+      case STRING:
+        return ((String)value).getBytes(StandardCharsets.UTF_8);
+      default:
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+          out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+  }
+
+  /**
+   * Decodes the specified value.
+   */
+  private static Object decode(byte type, byte[] bytes) throws IOException {
+    switch (type) {
+      case RESOURCE:
+        return CachedResourceCodec.decode(bytes);
+      case STRING:
+        return new String(bytes, StandardCharsets.UTF_8);
+      case SERIALIZED:
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+          return in.readObject();
+        } catch (ClassNotFoundException ex) {
+          throw new IOException(ex);
+        }
+      default:
+        throw new IOException("Unknown snapshot value type "+type);
+    }
+  }
+
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.berlioz.GlobalSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.Status;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+
+/**
+ * Saves snapshots of caches so that they can be restored after a restart.
+ *
+ * <p>Caches are registered when the filter or store using them is initialised. Snapshots are
+ * written when the JVM shuts down and periodically; on startup, the entries of a cache are
+ * restored lazily from its last snapshot when they are requested. The callers of
+ * {@link #restore(Ehcache, String, Predicate)} check whether the entry is still fresh, typically
+ * against the modified dates of the files it was built from, before it is put back in the cache.
+ * Restored entries keep the time to live they had left: entries older than the time to live of
+ * the cache are not restored.
+ *
+ * <p>Snapshots are configured with the following global settings:
+ * <ul>
+ *   <li><code>bastille.cache.snapshot.dir</code>: the directory for the snapshot files (snapshots are disabled if not specified);</li>
+ *   <li><code>bastille.cache.snapshot.caches</code>: the comma separated names of the caches to
+ *   snapshot (defaults to <code>StaticCachingFilter,PSML,PSMLOverview,PSMLProcessed</code>); only caches whose
+ *   entries are revalidated when restored should be listed;</li>
+ *   <li><code>bastille.cache.snapshot.interval</code>: the interval between snapshots in seconds
+ *   (defaults to 0 to save snapshots only on shutdown).</li>
+ * </ul>
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class CacheSnapshots {
+
+  /** Logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(CacheSnapshots.class);
+
+  /** The default snapshots, created lazily */
+  private static volatile @Nullable CacheSnapshots defaultSnapshots;
+
+  /** Whether the default snapshots have been initialised */
+  private static volatile boolean initialized = false;
+
+  /** The directory for the snapshot files */
+  private final File directory;
+
+  /** The names of the caches to snapshot */
+  private final Set<String> names;
+
+  /** The caches registered so far mapped to their name */
+  private final Map<String, Ehcache> caches = new ConcurrentHashMap<>();
+
+  /** The snapshots being restored mapped to the name of their cache */
+  private final Map<String, CacheSnapshot> snapshots = new ConcurrentHashMap<>();
+
+  /**
+   * Creates new cache snapshots.
+   *
+   * @param directory The directory for the snapshot files
+   * @param names     The names of the caches to snapshot
+   */
+  public CacheSnapshots(File directory, Set<String> names) {
+    this.directory = directory;
+    this.names = names;
+  }
+
+  /**
+   * Returns the default snapshots configured from the global settings.
+   *
+   * @return the default snapshots or <code>null</code> if snapshots are disabled.
+   */
+  public static @Nullable CacheSnapshots getDefault() {
+    if (!initialized) {
+      synchronized (CacheSnapshots.class) {
+        if (!initialized) {
+          defaultSnapshots = newDefault();
+          initialized = true;
+        }
+      }
+    }
+    return defaultSnapshots;
+  }
+
+  /**
+   * Registers the cache with the default snapshots if snapshots are enabled.
+   *
+   * @param cache The cache
+   */
+  public static void register(Ehcache cache) {
+    CacheSnapshots snapshots = getDefault();
+    if (snapshots != null) {
+      snapshots.add(cache);
+    }
+  }
+
+  /**
+   * Adds the cache to these snapshots if it is one of the caches to snapshot.
+   *
+   * <p>The first time a cache is added, its last snapshot is opened so that its entries can be
+   * restored, and its snapshots are saved from then on.
+   *
+   * @param cache The cache
+   */
+  public void add(Ehcache cache) {
+    if (!this.names.contains(cache.getName())) return;
+    if (this.caches.putIfAbsent(cache.getName(), cache) == null) {
+      open(cache);
+    }
+  }
+
+  /**
+   * Restores the entry for the specified key from the snapshot of the cache using the default snapshots.
+   *
+   * @param cache   The cache
+   * @param key     The key of the entry missing from the cache
+   * @param isFresh Whether the entry restored is still fresh
+   *
+   * @return the element put in the cache or <code>null</code> if it could not be restored.
+   */
+  public static @Nullable Element restore(Ehcache cache, String key, Predicate<CacheSnapshot.Entry> isFresh) {
+    CacheSnapshots snapshots = getDefault();
+    return snapshots != null ? snapshots.restoreEntry(cache, key, isFresh) : null;
+  }
+
+  /**
+   * Restores the entry for the specified key from the snapshot of the cache.
+   *
+   * <p>The cache is added to these snapshots if it was not registered already.
+   *
+   * @param cache   The cache
+   * @param key     The key of the entry missing from the cache
+   * @param isFresh Whether the entry restored is still fresh
+   *
+   * @return the element put in the cache or <code>null</code> if it could not be restored.
+   */
+  public @Nullable Element restoreEntry(Ehcache cache, String key, Predicate<CacheSnapshot.Entry> isFresh) {
+    if (!this.names.contains(cache.getName())) return null;
+    add(cache);
+    CacheSnapshot snapshot = this.snapshots.get(cache.getName());
+    if (snapshot == null) return null;
+    try {
+      CacheSnapshot.Entry entry = snapshot.take(key);
+      if (entry == null || !isFresh.test(entry)) return null;
+      Element element = toElement(cache, key, entry);
+      if (element == null) {
+        LOGGER.debug("Ignoring expired {} from snapshot of {}", key, cache.getName());
+        return null;
+      }
+      cache.put(element);
+      LOGGER.debug("Restored {} from snapshot of {}", key, cache.getName());
+      return element;
+    } catch (IOException | RuntimeException ex) {
+      LOGGER.warn("Unable to restore {} from snapshot of {}", key, cache.getName(), ex);
+      return null;
+    }
+  }
+
+  /**
+   * Saves the snapshots of all the registered caches.
+   */
+  public void saveAll() {
+    for (Ehcache cache : this.caches.values()) {
+      if (cache.getStatus() != Status.STATUS_ALIVE) continue;
+      try {
+        long start = System.nanoTime();
+        int count = CacheSnapshot.write(cache, toFile(cache.getName()));
+        LOGGER.info("Saved snapshot of {} with {} entries in {}ms", cache.getName(), count, (System.nanoTime() - start) / 1000000);
+      } catch (IOException | RuntimeException ex) {
+        LOGGER.warn("Unable to save snapshot of {}", cache.getName(), ex);
+      }
+    }
+  }
+
+  /**
+   * @return the number of entries that can still be restored from snapshots.
+   */
+  public int getRestorable() {
+    int count = 0;
+    for (CacheSnapshot snapshot : this.snapshots.values()) {
+      count += snapshot.size();
+    }
+    return count;
+  }
+
+  // Private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Opens the last snapshot of the cache and listens to its events so that entries removed
+   * from the cache are not restored.
+   *
+   * @param cache The cache to open the snapshot of
+   */
+  private void open(Ehcache cache) {
+    File file = toFile(cache.getName());
+    if (file.exists()) {
+      try {
+        CacheSnapshot snapshot = CacheSnapshot.open(file);
+        this.snapshots.put(cache.getName(), snapshot);
+        LOGGER.info("Opened snapshot of {} with {} entries", cache.getName(), snapshot.size());
+      } catch (IOException ex) {
+        LOGGER.warn("Ignoring invalid snapshot of {}", cache.getName(), ex);
+      }
+    }
+    cache.getCacheEventNotificationService().registerListener(new CacheEventListenerAdapter() {
+      @Override
+      public void notifyElementRemoved(Ehcache c, Element element) throws CacheException {
+        CacheSnapshot snapshot = CacheSnapshots.this.snapshots.get(c.getName());
+        if (snapshot != null) {
+          snapshot.discard(element.getObjectKey());
+        }
+      }
+
+      @Override
+      public void notifyRemoveAll(Ehcache c) {
+        CacheSnapshot snapshot = CacheSnapshots.this.snapshots.remove(c.getName());
+        if (snapshot != null) {
+          snapshot.close();
+        }
+      }
+    });
+  }
+
+  /**
+   * Creates the element to restore with the time to live the entry had left.
+   *
+   * @param cache The cache
+   * @param key   The key of the entry
+   * @param entry The entry taken from the snapshot
+   *
+   * @return the element or <code>null</code> if the entry has expired.
+   */
+  private static @Nullable Element toElement(Ehcache cache, String key, CacheSnapshot.Entry entry) {
+    Element element = new Element(key, entry.value());
+    CacheConfiguration config = cache.getCacheConfiguration();
+    long ttl = config.isEternal() ? 0 : config.getTimeToLiveSeconds();
+    if (ttl <= 0) return element;
+    long remaining = ttl - (System.currentTimeMillis() - entry.updated()) / 1000;
+    if (remaining <= 0) return null;
+    element.setTimeToLive((int)Math.min(remaining, Integer.MAX_VALUE));
+    return element;
+  }
+
+  /**
+   * @return the snapshot file for the specified cache.
+   */
+  private File toFile(String name) {
+    return new File(this.directory, name.replaceAll("[^A-Za-z0-9._-]", "_")+".snapshot");
+  }
+
+  /**
+   * Creates the default snapshots from the global settings.
+   *
+   * @return the snapshots or <code>null</code> if they are disabled.
+   */
+  private static @Nullable CacheSnapshots newDefault() {
+    String dir = GlobalSettings.get("bastille.cache.snapshot.dir", "");
+    if (dir.isEmpty()) return null;
+    File directory = new File(dir);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      LOGGER.error("Unable to create snapshot directory {}", directory);
+      return null;
+    }
+    String caches = GlobalSettings.get("bastille.cache.snapshot.caches", "StaticCachingFilter,PSML,PSMLOverview,PSMLProcessed");
+    Set<String> names = new HashSet<>(Arrays.asList(caches.trim().split("\\s*,\\s*")));
+    CacheSnapshots snapshots = new CacheSnapshots(directory, names);
+    Runtime.getRuntime().addShutdownHook(new Thread(snapshots::saveAll, "bastille-cache-snapshot-shutdown"));
+    long interval = 0;
+    try {
+      interval = Long.parseLong(GlobalSettings.get("bastille.cache.snapshot.interval", "0").trim());
+    } catch (NumberFormatException ex) {
+      LOGGER.warn("Invalid snapshot interval, saving snapshots only on shutdown");
+    }
+    if (interval > 0) {
+      ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "bastille-cache-snapshot");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.scheduleWithFixedDelay(snapshots::saveAll, interval, interval, TimeUnit.SECONDS);
+    }
+    LOGGER.info("Cache snapshots enabled in {} for {}", directory, names);
+    return snapshots;
+  }
+
+}
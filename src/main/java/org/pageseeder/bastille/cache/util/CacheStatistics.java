@@ -0,0 +1,303 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.xmlwriter.XMLWritable;
+import org.pageseeder.xmlwriter.XMLWriter;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+
+/**
+ * Low-overhead statistics for a cache.
+ *
+ * <p>Counters are based on {@link LongAdder} so that recording does not contend between threads
+ * and recording is skipped entirely when the statistics are disabled. Statistics are enabled
+ * by default and can be toggled at runtime.
+ *
+ * <p>There is a single instance per cache name, use {@link #forCache(Ehcache)} to get it.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class CacheStatistics implements XMLWritable {
+
+  /** The statistics mapped to the name of their cache. */
+  private static final Map<String, CacheStatistics> STATISTICS = new ConcurrentHashMap<>();
+
+  /** The name of the cache */
+  private final String name;
+
+  /** Whether the statistics are recorded */
+  private volatile boolean enabled = true;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder stale = new LongAdder();
+  private final LongAdder notModified = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+  private final LongAdder bytesServed = new LongAdder();
+  private final LatencyHistogram buildTime = new LatencyHistogram("build");
+  private final LatencyHistogram compressionTime = new LatencyHistogram("compression");
+
+  /**
+   * @param name The name of the cache
+   */
+  private CacheStatistics(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns the statistics for the specified cache, registering them with the cache if necessary
+   * in order to count evictions and expirations.
+   *
+   * @param cache The cache
+   *
+   * @return the statistics for that cache
+   */
+  public static CacheStatistics forCache(Ehcache cache) {
+    CacheStatistics existing = STATISTICS.get(cache.getName());
+    if (existing != null) return existing;
+    return STATISTICS.computeIfAbsent(cache.getName(), name -> {
+      CacheStatistics statistics = new CacheStatistics(name);
+      cache.getCacheEventNotificationService().registerListener(new EvictionListener(statistics));
+      return statistics;
+    });
+  }
+
+  /**
+   * Returns the statistics for the specified cache name, creating them if necessary.
+   *
+   * <p>Unlike {@link #forCache(Ehcache)}, evictions and expirations are not counted automatically,
+   * the cache must record them using {@link #evicted()} and {@link #expired()}.
+   *
+   * @param name The name of the cache
+   *
+   * @return the statistics for that cache
+   */
+  public static CacheStatistics forName(String name) {
+    CacheStatistics existing = STATISTICS.get(name);
+    if (existing != null) return existing;
+    return STATISTICS.computeIfAbsent(name, CacheStatistics::new);
+  }
+
+  /**
+   * Returns the statistics for the specified cache name if any.
+   *
+   * @param name The name of the cache
+   *
+   * @return the statistics or <code>null</code> if no statistics have been recorded for this cache.
+   */
+  public static @Nullable CacheStatistics get(String name) {
+    return STATISTICS.get(name);
+  }
+
+  /**
+   * @return the name of the cache.
+   */
+  public String name() {
+    return this.name;
+  }
+
+  /**
+   * @return <code>true</code> if statistics are recorded.
+   */
+  public boolean isEnabled() {
+    return this.enabled;
+  }
+
+  /**
+   * @param enabled <code>true</code> to record the statistics.
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /** Records a cache hit. */
+  public void hit() {
+    if (this.enabled) this.hits.increment();
+  }
+
+  /** Records a cache miss. */
+  public void miss() {
+    if (this.enabled) this.misses.increment();
+  }
+
+  /** Records an element evicted from the cache. */
+  public void evicted() {
+    if (this.enabled) this.evictions.increment();
+  }
+
+  /** Records an element which has expired. */
+  public void expired() {
+    if (this.enabled) this.expirations.increment();
+  }
+
+  /** Records a stale resource served while it is being rebuilt. */
+  public void stale() {
+    if (this.enabled) this.stale.increment();
+  }
+
+  /** Records a conditional request answered with a 304 from the validators. */
+  public void notModified() {
+    if (this.enabled) this.notModified.increment();
+  }
+
+  /**
+   * @param bytes The number of bytes of content served from the cache.
+   */
+  public void served(long bytes) {
+    if (this.enabled) this.bytesServed.add(bytes);
+  }
+
+  /**
+   * @param nanos The time taken to build a resource in nanoseconds.
+   */
+  public void build(long nanos) {
+    if (this.enabled) this.buildTime.record(nanos);
+  }
+
+  /**
+   * @param nanos The time taken to compress a resource in nanoseconds.
+   */
+  public void compression(long nanos) {
+    if (this.enabled) this.compressionTime.record(nanos);
+  }
+
+  /** @return the number of hits */
+  public long getHits() {
+    return this.hits.sum();
+  }
+
+  /** @return the number of misses */
+  public long getMisses() {
+    return this.misses.sum();
+  }
+
+  /** @return the number of stale resources served */
+  public long getStale() {
+    return this.stale.sum();
+  }
+
+  /** @return the number of conditional requests answered from the validators */
+  public long getNotModified() {
+    return this.notModified.sum();
+  }
+
+  /** @return the number of evictions */
+  public long getEvictions() {
+    return this.evictions.sum();
+  }
+
+  /** @return the number of expirations */
+  public long getExpirations() {
+    return this.expirations.sum();
+  }
+
+  /** @return the number of bytes served */
+  public long getBytesServed() {
+    return this.bytesServed.sum();
+  }
+
+  /** @return the histogram of build times */
+  public LatencyHistogram getBuildTime() {
+    return this.buildTime;
+  }
+
+  /** @return the histogram of compression times */
+  public LatencyHistogram getCompressionTime() {
+    return this.compressionTime;
+  }
+
+  /**
+   * @return the ratio of hits over lookups or 0 if there was no lookup.
+   */
+  public double getHitRatio() {
+    long h = getHits();
+    long total = h + getMisses();
+    return total > 0 ? (double)h / total : 0;
+  }
+
+  /**
+   * Resets all the statistics.
+   */
+  public void reset() {
+    this.hits.reset();
+    this.misses.reset();
+    this.stale.reset();
+    this.notModified.reset();
+    this.evictions.reset();
+    this.expirations.reset();
+    this.bytesServed.reset();
+    this.buildTime.reset();
+    this.compressionTime.reset();
+  }
+
+  @Override
+  public void toXML(XMLWriter xml) throws IOException {
+    xml.openElement("statistics", true);
+    xml.attribute("enabled", Boolean.toString(this.enabled));
+    xml.attribute("hits", Long.toString(getHits()));
+    xml.attribute("misses", Long.toString(getMisses()));
+    xml.attribute("hit-ratio", String.format(Locale.ROOT, "%.4f", getHitRatio()));
+    xml.attribute("stale", Long.toString(getStale()));
+    xml.attribute("not-modified", Long.toString(getNotModified()));
+    xml.attribute("evictions", Long.toString(getEvictions()));
+    xml.attribute("expirations", Long.toString(getExpirations()));
+    xml.attribute("bytes-served", Long.toString(getBytesServed()));
+    this.buildTime.toXML(xml);
+    this.compressionTime.toXML(xml);
+    xml.closeElement();
+  }
+
+  /**
+   * Counts evictions and expirations.
+   */
+  private static final class EvictionListener extends CacheEventListenerAdapter {
+
+    private final CacheStatistics statistics;
+
+    EvictionListener(CacheStatistics statistics) {
+      this.statistics = statistics;
+    }
+
+    @Override
+    public void notifyElementEvicted(Ehcache cache, Element element) {
+      this.statistics.evicted();
+    }
+
+    @Override
+    public void notifyElementExpired(Ehcache cache, Element element) {
+      this.statistics.expired();
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+      throw new CloneNotSupportedException("Statistics are bound to a single cache");
+    }
+  }
+
+}
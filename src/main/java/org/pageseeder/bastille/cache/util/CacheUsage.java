@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListener;
+
+/**
+ * Keeps an exact running total of the number of bytes retained by the keys and values of a cache.
+ *
+ * <p>The size of each element is calculated with {@link ByteSizes} when it is put in the cache, so
+ * values should be strings, byte arrays or implement {@link Sized} as cached resources do; other
+ * values are counted as unsized. The overhead of Ehcache itself is not included.
+ *
+ * <p>The total is kept in a {@link LongAdder} so that it can be reported in constant time, unlike
+ * the samples of the {@link SizeEstimator}. The size of each key is kept so that the total can be
+ * adjusted when an element is replaced or removed.
+ *
+ * <p>There is a single instance per cache, use {@link #forCache(Ehcache)} to get it.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class CacheUsage implements CacheEventListener {
+
+  /** Logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(CacheUsage.class);
+
+  /** The usages mapped to the name of their cache. */
+  private static final Map<String, CacheUsage> USAGES = new ConcurrentHashMap<>();
+
+  /** The size of each key in the cache */
+  private final Map<Object, Long> sizes = new ConcurrentHashMap<>();
+
+  /** The total number of bytes */
+  private final LongAdder bytes = new LongAdder();
+
+  /** The number of elements whose size could not be calculated */
+  private final LongAdder unsized = new LongAdder();
+
+  /**
+   * Creates a usage which is not bound to any cache, use {@link #forCache(Ehcache)} instead.
+   */
+  CacheUsage() {
+  }
+
+  /**
+   * Returns the usage for the specified cache, registering it with the cache if necessary.
+   *
+   * <p>Only elements put after the usage is registered are accounted for.
+   *
+   * @param cache The cache
+   *
+   * @return the corresponding usage
+   */
+  public static CacheUsage forCache(Ehcache cache) {
+    CacheUsage existing = USAGES.get(cache.getName());
+    if (existing != null) return existing;
+    return USAGES.computeIfAbsent(cache.getName(), name -> {
+      CacheUsage usage = new CacheUsage();
+      cache.getCacheEventNotificationService().registerListener(usage);
+      LOGGER.debug("Registered byte accounting for cache {}", name);
+      return usage;
+    });
+  }
+
+  /**
+   * Returns the usage for the specified cache.
+   *
+   * @param name The name of the cache
+   *
+   * @return the usage or <code>null</code> if the cache is not accounted for.
+   */
+  public static @Nullable CacheUsage get(String name) {
+    return USAGES.get(name);
+  }
+
+  /**
+   * @return the number of bytes retained by the keys and values in the cache.
+   */
+  public long getBytes() {
+    return this.bytes.sum();
+  }
+
+  /**
+   * @return the number of elements accounted for.
+   */
+  public int getCount() {
+    return this.sizes.size();
+  }
+
+  /**
+   * @return the number of elements whose size could not be calculated.
+   */
+  public long getUnsized() {
+    return this.unsized.sum();
+  }
+
+  /**
+   * Accounts for the element put in the cache, replacing any previous element with the same key.
+   *
+   * @param key   The key
+   * @param value The value
+   */
+  void add(Object key, @Nullable Object value) {
+    long size = ByteSizes.of(value);
+    boolean sized = size >= 0;
+    long total = (sized ? size : 0) + Math.max(ByteSizes.of(key), 0);
+    long recorded = sized ? total : ~total;
+    Long previous = this.sizes.put(key, recorded);
+    if (previous != null) {
+      adjust(previous, -1);
+    }
+    adjust(recorded, 1);
+  }
+
+  /**
+   * Stops accounting for the element removed from the cache.
+   *
+   * @param key The key
+   */
+  void remove(Object key) {
+    Long previous = this.sizes.remove(key);
+    if (previous != null) {
+      adjust(previous, -1);
+    }
+  }
+
+  /**
+   * Stops accounting for all elements.
+   */
+  void clear() {
+    for (Object key : this.sizes.keySet()) {
+      remove(key);
+    }
+  }
+
+  // Cache events
+  // ----------------------------------------------------------------------------------------------
+
+  @Override
+  public void notifyElementPut(Ehcache cache, Element element) throws CacheException {
+    add(element.getObjectKey(), element.getObjectValue());
+  }
+
+  @Override
+  public void notifyElementUpdated(Ehcache cache, Element element) throws CacheException {
+    add(element.getObjectKey(), element.getObjectValue());
+  }
+
+  @Override
+  public void notifyElementRemoved(Ehcache cache, Element element) throws CacheException {
+    remove(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyElementExpired(Ehcache cache, Element element) {
+    remove(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyElementEvicted(Ehcache cache, Element element) {
+    remove(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyRemoveAll(Ehcache cache) {
+    clear();
+  }
+
+  @Override
+  public void dispose() {
+    clear();
+    USAGES.values().remove(this);
+  }
+
+  @Override
+  public Object clone() throws CloneNotSupportedException {
+    throw new CloneNotSupportedException("Cache usages are bound to a single cache");
+  }
+
+  // Private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Adds or subtracts the recorded size from the totals.
+   *
+   * @param recorded The recorded size, its complement if the value was unsized
+   * @param sign     1 to add, -1 to subtract
+   */
+  private void adjust(long recorded, int sign) {
+    if (recorded < 0) {
+      this.bytes.add(sign * ~recorded);
+      this.unsized.add(sign);
+    } else {
+      this.bytes.add(sign * recorded);
+    }
+  }
+
+}
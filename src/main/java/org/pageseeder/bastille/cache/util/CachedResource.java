@@ -26,11 +26,14 @@ import org.jspecify.annotations.Nullable;
 /**
  * An interface for cached resources.
  *
+ * <p>Cached resources report the number of bytes they retain so that caches can account for
+ * their memory exactly.
+ *
  * @author Christophe Lauret
  *
  * @version Bastille 0.8.3 - 30 January 2013
  */
-public interface CachedResource {
+public interface CachedResource extends Sized {
 
   /**
    * @return the content type of the response.
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A compact binary encoding for cached resources.
+ *
+ * <p>This codec is used to serialize {@link StaticResource} and {@link GenericResource}
+ * instances instead of the default Java serialization, which is used by Ehcache when
+ * overflowing to disk or copying elements. The encoding is versioned and is laid out as follows:
+ * <pre>
+ * resource = version kind status content-type? fields body
+ * static   = last-modified cache-control expires gzipped surrogate-key?
+ * generic  = gzipped header-count (name-code name? type value)*
+ * body     = length bytes
+ * </pre>
+ *
+ * <p>Strings are written as their length followed by their UTF-8 bytes, so that they are not
+ * limited in size. Header names are encoded as a single byte referring to a table of well-known headers, or to
+ * the names already written for the same resource, so that each name is written in full at most
+ * once. Header values are written using their primitive type and the body is written as raw bytes.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class CachedResourceCodec {
+
+  /** The current version of the encoding */
+  public static final int VERSION = 3;
+
+  /**
+   * Well-known header names, the index of each name is part of the format and must not change.
+   */
+  private static final String[] WELL_KNOWN_HEADERS = {
+      "Cache-Control",
+      "Content-Type",
+      "Content-Encoding",
+      "Content-Length",
+      "Content-Language",
+      "Content-Disposition",
+      "ETag",
+      "Expires",
+      "Last-Modified",
+      "Vary",
+      "Pragma",
+      "Set-Cookie",
+      "Location",
+      "Date",
+      "Age",
+      "Link",
+      "X-Content-Type-Options",
+      "Access-Control-Allow-Origin",
+      "Surrogate-Key"
+  };
+
+  /** Lookup table for well-known header names */
+  private static final Map<String, Integer> WELL_KNOWN_CODES = new HashMap<>();
+  static {
+    for (int i = 0; i < WELL_KNOWN_HEADERS.length; i++) {
+      WELL_KNOWN_CODES.put(WELL_KNOWN_HEADERS[i], i);
+    }
+  }
+
+  /** Code indicating that the header name follows in full */
+  private static final int LITERAL_NAME = 0xFF;
+
+  /** Maximum number of names which can be referenced for a single resource */
+  private static final int MAX_NAME_CODES = LITERAL_NAME - WELL_KNOWN_HEADERS.length;
+
+  /** Kind of resource */
+  private static final byte STATIC_RESOURCE = 1;
+
+  /** Kind of resource */
+  private static final byte GENERIC_RESOURCE = 2;
+
+  /** Utility class. */
+  private CachedResourceCodec() {
+  }
+
+  /**
+   * Encodes the specified resource.
+   *
+   * @param resource The resource to encode
+   *
+   * @return the encoded resource
+   *
+   * @throws IOException If the resource could not be encoded
+   */
+  public static byte[] encode(CachedResource resource) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    write(resource, out);
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decodes a resource.
+   *
+   * @param bytes The encoded resource
+   *
+   * @return the decoded resource
+   *
+   * @throws IOException If the resource could not be decoded
+   */
+  public static CachedResource decode(byte[] bytes) throws IOException {
+    return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+  }
+
+  /**
+   * Writes the specified resource.
+   *
+   * @param resource The resource to write
+   * @param out      The data output
+   *
+   * @throws IOException If the resource could not be written or is not supported
+   */
+  public static void write(CachedResource resource, DataOutput out) throws IOException {
+    out.writeByte(VERSION);
+    if (resource instanceof StaticResource) {
+      StaticResource r = (StaticResource)resource;
+      out.writeByte(STATIC_RESOURCE);
+      out.writeInt(r.getStatusCode());
+      writeNullableString(r.getContentType(), out);
+      out.writeLong(r.getLastModified());
+      writeString(r.getCacheControl(), out);
+      out.writeLong(r.getExpires());
+      out.writeBoolean(r.isStoredGzipped());
+      writeNullableString(r.getSurrogateKey(), out);
+      writeBytes(r.getStoredContent(), out);
+    } else if (resource instanceof GenericResource) {
+      GenericResource r = (GenericResource)resource;
+      out.writeByte(GENERIC_RESOURCE);
+      out.writeInt(r.getStatusCode());
+      writeNullableString(r.getContentType(), out);
+      out.writeBoolean(r.isStoredGzipped());
+      writeHeaders(r.getHeaders(false), out);
+      writeBytes(r.getStoredContent(), out);
+    } else throw new IOException("Unsupported resource type: "+resource.getClass().getName());
+  }
+
+  /**
+   * Reads a resource.
+   *
+   * @param in The data input
+   *
+   * @return the resource
+   *
+   * @throws IOException If the resource could not be read
+   */
+  public static CachedResource read(DataInput in) throws IOException {
+    int version = in.readUnsignedByte();
+    if (version != VERSION) throw new StreamCorruptedException("Unsupported cached resource version "+version);
+    int kind = in.readByte();
+    int status = in.readInt();
+    String contentType = readNullableString(in);
+    if (kind == STATIC_RESOURCE) {
+      long lastModified = in.readLong();
+      String cacheControl = readString(in);
+      long expires = in.readLong();
+      boolean gzipped = in.readBoolean();
+      String surrogateKey = readNullableString(in);
+      byte[] content = readBytes(in);
+      return new StaticResource(status, contentType, content, gzipped, lastModified, cacheControl, expires, surrogateKey);
+    } else if (kind == GENERIC_RESOURCE) {
+      boolean gzipped = in.readBoolean();
+      List<HttpHeader<? extends Serializable>> headers = readHeaders(in);
+      byte[] content = readBytes(in);
+      return new GenericResource(status, contentType, gzipped, content, headers);
+    } else throw new StreamCorruptedException("Unknown cached resource kind "+kind);
+  }
+
+  // private helpers
+  // ---------------------------------------------------------------------------------------------
+
+  private static void writeHeaders(List<HttpHeader<? extends Serializable>> headers, DataOutput out) throws IOException {
+    out.writeShort(headers.size());
+    Map<String, Integer> names = new HashMap<>();
+    for (HttpHeader<? extends Serializable> header : headers) {
+      String name = header.name();
+      Integer code = WELL_KNOWN_CODES.get(name);
+      if (code == null) {
+        code = names.get(name);
+      }
+      if (code != null) {
+        out.writeByte(code);
+      } else {
+        out.writeByte(LITERAL_NAME);
+        writeString(name, out);
+        if (names.size() < MAX_NAME_CODES) {
+          names.put(name, WELL_KNOWN_HEADERS.length + names.size());
+        }
+      }
+      out.writeByte(header.type().ordinal());
+      switch (header.type()) {
+        case STRING:
+          writeString((String)header.value(), out);
+          break;
+        case DATE:
+          out.writeLong((Long)header.value());
+          break;
+        case INT:
+          out.writeInt((Integer)header.value());
+          break;
+        default:
+          throw new IOException("No mapping for Header: " + header);
+      }
+    }
+  }
+
+  private static List<HttpHeader<? extends Serializable>> readHeaders(DataInput in) throws IOException {
+    int count = in.readUnsignedShort();
+    List<HttpHeader<? extends Serializable>> headers = new ArrayList<>(count);
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      int code = in.readUnsignedByte();
+      String name;
+      if (code == LITERAL_NAME) {
+        name = readString(in);
+        if (names.size() < MAX_NAME_CODES) {
+          names.add(name);
+        }
+      } else if (code < WELL_KNOWN_HEADERS.length) {
+        name = WELL_KNOWN_HEADERS[code];
+      } else if (code - WELL_KNOWN_HEADERS.length < names.size()) {
+        name = names.get(code - WELL_KNOWN_HEADERS.length);
+      } else throw new StreamCorruptedException("Invalid header name code "+code);
+      int type = in.readUnsignedByte();
+      if (type == HttpHeader.Type.STRING.ordinal()) {
+        headers.add(new HttpHeader<>(name, readString(in)));
+      } else if (type == HttpHeader.Type.DATE.ordinal()) {
+        headers.add(new HttpHeader<>(name, in.readLong()));
+      } else if (type == HttpHeader.Type.INT.ordinal()) {
+        headers.add(new HttpHeader<>(name, in.readInt()));
+      } else throw new StreamCorruptedException("Invalid header type "+type);
+    }
+    return headers;
+  }
+
+  private static void writeNullableString(@Nullable String s, DataOutput out) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) {
+      writeString(s, out);
+    }
+  }
+
+  private static @Nullable String readNullableString(DataInput in) throws IOException {
+    return in.readBoolean() ? readString(in) : null;
+  }
+
+  /**
+   * Writes the string as length-prefixed UTF-8 since modified UTF-8 is limited to 64KB.
+   */
+  private static void writeString(String s, DataOutput out) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) throw new StreamCorruptedException("Invalid string length "+length);
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeBytes(byte @Nullable[] bytes, DataOutput out) throws IOException {
+    if (bytes == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static byte @Nullable[] readBytes(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) return null;
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Serialization proxy for cached resources using the {@link CachedResourceCodec}.
+ *
+ * <p>Resources are replaced by this proxy when serialized and the proxy is resolved back into
+ * the resource when deserialized, so that Java serialization only writes the class descriptor
+ * of this proxy followed by the compact encoding.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+final class CachedResourceProxy implements Externalizable {
+
+  /** As per requirement for <code>Serializable</code> */
+  private static final long serialVersionUID = 1L;
+
+  /** The resource */
+  private @Nullable CachedResource resource;
+
+  /**
+   * Required for <code>Externalizable</code>.
+   */
+  public CachedResourceProxy() {
+  }
+
+  /**
+   * @param resource The resource to serialize
+   */
+  CachedResourceProxy(CachedResource resource) {
+    this.resource = resource;
+  }
+
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    CachedResource r = this.resource;
+    if (r == null) throw new IOException("No resource to serialize");
+    CachedResourceCodec.write(r, out);
+  }
+
+  @Override
+  public void readExternal(ObjectInput in) throws IOException {
+    this.resource = CachedResourceCodec.read(in);
+  }
+
+  /**
+   * @return the deserialized resource.
+   */
+  private Object readResolve() {
+    return this.resource;
+  }
+
+}
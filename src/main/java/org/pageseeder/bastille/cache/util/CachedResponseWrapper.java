@@ -336,10 +336,7 @@ public final class CachedResponseWrapper extends HttpServletResponseWrapper {
     if (values != null && !values.isEmpty()) {
       Serializable value = values.get(0);
       if (value instanceof Long) return (Long)value;
-      else if (value instanceof String) {
-        // XXX: Not great, we should look into making it
-        new HttpDateFormat().parse((String)value);
-      }
+      else if (value instanceof String) return HttpDates.parse((String)value);
     }
     return -1;
   }
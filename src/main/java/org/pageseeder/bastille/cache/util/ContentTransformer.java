@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.IOException;
+
+/**
+ * A transformation applied to the body of a resource before it is cached.
+ *
+ * <p>Transformers are invoked once when the cached resource is built, so that the result is
+ * stored in the cache and served for all subsequent requests until the resource changes.
+ *
+ * <p>Implementations must be thread-safe and should return the content unchanged rather than
+ * fail if they are unable to process it.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public interface ContentTransformer {
+
+  /**
+   * Transforms the specified content.
+   *
+   * @param content     The raw (ungzipped) content of the resource
+   * @param contentType The content type of the resource, may include parameters such as the charset.
+   *
+   * @return the transformed content.
+   *
+   * @throws IOException If the content could not be transformed.
+   */
+  byte[] transform(byte[] content, String contentType) throws IOException;
+
+}
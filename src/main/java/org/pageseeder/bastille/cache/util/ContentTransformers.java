@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An immutable set of content transformers mapped to the media types they apply to.
+ *
+ * <p>The configuration is a list of media types separated by commas or whitespace. Each
+ * media type may optionally specify the class name of the {@link ContentTransformer} to use,
+ * otherwise the built-in minifier for the media type is used:
+ * <pre>
+ * text/css, application/javascript, image/svg+xml=com.example.SVGOptimizer
+ * </pre>
+ *
+ * <p>The built-in minifiers are available for <code>text/css</code>,
+ * <code>application/javascript</code>, <code>text/javascript</code> and
+ * <code>application/x-javascript</code>.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class ContentTransformers {
+
+  /** Where useful debug info goes. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(ContentTransformers.class);
+
+  /**
+   * No transformation.
+   */
+  public static final ContentTransformers NONE = new ContentTransformers(Collections.emptyMap());
+
+  /**
+   * Transformers mapped to the media types.
+   */
+  private final Map<String, ContentTransformer> transformers;
+
+  /**
+   * @param transformers The transformers mapped to their media type.
+   */
+  private ContentTransformers(Map<String, ContentTransformer> transformers) {
+    this.transformers = transformers;
+  }
+
+  /**
+   * Returns the content transformers for the specified configuration.
+   *
+   * @param config The list of media types (and optional class names) to transform
+   *
+   * @return the corresponding transformers
+   */
+  public static ContentTransformers parse(@Nullable String config) {
+    if (config == null || config.trim().isEmpty()) return NONE;
+    Map<String, ContentTransformer> transformers = new HashMap<>();
+    for (String entry : config.trim().split("[,\\s]+")) {
+      int equals = entry.indexOf('=');
+      String mediaType = normalize(equals > 0 ? entry.substring(0, equals) : entry);
+      ContentTransformer transformer = equals > 0 ? newInstance(entry.substring(equals+1)) : builtin(mediaType);
+      if (transformer != null) {
+        transformers.put(mediaType, transformer);
+      } else {
+        LOGGER.warn("No content transformer available for {}, ignoring", entry);
+      }
+    }
+    return transformers.isEmpty() ? NONE : new ContentTransformers(Collections.unmodifiableMap(transformers));
+  }
+
+  /**
+   * Indicates whether a transformer applies to the specified content type.
+   *
+   * @param contentType The content type of the resource
+   *
+   * @return <code>true</code> if content of that type would be transformed;
+   *         <code>false</code> otherwise.
+   */
+  public boolean isTransformable(@Nullable String contentType) {
+    return contentType != null && this.transformers.containsKey(normalize(contentType));
+  }
+
+  /**
+   * Transforms the content using the transformer for the specified content type.
+   *
+   * <p>This method returns the content unchanged if there is no transformer for the content
+   * type, if the content is already gzipped or if the transformation fails.
+   *
+   * @param content     The content to transform
+   * @param contentType The content type of the resource
+   *
+   * @return the transformed content or the original content.
+   */
+  public byte[] transform(byte[] content, @Nullable String contentType) {
+    if (contentType == null || this.transformers.isEmpty() || GZIPUtils.isGzipped(content)) return content;
+    ContentTransformer transformer = this.transformers.get(normalize(contentType));
+    if (transformer == null) return content;
+    try {
+      return transformer.transform(content, contentType);
+    } catch (IOException | RuntimeException ex) {
+      LOGGER.warn("Unable to transform content of type {}: {}", contentType, ex.getMessage());
+      return content;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return this.transformers.keySet().toString();
+  }
+
+  // private helpers
+  // ---------------------------------------------------------------------------------------------
+
+  /**
+   * Removes the parameters of the content type and converts it to lower case.
+   *
+   * @param contentType The content type
+   *
+   * @return the media type.
+   */
+  private static String normalize(String contentType) {
+    int semicolon = contentType.indexOf(';');
+    String mediaType = semicolon >= 0 ? contentType.substring(0, semicolon) : contentType;
+    return mediaType.trim().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * @param mediaType The media type
+   * @return the built-in transformer for the specified media type or <code>null</code>.
+   */
+  private static @Nullable ContentTransformer builtin(String mediaType) {
+    switch (mediaType) {
+      case "text/css":
+        return new CSSMinifier();
+      case "application/javascript":
+      case "application/x-javascript":
+      case "text/javascript":
+        return new JSMinifier();
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * @param className The name of the class implementing <code>ContentTransformer</code>
+   * @return a new instance or <code>null</code> if it could not be instantiated
+   */
+  private static @Nullable ContentTransformer newInstance(String className) {
+    try {
+      Class<?> type = Class.forName(className);
+      return (ContentTransformer)type.getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | ClassCastException ex) {
+      LOGGER.warn("Unable to instantiate content transformer {}", className, ex);
+      return null;
+    }
+  }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A probabilistic estimate of how often keys have been accessed recently.
+ *
+ * <p>This is a count-min sketch with four 4-bit counters per key, so frequencies saturate at 15.
+ * To keep the estimates recent, all the counters are halved once the number of increments
+ * reaches ten times the number of counters per row.
+ *
+ * <p>Updates are lock-free; concurrent updates may occasionally be lost during a reset, which
+ * does not matter for a frequency estimate.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class FrequencySketch {
+
+  /** Seeds for the four hash functions */
+  private static final long[] SEEDS = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+  };
+
+  /** Mask to halve the 16 counters in a long */
+  private static final long RESET_MASK = 0x7777777777777777L;
+
+  /** The maximum value of a counter */
+  private static final int MAX_COUNT = 15;
+
+  /** The counters, 16 per long */
+  private final AtomicLongArray table;
+
+  /** The mask for the index in the table */
+  private final int tableMask;
+
+  /** The number of increments before the counters are halved */
+  private final int sampleSize;
+
+  /** The number of increments since the last reset */
+  private final AtomicInteger size = new AtomicInteger();
+
+  /**
+   * Creates a new sketch.
+   *
+   * @param capacity The expected number of distinct keys in the cache
+   */
+  public FrequencySketch(long capacity) {
+    int length = Integer.highestOneBit((int)Math.max(16, Math.min(capacity, 1 << 24)) - 1) << 1;
+    this.table = new AtomicLongArray(length);
+    this.tableMask = length - 1;
+    this.sampleSize = 10 * length;
+  }
+
+  /**
+   * Increments the frequency of the specified key.
+   *
+   * @param key The key accessed
+   */
+  public void increment(Object key) {
+    int hash = spread(key.hashCode());
+    int start = (hash & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(hash, i), start + i);
+    }
+    if (added && this.size.incrementAndGet() == this.sampleSize) {
+      reset();
+    }
+  }
+
+  /**
+   * Returns the estimated frequency of the specified key.
+   *
+   * @param key The key
+   *
+   * @return the frequency between 0 and 15
+   */
+  public int frequency(Object key) {
+    int hash = spread(key.hashCode());
+    int start = (hash & 3) << 2;
+    int frequency = MAX_COUNT;
+    for (int i = 0; i < 4; i++) {
+      int shift = (start + i) << 2;
+      int count = (int)((this.table.get(indexOf(hash, i)) >>> shift) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /**
+   * Halves all the counters.
+   */
+  void reset() {
+    for (int i = 0; i < this.table.length(); i++) {
+      this.table.getAndUpdate(i, v -> (v >>> 1) & RESET_MASK);
+    }
+    this.size.addAndGet(-this.sampleSize / 2);
+  }
+
+  /**
+   * Increments the counter at the specified position unless it is saturated.
+   *
+   * @param index   The index of the long in the table
+   * @param counter The counter in the long (0 to 15)
+   *
+   * @return <code>true</code> if the counter was incremented
+   */
+  private boolean incrementAt(int index, int counter) {
+    int shift = counter << 2;
+    long mask = 0xfL << shift;
+    long current;
+    do {
+      current = this.table.get(index);
+      if ((current & mask) == mask) return false;
+    } while (!this.table.compareAndSet(index, current, current + (1L << shift)));
+    return true;
+  }
+
+  /**
+   * Returns the table index for the specified hash and row.
+   */
+  private int indexOf(int hash, int row) {
+    long h = (hash + SEEDS[row]) * SEEDS[row];
+    h += h >>> 32;
+    return ((int)h) & this.tableMask;
+  }
+
+  /**
+   * Applies a supplemental hash function to the hash code.
+   */
+  private static int spread(int x) {
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    return (x >>> 16) ^ x;
+  }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jspecify.annotations.Nullable;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListener;
+import net.sf.ehcache.store.Policy;
+
+/**
+ * A cost-aware eviction policy for Ehcache implementing GreedyDual-Size-Frequency (GDSF).
+ *
+ * <p>Each element is given a priority:
+ * <pre>priority = clock + frequency * cost / size</pre>
+ * where the cost is the time it took to build the resource, the size is its retained size in bytes
+ * (see {@link Sized#getRetainedSize()}) and the frequency is the number of times it was requested
+ * since it was cached. When the cache is full,
+ * Ehcache samples elements and the one with the lowest priority is evicted; the clock is then
+ * raised to the priority of the victim so that elements which have not been accessed for a while
+ * age out even if they were expensive to build.
+ *
+ * <p>Elements which are slow to build, small and popular are therefore kept over elements which
+ * are cheap to rebuild, which minimises the total build time rather than the number of misses.
+ *
+ * <p>The cost of each resource must be recorded with {@link #record(Object, long, long)} when it
+ * is built and {@link #touch(Object)} should be called when it is served from the cache. Elements
+ * whose cost is unknown, for example because they were restored from a snapshot, have the lowest
+ * priority. The policy must be registered as a listener of the cache so that costs are discarded
+ * with the elements.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class GDSFPolicy implements Policy, CacheEventListener {
+
+  /** The name of this policy */
+  public static final String NAME = "GDSF";
+
+  /**
+   * The number of bytes added to the size of each resource to account for its key and element.
+   */
+  private static final long OVERHEAD = 256;
+
+  /** The cost of each key in the cache. */
+  private final Map<Object, Cost> costs = new ConcurrentHashMap<>();
+
+  /** The bits of the clock, it only ever increases. */
+  private final AtomicLong clock = new AtomicLong(Double.doubleToLongBits(0));
+
+  /**
+   * Records the cost of the resource which has just been built.
+   *
+   * @param key   The key of the resource
+   * @param nanos The time it took to build the resource in nanoseconds
+   * @param size  The retained size of the resource in bytes
+   */
+  public void record(Object key, long nanos, long size) {
+    this.costs.put(key, new Cost(getClock(), (double)Math.max(nanos, 0) / (Math.max(size, 0) + OVERHEAD)));
+  }
+
+  /**
+   * Resets the age of the resource when it is served from the cache.
+   *
+   * @param key The key of the resource
+   */
+  public void touch(Object key) {
+    double now = getClock();
+    this.costs.computeIfPresent(key, (k, cost) -> cost.base < now ? new Cost(now, cost.costPerByte) : cost);
+  }
+
+  /**
+   * @return the current value of the clock.
+   */
+  public double getClock() {
+    return Double.longBitsToDouble(this.clock.get());
+  }
+
+  /**
+   * @return the number of keys whose cost is known.
+   */
+  public int size() {
+    return this.costs.size();
+  }
+
+  /**
+   * Returns the priority of the specified key; the key with the lowest priority should be evicted first.
+   *
+   * @param key       The key
+   * @param frequency The number of times it was requested
+   *
+   * @return the priority of the key
+   */
+  double priority(Object key, long frequency) {
+    Cost cost = this.costs.get(key);
+    if (cost == null) return getClock();
+    return cost.base + Math.max(frequency, 1) * cost.costPerByte;
+  }
+
+  /**
+   * Raises the clock to the specified value if it is higher.
+   *
+   * @param value The priority of the element evicted
+   */
+  void inflate(double value) {
+    long bits = this.clock.get();
+    while (value > Double.longBitsToDouble(bits) && !this.clock.compareAndSet(bits, Double.doubleToLongBits(value))) {
+      bits = this.clock.get();
+    }
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public @Nullable Element selectedBasedOnPolicy(Element[] sampledElements, @Nullable Element justAdded) {
+    Element victim = null;
+    double lowest = Double.MAX_VALUE;
+    for (Element element : sampledElements) {
+      if (element == null || element == justAdded) continue;
+      double priority = priority(element);
+      if (priority < lowest) {
+        victim = element;
+        lowest = priority;
+      }
+    }
+    if (victim != null) {
+      inflate(lowest);
+    }
+    return victim;
+  }
+
+  @Override
+  public boolean compare(Element element1, Element element2) {
+    return priority(element2) < priority(element1);
+  }
+
+  // Cache events
+  // ----------------------------------------------------------------------------------------------
+
+  @Override
+  public void notifyElementPut(Ehcache cache, Element element) throws CacheException {
+  }
+
+  @Override
+  public void notifyElementUpdated(Ehcache cache, Element element) throws CacheException {
+  }
+
+  @Override
+  public void notifyElementRemoved(Ehcache cache, Element element) throws CacheException {
+    this.costs.remove(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyElementExpired(Ehcache cache, Element element) {
+    this.costs.remove(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyElementEvicted(Ehcache cache, Element element) {
+    this.costs.remove(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyRemoveAll(Ehcache cache) {
+    this.costs.clear();
+  }
+
+  @Override
+  public void dispose() {
+    this.costs.clear();
+  }
+
+  @Override
+  public Object clone() throws CloneNotSupportedException {
+    throw new CloneNotSupportedException("GDSF policies are bound to a single cache");
+  }
+
+  // Private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * @param element The element
+   * @return the priority of the element using its hit count as frequency
+   */
+  private double priority(Element element) {
+    return priority(element.getObjectKey(), element.getHitCount() + 1);
+  }
+
+  /**
+   * The cost of a resource.
+   */
+  private static final class Cost {
+
+    /** The value of the clock when the resource was last built or accessed. */
+    final double base;
+
+    /** The time it took to build the resource per byte. */
+    final double costPerByte;
+
+    Cost(double base, double costPerByte) {
+      this.base = base;
+      this.costPerByte = costPerByte;
+    }
+  }
+
+}
@@ -16,11 +16,12 @@
 package org.pageseeder.bastille.cache.util;
 
 import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.TreeSet;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -72,6 +73,21 @@ public final class GenericResource implements Serializable, CachedResource {
    */
   private final int status;
 
+  /**
+   * The headers to send with the raw content.
+   */
+  private final transient HeaderBlock identityHeaders;
+
+  /**
+   * The headers to send with the gzipped content.
+   */
+  private final transient HeaderBlock gzipHeaders;
+
+  /**
+   * The number of bytes retained by this resource.
+   */
+  private final transient long retainedSize;
+
   /**
    * Creates a PageInfo object representing the "page".
    *
@@ -85,11 +101,35 @@ public final class GenericResource implements Serializable, CachedResource {
    */
   public GenericResource(int status, @Nullable String contentType, byte[] body,
       boolean storeGzipped, Collection<HttpHeader<? extends Serializable>> headers) {
+    this(status, contentType, storeGzipped, toStorableContent(body, storeGzipped, headers), headers);
+  }
+
+  /**
+   * Creates a generic resource from content which is already in its stored form.
+   *
+   * @param status       The HTTP status code of the response
+   * @param contentType  The content type
+   * @param storeGzipped Whether the stored content is gzipped
+   * @param content      The stored content
+   * @param headers      The headers for this cached resource.
+   */
+  GenericResource(int status, @Nullable String contentType, boolean storeGzipped,
+      byte @Nullable [] content, Collection<HttpHeader<? extends Serializable>> headers) {
     this.headers.addAll(headers);
     this.contentType = contentType;
     this.storeGzipped = storeGzipped;
     this.status = status;
-    this.content = toStorableContent(body, storeGzipped, headers);
+    this.content = content;
+    this.identityHeaders = toHeaderBlock(this.headers, false);
+    this.gzipHeaders = toHeaderBlock(this.headers, true);
+    this.retainedSize = ByteSizes.align(ByteSizes.OBJECT_HEADER + 5 * ByteSizes.REFERENCE + 1 + 4 + 8)
+        + ByteSizes.of(this.headers) + ByteSizes.of(content) + ByteSizes.of(contentType)
+        + this.identityHeaders.getRetainedSize() + this.gzipHeaders.getRetainedSize();
+  }
+
+  @Override
+  public long getRetainedSize() {
+    return this.retainedSize;
   }
 
   /**
@@ -215,41 +255,70 @@ public final class GenericResource implements Serializable, CachedResource {
    */
   @Override
   public void copyHeadersTo(HttpServletResponse res, boolean gzipped) {
-    // Track which headers have been set so all headers of the same name after the first are added
-    Collection<String> setHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
-    for (HttpHeader<? extends Serializable> header : this.headers) {
-      String name = header.name();
-      switch (header.type()) {
-        case STRING:
-          applyStringHeader(res, name, (String) header.value(), setHeaders, gzipped);
-          break;
-        case DATE:
-          if (setHeaders.contains(name)) res.addDateHeader(name, (Long) header.value());
-          else { setHeaders.add(name); res.setDateHeader(name, (Long) header.value()); }
-          break;
-        case INT:
-          if (setHeaders.contains(name)) res.addIntHeader(name, (Integer) header.value());
-          else { setHeaders.add(name); res.setIntHeader(name, (Integer) header.value()); }
-          break;
-        default:
-          throw new IllegalArgumentException("No mapping for Header: " + header);
-      }
-    }
+    (gzipped ? this.gzipHeaders : this.identityHeaders).writeTo(res);
   }
 
-  private void applyStringHeader(HttpServletResponse res, String name, String value,
-      Collection<String> setHeaders, boolean gzipped) {
-    if (setHeaders.contains(name)) {
-      res.addHeader(name, "etag".equalsIgnoreCase(name) ? adjustEtag(value, gzipped) : value);
-    } else {
-      setHeaders.add(name);
-      res.setHeader(name, value);
-    }
+  /**
+   * @return the content as stored (gzipped if stored gzipped).
+   */
+  byte @Nullable [] getStoredContent() {
+    return this.content;
+  }
+
+  /**
+   * @return <code>true</code> if the content is stored gzipped.
+   */
+  boolean isStoredGzipped() {
+    return this.storeGzipped;
   }
 
   // private helpers
   // ---------------------------------------------------------------------------------------------
 
+  /**
+   * Serializes this resource using the {@link CachedResourceCodec}.
+   *
+   * @return the serialization proxy
+   */
+  private Object writeReplace() {
+    return new CachedResourceProxy(this);
+  }
+
+  /**
+   * Generic resources are always serialized through their proxy.
+   *
+   * @param in The object input stream
+   *
+   * @throws InvalidObjectException Always
+   */
+  private void readObject(ObjectInputStream in) throws InvalidObjectException {
+    throw new InvalidObjectException("Serialization proxy required");
+  }
+
+  /**
+   * Precomputes the headers for the specified variant.
+   *
+   * <p>All headers with the same name after the first are added and the etag of added headers
+   * is adjusted for the variant.
+   *
+   * @param headers The headers of the resource
+   * @param gzipped <code>true</code> for the gzipped variant.
+   *
+   * @return the corresponding header block
+   */
+  private static HeaderBlock toHeaderBlock(List<HttpHeader<? extends Serializable>> headers, boolean gzipped) {
+    HeaderBlock.Builder block = new HeaderBlock.Builder();
+    for (HttpHeader<? extends Serializable> header : headers) {
+      String name = header.name();
+      String value = HeaderBlock.format(header);
+      if (header.type() == Type.STRING && block.contains(name) && "etag".equalsIgnoreCase(name)) {
+        value = adjustEtag(value, gzipped);
+      }
+      block.header(name, value);
+    }
+    return block.build();
+  }
+
   /**
    * Returns the content to store in this class.
    *
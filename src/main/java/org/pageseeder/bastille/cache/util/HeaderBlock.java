@@ -0,0 +1,212 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * An immutable block of HTTP response headers ready to be written.
+ *
+ * <p>Header values are formatted once when the block is created, including dates, so that
+ * writing the headers to the response is a simple loop over <code>setHeader</code> and
+ * <code>addHeader</code> calls. Header names are interned.
+ *
+ * <p>As per the servlet API, the first header with a given name (case insensitive) is set,
+ * subsequent headers with the same name are added.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class HeaderBlock {
+
+  /** An empty header block */
+  public static final HeaderBlock EMPTY = new HeaderBlock(new String[0], new String[0], new boolean[0]);
+
+  /** The header names */
+  private final String[] names;
+
+  /** The header values */
+  private final String[] values;
+
+  /** Whether each header should be added rather than set */
+  private final boolean[] added;
+
+  /**
+   * @param names  The header names
+   * @param values The header values
+   * @param added  Whether each header should be added rather than set
+   */
+  private HeaderBlock(String[] names, String[] values, boolean[] added) {
+    this.names = names;
+    this.values = values;
+    this.added = added;
+  }
+
+  /**
+   * Writes the headers to the HTTP servlet response.
+   *
+   * @param res The HTTP servlet response
+   */
+  public void writeTo(HttpServletResponse res) {
+    for (int i = 0; i < this.names.length; i++) {
+      if (this.added[i]) {
+        res.addHeader(this.names[i], this.values[i]);
+      } else {
+        res.setHeader(this.names[i], this.values[i]);
+      }
+    }
+  }
+
+  /**
+   * @return the number of headers in this block.
+   */
+  public int size() {
+    return this.names.length;
+  }
+
+  /**
+   * @param index The index of the header
+   * @return the name of the header at the specified index.
+   */
+  public String name(int index) {
+    return this.names[index];
+  }
+
+  /**
+   * @param index The index of the header
+   * @return the formatted value of the header at the specified index.
+   */
+  public String value(int index) {
+    return this.values[index];
+  }
+
+  /**
+   * Returns the number of bytes retained by this block; the names are interned so they are not included.
+   *
+   * @return the retained size in bytes
+   */
+  public long getRetainedSize() {
+    return ByteSizes.align(ByteSizes.OBJECT_HEADER + 3 * ByteSizes.REFERENCE)
+        + ByteSizes.array(this.names.length, ByteSizes.REFERENCE)
+        + ByteSizes.of(this.values)
+        + ByteSizes.array(this.added.length, 1);
+  }
+
+  /**
+   * Formats a header value as it would be written by the servlet container.
+   *
+   * @param header The header
+   * @return the value as a string
+   */
+  public static String format(HttpHeader<? extends Serializable> header) {
+    switch (header.type()) {
+      case DATE:
+        return formatDate((Long)header.value());
+      case STRING:
+      case INT:
+        return header.value().toString();
+      default:
+        throw new IllegalArgumentException("No mapping for Header: " + header);
+    }
+  }
+
+  /**
+   * Formats an HTTP date.
+   *
+   * @param date The date in milliseconds since the epoch
+   * @return the date formatted as per RFC 2616
+   */
+  public static String formatDate(long date) {
+    return HttpDates.format(date);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder s = new StringBuilder();
+    for (int i = 0; i < this.names.length; i++) {
+      s.append(this.names[i]).append(": ").append(this.values[i]).append('\n');
+    }
+    return s.toString();
+  }
+
+  /**
+   * A builder for header blocks.
+   */
+  public static final class Builder {
+
+    private final List<String> names = new ArrayList<>();
+    private final List<String> values = new ArrayList<>();
+    private final List<Boolean> added = new ArrayList<>();
+    private final Collection<String> seen = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    /**
+     * Appends a header; if a header with the same name was already appended, it is added.
+     *
+     * @param name  The header name
+     * @param value The header value
+     * @return this builder
+     */
+    public Builder header(String name, String value) {
+      boolean isAdded = !this.seen.add(name);
+      this.names.add(name.intern());
+      this.values.add(value);
+      this.added.add(isAdded);
+      return this;
+    }
+
+    /**
+     * Appends a date header.
+     *
+     * @param name The header name
+     * @param date The date in milliseconds since the epoch
+     * @return this builder
+     */
+    public Builder dateHeader(String name, long date) {
+      return header(name, formatDate(date));
+    }
+
+    /**
+     * Indicates whether a header with the specified name has already been appended.
+     *
+     * @param name The header name (case insensitive)
+     * @return <code>true</code> if already appended
+     */
+    public boolean contains(String name) {
+      return this.seen.contains(name);
+    }
+
+    /**
+     * @return a new header block
+     */
+    public HeaderBlock build() {
+      int size = this.names.size();
+      if (size == 0) return EMPTY;
+      boolean[] a = new boolean[size];
+      for (int i = 0; i < size; i++) {
+        a[i] = this.added.get(i);
+      }
+      return new HeaderBlock(this.names.toArray(new String[size]), this.values.toArray(new String[size]), a);
+    }
+  }
+
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.xmlwriter.XMLWritable;
+import org.pageseeder.xmlwriter.XMLWriter;
+
+/**
+ * Tracks the hottest keys of a cache over a sliding time window using the Space-Saving algorithm.
+ *
+ * <p>For each metric, a fixed number of counters is kept: a key which is not counted replaces the
+ * key with the lowest count and inherits its count as its error. Any key whose actual count is
+ * higher than the lowest count is therefore guaranteed to be tracked, and the count of a tracked
+ * key overestimates its actual count by at most its error.
+ *
+ * <p>The window is divided into {@link #SLICES} slices, each with its own counters: counters of the
+ * oldest slice are discarded as time passes and the counters of the slices in the window are added
+ * up when the top keys are requested.
+ *
+ * <p>Recording an access is synchronized but only updates a few counters.
+ *
+ * <p>There is a single tracker per cache name, use {@link #forName(String, int, long)} to get it.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class HeavyHitters implements XMLWritable {
+
+  /**
+   * What the keys are ranked by.
+   */
+  public enum Metric {
+
+    /** The number of times the resource was requested */
+    REQUESTS,
+
+    /** The number of bytes served */
+    BYTES,
+
+    /** The time spent building the resource in nanoseconds */
+    BUILD_TIME;
+
+    /**
+     * @return the name of the metric in lower case with dashes (e.g. "build-time")
+     */
+    public String label() {
+      return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    /**
+     * Returns the metric corresponding to the specified name.
+     *
+     * @param name the name of the metric in lower case with dashes (e.g. "build-time")
+     *
+     * @return the corresponding metric or <code>null</code>
+     */
+    public static @Nullable Metric forName(String name) {
+      for (Metric metric : values()) {
+        if (metric.label().equals(name)) return metric;
+      }
+      return null;
+    }
+  }
+
+  /** The number of slices in the window */
+  public static final int SLICES = 5;
+
+  /** The default window in milliseconds */
+  public static final long DEFAULT_WINDOW = 5 * 60 * 1000L;
+
+  /** The number of keys written by {@link #toXML(XMLWriter)} for each metric */
+  private static final int DEFAULT_TOP = 10;
+
+  /** The trackers mapped to the name of their cache. */
+  private static final Map<String, HeavyHitters> TRACKERS = new ConcurrentHashMap<>();
+
+  /** The name of the cache */
+  private final String name;
+
+  /** The number of counters per metric and slice */
+  private final int capacity;
+
+  /** The duration of a slice in milliseconds */
+  private final long slice;
+
+  /** The slices of the window, indexed by epoch modulo the number of slices */
+  private final Slice[] slices = new Slice[SLICES];
+
+  /**
+   * Creates a new tracker.
+   *
+   * @param name     The name of the cache
+   * @param capacity The number of counters per metric and slice
+   * @param window   The duration of the window in milliseconds
+   */
+  public HeavyHitters(String name, int capacity, long window) {
+    this.name = name;
+    this.capacity = Math.max(capacity, 1);
+    this.slice = Math.max(window / SLICES, 1);
+    for (int i = 0; i < SLICES; i++) {
+      this.slices[i] = new Slice();
+    }
+  }
+
+  /**
+   * Returns the tracker for the specified cache name, creating it if necessary.
+   *
+   * @param name     The name of the cache
+   * @param capacity The number of counters per metric and slice if the tracker is created
+   * @param window   The duration of the window in milliseconds if the tracker is created
+   *
+   * @return the tracker for that cache
+   */
+  public static HeavyHitters forName(String name, int capacity, long window) {
+    HeavyHitters existing = TRACKERS.get(name);
+    if (existing != null) return existing;
+    return TRACKERS.computeIfAbsent(name, n -> new HeavyHitters(n, capacity, window));
+  }
+
+  /**
+   * Returns the tracker for the specified cache name.
+   *
+   * @param name The name of the cache
+   *
+   * @return the tracker or <code>null</code> if the cache is not tracked.
+   */
+  public static @Nullable HeavyHitters get(String name) {
+    return TRACKERS.get(name);
+  }
+
+  /**
+   * @return all the trackers.
+   */
+  public static Collection<HeavyHitters> all() {
+    return Collections.unmodifiableCollection(TRACKERS.values());
+  }
+
+  /**
+   * @return the name of the cache.
+   */
+  public String name() {
+    return this.name;
+  }
+
+  /**
+   * @return the duration of the window in milliseconds.
+   */
+  public long getWindow() {
+    return this.slice * SLICES;
+  }
+
+  /**
+   * Records a request for the specified key.
+   *
+   * @param key   The key
+   * @param bytes The number of bytes served
+   * @param nanos The time spent building the resource in nanoseconds, 0 if it was in the cache
+   */
+  public void record(Object key, long bytes, long nanos) {
+    record(key, bytes, nanos, System.currentTimeMillis());
+  }
+
+  /**
+   * Records the bytes served for a request already recorded for the specified key.
+   *
+   * <p>The number of bytes is only known once the response has been written.
+   *
+   * @param key   The key
+   * @param bytes The number of bytes served
+   */
+  public void recordBytes(Object key, long bytes) {
+    recordBytes(key, bytes, System.currentTimeMillis());
+  }
+
+  /**
+   * Returns the top keys for the specified metric over the current window.
+   *
+   * @param metric The metric to rank keys by
+   * @param n      The maximum number of keys to return
+   *
+   * @return the top keys by decreasing count
+   */
+  public List<HotKey> top(Metric metric, int n) {
+    return top(metric, n, System.currentTimeMillis());
+  }
+
+  /**
+   * Discards all the counters.
+   */
+  public synchronized void reset() {
+    for (Slice s : this.slices) {
+      s.clear(0);
+    }
+  }
+
+  @Override
+  public void toXML(XMLWriter xml) throws IOException {
+    toXML(xml, null, DEFAULT_TOP);
+  }
+
+  /**
+   * Writes the top keys as XML.
+   *
+   * @param xml    The XML Writer
+   * @param metric The metric to rank keys by or <code>null</code> for all metrics
+   * @param n      The maximum number of keys for each metric
+   *
+   * @throws IOException If an error occurs while writing the XML
+   */
+  public void toXML(XMLWriter xml, @Nullable Metric metric, int n) throws IOException {
+    xml.openElement("heavy-hitters", true);
+    xml.attribute("cache", this.name);
+    xml.attribute("window", Long.toString(getWindow()));
+    xml.attribute("capacity", this.capacity);
+    for (Metric m : Metric.values()) {
+      if (metric != null && metric != m) continue;
+      xml.openElement("top", true);
+      xml.attribute("metric", m.label());
+      for (HotKey key : top(m, n)) {
+        xml.openElement("key");
+        xml.attribute("name", key.key());
+        xml.attribute("count", Long.toString(key.count()));
+        xml.attribute("error", Long.toString(key.error()));
+        xml.closeElement();
+      }
+      xml.closeElement();
+    }
+    xml.closeElement();
+  }
+
+  /**
+   * Records a request for the specified key at the specified time.
+   *
+   * @param key   The key
+   * @param bytes The number of bytes served
+   * @param nanos The time spent building the resource in nanoseconds
+   * @param now   The current time in milliseconds
+   */
+  synchronized void record(Object key, long bytes, long nanos, long now) {
+    long epoch = now / this.slice;
+    Slice s = this.slices[(int)(epoch % SLICES)];
+    if (s.epoch != epoch) {
+      s.clear(epoch);
+    }
+    s.summaries[Metric.REQUESTS.ordinal()].add(key, 1, this.capacity);
+    if (bytes > 0) {
+      s.summaries[Metric.BYTES.ordinal()].add(key, bytes, this.capacity);
+    }
+    if (nanos > 0) {
+      s.summaries[Metric.BUILD_TIME.ordinal()].add(key, nanos, this.capacity);
+    }
+  }
+
+  /**
+   * Records the bytes served for the specified key at the specified time.
+   *
+   * @param key   The key
+   * @param bytes The number of bytes served
+   * @param now   The current time in milliseconds
+   */
+  synchronized void recordBytes(Object key, long bytes, long now) {
+    if (bytes <= 0) return;
+    long epoch = now / this.slice;
+    Slice s = this.slices[(int)(epoch % SLICES)];
+    if (s.epoch != epoch) {
+      s.clear(epoch);
+    }
+    s.summaries[Metric.BYTES.ordinal()].add(key, bytes, this.capacity);
+  }
+
+  /**
+   * Returns the top keys for the specified metric over the window ending at the specified time.
+   *
+   * @param metric The metric to rank keys by
+   * @param n      The maximum number of keys to return
+   * @param now    The current time in milliseconds
+   *
+   * @return the top keys by decreasing count
+   */
+  synchronized List<HotKey> top(Metric metric, int n, long now) {
+    long epoch = now / this.slice;
+    Map<String, long[]> merged = new HashMap<>();
+    for (Slice s : this.slices) {
+      if (s.epoch <= epoch - SLICES || s.epoch > epoch) continue;
+      for (Counter counter : s.summaries[metric.ordinal()].counters.values()) {
+        long[] totals = merged.computeIfAbsent(counter.key.toString(), k -> new long[2]);
+        totals[0] += counter.count;
+        totals[1] += counter.error;
+      }
+    }
+    List<HotKey> top = new ArrayList<>(merged.size());
+    for (Map.Entry<String, long[]> entry : merged.entrySet()) {
+      top.add(new HotKey(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+    }
+    top.sort((a, b) -> Long.compare(b.count, a.count));
+    return top.size() > n ? new ArrayList<>(top.subList(0, Math.max(n, 0))) : top;
+  }
+
+  /**
+   * A key with its estimated count.
+   */
+  public static final class HotKey {
+
+    private final String key;
+    private final long count;
+    private final long error;
+
+    HotKey(String key, long count, long error) {
+      this.key = key;
+      this.count = count;
+      this.error = error;
+    }
+
+    /** @return the key */
+    public String key() {
+      return this.key;
+    }
+
+    /** @return the estimated count, it may overestimate the actual count by up to the error */
+    public long count() {
+      return this.count;
+    }
+
+    /** @return the maximum overestimation of the count */
+    public long error() {
+      return this.error;
+    }
+  }
+
+  /**
+   * The counters of every metric during a slice of the window.
+   */
+  private static final class Slice {
+
+    /** The epoch of the slice, -1 if unused */
+    long epoch = -1;
+
+    /** The counters for each metric */
+    final Summary[] summaries = new Summary[Metric.values().length];
+
+    Slice() {
+      for (int i = 0; i < this.summaries.length; i++) {
+        this.summaries[i] = new Summary();
+      }
+    }
+
+    void clear(long newEpoch) {
+      this.epoch = newEpoch;
+      for (Summary summary : this.summaries) {
+        summary.counters.clear();
+        summary.order.clear();
+      }
+    }
+  }
+
+  /**
+   * The Space-Saving counters of a metric.
+   */
+  private static final class Summary {
+
+    /** The counters by key */
+    final Map<Object, Counter> counters = new HashMap<>();
+
+    /** The counters ordered by count, then by creation */
+    final TreeSet<Counter> order = new TreeSet<>((a, b) -> {
+      int compare = Long.compare(a.count, b.count);
+      return compare != 0 ? compare : Long.compare(a.sequence, b.sequence);
+    });
+
+    /** The sequence number of the next counter */
+    long sequence = 0;
+
+    void add(Object key, long weight, int capacity) {
+      Counter counter = this.counters.get(key);
+      if (counter != null) {
+        this.order.remove(counter);
+        counter.count += weight;
+        this.order.add(counter);
+        return;
+      }
+      if (this.counters.size() < capacity) {
+        counter = new Counter(key, weight, 0, this.sequence++);
+      } else {
+        Counter min = this.order.pollFirst();
+        this.counters.remove(min.key);
+        counter = new Counter(key, min.count + weight, min.count, this.sequence++);
+      }
+      this.counters.put(key, counter);
+      this.order.add(counter);
+    }
+  }
+
+  /**
+   * The count of a key.
+   */
+  private static final class Counter {
+
+    final Object key;
+    long count;
+    final long error;
+    final long sequence;
+
+    Counter(Object key, long count, long error, long sequence) {
+      this.key = key;
+      this.count = count;
+      this.error = error;
+      this.sequence = sequence;
+    }
+  }
+
+}
@@ -15,11 +15,7 @@
  */
 package org.pageseeder.bastille.cache.util;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
 
 /**
  * A date format to produce and parse dates compliant with the RFC 2616 - HTTP/1.1 protocol.
@@ -41,22 +37,17 @@ import java.util.TimeZone;
  * <p/>
  * For example: <code>Sun, 07 Jan 2013 04:17:56 GMT</code>
  *
+ * <p>This class delegates to {@link HttpDates} and is thread-safe.
+ *
  * @author Christophe Lauret
  * @version Bastille 0.8.3
  */
 public final class HttpDateFormat {
 
-  /**
-   * The HTTP date formatter.
-   */
-  private final SimpleDateFormat format;
-
   /**
    * Creates a new formatter.
    */
   public HttpDateFormat() {
-    this.format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
-    this.format.setTimeZone(TimeZone.getTimeZone("GMT"));
   }
 
   /**
@@ -66,8 +57,8 @@ public final class HttpDateFormat {
    *
    * @return A date formatted in accordance with Section 3.3.1 of RFC 2616
    */
-  public synchronized String format(Date date) {
-    return this.format.format(date);
+  public String format(Date date) {
+    return HttpDates.format(date.getTime());
   }
 
   /**
@@ -80,11 +71,8 @@ public final class HttpDateFormat {
    *
    * @return the parsed date or <code>0L</code>
    */
-  public synchronized Date parse(String date) {
-    try {
-      return this.format.parse(date);
-    } catch (ParseException e) {
-      return new Date(0);
-    }
+  public Date parse(String date) {
+    long parsed = HttpDates.parse(date);
+    return new Date(parsed != -1 ? parsed : 0);
   }
 }
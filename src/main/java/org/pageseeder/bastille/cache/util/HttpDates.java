@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.util.Locale;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Thread-safe formatting and parsing of HTTP dates as defined by RFC 7231 (Section 7.1.1.1).
+ *
+ * <p>Dates are always formatted using the preferred IMF-fixdate format, for example
+ * <code>Sun, 06 Nov 1994 08:49:37 GMT</code>. When parsing, the obsolete RFC 850 and ANSI C
+ * <code>asctime()</code> formats are also accepted.
+ *
+ * <p>Since HTTP dates have a precision of one second and most requests use the same few dates,
+ * the last formatted and the last parsed dates are memoized so that repeated calls within the
+ * same second do not allocate.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class HttpDates {
+
+  /** IMF-fixdate, e.g. "Sun, 06 Nov 1994 08:49:37 GMT" */
+  private static final DateTimeFormatter IMF_FIXDATE =
+      DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+  /** Obsolete RFC 850 format, e.g. "Sunday, 06-Nov-94 08:49:37 GMT" */
+  private static final DateTimeFormatter RFC_850 = new DateTimeFormatterBuilder()
+      .appendPattern("EEEE, dd-MMM-")
+      .appendValueReduced(ChronoField.YEAR, 2, 2, 1970)
+      .appendPattern(" HH:mm:ss 'GMT'")
+      .toFormatter(Locale.US).withZone(ZoneOffset.UTC);
+
+  /** ANSI C asctime() format, e.g. "Sun Nov  6 08:49:37 1994" */
+  private static final DateTimeFormatter ASCTIME =
+      DateTimeFormatter.ofPattern("EEE MMM ppd HH:mm:ss yyyy", Locale.US).withZone(ZoneOffset.UTC);
+
+  /** Useful constant */
+  private static final int MILLISECONDS_PER_SECOND = 1000;
+
+  /** The last formatted date */
+  private static volatile Memo lastFormatted = new Memo(0L, IMF_FIXDATE.format(Instant.EPOCH));
+
+  /** The last parsed date */
+  private static volatile Memo lastParsed = lastFormatted;
+
+  /** Utility class. */
+  private HttpDates() {
+  }
+
+  /**
+   * Formats the specified date as an IMF-fixdate.
+   *
+   * @param date The date in milliseconds since the epoch
+   *
+   * @return the formatted date
+   */
+  public static String format(long date) {
+    long seconds = Math.floorDiv(date, MILLISECONDS_PER_SECOND);
+    Memo memo = lastFormatted;
+    if (memo.seconds == seconds) return memo.text;
+    String text = IMF_FIXDATE.format(Instant.ofEpochSecond(seconds));
+    lastFormatted = new Memo(seconds, text);
+    return text;
+  }
+
+  /**
+   * Parses an HTTP date in any of the three formats allowed by RFC 7231.
+   *
+   * @param text The date to parse
+   *
+   * @return the date in milliseconds since the epoch or -1 if the date could not be parsed.
+   */
+  public static long parse(@Nullable String text) {
+    if (text == null) return -1;
+    String date = text.trim();
+    Memo memo = lastParsed;
+    if (memo.text.equals(date)) return memo.seconds * MILLISECONDS_PER_SECOND;
+    long seconds = parseSeconds(date);
+    if (seconds == Long.MIN_VALUE) return -1;
+    lastParsed = new Memo(seconds, date);
+    return seconds * MILLISECONDS_PER_SECOND;
+  }
+
+  /**
+   * Parse the date trying each format in turn.
+   *
+   * @param date The date to parse
+   * @return the number of seconds since the epoch or <code>Long.MIN_VALUE</code>
+   */
+  private static long parseSeconds(String date) {
+    if (date.isEmpty()) return Long.MIN_VALUE;
+    DateTimeFormatter format;
+    int comma = date.indexOf(',');
+    if (comma == 3) {
+      format = IMF_FIXDATE;
+    } else if (comma > 3) {
+      format = RFC_850;
+    } else {
+      format = ASCTIME;
+    }
+    try {
+      return ZonedDateTime.parse(date, format).toEpochSecond();
+    } catch (DateTimeException ex) {
+      return Long.MIN_VALUE;
+    }
+  }
+
+  /**
+   * A memoized date.
+   */
+  private static final class Memo {
+
+    /** The number of seconds since the epoch */
+    private final long seconds;
+
+    /** The formatted date */
+    private final String text;
+
+    Memo(long seconds, String text) {
+      this.seconds = seconds;
+      this.text = text;
+    }
+  }
+}
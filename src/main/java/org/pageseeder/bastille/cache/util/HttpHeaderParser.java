@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Allocation-free parsing of the HTTP request headers used for content negotiation and
+ * conditional requests.
+ *
+ * <p>The methods in this class scan the header values in place, rather than splitting them, as
+ * they are invoked for every request.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class HttpHeaderParser {
+
+  /** Utility class. */
+  private HttpHeaderParser() {
+  }
+
+  /**
+   * Indicates whether the value of an <code>If-None-Match</code> header matches the specified etag.
+   *
+   * <p>As per RFC 7232 (Section 3.2), the header may be <code>*</code> or a comma-separated list
+   * of entity tags, and the weak comparison function is used so that the <code>W/</code> prefix
+   * is ignored on both sides.
+   *
+   * @param ifNoneMatch The value of the <code>If-None-Match</code> header
+   * @param etag        The current etag of the resource
+   *
+   * @return <code>true</code> if the header matches the etag
+   */
+  public static boolean matchesIfNoneMatch(@Nullable String ifNoneMatch, @Nullable String etag) {
+    if (ifNoneMatch == null || etag == null) return false;
+    int etagStart = etag.startsWith("W/") ? 2 : 0;
+    int etagLength = etag.length() - etagStart;
+    int length = ifNoneMatch.length();
+    int i = 0;
+    while (i < length) {
+      // Skip separators
+      char c = ifNoneMatch.charAt(i);
+      if (c == ' ' || c == '\t' || c == ',') {
+        i++;
+        continue;
+      }
+      // Any entity
+      if (c == '*') return true;
+      // Weak indicator
+      if (c == 'W' && i+1 < length && ifNoneMatch.charAt(i+1) == '/') {
+        i += 2;
+      }
+      // Find the end of the entity tag
+      int start = i;
+      if (i < length && ifNoneMatch.charAt(i) == '"') {
+        int close = ifNoneMatch.indexOf('"', i+1);
+        i = close < 0 ? length : close+1;
+      } else {
+        while (i < length && ifNoneMatch.charAt(i) != ',') {
+          i++;
+        }
+      }
+      int end = i;
+      while (end > start && ifNoneMatch.charAt(end-1) == ' ') {
+        end--;
+      }
+      if (end - start == etagLength && ifNoneMatch.regionMatches(start, etag, etagStart, etagLength)) return true;
+      // Skip to the next entity tag
+      while (i < length && ifNoneMatch.charAt(i) != ',') {
+        i++;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Indicates whether the client accepts gzip based on the <code>Accept-Encoding</code> header
+   * of the request.
+   *
+   * @param req The HTTP servlet request
+   *
+   * @return <code>true</code> if gzip can be used
+   */
+  public static boolean acceptsGzip(HttpServletRequest req) {
+    return acceptsGzip(req.getHeader("Accept-Encoding"));
+  }
+
+  /**
+   * Indicates whether the specified <code>Accept-Encoding</code> header allows gzip.
+   *
+   * <p>The gzip (or x-gzip) coding is acceptable if it is listed with a non-zero quality value,
+   * or if it is not listed but the <code>*</code> wildcard is listed with a non-zero quality value.
+   *
+   * @param acceptEncoding The value of the <code>Accept-Encoding</code> header
+   *
+   * @return <code>true</code> if gzip can be used
+   */
+  public static boolean acceptsGzip(@Nullable String acceptEncoding) {
+    if (acceptEncoding == null) return false;
+    float gzip = getQuality(acceptEncoding, "gzip");
+    if (gzip < 0) {
+      gzip = getQuality(acceptEncoding, "x-gzip");
+    }
+    if (gzip < 0) {
+      gzip = getQuality(acceptEncoding, "*");
+    }
+    return gzip > 0;
+  }
+
+  /**
+   * Returns the quality value of a coding in an <code>Accept-Encoding</code> header.
+   *
+   * @param acceptEncoding The value of the <code>Accept-Encoding</code> header
+   * @param coding         The content coding (case insensitive)
+   *
+   * @return the quality value between 0 and 1, or -1 if the coding is not listed
+   */
+  public static float getQuality(@Nullable String acceptEncoding, String coding) {
+    if (acceptEncoding == null) return -1;
+    int length = acceptEncoding.length();
+    int i = 0;
+    while (i < length) {
+      // Skip separators
+      while (i < length && (acceptEncoding.charAt(i) == ' ' || acceptEncoding.charAt(i) == ',')) {
+        i++;
+      }
+      int start = i;
+      while (i < length && acceptEncoding.charAt(i) != ',' && acceptEncoding.charAt(i) != ';' && acceptEncoding.charAt(i) != ' ') {
+        i++;
+      }
+      boolean matches = i - start == coding.length() && acceptEncoding.regionMatches(true, start, coding, 0, coding.length());
+      float quality = 1;
+      // Parameters
+      while (i < length && acceptEncoding.charAt(i) != ',') {
+        char c = acceptEncoding.charAt(i);
+        if ((c == 'q' || c == 'Q') && i+1 < length && acceptEncoding.charAt(i+1) == '='
+            && (acceptEncoding.charAt(i-1) == ';' || acceptEncoding.charAt(i-1) == ' ')) {
+          i += 2;
+          int q = i;
+          while (i < length && acceptEncoding.charAt(i) != ',' && acceptEncoding.charAt(i) != ';' && acceptEncoding.charAt(i) != ' ') {
+            i++;
+          }
+          quality = toQuality(acceptEncoding, q, i);
+        } else {
+          i++;
+        }
+      }
+      if (matches) return quality;
+    }
+    return -1;
+  }
+
+  /**
+   * Parses a quality value (at most three decimals) without allocating.
+   *
+   * @return the quality value or 0 if invalid
+   */
+  private static float toQuality(String s, int start, int end) {
+    if (start >= end) return 0;
+    char first = s.charAt(start);
+    if (first != '0' && first != '1') return 0;
+    int value = (first - '0') * 1000;
+    if (start+1 < end) {
+      if (s.charAt(start+1) != '.') return 0;
+      int factor = 100;
+      for (int i = start+2; i < end && factor > 0; i++) {
+        char c = s.charAt(i);
+        if (c < '0' || c > '9') return 0;
+        value += (c - '0') * factor;
+        factor /= 10;
+      }
+    }
+    return Math.min(value, 1000) / 1000f;
+  }
+
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListener;
+
+/**
+ * A secondary index of the keys in a cache by path prefix and by tag.
+ *
+ * <p>The path of each key is indexed in a trie of path segments so that all the keys under a
+ * path can be found without scanning the cache. Keys calculated by the caching filters are
+ * prefixed with the HTTP method (e.g. <code>GET_/docs/index.html</code>), the path is the part
+ * of the key after the method.
+ *
+ * <p>Cached resources can also be tagged with the space-separated values of their
+ * <code>Surrogate-Key</code> header.
+ *
+ * <p>Like the {@link ValidatorIndex}, the index listens to the events of the cache so that it
+ * always reflects its content. Empty nodes of the trie are only discarded when the cache is
+ * cleared. There is a single index per cache, use {@link #forCache(Ehcache)}
+ * to get it.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class InvalidationIndex implements CacheEventListener {
+
+  /** Logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(InvalidationIndex.class);
+
+  /** The name of the header with the tags */
+  public static final String SURROGATE_KEY = "Surrogate-Key";
+
+  /** The indexes mapped to the name of their cache. */
+  private static final Map<String, InvalidationIndex> INDEXES = new ConcurrentHashMap<>();
+
+  /** The root of the path trie */
+  private final Node root = new Node();
+
+  /** The keys mapped to each tag */
+  private final Map<String, Set<Object>> tags = new ConcurrentHashMap<>();
+
+  /** The tags of each key (only keys with tags) */
+  private final Map<Object, String[]> keyTags = new ConcurrentHashMap<>();
+
+  /**
+   * Creates an index which is not bound to any cache, use {@link #forCache(Ehcache)} instead.
+   */
+  InvalidationIndex() {
+  }
+
+  /**
+   * Returns the index for the specified cache, registering it with the cache if necessary.
+   *
+   * @param cache The cache
+   *
+   * @return the corresponding index
+   */
+  public static InvalidationIndex forCache(Ehcache cache) {
+    InvalidationIndex existing = INDEXES.get(cache.getName());
+    if (existing != null) return existing;
+    return INDEXES.computeIfAbsent(cache.getName(), name -> {
+      InvalidationIndex index = new InvalidationIndex();
+      cache.getCacheEventNotificationService().registerListener(index);
+      LOGGER.debug("Registered invalidation index for cache {}", name);
+      return index;
+    });
+  }
+
+  /**
+   * Returns the index for the specified cache.
+   *
+   * @param name The name of the cache
+   *
+   * @return the index or <code>null</code> if the cache is not indexed.
+   */
+  public static @Nullable InvalidationIndex get(String name) {
+    return INDEXES.get(name);
+  }
+
+  /**
+   * Returns the keys whose path starts with the specified path.
+   *
+   * <p>Paths are compared segment by segment, so <code>/docs</code> matches <code>/docs</code>
+   * and <code>/docs/index.html</code> but not <code>/docs.html</code>.
+   *
+   * @param prefix The path prefix
+   *
+   * @return the matching keys
+   */
+  public List<Object> keysWithPrefix(String prefix) {
+    Node node = this.root;
+    for (String segment : segments(prefix)) {
+      node = node.children.get(segment);
+      if (node == null) return Collections.emptyList();
+    }
+    List<Object> keys = new ArrayList<>();
+    node.collect(keys);
+    return keys;
+  }
+
+  /**
+   * Returns the keys tagged with the specified tag.
+   *
+   * @param tag The tag
+   *
+   * @return the matching keys
+   */
+  public List<Object> keysWithTag(String tag) {
+    Set<Object> keys = this.tags.get(tag);
+    return keys != null ? new ArrayList<>(keys) : Collections.emptyList();
+  }
+
+  /**
+   * @return the number of distinct tags in this index.
+   */
+  public int getTagCount() {
+    return this.tags.size();
+  }
+
+  /**
+   * Adds the specified key to the index.
+   *
+   * @param key   The cache key
+   * @param value The cached value
+   */
+  void add(Object key, @Nullable Object value) {
+    path(key, true).keys.add(key);
+    String[] newTags = value instanceof CachedResource ? tagsOf((CachedResource)value) : null;
+    String[] oldTags = newTags != null ? this.keyTags.put(key, newTags) : this.keyTags.remove(key);
+    untag(key, oldTags);
+    if (newTags != null) {
+      for (String tag : newTags) {
+        this.tags.computeIfAbsent(tag, t -> ConcurrentHashMap.newKeySet()).add(key);
+      }
+    }
+  }
+
+  /**
+   * Removes the specified key from the index.
+   *
+   * @param key The cache key
+   */
+  void remove(Object key) {
+    Node node = path(key, false);
+    if (node != null) {
+      node.keys.remove(key);
+    }
+    untag(key, this.keyTags.remove(key));
+  }
+
+  /**
+   * Removes all the keys from the index.
+   */
+  void clear() {
+    this.root.children.clear();
+    this.root.keys.clear();
+    this.tags.clear();
+    this.keyTags.clear();
+  }
+
+  // Cache events
+  // ----------------------------------------------------------------------------------------------
+
+  @Override
+  public void notifyElementPut(Ehcache cache, Element element) throws CacheException {
+    add(element.getObjectKey(), element.getObjectValue());
+  }
+
+  @Override
+  public void notifyElementUpdated(Ehcache cache, Element element) throws CacheException {
+    add(element.getObjectKey(), element.getObjectValue());
+  }
+
+  @Override
+  public void notifyElementRemoved(Ehcache cache, Element element) throws CacheException {
+    remove(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyElementExpired(Ehcache cache, Element element) {
+    remove(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyElementEvicted(Ehcache cache, Element element) {
+    remove(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyRemoveAll(Ehcache cache) {
+    clear();
+  }
+
+  @Override
+  public void dispose() {
+    clear();
+    INDEXES.values().remove(this);
+  }
+
+  @Override
+  public Object clone() throws CloneNotSupportedException {
+    throw new CloneNotSupportedException("Invalidation indexes are bound to a single cache");
+  }
+
+  // Private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Returns the trie node for the path of the specified key.
+   *
+   * @param key    The cache key
+   * @param create Whether to create the missing nodes
+   *
+   * @return the node or <code>null</code> if it does not exist and <code>create</code> is <code>false</code>
+   */
+  private @Nullable Node path(Object key, boolean create) {
+    Node node = this.root;
+    for (String segment : segments(pathOf(key))) {
+      Node child = create ? node.children.computeIfAbsent(segment, s -> new Node()) : node.children.get(segment);
+      if (child == null) return null;
+      node = child;
+    }
+    return node;
+  }
+
+  /**
+   * Removes the key from the specified tags.
+   *
+   * @param key  The cache key
+   * @param tags The tags to remove the key from
+   */
+  private void untag(Object key, String @Nullable [] tags) {
+    if (tags == null) return;
+    for (String tag : tags) {
+      this.tags.computeIfPresent(tag, (t, keys) -> {
+        keys.remove(key);
+        return keys.isEmpty() ? null : keys;
+      });
+    }
+  }
+
+  /**
+   * Returns the path of the specified key.
+   *
+   * @param key The cache key
+   *
+   * @return the part after the method if the key starts with a method followed by '_'.
+   */
+  static String pathOf(Object key) {
+    String k = key.toString();
+    int underscore = k.indexOf("_/");
+    return underscore > 0 ? k.substring(underscore+1) : k;
+  }
+
+  /**
+   * Returns the non-empty segments of the specified path.
+   *
+   * @param path The path
+   *
+   * @return the segments
+   */
+  private static List<String> segments(String path) {
+    List<String> segments = new ArrayList<>();
+    int from = 0;
+    while (from <= path.length()) {
+      int slash = path.indexOf('/', from);
+      int to = slash == -1 ? path.length() : slash;
+      if (to > from) {
+        segments.add(path.substring(from, to));
+      }
+      from = to+1;
+    }
+    return segments;
+  }
+
+  /**
+   * Returns the tags of the specified resource.
+   *
+   * @param resource The cached resource
+   *
+   * @return the tags or <code>null</code> if the resource is not tagged.
+   */
+  private static String @Nullable [] tagsOf(CachedResource resource) {
+    List<String> tags = null;
+    for (HttpHeader<? extends Serializable> header : resource.getHeaders(false)) {
+      if (SURROGATE_KEY.equalsIgnoreCase(header.name())) {
+        for (String tag : header.value().toString().trim().split("\\s+")) {
+          if (tag.isEmpty()) continue;
+          if (tags == null) {
+            tags = new ArrayList<>();
+          }
+          tags.add(tag);
+        }
+      }
+    }
+    return tags != null ? tags.toArray(new String[0]) : null;
+  }
+
+  /**
+   * A node in the path trie.
+   */
+  private static final class Node {
+
+    /** The child nodes by path segment */
+    private final Map<String, Node> children = new ConcurrentHashMap<>();
+
+    /** The keys with this path */
+    private final Set<Object> keys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Collect the keys of this node and its descendants.
+     *
+     * @param collected The list to add the keys to
+     */
+    void collect(List<Object> collected) {
+      collected.addAll(this.keys);
+      for (Node child : this.children.values()) {
+        child.collect(collected);
+      }
+    }
+  }
+
+}
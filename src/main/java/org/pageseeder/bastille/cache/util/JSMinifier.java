@@ -0,0 +1,320 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A conservative minifier for JavaScript which removes comments and unnecessary whitespace.
+ *
+ * <p>This is a port of Douglas Crockford's <i>JSMin</i> which operates directly on bytes, so
+ * that it works with any ASCII-compatible character encoding. Strings, template literals and
+ * regular expression literals are copied verbatim; identifiers are not renamed.
+ *
+ * <p>A new instance is created for each invocation of {@link #minify(byte[])} since the
+ * algorithm is stateful; the transformer itself is thread-safe.
+ *
+ * @see <a href="https://www.crockford.com/jsmin.html">JSMin</a>
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class JSMinifier implements ContentTransformer {
+
+  /** Marks the end of the input. */
+  private static final int EOF = -1;
+
+  /** The source */
+  private final byte[] in;
+
+  /** The minified output */
+  private final ByteArrayOutputStream out;
+
+  /** Current index in the source */
+  private int index = 0;
+
+  /** The look ahead character */
+  private int lookahead = EOF;
+
+  /** The character being considered for output */
+  private int a;
+
+  /** The next character */
+  private int b;
+
+  /** The last character returned by <code>next()</code> */
+  private int x = EOF;
+
+  /** The character returned by <code>next()</code> before the last one */
+  private int y = EOF;
+
+  /**
+   * Creates a new JavaScript minifier.
+   */
+  public JSMinifier() {
+    this(new byte[0]);
+  }
+
+  /**
+   * @param in The script to minify.
+   */
+  private JSMinifier(byte[] in) {
+    this.in = in;
+    this.out = new ByteArrayOutputStream(in.length);
+  }
+
+  @Override
+  public byte[] transform(byte[] content, String contentType) throws IOException {
+    return minify(content);
+  }
+
+  /**
+   * Minifies the specified script.
+   *
+   * @param js The JavaScript content as bytes
+   *
+   * @return The minified script
+   *
+   * @throws IOException If a comment, string or regular expression is not terminated.
+   */
+  public static byte[] minify(byte[] js) throws IOException {
+    JSMinifier minifier = new JSMinifier(js);
+    minifier.jsmin();
+    byte[] min = minifier.out.toByteArray();
+    // JSMin always starts with a new line
+    if (min.length > 0 && min[0] == '\n') return Arrays.copyOfRange(min, 1, min.length);
+    return min;
+  }
+
+  // JSMin algorithm
+  // ---------------------------------------------------------------------------------------------
+
+  /**
+   * Copy the input to the output, deleting the characters which are insignificant to JavaScript.
+   */
+  private void jsmin() throws IOException {
+    // Skip the UTF-8 byte order mark
+    if (peek() == 0xEF) {
+      get();
+      get();
+      get();
+    }
+    this.a = '\n';
+    action(3);
+    while (this.a != EOF) {
+      switch (this.a) {
+        case ' ':
+          action(isAlphanum(this.b) ? 1 : 2);
+          break;
+        case '\n':
+          switch (this.b) {
+            case '{': case '[': case '(': case '+': case '-': case '!': case '~':
+              action(1);
+              break;
+            case ' ':
+              action(3);
+              break;
+            default:
+              action(isAlphanum(this.b) ? 1 : 2);
+          }
+          break;
+        default:
+          switch (this.b) {
+            case ' ':
+              action(isAlphanum(this.a) ? 1 : 3);
+              break;
+            case '\n':
+              switch (this.a) {
+                case '}': case ']': case ')': case '+': case '-': case '"': case '\'': case '`':
+                  action(1);
+                  break;
+                default:
+                  action(isAlphanum(this.a) ? 1 : 3);
+              }
+              break;
+            default:
+              action(1);
+              break;
+          }
+      }
+    }
+  }
+
+  /**
+   * Do something!
+   *
+   * <ul>
+   *   <li>1: Output A. Copy B to A. Get the next B.</li>
+   *   <li>2: Copy B to A. Get the next B. (Delete A).</li>
+   *   <li>3: Get the next B. (Delete B).</li>
+   * </ul>
+   *
+   * <p>Strings and regular expressions are treated as single characters.
+   */
+  private void action(int d) throws IOException {
+    if (d == 1) {
+      put(this.a);
+      if ((this.y == '\n' || this.y == ' ')
+          && isArithmetic(this.a) && isArithmetic(this.b)) {
+        put(this.y);
+      }
+    }
+    if (d <= 2) {
+      this.a = this.b;
+      if (this.a == '\'' || this.a == '"' || this.a == '`') {
+        for (;;) {
+          put(this.a);
+          this.a = get();
+          if (this.a == this.b) break;
+          if (this.a == '\\') {
+            put(this.a);
+            this.a = get();
+          }
+          if (this.a == EOF) throw new IOException("Unterminated string literal.");
+        }
+      }
+    }
+    this.b = next();
+    if (this.b == '/' && precedesRegex(this.a)) {
+      put(this.a);
+      if (this.a == '/' || this.a == '*') {
+        put(' ');
+      }
+      put(this.b);
+      for (;;) {
+        this.a = get();
+        if (this.a == '[') {
+          for (;;) {
+            put(this.a);
+            this.a = get();
+            if (this.a == ']') break;
+            if (this.a == '\\') {
+              put(this.a);
+              this.a = get();
+            }
+            if (this.a == EOF) throw new IOException("Unterminated set in regular expression literal.");
+          }
+        } else if (this.a == '/') {
+          int p = peek();
+          if (p == '/' || p == '*') throw new IOException("Unterminated set in regular expression literal.");
+          break;
+        } else if (this.a == '\\') {
+          put(this.a);
+          this.a = get();
+        }
+        if (this.a == EOF) throw new IOException("Unterminated regular expression literal.");
+        put(this.a);
+      }
+      this.b = next();
+    }
+  }
+
+  /**
+   * Return the next character from the input.
+   *
+   * <p>Watch out for lookahead. If the character is a control character, translate it to a
+   * space or linefeed.
+   */
+  private int get() {
+    int c = this.lookahead;
+    this.lookahead = EOF;
+    if (c == EOF) {
+      c = this.index < this.in.length ? this.in[this.index++] & 0xFF : EOF;
+    }
+    if (c >= ' ' || c == '\n' || c == EOF) return c;
+    if (c == '\r') return '\n';
+    return ' ';
+  }
+
+  /**
+   * Get the next character without advancing.
+   */
+  private int peek() {
+    this.lookahead = get();
+    return this.lookahead;
+  }
+
+  /**
+   * Get the next character, excluding comments.
+   */
+  private int next() throws IOException {
+    int c = get();
+    if (c == '/') {
+      switch (peek()) {
+        case '/':
+          for (;;) {
+            c = get();
+            if (c <= '\n') break;
+          }
+          break;
+        case '*':
+          get();
+          while (c != ' ') {
+            switch (get()) {
+              case '*':
+                if (peek() == '/') {
+                  get();
+                  c = ' ';
+                }
+                break;
+              case EOF:
+                throw new IOException("Unterminated comment.");
+              default:
+            }
+          }
+          break;
+        default:
+      }
+    }
+    this.y = this.x;
+    this.x = c;
+    return c;
+  }
+
+  private void put(int c) {
+    this.out.write(c);
+  }
+
+  /**
+   * @return <code>true</code> if the character is a letter, digit, underscore, dollar sign,
+   *         backslash or non-ASCII character.
+   */
+  private static boolean isAlphanum(int c) {
+    return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z')
+        || c == '_' || c == '$' || c == '\\' || c > 126;
+  }
+
+  private static boolean isArithmetic(int c) {
+    return c == '+' || c == '-' || c == '*' || c == '/';
+  }
+
+  /**
+   * @return <code>true</code> if a slash following this character starts a regular expression.
+   */
+  private static boolean precedesRegex(int c) {
+    switch (c) {
+      case '(': case ',': case '=': case ':': case '[': case '!': case '&': case '|':
+      case '?': case '+': case '-': case '~': case '*': case '/': case '{': case '}': case ';':
+        return true;
+      default:
+        return false;
+    }
+  }
+
+}
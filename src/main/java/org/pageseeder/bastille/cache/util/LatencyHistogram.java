@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.pageseeder.xmlwriter.XMLWritable;
+import org.pageseeder.xmlwriter.XMLWriter;
+
+/**
+ * A low-overhead concurrent histogram of latencies.
+ *
+ * <p>Latencies are recorded in microseconds into buckets with power of two boundaries, so that
+ * recording a value is only a couple of additions on a {@link LongAdder}. Percentiles are
+ * approximated by the upper bound of the bucket they fall in.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class LatencyHistogram implements XMLWritable {
+
+  /** Number of buckets, the last one holds anything above 2^30 microseconds (~18 minutes) */
+  private static final int BUCKETS = 32;
+
+  /** The name of this histogram */
+  private final String name;
+
+  /** Counts per bucket */
+  private final LongAdder[] counts = new LongAdder[BUCKETS];
+
+  /** Sum of all the latencies in microseconds */
+  private final LongAdder sum = new LongAdder();
+
+  /** Maximum latency in microseconds */
+  private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+  /**
+   * @param name The name of this histogram
+   */
+  public LatencyHistogram(String name) {
+    this.name = name;
+    for (int i = 0; i < BUCKETS; i++) {
+      this.counts[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Records a latency.
+   *
+   * @param nanos The latency in nanoseconds
+   */
+  public void record(long nanos) {
+    long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+    this.counts[toBucket(micros)].increment();
+    this.sum.add(micros);
+    this.max.accumulate(micros);
+  }
+
+  /**
+   * @return the name of this histogram.
+   */
+  public String name() {
+    return this.name;
+  }
+
+  /**
+   * @return the number of latencies recorded.
+   */
+  public long count() {
+    long count = 0;
+    for (LongAdder c : this.counts) {
+      count += c.sum();
+    }
+    return count;
+  }
+
+  /**
+   * @return the mean latency in microseconds or 0 if nothing has been recorded.
+   */
+  public long mean() {
+    long count = count();
+    return count > 0 ? this.sum.sum() / count : 0;
+  }
+
+  /**
+   * @return the maximum latency recorded in microseconds.
+   */
+  public long max() {
+    return this.max.get();
+  }
+
+  /**
+   * Returns an approximation of the specified percentile.
+   *
+   * @param percentile The percentile between 0 and 100
+   *
+   * @return the upper bound of the bucket containing the percentile in microseconds.
+   */
+  public long percentile(double percentile) {
+    long[] snapshot = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = this.counts[i].sum();
+      count += snapshot[i];
+    }
+    if (count == 0) return 0;
+    long rank = (long)Math.ceil(count * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank && snapshot[i] > 0) return Math.min(1L << i, max());
+    }
+    return max();
+  }
+
+  /**
+   * Resets this histogram.
+   */
+  public void reset() {
+    for (LongAdder c : this.counts) {
+      c.reset();
+    }
+    this.sum.reset();
+    this.max.reset();
+  }
+
+  @Override
+  public void toXML(XMLWriter xml) throws IOException {
+    xml.openElement("latency");
+    xml.attribute("name", this.name);
+    xml.attribute("unit", "us");
+    xml.attribute("count", Long.toString(count()));
+    xml.attribute("mean", Long.toString(mean()));
+    xml.attribute("p50", Long.toString(percentile(50)));
+    xml.attribute("p95", Long.toString(percentile(95)));
+    xml.attribute("p99", Long.toString(percentile(99)));
+    xml.attribute("max", Long.toString(max()));
+    xml.closeElement();
+  }
+
+  /**
+   * @param micros a latency in microseconds
+   * @return the corresponding bucket
+   */
+  private static int toBucket(long micros) {
+    int bucket = 64 - Long.numberOfLeadingZeros(micros);
+    return Math.min(bucket, BUCKETS - 1);
+  }
+
+}
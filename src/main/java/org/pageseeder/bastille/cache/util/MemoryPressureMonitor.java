@@ -0,0 +1,384 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.berlioz.GlobalSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Status;
+import net.sf.ehcache.config.CacheConfiguration;
+
+/**
+ * Sheds the coldest cache entries when the old generation fills up, and restores the capacity of
+ * the caches once memory is available again.
+ *
+ * <p>The monitor sets a collection usage threshold on the old generation pools and listens to
+ * garbage collection notifications so that occupancy is checked after each collection, when it
+ * reflects live data. When occupancy crosses the high watermark, the expired entries of every
+ * cache are removed and the capacity of the caches is reduced by a proportion of their size, so that
+ * the eviction policy of each cache chooses which entries to shed; shedding is repeated after a
+ * cooldown period as long as occupancy remains above the high watermark. When occupancy falls below the low watermark, the original capacities are
+ * restored.
+ *
+ * <p>While under pressure, the {@link CacheBudget} does not rebalance the caches.
+ *
+ * <p>The monitor is configured with the following global settings:
+ * <ul>
+ *   <li><code>bastille.cache.pressure.enabled</code>: whether to monitor memory pressure (defaults to <code>false</code>);</li>
+ *   <li><code>bastille.cache.pressure.high</code>: the high watermark as a proportion of the old generation (defaults to 0.85);</li>
+ *   <li><code>bastille.cache.pressure.low</code>: the low watermark as a proportion of the old generation (defaults to 0.70);</li>
+ *   <li><code>bastille.cache.pressure.shed</code>: the proportion of entries to shed each time (defaults to 0.25);</li>
+ *   <li><code>bastille.cache.pressure.cooldown</code>: the minimum time between sheds in seconds (defaults to 30).</li>
+ * </ul>
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class MemoryPressureMonitor implements NotificationListener {
+
+  /** Logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(MemoryPressureMonitor.class);
+
+  /** The type of garbage collection notifications emitted by HotSpot */
+  private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+  /** The default monitor, created lazily */
+  private static volatile @Nullable MemoryPressureMonitor defaultMonitor;
+
+  /** Whether the default monitor has been initialised */
+  private static volatile boolean initialized = false;
+
+  /**
+   * What to do after checking the occupancy.
+   */
+  enum Action {
+
+    /** Nothing to do */
+    NONE,
+
+    /** Shed entries from the caches */
+    SHED,
+
+    /** Restore the capacity of the caches */
+    RESTORE
+
+  }
+
+  /** The high watermark */
+  private final double high;
+
+  /** The low watermark */
+  private final double low;
+
+  /** The proportion of entries to shed */
+  private final double shed;
+
+  /** The minimum time between sheds in milliseconds */
+  private final long cooldown;
+
+  /** The old generation pools */
+  private final List<MemoryPoolMXBean> pools = new ArrayList<>();
+
+  /** The emitters this monitor listens to */
+  private final List<NotificationEmitter> emitters = new ArrayList<>();
+
+  /** The original capacity of the caches which were shed: max entries and max bytes */
+  private final Map<String, long[]> capacities = new ConcurrentHashMap<>();
+
+  /** Checks are done outside the notification threads */
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "bastille-cache-pressure");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /** Whether the caches have been shed */
+  private volatile boolean underPressure = false;
+
+  /** When the caches were last shed */
+  private volatile long lastShed = 0;
+
+  /**
+   * Creates a new monitor.
+   *
+   * @param high     The high watermark
+   * @param low      The low watermark
+   * @param shed     The proportion of entries to shed
+   * @param cooldown The minimum time between sheds in milliseconds
+   */
+  public MemoryPressureMonitor(double high, double low, double shed, long cooldown) {
+    this.high = high;
+    this.low = Math.min(low, high);
+    this.shed = shed;
+    this.cooldown = cooldown;
+  }
+
+  /**
+   * Returns the default monitor configured from the global settings, starting it if necessary.
+   *
+   * @return the default monitor or <code>null</code> if memory pressure is not monitored.
+   */
+  public static @Nullable MemoryPressureMonitor getDefault() {
+    if (!initialized) {
+      synchronized (MemoryPressureMonitor.class) {
+        if (!initialized) {
+          defaultMonitor = newDefault();
+          initialized = true;
+        }
+      }
+    }
+    return defaultMonitor;
+  }
+
+  /**
+   * Starts listening to the old generation pools and garbage collections.
+   */
+  public synchronized void start() {
+    if (!this.emitters.isEmpty()) return;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()
+          && (pool.getName().contains("Old") || pool.getName().contains("Tenured"))) {
+        long max = pool.getUsage().getMax();
+        if (max > 0) {
+          pool.setCollectionUsageThreshold((long)(max * this.high));
+        }
+        this.pools.add(pool);
+      }
+    }
+    if (this.pools.isEmpty()) {
+      LOGGER.warn("No old generation pool found, memory pressure is not monitored");
+      return;
+    }
+    if (ManagementFactory.getMemoryMXBean() instanceof NotificationEmitter) {
+      listen((NotificationEmitter)ManagementFactory.getMemoryMXBean());
+    }
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (gc instanceof NotificationEmitter) {
+        listen((NotificationEmitter)gc);
+      }
+    }
+    LOGGER.info("Monitoring memory pressure on {} pools (high={}, low={})", this.pools.size(), this.high, this.low);
+  }
+
+  /**
+   * Stops listening and restores the capacity of the caches.
+   */
+  public synchronized void stop() {
+    for (NotificationEmitter emitter : this.emitters) {
+      try {
+        emitter.removeNotificationListener(this);
+      } catch (ListenerNotFoundException ex) {
+        // Already removed
+      }
+    }
+    this.emitters.clear();
+    this.pools.clear();
+    restore();
+  }
+
+  @Override
+  public void handleNotification(Notification notification, @Nullable Object handback) {
+    String type = notification.getType();
+    if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type) || GC_NOTIFICATION.equals(type)) {
+      this.executor.execute(this::check);
+    }
+  }
+
+  /**
+   * Checks the occupancy of the old generation and sheds or restores the caches if necessary.
+   */
+  public void check() {
+    double occupancy = getOccupancy();
+    boolean cooledDown = System.currentTimeMillis() - this.lastShed >= this.cooldown;
+    switch (decide(occupancy, this.high, this.low, this.underPressure, cooledDown)) {
+      case SHED:
+        LOGGER.warn("Old generation occupancy at {}%, shedding cache entries", Math.round(occupancy * 100));
+        shed();
+        break;
+      case RESTORE:
+        LOGGER.info("Old generation occupancy at {}%, restoring cache capacity", Math.round(occupancy * 100));
+        restore();
+        break;
+      default:
+    }
+  }
+
+  /**
+   * @return the highest occupancy of the old generation pools after the last collection, between 0 and 1.
+   */
+  public double getOccupancy() {
+    double occupancy = 0;
+    for (MemoryPoolMXBean pool : this.pools) {
+      MemoryUsage usage = pool.getCollectionUsage();
+      if (usage == null) {
+        usage = pool.getUsage();
+      }
+      if (usage.getMax() > 0) {
+        occupancy = Math.max(occupancy, (double)usage.getUsed() / usage.getMax());
+      }
+    }
+    return occupancy;
+  }
+
+  /**
+   * @return <code>true</code> if the caches have been shed and their capacity not yet restored.
+   */
+  public boolean isUnderPressure() {
+    return this.underPressure;
+  }
+
+  /**
+   * Sheds the coldest entries of all the caches and reduces their capacity.
+   */
+  public synchronized void shed() {
+    this.underPressure = true;
+    this.lastShed = System.currentTimeMillis();
+    CacheManager manager = CacheManager.getInstance();
+    for (String name : manager.getCacheNames()) {
+      Ehcache cache = manager.getEhcache(name);
+      if (cache != null && cache.getStatus() == Status.STATUS_ALIVE) {
+        try {
+          shed(cache);
+        } catch (RuntimeException ex) {
+          LOGGER.warn("Unable to shed entries from cache {}", name, ex);
+        }
+      }
+    }
+  }
+
+  /**
+   * Restores the capacity of the caches which were shed.
+   */
+  public synchronized void restore() {
+    CacheManager manager = CacheManager.getInstance();
+    for (Map.Entry<String, long[]> entry : this.capacities.entrySet()) {
+      Ehcache cache = manager.getEhcache(entry.getKey());
+      if (cache == null) continue;
+      try {
+        CacheConfiguration config = cache.getCacheConfiguration();
+        long[] capacity = entry.getValue();
+        if (capacity[1] > 0) {
+          config.setMaxBytesLocalHeap(capacity[1]);
+        } else {
+          config.setMaxEntriesLocalHeap(capacity[0]);
+        }
+      } catch (RuntimeException ex) {
+        LOGGER.warn("Unable to restore capacity of cache {}", entry.getKey(), ex);
+      }
+    }
+    this.capacities.clear();
+    this.underPressure = false;
+  }
+
+  /**
+   * Decides what to do for the specified occupancy.
+   *
+   * @param occupancy     The occupancy of the old generation
+   * @param high          The high watermark
+   * @param low           The low watermark
+   * @param underPressure Whether the caches have already been shed
+   * @param cooledDown    Whether the cooldown period since the last shed has elapsed
+   *
+   * @return the action to take
+   */
+  static Action decide(double occupancy, double high, double low, boolean underPressure, boolean cooledDown) {
+    if (occupancy >= high) return cooledDown ? Action.SHED : Action.NONE;
+    if (underPressure && occupancy < low) return Action.RESTORE;
+    return Action.NONE;
+  }
+
+  // Private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Listens to the notifications of the specified emitter.
+   *
+   * @param emitter The emitter
+   */
+  private void listen(NotificationEmitter emitter) {
+    emitter.addNotificationListener(this, null, null);
+    this.emitters.add(emitter);
+  }
+
+  /**
+   * Removes the expired entries of the cache and reduces its capacity, leaving the eviction of the
+   * cache to remove the entries beyond the new capacity.
+   *
+   * <p>Caches sized in bytes free the space immediately, caches sized in entries evict the entries
+   * in excess as new entries are put.
+   *
+   * @param cache The cache
+   */
+  private void shed(Ehcache cache) {
+    int size = cache.getSize();
+    if ((int)(size * this.shed) == 0) return;
+    CacheConfiguration config = cache.getCacheConfiguration();
+    this.capacities.putIfAbsent(cache.getName(), new long[] {config.getMaxEntriesLocalHeap(), config.getMaxBytesLocalHeap()});
+    cache.evictExpiredElements();
+    if (config.getMaxBytesLocalHeap() > 0) {
+      config.setMaxBytesLocalHeap(Math.max((long)(config.getMaxBytesLocalHeap() * (1 - this.shed)), 1));
+    } else {
+      config.setMaxEntriesLocalHeap(Math.max((long)(size * (1 - this.shed)), 1));
+    }
+    LOGGER.info("Reduced capacity of cache {} by {}%", cache.getName(), Math.round(this.shed * 100));
+  }
+
+  /**
+   * Creates and starts the default monitor from the global settings.
+   *
+   * @return the monitor or <code>null</code> if it is disabled.
+   */
+  private static @Nullable MemoryPressureMonitor newDefault() {
+    if (!"true".equals(GlobalSettings.get("bastille.cache.pressure.enabled", "false"))) return null;
+    MemoryPressureMonitor monitor;
+    try {
+      double high = Double.parseDouble(GlobalSettings.get("bastille.cache.pressure.high", "0.85").trim());
+      double low = Double.parseDouble(GlobalSettings.get("bastille.cache.pressure.low", "0.70").trim());
+      double shed = Double.parseDouble(GlobalSettings.get("bastille.cache.pressure.shed", "0.25").trim());
+      long cooldown = Long.parseLong(GlobalSettings.get("bastille.cache.pressure.cooldown", "30").trim()) * 1000;
+      monitor = new MemoryPressureMonitor(high, low, shed, cooldown);
+    } catch (NumberFormatException ex) {
+      LOGGER.error("Invalid memory pressure settings, memory pressure is not monitored", ex);
+      return null;
+    }
+    monitor.start();
+    return monitor;
+  }
+
+}
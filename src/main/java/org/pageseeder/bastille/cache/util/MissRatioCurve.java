@@ -0,0 +1,379 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.xmlwriter.XMLWritable;
+import org.pageseeder.xmlwriter.XMLWriter;
+
+/**
+ * Estimates the miss ratio of a cache as a function of its size, using spatially hashed sampling
+ * of reuse distances (SHARDS).
+ *
+ * <p>Only the keys whose hash falls under a threshold are tracked. For each sampled access, the
+ * reuse distance is the number of distinct sampled keys accessed since the previous access to the
+ * same key, scaled by the inverse of the sampling rate. An LRU cache of <i>c</i> entries hits all
+ * the accesses whose reuse distance is less than <i>c</i>, so the histogram of reuse distances
+ * gives the miss ratio for every size at once.
+ *
+ * <p>Distances are counted with a Fenwick tree over the time of the last access of each key. The
+ * number of keys tracked is bounded: when it is exceeded, the keys with the highest hashes are
+ * dropped and the sampling rate is lowered accordingly.
+ *
+ * <p>Recording an access which is not sampled only costs a hash; sampled accesses are synchronized.
+ *
+ * <p>There is a single curve per cache name, use {@link #forName(String, double)} to get it.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class MissRatioCurve implements XMLWritable {
+
+  /** The modulus of the hashes used for sampling */
+  static final int MODULUS = 1 << 24;
+
+  /** The default maximum number of keys tracked */
+  public static final int DEFAULT_MAX_KEYS = 8192;
+
+  /** The number of histogram buckets per power of two */
+  private static final int BUCKETS_PER_OCTAVE = 4;
+
+  /** The number of histogram buckets, enough for distances up to 2^40 */
+  private static final int BUCKETS = BUCKETS_PER_OCTAVE * 40 + 1;
+
+  /** The curves mapped to the name of their cache. */
+  private static final Map<String, MissRatioCurve> CURVES = new ConcurrentHashMap<>();
+
+  /** The name of the cache */
+  private final String name;
+
+  /** The maximum number of keys tracked */
+  private final int maxKeys;
+
+  /** Accesses are sampled if the hash of their key is lower than the threshold */
+  private volatile int threshold;
+
+  /** The sampled keys mapped to their last access */
+  private final Map<Object, Access> accesses = new HashMap<>();
+
+  /** Fenwick tree counting the last accesses by time (1-based) */
+  private int[] tree;
+
+  /** The logical time of the next access */
+  private int clock = 0;
+
+  /** The number of sampled accesses by reuse distance bucket */
+  private final long[] histogram = new long[BUCKETS];
+
+  /** The number of sampled accesses */
+  private long references = 0;
+
+  /** The number of sampled accesses to keys not seen before */
+  private long coldMisses = 0;
+
+  /**
+   * Creates a new miss ratio curve.
+   *
+   * @param name    The name of the cache
+   * @param rate    The initial sampling rate between 0 and 1
+   * @param maxKeys The maximum number of keys tracked
+   */
+  public MissRatioCurve(String name, double rate, int maxKeys) {
+    this.name = name;
+    this.maxKeys = Math.max(maxKeys, 16);
+    this.threshold = (int)Math.max(1, Math.min(rate, 1) * MODULUS);
+    this.tree = new int[this.maxKeys * 2 + 1];
+  }
+
+  /**
+   * Returns the curve for the specified cache name, creating it if necessary.
+   *
+   * @param name The name of the cache
+   * @param rate The initial sampling rate if the curve is created
+   *
+   * @return the curve for that cache
+   */
+  public static MissRatioCurve forName(String name, double rate) {
+    MissRatioCurve existing = CURVES.get(name);
+    if (existing != null) return existing;
+    return CURVES.computeIfAbsent(name, n -> new MissRatioCurve(n, rate, DEFAULT_MAX_KEYS));
+  }
+
+  /**
+   * Returns the curve for the specified cache name.
+   *
+   * @param name The name of the cache
+   *
+   * @return the curve or <code>null</code> if the cache has no curve.
+   */
+  public static @Nullable MissRatioCurve get(String name) {
+    return CURVES.get(name);
+  }
+
+  /**
+   * @return all the curves.
+   */
+  public static Collection<MissRatioCurve> all() {
+    return Collections.unmodifiableCollection(CURVES.values());
+  }
+
+  /**
+   * Records an access to the specified key.
+   *
+   * @param key The key
+   */
+  public void record(Object key) {
+    int hash = hash(key);
+    if (hash >= this.threshold) return;
+    synchronized (this) {
+      // The threshold may have been lowered in the meantime
+      if (hash < this.threshold) {
+        access(key, hash);
+      }
+    }
+  }
+
+  /**
+   * @return the name of the cache.
+   */
+  public String name() {
+    return this.name;
+  }
+
+  /**
+   * @return the current sampling rate.
+   */
+  public double getSampleRate() {
+    return (double)this.threshold / MODULUS;
+  }
+
+  /**
+   * @return the number of sampled accesses.
+   */
+  public synchronized long getReferences() {
+    return this.references;
+  }
+
+  /**
+   * Returns the estimated miss ratio of an LRU cache of the specified size.
+   *
+   * @param size The number of entries
+   *
+   * @return the miss ratio between 0 and 1 or 1 if no access was sampled.
+   */
+  public synchronized double getMissRatio(long size) {
+    if (this.references == 0) return 1;
+    long hits = 0;
+    for (int b = 0; b < BUCKETS && upperBound(b) <= size; b++) {
+      hits += this.histogram[b];
+    }
+    return 1 - (double)hits / this.references;
+  }
+
+  /**
+   * Returns the points of the curve, one for each bucket of reuse distances up to the largest distance.
+   *
+   * @return pairs of size and miss ratio
+   */
+  public synchronized List<double[]> getPoints() {
+    List<double[]> points = new ArrayList<>();
+    if (this.references == 0) return points;
+    int last = BUCKETS - 1;
+    while (last > 0 && this.histogram[last] == 0) last--;
+    long hits = 0;
+    for (int b = 0; b <= last; b++) {
+      hits += this.histogram[b];
+      if (this.histogram[b] > 0 || b == last) {
+        points.add(new double[] {upperBound(b), 1 - (double)hits / this.references});
+      }
+    }
+    return points;
+  }
+
+  /**
+   * Discards all the samples.
+   */
+  public synchronized void reset() {
+    this.accesses.clear();
+    this.tree = new int[this.maxKeys * 2 + 1];
+    this.clock = 0;
+    Arrays.fill(this.histogram, 0);
+    this.references = 0;
+    this.coldMisses = 0;
+  }
+
+  @Override
+  public synchronized void toXML(XMLWriter xml) throws IOException {
+    xml.openElement("miss-ratio-curve", true);
+    xml.attribute("cache", this.name);
+    xml.attribute("sample-rate", String.format(Locale.ROOT, "%.6f", getSampleRate()));
+    xml.attribute("references", Long.toString(this.references));
+    xml.attribute("cold-misses", Long.toString(this.coldMisses));
+    xml.attribute("keys", this.accesses.size());
+    for (double[] point : getPoints()) {
+      xml.openElement("point");
+      xml.attribute("size", Long.toString((long)point[0]));
+      xml.attribute("miss-ratio", String.format(Locale.ROOT, "%.4f", point[1]));
+      xml.closeElement();
+    }
+    xml.closeElement();
+  }
+
+  /**
+   * Returns the smallest cache size which hits all the accesses in the specified bucket.
+   *
+   * @param bucket The bucket
+   *
+   * @return the upper bound of the reuse distances in that bucket, rounded up
+   */
+  static long upperBound(int bucket) {
+    return (long)Math.ceil(Math.pow(2, (double)bucket / BUCKETS_PER_OCTAVE));
+  }
+
+  /**
+   * Returns the bucket for the specified reuse distance.
+   *
+   * @param distance The scaled reuse distance
+   *
+   * @return the bucket index
+   */
+  static int bucket(double distance) {
+    if (distance < 1) return 0;
+    int bucket = (int)Math.floor(Math.log(distance) / Math.log(2) * BUCKETS_PER_OCTAVE) + 1;
+    return Math.min(bucket, BUCKETS - 1);
+  }
+
+  // Private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Records a sampled access.
+   *
+   * @param key  The key
+   * @param hash The hash of the key
+   */
+  private void access(Object key, int hash) {
+    if (this.clock == this.tree.length - 1) {
+      compact();
+    }
+    int now = this.clock++;
+    Access previous = this.accesses.put(key, new Access(now, hash));
+    this.references++;
+    if (previous != null) {
+      int distance = sum(now - 1) - sum(previous.time);
+      this.histogram[bucket(distance / getSampleRate())]++;
+      add(previous.time, -1);
+    } else {
+      this.coldMisses++;
+    }
+    add(now, 1);
+    if (this.accesses.size() > this.maxKeys) {
+      lowerThreshold();
+    }
+  }
+
+  /**
+   * Drops a tenth of the keys with the highest hashes and lowers the threshold to match.
+   */
+  private void lowerThreshold() {
+    List<Access> all = new ArrayList<>(this.accesses.values());
+    all.sort((a, b) -> Integer.compare(b.hash, a.hash));
+    int newThreshold = all.get(Math.max(all.size() / 10, 1)).hash;
+    this.accesses.entrySet().removeIf(entry -> {
+      if (entry.getValue().hash < newThreshold) return false;
+      add(entry.getValue().time, -1);
+      return true;
+    });
+    this.threshold = Math.max(newThreshold, 1);
+  }
+
+  /**
+   * Renumbers the last accesses so that they fit at the start of the tree.
+   */
+  private void compact() {
+    List<Access> all = new ArrayList<>(this.accesses.values());
+    all.sort((a, b) -> Integer.compare(a.time, b.time));
+    this.tree = new int[Math.max(this.tree.length, all.size() * 2 + 1)];
+    for (int i = 0; i < all.size(); i++) {
+      all.get(i).time = i;
+      add(i, 1);
+    }
+    this.clock = all.size();
+  }
+
+  /**
+   * Adds the delta to the specified time in the Fenwick tree.
+   */
+  private void add(int time, int delta) {
+    for (int i = time + 1; i < this.tree.length; i += i & -i) {
+      this.tree[i] += delta;
+    }
+  }
+
+  /**
+   * @return the number of last accesses at or before the specified time.
+   */
+  private int sum(int time) {
+    int sum = 0;
+    for (int i = time + 1; i > 0; i -= i & -i) {
+      sum += this.tree[i];
+    }
+    return sum;
+  }
+
+  /**
+   * @return a well distributed hash of the key modulo {@link #MODULUS}.
+   */
+  static int hash(Object key) {
+    int h = key.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h & (MODULUS - 1);
+  }
+
+  /**
+   * The last access to a sampled key.
+   */
+  private static final class Access {
+
+    /** The logical time of the access */
+    int time;
+
+    /** The hash of the key */
+    final int hash;
+
+    Access(int time, int hash) {
+      this.time = time;
+      this.hash = hash;
+    }
+  }
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListener;
+
+/**
+ * A small on-heap map of the most requested elements of a cache, looked up before the cache.
+ *
+ * <p>Hits on the near cache do not go through the locks, statistics and store layers of Ehcache;
+ * the access statistics of the element are still updated so that the eviction policy of the
+ * cache sees the element as used.
+ *
+ * <p>The near cache listens to the events of the cache: any element put, updated, removed,
+ * expired or evicted is removed from the near cache and the near cache is cleared when the cache
+ * is. To avoid promoting an element read from the cache while it is being replaced, callers must
+ * take a {@link #stamp()} before reading the cache and pass it to {@link #promote(Object, Element, long)}:
+ * the element is not promoted if any invalidation occurred in between.
+ *
+ * <p>When the near cache is full, an element which was not accessed since the last time the
+ * near cache was scanned is evicted (second chance).
+ *
+ * <p>There is a single near cache per cache, use {@link #forCache(Ehcache, int)} to get it.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class NearCache implements CacheEventListener {
+
+  /** Logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(NearCache.class);
+
+  /** The maximum number of entries scanned to find one to evict. */
+  private static final int MAX_SCAN = 64;
+
+  /** The near caches mapped to the name of their cache. */
+  private static final Map<String, NearCache> NEAR_CACHES = new ConcurrentHashMap<>();
+
+  /** The elements mapped to their key */
+  private final Map<Object, Node> nodes;
+
+  /** The maximum number of elements */
+  private final int capacity;
+
+  /** Incremented on every invalidation */
+  private final AtomicLong invalidations = new AtomicLong();
+
+  /**
+   * Creates a near cache which is not bound to any cache, use {@link #forCache(Ehcache, int)} instead.
+   *
+   * @param capacity The maximum number of elements
+   */
+  NearCache(int capacity) {
+    this.capacity = Math.max(capacity, 1);
+    this.nodes = new ConcurrentHashMap<>(this.capacity * 4 / 3 + 1);
+  }
+
+  /**
+   * Returns the near cache for the specified cache, registering it with the cache if necessary.
+   *
+   * <p>If the near cache already exists, the capacity is ignored.
+   *
+   * @param cache    The cache
+   * @param capacity The maximum number of elements in the near cache
+   *
+   * @return the corresponding near cache
+   */
+  public static NearCache forCache(Ehcache cache, int capacity) {
+    NearCache existing = NEAR_CACHES.get(cache.getName());
+    if (existing != null) return existing;
+    return NEAR_CACHES.computeIfAbsent(cache.getName(), name -> {
+      NearCache near = new NearCache(capacity);
+      cache.getCacheEventNotificationService().registerListener(near);
+      LOGGER.debug("Registered near cache of {} elements for cache {}", capacity, name);
+      return near;
+    });
+  }
+
+  /**
+   * Returns the near cache for the specified cache.
+   *
+   * @param name The name of the cache
+   *
+   * @return the near cache or <code>null</code> if the cache does not have one.
+   */
+  public static @Nullable NearCache get(String name) {
+    return NEAR_CACHES.get(name);
+  }
+
+  /**
+   * Returns the element for the specified key if it is in the near cache and has not expired.
+   *
+   * @param key The key
+   *
+   * @return the element or <code>null</code>
+   */
+  public @Nullable Element lookup(Object key) {
+    Node node = this.nodes.get(key);
+    if (node == null) return null;
+    Element element = node.element;
+    if (element.isExpired()) {
+      this.nodes.remove(key, node);
+      return null;
+    }
+    node.referenced = true;
+    element.updateAccessStatistics();
+    return element;
+  }
+
+  /**
+   * @return a stamp to take before reading the cache.
+   */
+  public long stamp() {
+    return this.invalidations.get();
+  }
+
+  /**
+   * Promotes the element read from the cache to the near cache.
+   *
+   * @param key     The key
+   * @param element The element read from the cache
+   * @param stamp   The stamp taken before reading the cache
+   *
+   * @return <code>true</code> if the element was promoted.
+   */
+  public boolean promote(Object key, Element element, long stamp) {
+    if (stamp != this.invalidations.get()) return false;
+    if (this.nodes.size() >= this.capacity && !this.nodes.containsKey(key)) {
+      evict();
+    }
+    Node node = new Node(element);
+    this.nodes.put(key, node);
+    // An invalidation may have happened while the element was put
+    if (stamp != this.invalidations.get()) {
+      this.nodes.remove(key, node);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Removes the element for the specified key.
+   *
+   * @param key The key
+   */
+  public void invalidate(Object key) {
+    this.invalidations.incrementAndGet();
+    this.nodes.remove(key);
+  }
+
+  /**
+   * Removes all the elements.
+   */
+  public void invalidateAll() {
+    this.invalidations.incrementAndGet();
+    this.nodes.clear();
+  }
+
+  /**
+   * @return the number of elements in the near cache.
+   */
+  public int size() {
+    return this.nodes.size();
+  }
+
+  /**
+   * @return the maximum number of elements in the near cache.
+   */
+  public int getCapacity() {
+    return this.capacity;
+  }
+
+  // Cache events
+  // ----------------------------------------------------------------------------------------------
+
+  @Override
+  public void notifyElementPut(Ehcache cache, Element element) throws CacheException {
+    invalidate(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyElementUpdated(Ehcache cache, Element element) throws CacheException {
+    invalidate(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyElementRemoved(Ehcache cache, Element element) throws CacheException {
+    invalidate(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyElementExpired(Ehcache cache, Element element) {
+    invalidate(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyElementEvicted(Ehcache cache, Element element) {
+    invalidate(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyRemoveAll(Ehcache cache) {
+    invalidateAll();
+  }
+
+  @Override
+  public void dispose() {
+    invalidateAll();
+    NEAR_CACHES.values().remove(this);
+  }
+
+  @Override
+  public Object clone() throws CloneNotSupportedException {
+    throw new CloneNotSupportedException("Near caches are bound to a single cache");
+  }
+
+  // Private helpers
+  // ----------------------------------------------------------------------------------------------
+
+  /**
+   * Evicts an element which was not referenced since the last scan, or the last element scanned.
+   */
+  private void evict() {
+    Iterator<Map.Entry<Object, Node>> entries = this.nodes.entrySet().iterator();
+    Map.Entry<Object, Node> candidate = null;
+    for (int i = 0; i < MAX_SCAN && entries.hasNext(); i++) {
+      candidate = entries.next();
+      Node node = candidate.getValue();
+      if (!node.referenced) break;
+      node.referenced = false;
+    }
+    if (candidate != null) {
+      this.nodes.remove(candidate.getKey(), candidate.getValue());
+    }
+  }
+
+  /**
+   * An element in the near cache.
+   */
+  private static final class Node {
+
+    /** The element from the cache */
+    final Element element;
+
+    /** Whether the element was accessed since it was last scanned */
+    volatile boolean referenced;
+
+    Node(Element element) {
+      this.element = element;
+    }
+  }
+
+}
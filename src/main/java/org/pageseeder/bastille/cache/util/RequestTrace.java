@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.util.Locale;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Traces how a request was served by a caching filter in order to report it in the response
+ * headers.
+ *
+ * <p>The trace can produce the following headers:
+ * <ul>
+ *   <li><code>Server-Timing</code> with the time spent looking up the cache (<code>cache</code>),
+ *   building the resource (<code>build</code>, including compression), compressing the resource
+ *   (<code>compress</code>) and preparing the response up to the headers (<code>write</code>);</li>
+ *   <li><code>X-Cache</code> with the outcome (<code>HIT</code>, <code>MISS</code>,
+ *   <code>STALE</code> or <code>BYPASS</code>) and <code>Age</code> with the number of seconds
+ *   since the resource was cached.</li>
+ * </ul>
+ *
+ * <p>The trace of the current request is bound to the current thread between {@link #start(boolean, boolean)}
+ * and {@link #end()} so that it can be updated without passing it around.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class RequestTrace {
+
+  /**
+   * How the request was served.
+   */
+  public enum Outcome {
+
+    /** Served from the cache */
+    HIT,
+
+    /** Built and put in the cache */
+    MISS,
+
+    /** Served from the cache while the resource is being rebuilt */
+    STALE,
+
+    /** Not cacheable */
+    BYPASS
+
+  }
+
+  /** The trace bound to the current thread */
+  private static final ThreadLocal<@Nullable RequestTrace> CURRENT = new ThreadLocal<>();
+
+  /** Useful constant */
+  private static final double NANOSECONDS_PER_MILLISECOND = 1000000.0;
+
+  /** Whether to include the Server-Timing header */
+  private final boolean serverTiming;
+
+  /** Whether to include the X-Cache and Age headers */
+  private final boolean xCache;
+
+  /** The trace that was bound to the thread before this one */
+  private final @Nullable RequestTrace previous;
+
+  private Outcome outcome = Outcome.HIT;
+  private long lookup = -1;
+  private long build = -1;
+  private long compression = -1;
+  private long writeStart = -1;
+  private long created = -1;
+
+  /**
+   * @param serverTiming Whether to include the Server-Timing header
+   * @param xCache       Whether to include the X-Cache and Age headers
+   * @param previous     The trace that was bound to the thread before this one
+   */
+  private RequestTrace(boolean serverTiming, boolean xCache, @Nullable RequestTrace previous) {
+    this.serverTiming = serverTiming;
+    this.xCache = xCache;
+    this.previous = previous;
+  }
+
+  /**
+   * Starts a new trace and binds it to the current thread.
+   *
+   * @param serverTiming Whether to include the Server-Timing header
+   * @param xCache       Whether to include the X-Cache and Age headers
+   *
+   * @return the new trace
+   */
+  public static RequestTrace start(boolean serverTiming, boolean xCache) {
+    RequestTrace trace = new RequestTrace(serverTiming, xCache, CURRENT.get());
+    CURRENT.set(trace);
+    return trace;
+  }
+
+  /**
+   * @return the trace bound to the current thread or <code>null</code>.
+   */
+  public static @Nullable RequestTrace current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Unbinds this trace from the current thread.
+   */
+  public void end() {
+    if (this.previous != null) {
+      CURRENT.set(this.previous);
+    } else {
+      CURRENT.remove();
+    }
+  }
+
+  /**
+   * @param outcome How the request was served.
+   */
+  public void outcome(Outcome outcome) {
+    this.outcome = outcome;
+  }
+
+  /**
+   * @return How the request was served.
+   */
+  public Outcome outcome() {
+    return this.outcome;
+  }
+
+  /**
+   * @param nanos The time spent looking up the cache
+   */
+  public void lookup(long nanos) {
+    this.lookup = nanos;
+  }
+
+  /**
+   * @param nanos The time spent building the resource
+   */
+  public void build(long nanos) {
+    this.build = nanos;
+  }
+
+  /**
+   * @param nanos The time spent compressing the resource
+   */
+  public void compression(long nanos) {
+    this.compression = nanos;
+  }
+
+  /**
+   * @param created When the resource was put in the cache
+   */
+  public void created(long created) {
+    this.created = created;
+  }
+
+  /**
+   * Marks the start of the response.
+   */
+  public void startWrite() {
+    this.writeStart = System.nanoTime();
+  }
+
+  /**
+   * Writes the headers for this trace to the response.
+   *
+   * @param res The HTTP servlet response
+   */
+  public void writeTo(HttpServletResponse res) {
+    if (this.xCache) {
+      res.setHeader("X-Cache", this.outcome.name());
+      if (this.outcome != Outcome.BYPASS) {
+        long age = this.created > 0 && this.outcome != Outcome.MISS ? (System.currentTimeMillis() - this.created) / 1000 : 0;
+        res.setHeader("Age", Long.toString(Math.max(age, 0)));
+      }
+    }
+    if (this.serverTiming) {
+      String timing = toServerTiming();
+      if (!timing.isEmpty()) {
+        res.setHeader("Server-Timing", timing);
+      }
+    }
+  }
+
+  /**
+   * @return the value of the Server-Timing header.
+   */
+  public String toServerTiming() {
+    StringBuilder timing = new StringBuilder();
+    append(timing, "cache", this.lookup);
+    append(timing, "build", this.build);
+    append(timing, "compress", this.compression);
+    append(timing, "write", this.writeStart >= 0 ? System.nanoTime() - this.writeStart : -1);
+    return timing.toString();
+  }
+
+  /**
+   * Appends a metric to the Server-Timing header value.
+   */
+  private static void append(StringBuilder timing, String name, long nanos) {
+    if (nanos < 0) return;
+    if (timing.length() > 0) {
+      timing.append(", ");
+    }
+    timing.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.3f", nanos / NANOSECONDS_PER_MILLISECOND));
+  }
+
+}
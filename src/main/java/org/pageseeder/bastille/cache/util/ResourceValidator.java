@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The validators of a cached resource, used to answer conditional requests without the resource.
+ *
+ * <p>Only the etags, last modified date and the headers to send with a <i>304 Not Modified</i>
+ * are kept so that instances are small compared to the resource.
+ *
+ * <p>This class is immutable.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class ResourceValidator {
+
+  private final String etag;
+  private final String gzipEtag;
+  private final long lastModified;
+  private final long expires;
+  private final long created;
+  private final long generation;
+  private final boolean gzipped;
+  private final long size;
+  private final HeaderBlock identityHeaders;
+  private final HeaderBlock gzipHeaders;
+
+  /**
+   * Use factory method.
+   */
+  private ResourceValidator(StaticResource resource, long expires, long created, long generation) {
+    this.etag = resource.getETag(false);
+    this.gzipEtag = resource.getETag(true);
+    this.lastModified = resource.getLastModified();
+    this.expires = expires;
+    this.created = created;
+    this.generation = generation;
+    this.gzipped = resource.hasContent() && resource.hasGzippedBody();
+    this.size = resource.getRetainedSize();
+    this.identityHeaders = resource.getHeaderBlock(false);
+    this.gzipHeaders = resource.getHeaderBlock(true);
+  }
+
+  /**
+   * Returns the validators for the specified resource.
+   *
+   * <p>Only static resources which are OK can be validated.
+   *
+   * @param resource   The cached resource
+   * @param expires    When the resource expires from the cache
+   * @param created    When the resource was put in the cache
+   * @param generation The soft purge generation the element was stamped with
+   *
+   * @return the validator or <code>null</code> if the resource cannot be validated.
+   */
+  public static @Nullable ResourceValidator of(@Nullable Object resource, long expires, long created, long generation) {
+    if (!(resource instanceof StaticResource)) return null;
+    StaticResource r = (StaticResource)resource;
+    return r.isOK() ? new ResourceValidator(r, expires, created, generation) : null;
+  }
+
+  /**
+   * @param gzipped <code>true</code> for the etag of the gzipped variant.
+   * @return the etag.
+   */
+  public String getETag(boolean gzipped) {
+    return gzipped ? this.gzipEtag : this.etag;
+  }
+
+  /**
+   * @return the last modified date of the resource.
+   */
+  public long getLastModified() {
+    return this.lastModified;
+  }
+
+  /**
+   * @return when the resource was put in the cache.
+   */
+  public long getCreated() {
+    return this.created;
+  }
+
+  /**
+   * @return the soft purge generation the element was stamped with.
+   */
+  public long getGeneration() {
+    return this.generation;
+  }
+
+  /**
+   * @return <code>true</code> if the resource can be sent gzipped.
+   */
+  public boolean hasGzippedBody() {
+    return this.gzipped;
+  }
+
+  /**
+   * @return the retained size of the resource in bytes.
+   */
+  public long getSize() {
+    return this.size;
+  }
+
+  /**
+   * @param now The current time.
+   * @return <code>true</code> if the resource has expired from the cache.
+   */
+  public boolean isExpired(long now) {
+    return now >= this.expires;
+  }
+
+  /**
+   * @param gzipped <code>true</code> for the headers of the gzipped variant.
+   * @return the headers to send with the response.
+   */
+  public HeaderBlock getHeaders(boolean gzipped) {
+    return gzipped ? this.gzipHeaders : this.identityHeaders;
+  }
+
+}
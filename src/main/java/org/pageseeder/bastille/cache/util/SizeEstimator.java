@@ -24,6 +24,9 @@ import net.sf.ehcache.Ehcache;
  * A simple class to estimate the size of a cache based on previously calculated sized
  * and the number of elements.
  *
+ * <p>Sampling is expensive and inaccurate when elements vary in size, caches which are
+ * accounted for by a {@link CacheUsage} should report its exact size instead.
+ *
  * @author Christophe Lauret
  *
  * @version Bastille 0.13.1
@@ -215,8 +218,8 @@ public final class SizeEstimator {
     public long estimate(int elements) {
       if (this.elements == elements) return this.bytesize;
       if (this.elements == 0) return 0;
-      // XXX: May be larger than MAX_LONG?
-      return (this.bytesize * elements) / this.elements;
+      // Scale using floating point to avoid overflowing
+      return (long)((double)this.bytesize * elements / this.elements);
     }
 
     /**
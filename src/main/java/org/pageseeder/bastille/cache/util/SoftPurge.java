@@ -0,0 +1,188 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.ehcache.Ehcache;
+
+/**
+ * Keeps track of soft purges for a cache.
+ *
+ * <p>Instead of removing the elements from the cache, a soft purge bumps the generation of the
+ * cache or of a single key so that the elements created before the purge are considered stale.
+ * Stale elements are lazily revalidated on their next access: a single request rebuilds the
+ * resource while concurrent requests for the same key are served the stale resource, which
+ * avoids the surge of rebuilds that follows clearing a cache.
+ *
+ * <p>Elements are stamped with the generation current when their resource started to be built,
+ * using the version of the element (see {@link #getGeneration()}). Elements which were not
+ * stamped have the default version 1 and therefore belong to the first generation.
+ *
+ * <p>Only caches used by caching filters support soft purges, use {@link #get(String)} to
+ * check whether a cache is registered.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class SoftPurge {
+
+  /** Logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(SoftPurge.class);
+
+  /** The soft purges mapped to the name of their cache. */
+  private static final Map<String, SoftPurge> PURGES = new ConcurrentHashMap<>();
+
+  /** The current generation, incremented for every purge */
+  private final AtomicLong generation = new AtomicLong(1);
+
+  /** The last generation purged for the whole cache */
+  private volatile long purged = 0;
+
+  /** The last generation purged for individual keys */
+  private final Map<Object, Long> purgedKeys = new ConcurrentHashMap<>();
+
+  /** The keys being revalidated */
+  private final Map<Object, Boolean> revalidating = new ConcurrentHashMap<>();
+
+  /**
+   * Use factory method.
+   */
+  private SoftPurge() {
+  }
+
+  /**
+   * Returns the soft purges for the specified cache, registering the cache if necessary.
+   *
+   * @param cache The cache
+   *
+   * @return the corresponding soft purges
+   */
+  public static SoftPurge forCache(Ehcache cache) {
+    SoftPurge existing = PURGES.get(cache.getName());
+    if (existing != null) return existing;
+    return PURGES.computeIfAbsent(cache.getName(), name -> {
+      LOGGER.debug("Registered soft purge for cache {}", name);
+      return new SoftPurge();
+    });
+  }
+
+  /**
+   * Returns the soft purges for the specified cache.
+   *
+   * @param name The name of the cache
+   *
+   * @return the soft purges or <code>null</code> if the cache does not support soft purges.
+   */
+  public static @Nullable SoftPurge get(String name) {
+    return PURGES.get(name);
+  }
+
+  /**
+   * Marks all the elements currently in the cache as stale.
+   *
+   * @return the new generation
+   */
+  public synchronized long purgeAll() {
+    long generation = this.generation.getAndIncrement();
+    this.purged = generation;
+    this.purgedKeys.clear();
+    return generation + 1;
+  }
+
+  /**
+   * Marks the element with the specified key as stale.
+   *
+   * @param key The cache key
+   *
+   * @return the new generation
+   */
+  public long purge(Object key) {
+    long generation = this.generation.getAndIncrement();
+    this.purgedKeys.merge(key, generation, Math::max);
+    return generation + 1;
+  }
+
+  /**
+   * Indicates whether the element for the specified key has been purged since it was stamped.
+   *
+   * @param key        The cache key
+   * @param generation The generation the element was stamped with
+   *
+   * @return <code>true</code> if the element is stale;
+   *         <code>false</code> otherwise.
+   */
+  public boolean isStale(Object key, long generation) {
+    if (generation <= this.purged) return true;
+    Long purgedKey = this.purgedKeys.get(key);
+    if (purgedKey == null) return false;
+    if (generation <= purgedKey) return true;
+    // Rebuilt since purged
+    this.purgedKeys.remove(key, purgedKey);
+    return false;
+  }
+
+  /**
+   * Claims the revalidation of the element for the specified key.
+   *
+   * <p>If this method returns <code>true</code>, {@link #endRevalidation(Object)} must be called
+   * once the element has been rebuilt.
+   *
+   * @param key The cache key
+   *
+   * @return <code>true</code> if the caller should revalidate the element;
+   *         <code>false</code> if it is already being revalidated.
+   */
+  public boolean startRevalidation(Object key) {
+    return this.revalidating.putIfAbsent(key, Boolean.TRUE) == null;
+  }
+
+  /**
+   * Releases the claim on the revalidation of the element for the specified key.
+   *
+   * @param key The cache key
+   */
+  public void endRevalidation(Object key) {
+    this.revalidating.remove(key);
+  }
+
+  /**
+   * Returns the current generation to stamp the elements with.
+   *
+   * <p>The generation must be read before the resource is built so that a purge occurring
+   * during the build makes the element stale.
+   *
+   * @return the current generation, starting at 1 and incremented by every purge.
+   */
+  public long getGeneration() {
+    return this.generation.get();
+  }
+
+  /**
+   * @return the number of keys being revalidated.
+   */
+  public int getRevalidating() {
+    return this.revalidating.size();
+  }
+
+}
@@ -16,6 +16,8 @@
 package org.pageseeder.bastille.cache.util;
 
 import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -86,6 +88,26 @@ public final class StaticResource implements Serializable, CachedResource {
    */
   private final long expires;
 
+  /**
+   * The surrogate keys used to tag this resource for invalidation (may be <code>null</code>)
+   */
+  private final @Nullable String surrogateKey;
+
+  /**
+   * The headers to send with the raw content.
+   */
+  private final transient HeaderBlock identityHeaders;
+
+  /**
+   * The headers to send with the gzipped content.
+   */
+  private final transient HeaderBlock gzipHeaders;
+
+  /**
+   * The number of bytes retained by this resource.
+   */
+  private final transient long retainedSize;
+
   /**
    * Creates a PageInfo object representing the "page".
    *
@@ -98,13 +120,74 @@ public final class StaticResource implements Serializable, CachedResource {
    *
    */
   public StaticResource(int status, @Nullable String contentType, byte[] body, long modified, String cacheControl, long expires) {
+    this(status, contentType, body, modified, cacheControl, expires, null);
+  }
+
+  /**
+   * Creates a static resource tagged with surrogate keys.
+   *
+   * @param status       The HTTP status code of the response
+   * @param contentType  The content type
+   * @param body         The body in bytes to store
+   * @param modified     The last modified date of the resource.
+   * @param cacheControl The cache control header for this static resource
+   * @param expires      When this resource expires
+   * @param surrogateKey The value of the "Surrogate-Key" header (may be <code>null</code>)
+   */
+  public StaticResource(int status, @Nullable String contentType, byte[] body, long modified, String cacheControl,
+      long expires, @Nullable String surrogateKey) {
+    this(status, contentType, toStorableContent(body, HttpHeaderUtils.isCompressible(contentType)),
+        HttpHeaderUtils.isCompressible(contentType), modified, cacheControl, expires, surrogateKey);
+  }
+
+  /**
+   * Creates a static resource from content which is already in its stored form.
+   *
+   * @param status       The HTTP status code of the response
+   * @param contentType  The content type
+   * @param content      The stored content
+   * @param gzippable    Whether the stored content is gzipped
+   * @param modified     The last modified date of the resource.
+   * @param cacheControl The cache control header for this static resource
+   * @param expires      When this resource expires
+   */
+  StaticResource(int status, @Nullable String contentType, byte @Nullable [] content, boolean gzippable,
+      long modified, String cacheControl, long expires) {
+    this(status, contentType, content, gzippable, modified, cacheControl, expires, null);
+  }
+
+  /**
+   * Creates a static resource from content which is already in its stored form.
+   *
+   * @param status       The HTTP status code of the response
+   * @param contentType  The content type
+   * @param content      The stored content
+   * @param gzippable    Whether the stored content is gzipped
+   * @param modified     The last modified date of the resource.
+   * @param cacheControl The cache control header for this static resource
+   * @param expires      When this resource expires
+   * @param surrogateKey The value of the "Surrogate-Key" header (may be <code>null</code>)
+   */
+  StaticResource(int status, @Nullable String contentType, byte @Nullable [] content, boolean gzippable,
+      long modified, String cacheControl, long expires, @Nullable String surrogateKey) {
     this.contentType = contentType;
-    this.gzippable = HttpHeaderUtils.isCompressible(contentType);
+    this.gzippable = gzippable;
     this.status = status;
     this.lastModified = (modified / MILLISECONDS_PER_SECOND) * MILLISECONDS_PER_SECOND;
-    this.content = toStorableContent(body, this.gzippable);
+    this.content = content;
     this.cacheControl = cacheControl;
     this.expires = expires;
+    this.surrogateKey = surrogateKey;
+    this.identityHeaders = toHeaderBlock(false);
+    this.gzipHeaders = toHeaderBlock(true);
+    this.retainedSize = ByteSizes.align(ByteSizes.OBJECT_HEADER + 6 * ByteSizes.REFERENCE + 1 + 4 + 3 * 8)
+        + ByteSizes.of(content) + ByteSizes.of(contentType) + ByteSizes.of(cacheControl) + ByteSizes.of(surrogateKey)
+        + this.identityHeaders.getRetainedSize() + this.gzipHeaders.getRetainedSize();
+  }
+
+  @Override
+  public long getRetainedSize() {
+    return this.retainedSize;
   }
 
   /**
@@ -201,18 +284,58 @@ public final class StaticResource implements Serializable, CachedResource {
     if (this.gzippable) {
       headers.add(new HttpHeader<>(HttpHeaders.VARY, "Accept-Encoding"));
     }
+    if (this.surrogateKey != null) {
+      headers.add(new HttpHeader<>(InvalidationIndex.SURROGATE_KEY, this.surrogateKey));
+    }
     return headers;
   }
 
   @Override
   public void copyHeadersTo(HttpServletResponse res, boolean gzipped) {
-    res.setHeader(HttpHeaders.CACHE_CONTROL, this.cacheControl);
-    res.setHeader(HttpHeaders.ETAG, getETag(gzipped));
-    res.setDateHeader(HttpHeaders.LAST_MODIFIED, this.lastModified);
-    res.setDateHeader(HttpHeaders.EXPIRES, this.expires);
-    if (this.gzippable) {
-      res.setHeader(HttpHeaders.VARY, "Accept-Encoding");
-    }
+    (gzipped ? this.gzipHeaders : this.identityHeaders).writeTo(res);
+  }
+
+  /**
+   * @param gzipped <code>true</code> for the headers of the gzipped variant.
+   * @return the precomputed headers for the specified variant.
+   */
+  HeaderBlock getHeaderBlock(boolean gzipped) {
+    return gzipped ? this.gzipHeaders : this.identityHeaders;
+  }
+
+  /**
+   * @return the value of the Cache-Control header.
+   */
+  String getCacheControl() {
+    return this.cacheControl;
+  }
+
+  /**
+   * @return when this resource expires.
+   */
+  long getExpires() {
+    return this.expires;
+  }
+
+  /**
+   * @return the value of the Surrogate-Key header if any.
+   */
+  @Nullable String getSurrogateKey() {
+    return this.surrogateKey;
+  }
+
+  /**
+   * @return the content as stored (gzipped if the resource is gzippable).
+   */
+  byte @Nullable [] getStoredContent() {
+    return this.content;
+  }
+
+  /**
+   * @return <code>true</code> if the content is stored gzipped.
+   */
+  boolean isStoredGzipped() {
+    return this.gzippable;
   }
 
   // public utility class
@@ -247,6 +370,48 @@ public final class StaticResource implements Serializable, CachedResource {
   // private helpers
   // ---------------------------------------------------------------------------------------------
 
+  /**
+   * Serializes this resource using the {@link CachedResourceCodec}.
+   *
+   * @return the serialization proxy
+   */
+  private Object writeReplace() {
+    return new CachedResourceProxy(this);
+  }
+
+  /**
+   * Static resources are always serialized through their proxy.
+   *
+   * @param in The object input stream
+   *
+   * @throws InvalidObjectException Always
+   */
+  private void readObject(ObjectInputStream in) throws InvalidObjectException {
+    throw new InvalidObjectException("Serialization proxy required");
+  }
+
+  /**
+   * Precomputes the headers for the specified variant.
+   *
+   * @param gzipped <code>true</code> for the gzipped variant.
+   *
+   * @return the corresponding header block
+   */
+  private HeaderBlock toHeaderBlock(boolean gzipped) {
+    HeaderBlock.Builder headers = new HeaderBlock.Builder();
+    headers.header(HttpHeaders.CACHE_CONTROL, this.cacheControl);
+    headers.header(HttpHeaders.ETAG, getETag(gzipped));
+    headers.dateHeader(HttpHeaders.LAST_MODIFIED, this.lastModified);
+    headers.dateHeader(HttpHeaders.EXPIRES, this.expires);
+    if (this.gzippable) {
+      headers.header(HttpHeaders.VARY, "Accept-Encoding");
+    }
+    if (this.surrogateKey != null) {
+      headers.header(InvalidationIndex.SURROGATE_KEY, this.surrogateKey);
+    }
+    return headers.build();
+  }
+
   /**
    * Returns the content to store in this class.
    *
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.jspecify.annotations.Nullable;
+
+import net.sf.ehcache.Element;
+import net.sf.ehcache.store.Policy;
+
+/**
+ * An eviction policy for Ehcache implementing TinyLFU admission.
+ *
+ * <p>The frequency of every key requested, whether it is in the cache or not, is recorded in a
+ * {@link FrequencySketch}. When the cache is full and a new element is added, Ehcache samples
+ * elements and asks the policy to select the one to evict: the victim is the sampled element with
+ * the lowest frequency, but if the element just added is not accessed more often than the victim,
+ * the new element is evicted instead. This prevents keys requested only once, for example by
+ * crawlers, from displacing the working set.
+ *
+ * <p>Keys must be recorded by calling {@link #record(Object)} on each access.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class TinyLFUPolicy implements Policy {
+
+  /** The name of this policy */
+  public static final String NAME = "TinyLFU";
+
+  /** The frequencies of the keys */
+  private final FrequencySketch sketch;
+
+  /**
+   * Creates a new policy.
+   *
+   * @param capacity The maximum number of entries in the cache
+   */
+  public TinyLFUPolicy(long capacity) {
+    this.sketch = new FrequencySketch(capacity);
+  }
+
+  /**
+   * Records an access to the specified key.
+   *
+   * @param key The key requested
+   */
+  public void record(Object key) {
+    this.sketch.increment(key);
+  }
+
+  /**
+   * Returns the estimated frequency of the specified key.
+   *
+   * @param key The key
+   *
+   * @return the frequency between 0 and 15
+   */
+  public int frequency(Object key) {
+    return this.sketch.frequency(key);
+  }
+
+  /**
+   * Indicates whether a candidate should be admitted in place of the victim.
+   *
+   * @param candidate The key of the new element
+   * @param victim    The key of the element it would displace
+   *
+   * @return <code>true</code> if the candidate is accessed more often than the victim
+   */
+  public boolean admit(Object candidate, Object victim) {
+    return this.sketch.frequency(candidate) > this.sketch.frequency(victim);
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public @Nullable Element selectedBasedOnPolicy(Element[] sampledElements, @Nullable Element justAdded) {
+    Element victim = null;
+    int lowest = Integer.MAX_VALUE;
+    for (Element element : sampledElements) {
+      if (element == null || element == justAdded) continue;
+      int frequency = this.sketch.frequency(element.getObjectKey());
+      if (frequency < lowest) {
+        victim = element;
+        lowest = frequency;
+      }
+    }
+    if (victim == null || justAdded == null) return victim;
+    return admit(justAdded.getObjectKey(), victim.getObjectKey()) ? victim : justAdded;
+  }
+
+  @Override
+  public boolean compare(Element element1, Element element2) {
+    return this.sketch.frequency(element2.getObjectKey()) < this.sketch.frequency(element1.getObjectKey());
+  }
+
+}
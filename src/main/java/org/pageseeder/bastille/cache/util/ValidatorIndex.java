@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListener;
+
+/**
+ * A concurrent index of the validators of the resources in a cache.
+ *
+ * <p>The index listens to the events of the cache so that it always reflects its content:
+ * validators are added when a resource is put or updated and removed when the resource is
+ * removed, expired or evicted.
+ *
+ * <p>Looking up a validator does not acquire any lock, so that conditional requests can be
+ * answered without contending with requests building resources in a blocking cache.
+ *
+ * <p>There is a single index per cache, use {@link #forCache(Ehcache)} to get it.
+ *
+ * @author agent
+ * @version Bastille 0.13.0
+ * @since Bastille 0.13.0
+ */
+public final class ValidatorIndex implements CacheEventListener {
+
+  /** Logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(ValidatorIndex.class);
+
+  /** The indexes mapped to the name of their cache. */
+  private static final Map<String, ValidatorIndex> INDEXES = new ConcurrentHashMap<>();
+
+  /** The validators mapped to the cache key */
+  private final Map<Object, ResourceValidator> validators = new ConcurrentHashMap<>();
+
+  /**
+   * Use factory method.
+   */
+  private ValidatorIndex() {
+  }
+
+  /**
+   * Returns the index for the specified cache, registering it with the cache if necessary.
+   *
+   * @param cache The cache
+   *
+   * @return the corresponding index
+   */
+  public static ValidatorIndex forCache(Ehcache cache) {
+    ValidatorIndex existing = INDEXES.get(cache.getName());
+    if (existing != null) return existing;
+    return INDEXES.computeIfAbsent(cache.getName(), name -> {
+      ValidatorIndex index = new ValidatorIndex();
+      cache.getCacheEventNotificationService().registerListener(index);
+      LOGGER.debug("Registered validator index for cache {}", name);
+      return index;
+    });
+  }
+
+  /**
+   * Returns the validator for the specified key.
+   *
+   * @param key The cache key
+   *
+   * @return the corresponding validator or <code>null</code> if not cached.
+   */
+  public @Nullable ResourceValidator get(Object key) {
+    return this.validators.get(key);
+  }
+
+  /**
+   * @return the number of validators in this index.
+   */
+  public int size() {
+    return this.validators.size();
+  }
+
+  // Cache events
+  // ----------------------------------------------------------------------------------------------
+
+  @Override
+  public void notifyElementPut(Ehcache cache, Element element) throws CacheException {
+    index(element);
+  }
+
+  @Override
+  public void notifyElementUpdated(Ehcache cache, Element element) throws CacheException {
+    index(element);
+  }
+
+  @Override
+  public void notifyElementRemoved(Ehcache cache, Element element) throws CacheException {
+    this.validators.remove(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyElementExpired(Ehcache cache, Element element) {
+    this.validators.remove(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyElementEvicted(Ehcache cache, Element element) {
+    this.validators.remove(element.getObjectKey());
+  }
+
+  @Override
+  public void notifyRemoveAll(Ehcache cache) {
+    this.validators.clear();
+  }
+
+  @Override
+  public void dispose() {
+    this.validators.clear();
+    INDEXES.values().remove(this);
+  }
+
+  @Override
+  public Object clone() throws CloneNotSupportedException {
+    throw new CloneNotSupportedException("Validator indexes are bound to a single cache");
+  }
+
+  /**
+   * Index the validator of the resource in the element, or remove it if it cannot be validated.
+   *
+   * @param element The cache element
+   */
+  private void index(Element element) {
+    Object key = element.getObjectKey();
+    ResourceValidator validator = ResourceValidator.of(element.getObjectValue(), element.getExpirationTime(),
+        element.getCreationTime(), element.getVersion());
+    if (validator != null) {
+      this.validators.put(key, validator);
+    } else {
+      this.validators.remove(key);
+    }
+  }
+
+}
@@ -16,20 +16,17 @@
 package org.pageseeder.bastille.psml;
 
 import java.io.IOException;
-import java.util.Objects;
-import java.util.concurrent.atomic.AtomicReference;
 
-import org.jspecify.annotations.Nullable;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import net.sf.ehcache.CacheManager;
-import net.sf.ehcache.Ehcache;
-import net.sf.ehcache.Element;
+import org.pageseeder.bastille.cache.store.CacheEntry;
+import org.pageseeder.bastille.cache.store.CacheStore;
+import org.pageseeder.bastille.cache.store.CacheStores;
+import org.pageseeder.bastille.cache.util.CacheStatistics;
 
 /**
  * A class to get the PSML from the cache.
  *
+ * <p>The cache store is provided by {@link CacheStores}.
+ *
  * @author Christophe Lauret
  * @version Bastille 0.7.0
  */
@@ -41,26 +38,11 @@ public final class PSMLCache {
   private PSMLCache() {
   }
 
-  /**
-   * Logger for debugging
-   */
-  private static final Logger LOGGER = LoggerFactory.getLogger(PSMLCache.class);
-
   /**
    * Name of the cache.
    */
   public static final String CACHE_NAME = "PSML";
 
-  /**
-   * Reuse the same cache manager to avoid I/O problems (configuration seems to be parsed for each getInstance).
-   */
-  private static final AtomicReference<@Nullable CacheManager> managerRef = new AtomicReference<>(null);
-
-  /**
-   * The cache containing all the PSML entries.
-   */
-  private static final AtomicReference<@Nullable Ehcache> cacheRef = new AtomicReference<>(null);
-
   /**
    * Return the cached content of the specified PSML file.
    *
@@ -70,35 +52,25 @@ public final class PSMLCache {
    * @throws IOException If thrown while loading the file.
    */
   public static String getContent(PSMLFile psml) throws IOException {
-    Ehcache cache = cacheRef.get();
-    if (cache == null) { init(); cache = Objects.requireNonNull(cacheRef.get()); }
-    Element cached = cache.get(psml.path());
+    CacheStore<String, String> store = CacheStores.get(CACHE_NAME);
+    CacheStatistics statistics = store.getStatistics();
+    CacheEntry<String> cached = store.getEntry(psml.path());
+    if (cached == null) {
+      cached = CacheStores.restore(store, psml.path(),
+          entry -> entry.value() instanceof String && entry.updated() >= psml.file().lastModified());
+    }
     String data = null;
-    if (cached == null || cached.getLastUpdateTime() < psml.file().lastModified()) {
+    if (cached == null || cached.updated() < psml.file().lastModified()) {
+      statistics.miss();
+      long start = System.nanoTime();
       data = PSMLConfig.load(psml);
-      cache.put(new Element(psml.path(), data));
+      statistics.build(System.nanoTime() - start);
+      store.put(psml.path(), data);
     } else {
-      data = (String)cached.getObjectValue();
+      statistics.hit();
+      data = cached.value();
     }
     return data;
   }
 
-  /**
-   * Initialises the cache for PSML files.
-   */
-  private static synchronized void init() {
-    if (managerRef.get() == null) {
-      LOGGER.info("Initialising cache for PSML data");
-      CacheManager manager = CacheManager.getInstance();
-      managerRef.set(manager);
-      Ehcache ehcache = manager.getEhcache(CACHE_NAME);
-      if (ehcache == null) {
-        LOGGER.warn("No cache exists for PSML data! Create a new cache entry for {} in your cache config!", CACHE_NAME);
-        manager.addCache(CACHE_NAME);
-        LOGGER.info("Created new cache named {} to store PSML data", CACHE_NAME);
-        ehcache = manager.getEhcache(CACHE_NAME);
-      }
-      cacheRef.set(ehcache);
-    }
-  }
 }
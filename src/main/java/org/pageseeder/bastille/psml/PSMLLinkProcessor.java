@@ -19,12 +19,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.atomic.AtomicReference;
 
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.jspecify.annotations.Nullable;
+import org.pageseeder.bastille.cache.store.CacheEntry;
+import org.pageseeder.bastille.cache.store.CacheStore;
+import org.pageseeder.bastille.cache.store.CacheStores;
+import org.pageseeder.bastille.cache.util.ByteSizes;
+import org.pageseeder.bastille.cache.util.CacheStatistics;
+import org.pageseeder.bastille.cache.util.Sized;
 import org.pageseeder.xmlwriter.XML;
 import org.pageseeder.xmlwriter.XMLHelper;
 import org.pageseeder.xmlwriter.XMLStringWriter;
@@ -34,10 +38,6 @@ import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
-import net.sf.ehcache.CacheManager;
-import net.sf.ehcache.Ehcache;
-import net.sf.ehcache.Element;
-
 /**
  * A utility class to process links in PSML data.
  *
@@ -62,16 +62,6 @@ public final class PSMLLinkProcessor {
    */
   public static final String CACHE_NAME = "PSMLProcessed";
 
-  /**
-   * Reuse the same cache manager to avoid I/O problems (configuration seems to be parsed for each getInstance).
-   */
-  private static final AtomicReference<@Nullable CacheManager> managerRef = new AtomicReference<>(null);
-
-  /**
-   * The cache containing all the PSML entries.
-   */
-  private static final AtomicReference<@Nullable Ehcache> cacheRef = new AtomicReference<>(null);
-
   /**
    * Generate the overview documents for the files for the specified folder.
    *
@@ -85,11 +75,14 @@ public final class PSMLLinkProcessor {
     // Get all the files
     File file = psml.file();
     if (file.exists() && !file.isDirectory()) {
-      Ehcache cache = cacheRef.get();
-      if (cache == null) { init(); cache = Objects.requireNonNull(cacheRef.get()); }
-
-      Element cached = cache.get(psml.path());
-      CachedProcessed entry = cached != null? (CachedProcessed)cached.getObjectValue() : null;
+      CacheStore<String, CachedProcessed> store = store();
+      CacheStatistics statistics = store.getStatistics();
+      CacheEntry<CachedProcessed> cached = store.getEntry(psml.path());
+      if (cached == null) {
+        cached = CacheStores.restore(store, psml.path(), restored -> restored.value() instanceof CachedProcessed
+            && restored.updated() >= lastModified(((CachedProcessed)restored.value()).linked()));
+      }
+      CachedProcessed entry = cached != null? cached.value() : null;
 
       // Check for freshness
       long modified = System.currentTimeMillis();
@@ -99,7 +92,9 @@ public final class PSMLLinkProcessor {
 
       // Attempt to grab the content
       String data = null;
-      if (cached == null || cached.getLastUpdateTime() < modified) {
+      if (cached == null || cached.updated() < modified) {
+        statistics.miss();
+        long start = System.nanoTime();
 
         // Process
         XMLStringWriter xml = new XMLStringWriter(XML.NamespaceAware.No);
@@ -116,7 +111,8 @@ public final class PSMLLinkProcessor {
           // Cache
           data = xml.toString();
           entry = new CachedProcessed(data, linked);
-          cache.put(new Element(psml.path(), entry));
+          statistics.build(System.nanoTime() - start);
+          store.put(psml.path(), entry);
 
         } catch (IOException ex) {
 
@@ -132,6 +128,7 @@ public final class PSMLLinkProcessor {
         }
 
       } else {
+        statistics.hit();
         data = entry.data();
       }
       return data;
@@ -154,15 +151,11 @@ public final class PSMLLinkProcessor {
     if (!file.exists()) return null;
     // No cache yet, return the last modified date of file
     long modified = file.lastModified();
-    Ehcache cache = cacheRef.get();
-    if (cache != null) {
+    if (CacheStores.find(CACHE_NAME) != null) {
       // Attempt to grab the content
-      Element cached = cache.get(psml.path());
-      if (cached != null) {
-        CachedProcessed entry = (CachedProcessed)cached.getObjectValue();
-        if (entry != null) {
-          modified = lastModified(entry.linked());
-        }
+      CachedProcessed entry = store().get(psml.path());
+      if (entry != null) {
+        modified = lastModified(entry.linked());
       }
     }
     return Long.toString(modified);
@@ -228,22 +221,10 @@ public final class PSMLLinkProcessor {
   }
 
   /**
-   * Initialises the cache for PSML files.
+   * @return the store for the processed PSML.
    */
-  private static synchronized void init() {
-    if (managerRef.get() == null) {
-      LOGGER.info("Initialising cache for PSML processed data");
-      CacheManager manager = CacheManager.getInstance();
-      managerRef.set(manager);
-      Ehcache ehcache = manager.getEhcache(CACHE_NAME);
-      if (ehcache == null) {
-        LOGGER.warn("No cache exists for PSML processed data! Create a new cache entry for {} in your cache config!", CACHE_NAME);
-        manager.addCache(CACHE_NAME);
-        LOGGER.info("Created new cache named {} to store PSML data", CACHE_NAME);
-        ehcache = manager.getEhcache(CACHE_NAME);
-      }
-      cacheRef.set(ehcache);
-    }
+  private static CacheStore<String, CachedProcessed> store() {
+    return CacheStores.get(CACHE_NAME);
   }
 
   /**
@@ -252,7 +233,7 @@ public final class PSMLLinkProcessor {
    * @author Christophe Lauret
    * @version 21 November 2012
    */
-  private static final class CachedProcessed implements Serializable {
+  private static final class CachedProcessed implements Serializable, Sized {
 
     /**
      * As per requirement by the <code>Serializable</code> interface.
@@ -269,6 +250,11 @@ public final class PSMLLinkProcessor {
      */
     private final List<File> linked;
 
+    /**
+     * The number of bytes retained.
+     */
+    private final long retainedSize;
+
     /**
      * @param data the XML data.
      * @param linked the list of files linked.
@@ -276,6 +262,17 @@ public final class PSMLLinkProcessor {
     public CachedProcessed(String data, List<File> linked) {
       this.data = data;
       this.linked = linked;
+      long size = ByteSizes.align(ByteSizes.OBJECT_HEADER + 2 * ByteSizes.REFERENCE + 8) + ByteSizes.of(data)
+          + ByteSizes.align(ByteSizes.OBJECT_HEADER + ByteSizes.REFERENCE + 8) + ByteSizes.array(linked.size(), ByteSizes.REFERENCE);
+      for (File file : linked) {
+        size += ByteSizes.align(ByteSizes.OBJECT_HEADER + 3 * ByteSizes.REFERENCE + 4) + ByteSizes.of(file.getPath());
+      }
+      this.retainedSize = size;
+    }
+
+    @Override
+    public long getRetainedSize() {
+      return this.retainedSize;
     }
 
     /**
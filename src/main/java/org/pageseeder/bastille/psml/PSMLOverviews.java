@@ -21,12 +21,14 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map.Entry;
-import java.util.Objects;
-import java.util.concurrent.atomic.AtomicReference;
 
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.jspecify.annotations.Nullable;
+import org.pageseeder.bastille.cache.store.CacheEntry;
+import org.pageseeder.bastille.cache.store.CacheStore;
+import org.pageseeder.bastille.cache.store.CacheStores;
+import org.pageseeder.bastille.cache.util.CacheStatistics;
 import org.pageseeder.xmlwriter.XML;
 import org.pageseeder.xmlwriter.XMLHelper;
 import org.pageseeder.xmlwriter.XMLStringWriter;
@@ -36,10 +38,6 @@ import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
-import net.sf.ehcache.CacheManager;
-import net.sf.ehcache.Ehcache;
-import net.sf.ehcache.Element;
-
 /**
  * A utility class to generate the overview data.
  *
@@ -65,16 +63,6 @@ public final class PSMLOverviews {
    */
   public static final String CACHE_NAME = "PSMLOverview";
 
-  /**
-   * Reuse the same cache manager to avoid I/O problems (configuration seems to be parsed for each getInstance).
-   */
-  private static final AtomicReference<@Nullable CacheManager> managerRef = new AtomicReference<>(null);
-
-  /**
-   * The cache containing all the PSML entries.
-   */
-  private static final AtomicReference<@Nullable Ehcache> cacheRef = new AtomicReference<>(null);
-
   /**
    * Generate the overview documents for the files for the specified folder.
    *
@@ -91,18 +79,24 @@ public final class PSMLOverviews {
       List<File> files = getContents(dir);
       long modified = lastModified(files);
 
-      Ehcache cache = cacheRef.get();
-      if (cache == null) { init(); cache = Objects.requireNonNull(cacheRef.get()); }
-
-      Element cached = cache.get(folder.path());
+      CacheStore<String, String> store = CacheStores.get(CACHE_NAME);
+      CacheStatistics statistics = store.getStatistics();
+      CacheEntry<String> cached = store.getEntry(folder.path());
+      if (cached == null) {
+        cached = CacheStores.restore(store, folder.path(), entry -> entry.value() instanceof String && entry.updated() >= modified);
+      }
       String data = null;
-      if (cached == null || cached.getLastUpdateTime() < modified) {
+      if (cached == null || cached.updated() < modified) {
+        statistics.miss();
+        long start = System.nanoTime();
         XMLStringWriter buffer = new XMLStringWriter(XML.NamespaceAware.No);
         processOverview(folder, files, buffer);
         data = buffer.toString();
-        cache.put(new Element(folder.path(), data));
+        statistics.build(System.nanoTime() - start);
+        store.put(folder.path(), data);
       } else {
-        data = (String)cached.getObjectValue();
+        statistics.hit();
+        data = cached.value();
       }
       return data;
     }
@@ -196,23 +190,4 @@ public final class PSMLOverviews {
     return mostRecent;
   }
 
-  /**
-   * Initialises the cache for PSML files.
-   */
-  private static synchronized void init() {
-    if (managerRef.get() == null) {
-      LOGGER.info("Initialising cache for PSML overview data");
-      CacheManager manager = CacheManager.getInstance();
-      managerRef.set(manager);
-      Ehcache ehcache = manager.getEhcache(CACHE_NAME);
-      if (ehcache == null) {
-        LOGGER.warn("No cache exists for PSML overview data! Create a new cache entry for {} in your cache config!", CACHE_NAME);
-        manager.addCache(CACHE_NAME);
-        LOGGER.info("Created new cache named {} to store PSML data", CACHE_NAME);
-        ehcache = manager.getEhcache(CACHE_NAME);
-      }
-      cacheRef.set(ehcache);
-    }
-  }
-
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.bus;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+class InvalidationBusTest {
+
+  @Test
+  void publish_deliversToOtherNodes() throws IOException {
+    InProcessTransport a = new InProcessTransport();
+    List<Invalidation> receivedA = Collections.synchronizedList(new ArrayList<>());
+    List<Invalidation> receivedB = Collections.synchronizedList(new ArrayList<>());
+    try (InvalidationBus busA = new InvalidationBus(a, 60000, receivedA::add);
+         InvalidationBus busB = new InvalidationBus(a.connect(), 60000, receivedB::add)) {
+      busA.start();
+      busB.start();
+      Invalidation key = new Invalidation(Invalidation.Type.KEY, "pages", "GET_/index.html", false);
+      busA.publish(key);
+      busA.publish(key);
+      busA.publish(new Invalidation(Invalidation.Type.TAG, "pages", "news", true));
+      busA.flush();
+      assertEquals(2, receivedB.size());
+      assertEquals(key, receivedB.get(0));
+      assertTrue(receivedA.isEmpty());
+      assertEquals(2, busA.getSent());
+      assertEquals(2, busB.getReceived());
+    }
+  }
+
+  @Test
+  void publish_clearIncludesPending() throws IOException {
+    InProcessTransport a = new InProcessTransport();
+    List<Invalidation> received = new ArrayList<>();
+    try (InvalidationBus busA = new InvalidationBus(a, 60000, i -> {});
+         InvalidationBus busB = new InvalidationBus(a.connect(), 60000, received::add)) {
+      busA.start();
+      busB.start();
+      busA.publish(new Invalidation(Invalidation.Type.KEY, "pages", "GET_/a", false));
+      busA.publish(new Invalidation(Invalidation.Type.PREFIX, "other", "/docs", false));
+      busA.publish(Invalidation.all("pages", false));
+      busA.publish(new Invalidation(Invalidation.Type.KEY, "pages", "GET_/b", false));
+      busA.flush();
+      assertEquals(2, received.size());
+      assertEquals("other", received.get(0).cache());
+      assertEquals(Invalidation.all("pages", false), received.get(1));
+    }
+  }
+
+  @Test
+  void receive_ignoresOwnMessages() throws IOException {
+    List<Invalidation> received = new ArrayList<>();
+    InProcessTransport loopback = new InProcessTransport();
+    try (InvalidationBus bus = new InvalidationBus(loopback, 0, received::add)) {
+      List<byte[]> messages = InvalidationBus.encode(1L, Collections.singletonList(Invalidation.all("", true)), 1024);
+      bus.receive(messages.get(0));
+      assertEquals(1, received.size());
+      assertTrue(received.get(0).isSoft());
+      bus.receive(new byte[] {1, 2, 3});
+      assertEquals(1, received.size());
+    }
+  }
+
+  @Test
+  void encode_splitsMessages() throws IOException {
+    List<Invalidation> invalidations = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      invalidations.add(new Invalidation(Invalidation.Type.KEY, "pages", "GET_/page-"+i+".html", false));
+    }
+    List<byte[]> messages = InvalidationBus.encode(1L, invalidations, 512);
+    assertTrue(messages.size() > 1);
+    List<Invalidation> received = new ArrayList<>();
+    try (InvalidationBus bus = new InvalidationBus(new InProcessTransport(), 0, received::add)) {
+      for (byte[] message : messages) {
+        assertTrue(message.length <= 512);
+        bus.receive(message);
+      }
+    }
+    assertEquals(invalidations, received);
+  }
+
+  @Test
+  void encode_degradesOversizedInvalidation() throws IOException {
+    StringBuilder key = new StringBuilder("GET_/");
+    while (key.length() < 1024) {
+      key.append("page/");
+    }
+    List<Invalidation> invalidations = Arrays.asList(
+        new Invalidation(Invalidation.Type.KEY, "pages", "GET_/a", false),
+        new Invalidation(Invalidation.Type.KEY, "pages", key.toString(), true));
+    List<byte[]> messages = InvalidationBus.encode(1L, invalidations, 512);
+    List<Invalidation> received = new ArrayList<>();
+    try (InvalidationBus bus = new InvalidationBus(new InProcessTransport(), 0, received::add)) {
+      for (byte[] message : messages) {
+        bus.receive(message);
+      }
+    }
+    assertEquals(Arrays.asList(invalidations.get(0), Invalidation.all("pages", true)), received);
+  }
+
+  @Test
+  void publish_signedMessages() throws IOException {
+    byte[] secret = "s3cret".getBytes(StandardCharsets.UTF_8);
+    InProcessTransport a = new InProcessTransport();
+    List<Invalidation> signed = Collections.synchronizedList(new ArrayList<>());
+    List<Invalidation> unsigned = Collections.synchronizedList(new ArrayList<>());
+    List<Invalidation> other = Collections.synchronizedList(new ArrayList<>());
+    try (InvalidationBus busA = new InvalidationBus(a, 60000, i -> {}, secret);
+         InvalidationBus busB = new InvalidationBus(a.connect(), 60000, signed::add, secret);
+         InvalidationBus busC = new InvalidationBus(a.connect(), 60000, unsigned::add);
+         InvalidationBus busD = new InvalidationBus(a.connect(), 60000, other::add, "other".getBytes(StandardCharsets.UTF_8))) {
+      busA.start();
+      busB.start();
+      busC.start();
+      busD.start();
+      Invalidation key = new Invalidation(Invalidation.Type.KEY, "pages", "GET_/index.html", false);
+      busA.publish(key);
+      busA.flush();
+      assertEquals(Collections.singletonList(key), signed);
+      assertTrue(other.isEmpty());
+      // Unsigned messages are rejected by buses with a secret
+      busC.publish(Invalidation.all("pages", false));
+      busC.flush();
+      assertEquals(1, signed.size());
+      assertTrue(other.isEmpty());
+    }
+  }
+
+  @Test
+  void udp_ignoresOtherSources() throws IOException, InterruptedException {
+    InetSocketAddress a = freeAddress();
+    InetSocketAddress b = freeAddress();
+    InetSocketAddress c = freeAddress();
+    BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    try (UDPTransport transportA = new UDPTransport(a, Collections.singletonList(b));
+         UDPTransport transportB = new UDPTransport(b, Collections.singletonList(a));
+         UDPTransport transportC = new UDPTransport(c, Collections.singletonList(a))) {
+      transportA.start(message -> received.add(new String(message, StandardCharsets.UTF_8)));
+      transportB.start(message -> {});
+      transportC.start(message -> {});
+      transportC.send("from C".getBytes(StandardCharsets.UTF_8));
+      transportB.send("from B".getBytes(StandardCharsets.UTF_8));
+      assertEquals("from B", received.poll(5, TimeUnit.SECONDS));
+      assertTrue(received.isEmpty());
+    }
+  }
+
+  @Test
+  void newBus_receivesWithoutPublishing() throws IOException, InterruptedException {
+    InetSocketAddress sender = freeAddress();
+    InetSocketAddress receiver = freeAddress();
+    CacheManager manager = CacheManager.getInstance();
+    if (manager.cacheExists("test-bus")) {
+      manager.removeCache("test-bus");
+    }
+    manager.addCache("test-bus");
+    Ehcache cache = manager.getEhcache("test-bus");
+    cache.put(new Element("GET_/a", "A"));
+    Map<String, String> settings = new HashMap<>();
+    settings.put("bastille.cache.bus.transport", "udp");
+    settings.put("bastille.cache.bus.port", Integer.toString(receiver.getPort()));
+    settings.put("bastille.cache.bus.peers", "127.0.0.1:"+sender.getPort());
+    settings.put("bastille.cache.bus.secret", "s3cret");
+    byte[] secret = "s3cret".getBytes(StandardCharsets.UTF_8);
+    // The receiving node never publishes anything
+    try (InvalidationBus busB = InvalidationBus.newBus(settings::getOrDefault);
+         InvalidationBus busA = new InvalidationBus(new UDPTransport(sender, Collections.singletonList(receiver)), 0, i -> {}, secret)) {
+      assertNotNull(busB);
+      busA.start();
+      busA.publish(new Invalidation(Invalidation.Type.KEY, "test-bus", "GET_/a", false));
+      busA.flush();
+      long deadline = System.currentTimeMillis() + 5000;
+      while (busB.getReceived() == 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(1, busB.getReceived());
+      assertFalse(cache.isKeyInCache("GET_/a"));
+    }
+  }
+
+  @Test
+  void invalidation_includes() {
+    Invalidation clearAll = Invalidation.all("", false);
+    Invalidation key = new Invalidation(Invalidation.Type.KEY, "pages", "k", true);
+    assertTrue(clearAll.includes(key));
+    assertTrue(Invalidation.all("pages", false).includes(key));
+    assertFalse(Invalidation.all("other", false).includes(key));
+    assertFalse(Invalidation.all("pages", true).includes(key));
+    assertFalse(key.includes(clearAll));
+  }
+
+  /**
+   * Returns a loopback address with a port which is currently free.
+   */
+  private static InetSocketAddress freeAddress() throws IOException {
+    try (DatagramSocket socket = new DatagramSocket(new InetSocketAddress("127.0.0.1", 0))) {
+      return new InetSocketAddress("127.0.0.1", socket.getLocalPort());
+    }
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.filter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+
+import org.junit.jupiter.api.Test;
+import org.pageseeder.bastille.cache.util.CacheStatistics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+
+class BundleCachingFilterTest {
+
+  @Test
+  void bundle_concatenatesFiles() throws IOException, ServletException {
+    File root = newRoot();
+    BundleCachingFilter filter = newFilter(root, "test-bundle-ok", "bundle.all.css", "/style/a.css, /style/b.css");
+    FilterTests.Response response = new FilterTests.Response();
+    filter.doFilter(FilterTests.request("GET", "/bundle/all.css"), response.proxy(), FilterTests.chain(response));
+    assertEquals(200, response.status);
+    assertEquals(".a{}\n.b{}\n", response.text());
+    assertEquals(0, response.chained);
+    assertNotNull(cache("test-bundle-ok").getQuiet("GET_/bundle/all.css"));
+  }
+
+  @Test
+  void bundle_undefinedIsPassedThrough() throws IOException, ServletException {
+    File root = newRoot();
+    BundleCachingFilter filter = newFilter(root, "test-bundle-undefined", "bundle.all.css", "/style/a.css");
+    FilterTests.Response response = new FilterTests.Response();
+    filter.doFilter(FilterTests.request("GET", "/bundle/other.css"), response.proxy(), FilterTests.chain(response));
+    assertEquals(1, response.chained);
+  }
+
+  @Test
+  void bundle_noFileIsNotFound() throws IOException, ServletException {
+    File root = newRoot();
+    BundleCachingFilter filter = newFilter(root, "test-bundle-none", "bundle.none.css", "/style/x.css, /style/y.css");
+    FilterTests.Response response = new FilterTests.Response();
+    filter.doFilter(FilterTests.request("GET", "/bundle/none.css"), response.proxy(), FilterTests.chain(response));
+    assertEquals(404, response.status);
+    assertEquals(0, response.body.size());
+    Ehcache cache = cache("test-bundle-none");
+    assertTrue(cache.getQuiet("GET_/bundle/none.css") == null || cache.getQuiet("GET_/bundle/none.css").getObjectValue() == null);
+    assertEquals(0, CacheStatistics.forName("test-bundle-none").getMisses());
+    assertEquals(0, CacheStatistics.forName("test-bundle-none").getBuildTime().count());
+  }
+
+  @Test
+  void bundle_partialIsNotCached() throws IOException, ServletException {
+    File root = newRoot();
+    BundleCachingFilter filter = newFilter(root, "test-bundle-partial", "bundle.partial.css", "/style/a.css, /style/x.css");
+    FilterTests.Response response = new FilterTests.Response();
+    filter.doFilter(FilterTests.request("GET", "/bundle/partial.css"), response.proxy(), FilterTests.chain(response));
+    assertEquals(200, response.status);
+    assertEquals(".a{}\n", response.text());
+    Ehcache cache = cache("test-bundle-partial");
+    assertTrue(cache.getQuiet("GET_/bundle/partial.css") == null || cache.getQuiet("GET_/bundle/partial.css").getObjectValue() == null);
+    // Built like any other resource, but the cache was not looked up
+    CacheStatistics statistics = CacheStatistics.forName("test-bundle-partial");
+    assertEquals(0, statistics.getMisses() + statistics.getHits());
+    assertEquals(1, statistics.getBuildTime().count());
+
+    // Once the missing file is available, the bundle is complete and cached
+    write(new File(root, "style/x.css"), ".x{}");
+    response = new FilterTests.Response();
+    filter.doFilter(FilterTests.request("GET", "/bundle/partial.css"), response.proxy(), FilterTests.chain(response));
+    assertEquals(".a{}\n.x{}\n", response.text());
+    assertNotNull(cache.getQuiet("GET_/bundle/partial.css").getObjectValue());
+  }
+
+  private static BundleCachingFilter newFilter(File root, String cacheName, String... bundle) {
+    CachingFilterBaseTest.newCache(cacheName);
+    BundleCachingFilter filter = new BundleCachingFilter();
+    FilterConfig config = FilterTests.config(FilterTests.context(root), "cache-name", cacheName, bundle[0], bundle[1]);
+    filter.init(config);
+    return filter;
+  }
+
+  private static Ehcache cache(String name) {
+    return CacheManager.getInstance().getEhcache(name);
+  }
+
+  private static File newRoot() throws IOException {
+    File root = Files.createTempDirectory("bundle").toFile();
+    write(new File(root, "style/a.css"), ".a{}");
+    write(new File(root, "style/b.css"), ".b{}");
+    return root;
+  }
+
+  private static void write(File file, String content) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    file.deleteOnExit();
+  }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.filter;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+
+import org.junit.jupiter.api.Test;
+import org.pageseeder.bastille.cache.util.CacheStatistics;
+import org.pageseeder.bastille.cache.util.GDSFPolicy;
+import org.pageseeder.bastille.cache.util.HeavyHitters;
+import org.pageseeder.bastille.cache.util.MissRatioCurve;
+import org.pageseeder.bastille.cache.util.SoftPurge;
+import org.pageseeder.bastille.cache.util.TinyLFUPolicy;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.constructs.blocking.BlockingCache;
+import net.sf.ehcache.store.Policy;
+
+class CachingFilterBaseTest {
+
+  private static final File ROOT = new File("src/test/resources");
+
+  @Test
+  void init_tinyLFUAdmission() {
+    Cache cache = newCache("test-admission");
+    ClasspathCachingFilter filter = new ClasspathCachingFilter();
+    filter.init(FilterTests.config(FilterTests.context(ROOT), "cache-name", "test-admission", "admission", "tinylfu"));
+    assertTrue(CacheManager.getInstance().getEhcache("test-admission") instanceof BlockingCache);
+    Policy policy = cache.getMemoryStoreEvictionPolicy();
+    assertTrue(policy instanceof TinyLFUPolicy);
+    // A second filter on the same cache shares the policy
+    ClasspathCachingFilter other = new ClasspathCachingFilter();
+    other.init(FilterTests.config(FilterTests.context(ROOT), "cache-name", "test-admission", "admission", "tinylfu"));
+    assertSame(policy, cache.getMemoryStoreEvictionPolicy());
+  }
+
+  @Test
+  void init_gdsfEviction() {
+    Cache cache = newCache("test-eviction");
+    ClasspathCachingFilter filter = new ClasspathCachingFilter();
+    filter.init(FilterTests.config(FilterTests.context(ROOT), "cache-name", "test-eviction", "eviction", "gdsf"));
+    assertTrue(cache.getMemoryStoreEvictionPolicy() instanceof GDSFPolicy);
+  }
+
+  @Test
+  void init_missRatioCurveOptIn() {
+    newCache("test-mrc-default");
+    new ClasspathCachingFilter().init(FilterTests.config(FilterTests.context(ROOT), "cache-name", "test-mrc-default"));
+    assertNull(MissRatioCurve.get("test-mrc-default"));
+    newCache("test-mrc-sampled");
+    new ClasspathCachingFilter().init(FilterTests.config(FilterTests.context(ROOT), "cache-name", "test-mrc-sampled", "mrc-sample", "0.5"));
+    assertNotNull(MissRatioCurve.get("test-mrc-sampled"));
+  }
+
+  @Test
+  void init_hotKeysOptIn() {
+    newCache("test-hot-keys-default");
+    new ClasspathCachingFilter().init(FilterTests.config(FilterTests.context(ROOT), "cache-name", "test-hot-keys-default"));
+    assertNull(HeavyHitters.get("test-hot-keys-default"));
+  }
+
+  @Test
+  void notModified_recordsAccess() throws IOException, ServletException {
+    newCache("test-not-modified");
+    ClasspathCachingFilter filter = new ClasspathCachingFilter();
+    filter.init(FilterTests.config(FilterTests.context(ROOT), "cache-name", "test-not-modified", "hot-keys", "16"));
+    FilterTests.Response response = new FilterTests.Response();
+    filter.doFilter(FilterTests.request("GET", "/test/hello.txt"), response.proxy(), FilterTests.chain(response));
+    assertEquals(200, response.status);
+    String etag = response.headers.get("ETag");
+    assertNotNull(etag);
+    long hits = CacheManager.getInstance().getEhcache("test-not-modified").getQuiet("GET_/test/hello.txt").getHitCount();
+
+    // Conditional request answered from the validators
+    FilterTests.Response conditional = new FilterTests.Response();
+    filter.doFilter(FilterTests.request("GET", "/test/hello.txt", "If-None-Match", etag), conditional.proxy(), FilterTests.chain(conditional));
+    assertEquals(304, conditional.status);
+    assertEquals(hits + 1, CacheManager.getInstance().getEhcache("test-not-modified").getQuiet("GET_/test/hello.txt").getHitCount());
+    HeavyHitters hotKeys = HeavyHitters.get("test-not-modified");
+    assertNotNull(hotKeys);
+    assertEquals(2, hotKeys.top(HeavyHitters.Metric.REQUESTS, 1).get(0).count());
+    // Only the bytes actually written are counted, none for the 304
+    assertEquals("Hello classpath\n".length(), hotKeys.top(HeavyHitters.Metric.BYTES, 1).get(0).count());
+  }
+
+  @Test
+  void softPurge_servesStaleWhileRevalidating() throws IOException, ServletException {
+    newCache("test-soft-purge");
+    ClasspathCachingFilter filter = new ClasspathCachingFilter();
+    filter.init(FilterTests.config(FilterTests.context(ROOT), "cache-name", "test-soft-purge"));
+    String key = "GET_/test/hello.txt";
+    CacheStatistics statistics = CacheStatistics.forName("test-soft-purge");
+    assertEquals("Hello classpath\n", get(filter).text());
+    assertEquals(1, statistics.getMisses());
+
+    // Another request is revalidating the purged resource
+    SoftPurge purge = SoftPurge.get("test-soft-purge");
+    assertNotNull(purge);
+    purge.purgeAll();
+    assertTrue(purge.startRevalidation(key));
+    assertEquals("Hello classpath\n", get(filter).text());
+    assertEquals(1, statistics.getStale());
+    assertEquals(1, statistics.getMisses());
+    purge.endRevalidation(key);
+
+    // Rebuilt by the next request, then served fresh even within the same millisecond
+    assertEquals("Hello classpath\n", get(filter).text());
+    assertEquals(2, statistics.getMisses());
+    assertEquals(0, purge.getRevalidating());
+    assertEquals("Hello classpath\n", get(filter).text());
+    assertEquals(2, statistics.getMisses());
+    assertEquals(1, statistics.getHits());
+    assertEquals(1, statistics.getStale());
+  }
+
+  /**
+   * Creates a new cache in the default cache manager.
+   */
+  static Cache newCache(String name) {
+    CacheManager manager = CacheManager.getInstance();
+    if (manager.cacheExists(name)) {
+      manager.removeCache(name);
+    }
+    manager.addCache(name);
+    return manager.getCache(name);
+  }
+
+  /**
+   * Requests the classpath fixture and checks that it was served.
+   */
+  private static FilterTests.Response get(ClasspathCachingFilter filter) throws IOException, ServletException {
+    FilterTests.Response response = new FilterTests.Response();
+    filter.doFilter(FilterTests.request("GET", "/test/hello.txt"), response.proxy(), FilterTests.chain(response));
+    assertEquals(200, response.status);
+    return response;
+  }
+
+}
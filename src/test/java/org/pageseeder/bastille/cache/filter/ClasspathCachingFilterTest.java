@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.filter;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+
+import javax.servlet.ServletException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import net.sf.ehcache.CacheManager;
+
+class ClasspathCachingFilterTest {
+
+  private static final File ROOT = new File("src/test/resources");
+
+  @Test
+  void resource_servedFromClasspath() throws IOException, ServletException {
+    ClasspathCachingFilter filter = newFilter("test-classpath-ok", null);
+    FilterTests.Response response = new FilterTests.Response();
+    filter.doFilter(FilterTests.request("GET", "/test/hello.txt"), response.proxy(), FilterTests.chain(response));
+    assertEquals(200, response.status);
+    assertEquals("Hello classpath\n", response.text());
+    assertEquals(0, response.chained);
+    assertNotNull(CacheManager.getInstance().getEhcache("test-classpath-ok").getQuiet("GET_/test/hello.txt"));
+  }
+
+  @Test
+  void resource_missingIsPassedThrough() throws IOException, ServletException {
+    ClasspathCachingFilter filter = newFilter("test-classpath-missing", null);
+    FilterTests.Response response = new FilterTests.Response();
+    filter.doFilter(FilterTests.request("GET", "/test/missing.txt"), response.proxy(), FilterTests.chain(response));
+    assertEquals(1, response.chained);
+    assertEquals(404, response.status);
+  }
+
+  @Test
+  void isCacheable_remembersMissingResources() {
+    CountingClassLoader loader = new CountingClassLoader();
+    ClasspathCachingFilter filter = newFilter("test-classpath-negative", loader);
+    assertFalse(filter.isCacheable(FilterTests.request("GET", "/test/missing.txt")));
+    assertFalse(filter.isCacheable(FilterTests.request("GET", "/test/missing.txt")));
+    assertEquals(1, loader.lookups);
+    assertTrue(filter.isCacheable(FilterTests.request("GET", "/test/hello.txt")));
+    assertEquals(2, loader.lookups);
+  }
+
+  @Test
+  void isCacheable_rejectsUnsafePaths() {
+    ClasspathCachingFilter filter = newFilter("test-classpath-unsafe", null);
+    assertFalse(filter.isCacheable(FilterTests.request("GET", "/test/../test/hello.txt")));
+    assertFalse(filter.isCacheable(FilterTests.request("GET", "/org/pageseeder/bastille/cache/filter/ClasspathCachingFilter.class")));
+    assertFalse(filter.isCacheable(FilterTests.request("GET", "/test/")));
+    assertFalse(filter.isCacheable(FilterTests.request("POST", "/test/hello.txt")));
+  }
+
+  private static ClasspathCachingFilter newFilter(String cacheName, ClassLoader loader) {
+    CachingFilterBaseTest.newCache(cacheName);
+    ClasspathCachingFilter filter = new ClasspathCachingFilter();
+    Thread thread = Thread.currentThread();
+    ClassLoader previous = thread.getContextClassLoader();
+    if (loader != null) {
+      thread.setContextClassLoader(loader);
+    }
+    try {
+      filter.init(FilterTests.config(FilterTests.context(ROOT), "cache-name", cacheName));
+    } finally {
+      thread.setContextClassLoader(previous);
+    }
+    return filter;
+  }
+
+  /**
+   * A class loader counting the resource lookups.
+   */
+  private static final class CountingClassLoader extends ClassLoader {
+
+    int lookups = 0;
+
+    CountingClassLoader() {
+      super(ClasspathCachingFilterTest.class.getClassLoader());
+    }
+
+    @Override
+    public URL getResource(String name) {
+      this.lookups++;
+      return super.getResource(name);
+    }
+  }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.filter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Minimal servlet objects to test the caching filters without a servlet container.
+ */
+final class FilterTests {
+
+  private FilterTests() {
+  }
+
+  /**
+   * @param context The servlet context
+   * @param params  The init parameters as name/value pairs
+   *
+   * @return a filter configuration with the specified parameters
+   */
+  static FilterConfig config(ServletContext context, String... params) {
+    Map<String, String> map = new HashMap<>();
+    for (int i = 0; i + 1 < params.length; i += 2) {
+      map.put(params[i], params[i + 1]);
+    }
+    return proxy(FilterConfig.class, (method, args) -> {
+      switch (method) {
+        case "getFilterName": return "test";
+        case "getServletContext": return context;
+        case "getInitParameter": return map.get((String)args[0]);
+        case "getInitParameterNames": return Collections.enumeration(map.keySet());
+        default: return null;
+      }
+    });
+  }
+
+  /**
+   * @param root The root of the Web application
+   *
+   * @return a servlet context resolving paths against the specified directory
+   */
+  static ServletContext context(File root) {
+    return proxy(ServletContext.class, (method, args) -> {
+      switch (method) {
+        case "getRealPath": return new File(root, (String)args[0]).getPath();
+        case "getMimeType": return mimeType((String)args[0]);
+        case "getContextPath": return "";
+        default: return null;
+      }
+    });
+  }
+
+  /**
+   * @param method  The HTTP method
+   * @param uri     The request URI
+   * @param headers The request headers as name/value pairs
+   *
+   * @return a request without parameters
+   */
+  static HttpServletRequest request(String method, String uri, String... headers) {
+    Map<String, Object> attributes = new HashMap<>();
+    Map<String, String> map = new HashMap<>();
+    for (int i = 0; i + 1 < headers.length; i += 2) {
+      map.put(headers[i].toLowerCase(), headers[i + 1]);
+    }
+    return proxy(HttpServletRequest.class, (name, args) -> {
+      switch (name) {
+        case "getMethod": return method;
+        case "getRequestURI": return uri;
+        case "getRequestURL": return new StringBuffer("http://localhost").append(uri);
+        case "getContextPath": return "";
+        case "getAttribute": return attributes.get((String)args[0]);
+        case "setAttribute": attributes.put((String)args[0], args[1]); return null;
+        case "removeAttribute": attributes.remove((String)args[0]); return null;
+        case "getHeader": return map.get(((String)args[0]).toLowerCase());
+        case "getHeaders": return map.containsKey(((String)args[0]).toLowerCase())
+            ? Collections.enumeration(Collections.singleton(map.get(((String)args[0]).toLowerCase())))
+            : Collections.emptyEnumeration();
+        case "getHeaderNames": return Collections.enumeration(map.keySet());
+        case "getDateHeader": return -1L;
+        case "getIntHeader": return -1;
+        default: return null;
+      }
+    });
+  }
+
+  /**
+   * @param response Receives the output of the chain
+   *
+   * @return a filter chain counting invocations and responding with a 404
+   */
+  static FilterChain chain(Response response) {
+    return (req, res) -> {
+      response.chained++;
+      ((HttpServletResponse)res).sendError(HttpServletResponse.SC_NOT_FOUND);
+    };
+  }
+
+  /**
+   * Captures the response written by a filter.
+   */
+  static final class Response {
+
+    int status = HttpServletResponse.SC_OK;
+    int chained = 0;
+    boolean committed = false;
+    final Map<String, String> headers = new HashMap<>();
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    HttpServletResponse proxy() {
+      ServletOutputStream out = new ServletOutputStream() {
+        @Override
+        public void write(int b) {
+          Response.this.committed = true;
+          Response.this.body.write(b);
+        }
+
+        @Override
+        public boolean isReady() {
+          return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+        }
+      };
+      return FilterTests.proxy(HttpServletResponse.class, (method, args) -> {
+        switch (method) {
+          case "setStatus": this.status = (Integer)args[0]; return null;
+          case "sendError": this.status = (Integer)args[0]; this.committed = true; return null;
+          case "getStatus": return this.status;
+          case "isCommitted": return this.committed;
+          case "getOutputStream": return out;
+          case "setContentType": this.headers.put("Content-Type", String.valueOf(args[0])); return null;
+          case "setContentLength": this.headers.put("Content-Length", String.valueOf(args[0])); return null;
+          case "setHeader":
+          case "addHeader":
+          case "setDateHeader":
+          case "addDateHeader":
+          case "setIntHeader":
+          case "addIntHeader": this.headers.put((String)args[0], String.valueOf(args[1])); return null;
+          case "containsHeader": return this.headers.containsKey((String)args[0]);
+          case "getHeader": return this.headers.get((String)args[0]);
+          case "reset": this.status = HttpServletResponse.SC_OK; this.headers.clear(); this.body.reset(); return null;
+          default: return null;
+        }
+      });
+    }
+
+    String text() {
+      return new String(this.body.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static String mimeType(String name) {
+    if (name.endsWith(".css")) return "text/css";
+    if (name.endsWith(".js")) return "application/javascript";
+    if (name.endsWith(".txt")) return "text/plain";
+    return null;
+  }
+
+  /**
+   * A handler for the methods of a proxy.
+   */
+  private interface Handler {
+    Object invoke(String method, Object[] args) throws Exception;
+  }
+
+  private static <T> T proxy(Class<T> type, Handler handler) {
+    Object proxy = Proxy.newProxyInstance(FilterTests.class.getClassLoader(), new Class<?>[] {type}, (p, method, args) -> {
+      Object value = handler.invoke(method.getName(), args);
+      if (value == null && method.getReturnType() == boolean.class) return false;
+      if (value == null && method.getReturnType() == int.class) return 0;
+      if (value == null && method.getReturnType() == long.class) return 0L;
+      return value;
+    });
+    return type.cast(proxy);
+  }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.filter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.pageseeder.bastille.cache.util.CachedResource;
+import org.pageseeder.bastille.cache.util.InvalidationIndex;
+import org.pageseeder.bastille.cache.util.StaticResource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import net.sf.ehcache.CacheManager;
+
+class StaticCachingFilterTest {
+
+  @Test
+  void surrogateKey_keptAndIndexed(@TempDir File root) throws IOException, ServletException {
+    Files.write(new File(root, "news.txt").toPath(), "News".getBytes(StandardCharsets.UTF_8));
+    CachingFilterBaseTest.newCache("test-static-surrogate");
+    StaticCachingFilter filter = new StaticCachingFilter();
+    filter.init(FilterTests.config(FilterTests.context(root), "cache-name", "test-static-surrogate"));
+    FilterTests.Response response = new FilterTests.Response();
+    FilterChain chain = (req, res) -> {
+      HttpServletResponse r = (HttpServletResponse)res;
+      r.setContentType("text/plain");
+      r.addHeader(InvalidationIndex.SURROGATE_KEY, "news");
+      r.addHeader(InvalidationIndex.SURROGATE_KEY, "home");
+      r.getOutputStream().write("News".getBytes(StandardCharsets.UTF_8));
+    };
+    filter.doFilter(FilterTests.request("GET", "/news.txt"), response.proxy(), chain);
+    assertEquals(200, response.status);
+    assertEquals("news home", response.headers.get(InvalidationIndex.SURROGATE_KEY));
+    CachedResource resource = (CachedResource)CacheManager.getInstance().getEhcache("test-static-surrogate")
+        .getQuiet("GET_/news.txt").getObjectValue();
+    assertTrue(resource instanceof StaticResource);
+    InvalidationIndex index = InvalidationIndex.get("test-static-surrogate");
+    assertNotNull(index);
+    assertEquals(1, index.keysWithTag("news").size());
+    assertEquals(1, index.keysWithTag("home").size());
+  }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.sim;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.pageseeder.bastille.cache.util.AccessTrace;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TraceSimulatorTest {
+
+  @Test
+  void lru_evictsLeastRecentlyUsed() {
+    SimulatedCache cache = new LRUCache(300);
+    access(cache, 1, 2, 3, 1, 4);
+    assertTrue(cache.access(1, 100, 1));
+    assertFalse(cache.access(2, 100, 1));
+  }
+
+  @Test
+  void lfu_evictsLeastFrequentlyUsed() {
+    SimulatedCache cache = new LFUCache(200);
+    access(cache, 1, 1, 1, 2, 3);
+    assertTrue(cache.access(1, 100, 1));
+    assertFalse(cache.access(2, 100, 1));
+  }
+
+  @Test
+  void tinylfu_rejectsOneHitWonders() {
+    SimulatedCache cache = new TinyLFUCache(200, 16);
+    access(cache, 1, 2, 1, 2, 1, 2);
+    assertFalse(cache.access(3, 100, 1));
+    assertTrue(cache.access(1, 100, 1));
+    assertTrue(cache.access(2, 100, 1));
+  }
+
+  @Test
+  void arc_resistsScans() {
+    SimulatedCache arc = new ARCCache(300);
+    SimulatedCache lru = new LRUCache(300);
+    long[] keys = { 1, 2, 1, 2, 10, 11, 12, 13, 14, 15 };
+    access(arc, keys);
+    access(lru, keys);
+    assertTrue(arc.access(1, 100, 1));
+    assertTrue(arc.access(2, 100, 1));
+    assertFalse(lru.access(1, 100, 1));
+  }
+
+  @Test
+  void gdsf_keepsExpensiveEntries() {
+    SimulatedCache cache = new GDSFCache(200);
+    assertFalse(cache.access(1, 100, 1000));
+    assertFalse(cache.access(2, 100, 1));
+    assertFalse(cache.access(3, 100, 1));
+    assertTrue(cache.access(1, 100, 0));
+    assertFalse(cache.access(2, 100, 1));
+  }
+
+  @Test
+  void oversized_isNeverCached() {
+    for (String policy : TraceSimulator.POLICIES) {
+      SimulatedCache cache = TraceSimulator.newCache(policy, 100);
+      assertFalse(cache.access(1, 200, 1), policy);
+      assertFalse(cache.access(1, 200, 1), policy);
+    }
+  }
+
+  @Test
+  void replay_reportsHitRatioAndMissCost() {
+    TraceSimulator simulator = new TraceSimulator(Arrays.asList("lru", "gdsf"), Collections.singletonList(200L));
+    simulator.replay(new AccessTrace.Record(0, 1, 100, 500, false));
+    simulator.replay(new AccessTrace.Record(0, 1, 100, 0, true));
+    simulator.replay(new AccessTrace.Record(0, 2, 100, 10, false));
+    simulator.replay(new AccessTrace.Record(0, 3, 100, 10, false));
+    simulator.replay(new AccessTrace.Record(0, 1, 100, 0, true));
+    // LRU evicts the expensive entry, GDSF keeps it
+    assertEquals(0.2, simulator.getHitRatio(0), 0.001);
+    assertEquals(1020, simulator.getMissCost(0));
+    assertEquals(0.4, simulator.getHitRatio(1), 0.001);
+    assertEquals(520, simulator.getMissCost(1));
+  }
+
+  @Test
+  void parseSize() {
+    assertEquals(512, TraceSimulator.parseSize("512"));
+    assertEquals(16L << 10, TraceSimulator.parseSize("16k"));
+    assertEquals(64L << 20, TraceSimulator.parseSize("64M"));
+    assertEquals(2L << 30, TraceSimulator.parseSize("2g"));
+  }
+
+  @Test
+  void newCache_unknownPolicy() {
+    assertThrows(IllegalArgumentException.class, () -> TraceSimulator.newCache("fifo", 100));
+  }
+
+  private static void access(SimulatedCache cache, long... keys) {
+    for (long key : keys) {
+      cache.access(key, 100, 1);
+    }
+  }
+
+}
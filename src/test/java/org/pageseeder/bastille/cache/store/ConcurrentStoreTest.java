@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.store;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentStoreTest {
+
+  private static ConcurrentStore<String, String> store(long maximumWeight) {
+    return ConcurrentStore.<String, String>builder("test")
+        .maximumWeight(maximumWeight)
+        .stripes(1)
+        .weigher((key, value) -> value.length())
+        .build();
+  }
+
+  @Test
+  void put_thenGet() {
+    ConcurrentStore<String, String> store = store(100);
+    assertNull(store.get("a"));
+    store.put("a", "alpha");
+    assertEquals("alpha", store.get("a"));
+    assertEquals(1, store.size());
+    assertEquals(5, store.weight());
+  }
+
+  @Test
+  void put_replacesValueAndWeight() {
+    ConcurrentStore<String, String> store = store(100);
+    store.put("a", "alpha");
+    store.put("a", "al");
+    assertEquals("al", store.get("a"));
+    assertEquals(1, store.size());
+    assertEquals(2, store.weight());
+  }
+
+  @Test
+  void put_evictsLeastRecentlyUsed() {
+    ConcurrentStore<String, String> store = store(10);
+    store.put("a", "aaaa");
+    store.put("b", "bbbb");
+    // Access 'a' so that 'b' becomes the eldest
+    assertNotNull(store.get("a"));
+    store.put("c", "cccc");
+    assertEquals("aaaa", store.get("a"));
+    assertNull(store.get("b"));
+    assertEquals("cccc", store.get("c"));
+    assertTrue(store.weight() <= 10);
+  }
+
+  @Test
+  void put_ignoresEntryHeavierThanStore() {
+    ConcurrentStore<String, String> store = store(4);
+    store.put("a", "aaaaaaaa");
+    assertNull(store.get("a"));
+    assertEquals(0, store.weight());
+  }
+
+  @Test
+  void get_expiredEntry() throws InterruptedException {
+    ConcurrentStore<String, String> store = ConcurrentStore.<String, String>builder("test")
+        .expiry(Expiry.afterWrite(1))
+        .build();
+    store.put("a", "alpha");
+    Thread.sleep(10);
+    assertNull(store.get("a"));
+    assertEquals(0, store.size());
+  }
+
+  @Test
+  void computeIfAbsent_loadsOnce() {
+    ConcurrentStore<String, String> store = store(100);
+    AtomicInteger loads = new AtomicInteger();
+    assertEquals("A", store.computeIfAbsent("a", key -> { loads.incrementAndGet(); return "A"; }));
+    assertEquals("A", store.computeIfAbsent("a", key -> { loads.incrementAndGet(); return "B"; }));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  void remove_andClear() {
+    ConcurrentStore<String, String> store = store(100);
+    store.put("a", "alpha");
+    store.put("b", "beta");
+    assertTrue(store.remove("a"));
+    assertFalse(store.remove("a"));
+    assertEquals(1, store.size());
+    store.clear();
+    assertEquals(0, store.size());
+    assertEquals(0, store.weight());
+  }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccessTraceTest {
+
+  @Test
+  void hash_isStable() {
+    assertEquals(0xcbf29ce484222325L, AccessTrace.hash(""));
+    assertEquals(0xaf63dc4c8601ec8cL, AccessTrace.hash("a"));
+    assertEquals(AccessTrace.hash("GET_/index.html"), AccessTrace.hash("GET_/index.html"));
+    assertNotEquals(AccessTrace.hash("GET_/a.html"), AccessTrace.hash("GET_/b.html"));
+  }
+
+  @Test
+  void record_roundTrip() throws IOException {
+    File directory = Files.createTempDirectory("trace").toFile();
+    directory.deleteOnExit();
+    AccessTrace trace = AccessTrace.forCache("test-roundtrip", directory, 1 << 20);
+    assertSame(trace, AccessTrace.get("test-roundtrip"));
+    trace.record("GET_/a.html", false, 1200, 3_000_000);
+    trace.record("GET_/a.html", true, 1200, 0);
+    trace.record("GET_/b.html", false, 300, 1_500);
+    trace.close();
+    assertNull(AccessTrace.get("test-roundtrip"));
+    trace.getFile().deleteOnExit();
+
+    List<AccessTrace.Record> records = new ArrayList<>();
+    AccessTrace.read(trace.getFile(), records::add);
+    assertEquals(3, records.size());
+    assertEquals(AccessTrace.hash("GET_/a.html"), records.get(0).key());
+    assertFalse(records.get(0).hit());
+    assertEquals(1200, records.get(0).size());
+    assertEquals(3000, records.get(0).cost());
+    assertTrue(records.get(1).hit());
+    assertEquals(0, records.get(1).cost());
+    assertEquals(AccessTrace.hash("GET_/b.html"), records.get(2).key());
+    assertEquals(1, records.get(2).cost());
+    assertEquals(0, trace.getDropped());
+  }
+
+  @Test
+  void record_rotates() throws IOException {
+    File directory = Files.createTempDirectory("trace").toFile();
+    directory.deleteOnExit();
+    // Room for two records per file
+    AccessTrace trace = new AccessTrace(new File(directory, "rotate.trace"), AccessTrace.HEADER_SIZE + 2 * AccessTrace.RECORD_SIZE);
+    for (int i = 0; i < 5; i++) {
+      trace.record("GET_/" + i, false, 100, 1000);
+    }
+    trace.close();
+    File rotated = new File(directory, "rotate.trace.1");
+    assertTrue(rotated.exists());
+    rotated.deleteOnExit();
+    new File(directory, "rotate.trace.2").deleteOnExit();
+    trace.getFile().deleteOnExit();
+    List<AccessTrace.Record> records = new ArrayList<>();
+    AccessTrace.read(trace.getFile(), records::add);
+    assertEquals(1, records.size());
+    assertEquals(AccessTrace.hash("GET_/4"), records.get(0).key());
+  }
+
+  @Test
+  void read_invalidFile() throws IOException {
+    File file = File.createTempFile("invalid", ".trace");
+    file.deleteOnExit();
+    Files.write(file.toPath(), new byte[16]);
+    assertThrows(IOException.class, () -> AccessTrace.read(file, r -> {}));
+  }
+
+}
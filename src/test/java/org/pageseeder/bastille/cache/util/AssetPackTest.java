@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AssetPackTest {
+
+  private static final byte[] CSS = repeat("body { margin: 0; padding: 0; }\n", 50);
+
+  private static final byte[] PNG = { (byte)0x89, 'P', 'N', 'G', 1, 2, 3, 4 };
+
+  @Test
+  void pack_roundTrip() throws IOException {
+    File file = pack();
+    try (AssetPack pack = AssetPack.open(file)) {
+      assertEquals(2, pack.size());
+      AssetPack.Entry css = pack.get("/style/global.css");
+      assertNotNull(css);
+      assertEquals("text/css", css.contentType());
+      assertEquals(1234000L, css.lastModified());
+      assertEquals(CSS.length, css.length(false));
+      assertArrayEquals(CSS, toBytes(pack.content(css, false)));
+      assertTrue(css.hasGzippedContent());
+      assertArrayEquals(CSS, GZIPUtils.ungzip(toBytes(pack.content(css, true))));
+    }
+  }
+
+  @Test
+  void pack_incompressibleContent_hasNoGzip() throws IOException {
+    File file = pack();
+    try (AssetPack pack = AssetPack.open(file)) {
+      AssetPack.Entry png = pack.get("/images/logo.png");
+      assertNotNull(png);
+      assertEquals("image/png", png.contentType());
+      assertFalse(png.hasGzippedContent());
+      assertArrayEquals(PNG, toBytes(pack.content(png, false)));
+      assertThrows(IllegalArgumentException.class, () -> pack.content(png, true));
+    }
+  }
+
+  @Test
+  void pack_unknownPath() throws IOException {
+    File file = pack();
+    try (AssetPack pack = AssetPack.open(file)) {
+      assertNull(pack.get("/style/other.css"));
+    }
+  }
+
+  @Test
+  void etag_isHashBased() throws IOException {
+    File file = pack();
+    try (AssetPack pack = AssetPack.open(file)) {
+      AssetPack.Entry css = pack.get("/style/global.css");
+      assertNotNull(css);
+      String etag = css.etag(false);
+      assertTrue(etag.matches("\"[0-9a-f]{16}\""), etag);
+      assertEquals(etag.substring(0, 17)+"-gzip\"", css.etag(true));
+    }
+  }
+
+  @Test
+  void open_invalidFile() throws IOException {
+    File file = File.createTempFile("invalid", ".pack");
+    file.deleteOnExit();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.write("NOTAPACK0000".getBytes(StandardCharsets.US_ASCII));
+    }
+    assertThrows(IOException.class, () -> AssetPack.open(file));
+  }
+
+  private static File pack() throws IOException {
+    AssetPacker packer = new AssetPacker();
+    packer.add("/style/global.css", null, 1234567L, CSS);
+    packer.add("/images/logo.png", null, 1234567L, PNG);
+    File file = File.createTempFile("assets", ".pack");
+    file.deleteOnExit();
+    packer.write(file);
+    return file;
+  }
+
+  private static byte[] toBytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private static byte[] repeat(String s, int times) {
+    byte[] b = s.getBytes(StandardCharsets.UTF_8);
+    byte[] bytes = new byte[b.length * times];
+    for (int i = 0; i < times; i++) {
+      System.arraycopy(b, 0, bytes, i * b.length, b.length);
+    }
+    return bytes;
+  }
+
+}
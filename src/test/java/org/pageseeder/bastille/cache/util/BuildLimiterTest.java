@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BuildLimiterTest {
+
+  @Test
+  void unlimited_alwaysAcquires() {
+    for (int i = 0; i < 100; i++) {
+      assertTrue(BuildLimiter.UNLIMITED.acquire());
+    }
+    assertTrue(BuildLimiter.UNLIMITED.isUnlimited());
+    assertEquals(0, BuildLimiter.UNLIMITED.getActive());
+  }
+
+  @Test
+  void acquire_rejectsWhenFullWithoutQueue() {
+    BuildLimiter limiter = new BuildLimiter(2, 0, 1000);
+    assertTrue(limiter.acquire());
+    assertTrue(limiter.acquire());
+    assertEquals(2, limiter.getActive());
+    assertFalse(limiter.acquire());
+    limiter.release();
+    assertTrue(limiter.acquire());
+  }
+
+  @Test
+  void acquire_timesOutInQueue() {
+    BuildLimiter limiter = new BuildLimiter(1, 1, 20);
+    assertTrue(limiter.acquire());
+    long start = System.nanoTime();
+    assertFalse(limiter.acquire());
+    assertTrue(System.nanoTime() - start >= 15_000_000L);
+    assertEquals(0, limiter.getQueued());
+  }
+
+  @Test
+  void acquire_waitsForRelease() throws InterruptedException {
+    BuildLimiter limiter = new BuildLimiter(1, 1, 5000);
+    assertTrue(limiter.acquire());
+    Thread releaser = new Thread(() -> {
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      limiter.release();
+    });
+    releaser.start();
+    assertTrue(limiter.acquire());
+    releaser.join();
+  }
+
+  @Test
+  void overflow_forName() {
+    assertEquals(BuildLimiter.Overflow.PASS_THROUGH, BuildLimiter.Overflow.forName("pass-through", BuildLimiter.Overflow.STALE));
+    assertEquals(BuildLimiter.Overflow.STALE, BuildLimiter.Overflow.forName("Stale", BuildLimiter.Overflow.UNAVAILABLE));
+    assertEquals(BuildLimiter.Overflow.UNAVAILABLE, BuildLimiter.Overflow.forName("bogus", BuildLimiter.Overflow.UNAVAILABLE));
+    assertEquals(BuildLimiter.Overflow.UNAVAILABLE, BuildLimiter.Overflow.forName(null, BuildLimiter.Overflow.UNAVAILABLE));
+  }
+
+}
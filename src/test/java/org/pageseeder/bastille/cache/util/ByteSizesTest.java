@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ByteSizesTest {
+
+  @Test
+  void align_roundsUpToEightBytes() {
+    assertEquals(0, ByteSizes.align(0));
+    assertEquals(8, ByteSizes.align(1));
+    assertEquals(16, ByteSizes.align(16));
+    assertEquals(24, ByteSizes.align(17));
+  }
+
+  @Test
+  void of_byteArray() {
+    assertEquals(16, ByteSizes.of(new byte[0]));
+    assertEquals(24, ByteSizes.of(new byte[8]));
+    assertEquals(1040, ByteSizes.of(new byte[1024]));
+  }
+
+  @Test
+  void of_stringGrowsWithLength() {
+    long empty = ByteSizes.of("");
+    assertTrue(empty > 0);
+    assertTrue(ByteSizes.of("0123456789abcdefghijklmnopqrstuvwxyz") > empty);
+    assertTrue(ByteSizes.of("\u4e2d\u6587\u4e2d\u6587\u4e2d\u6587\u4e2d\u6587\u4e2d") >= ByteSizes.of("abcdefghi"));
+  }
+
+  @Test
+  void of_object() {
+    assertEquals(0, ByteSizes.of((Object)null));
+    assertEquals(-1, ByteSizes.of(Integer.valueOf(1)));
+    assertEquals(ByteSizes.of("abc"), ByteSizes.of((Object)"abc"));
+    Sized sized = () -> 1234;
+    assertEquals(1234, ByteSizes.of(sized));
+  }
+
+  @Test
+  void staticResource_includesBody() {
+    byte[] body = new byte[10000];
+    StaticResource resource = new StaticResource(200, "application/octet-stream", body, 0, "max-age=60", 0);
+    assertTrue(resource.getRetainedSize() > 10000);
+  }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CSSMinifierTest {
+
+  private static String minify(String css) throws IOException {
+    return new String(CSSMinifier.minify(css.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void minify_removesWhitespaceAroundBlocks() throws IOException {
+    assertEquals("a{color:red}", minify("a {\n  color: red;\n}\n"));
+  }
+
+  @Test
+  void minify_removesComments() throws IOException {
+    assertEquals("a{color:red}", minify("/* header */\na { /* inline */ color: red; }"));
+  }
+
+  @Test
+  void minify_preservesImportantComments() throws IOException {
+    assertEquals("/*! licence */a{b:c}", minify("/*! licence */\na { b: c; }"));
+  }
+
+  @Test
+  void minify_collapsesWhitespaceInSelectors() throws IOException {
+    assertEquals("div p,ul>li{margin:0 auto}", minify("div   p ,\n ul > li {  margin: 0   auto ; }"));
+  }
+
+  @Test
+  void minify_preservesSpaceBeforePseudoClass() throws IOException {
+    assertEquals("div :first-child{x:y}", minify("div :first-child { x: y }"));
+  }
+
+  @Test
+  void minify_preservesCalcOperators() throws IOException {
+    assertEquals("a{width:calc(100% - 2em + 1px)}", minify("a { width: calc(100% - 2em + 1px); }"));
+  }
+
+  @Test
+  void minify_preservesStrings() throws IOException {
+    assertEquals("a:after{content:\"  /* x */  ; }\"}", minify("a:after { content: \"  /* x */  ; }\"; }"));
+  }
+
+  @Test
+  void minify_preservesEscapedQuotes() throws IOException {
+    assertEquals("a{content:'it\\'s  ok'}", minify("a { content: 'it\\'s  ok' }"));
+  }
+
+  @Test
+  void minify_mediaQueries() throws IOException {
+    assertEquals("@media screen and (max-width:600px){a{b:c}}",
+        minify("@media screen and (max-width: 600px) {\n  a { b: c; }\n}"));
+  }
+
+  @Test
+  void minify_preservesNonAsciiBytes() throws IOException {
+    assertEquals("a:before{content:\"→ é\"}", minify("a:before { content: \"→ é\"; }"));
+  }
+
+  @Test
+  void minify_empty() throws IOException {
+    assertEquals("", minify(""));
+    assertEquals("", minify("  \n /* nothing */ \n"));
+  }
+
+  @Test
+  void minify_unterminatedComment_throws() {
+    assertThrows(IOException.class, () -> minify("a { b: c } /* oops"));
+  }
+
+  @Test
+  void minify_unterminatedString_throws() {
+    assertThrows(IOException.class, () -> minify("a { content: \"oops }"));
+  }
+
+}
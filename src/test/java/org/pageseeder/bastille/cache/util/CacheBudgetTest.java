@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+
+class CacheBudgetTest {
+
+  @Test
+  void rebalance_movesToFullCacheWithMisses() {
+    long[] limits = {1000, 1000};
+    long[] used = {1000, 200};
+    long[] misses = {50, 0};
+    assertArrayEquals(new long[] {1100, 900}, CacheBudget.rebalance(limits, used, misses, 100, 100));
+  }
+
+  @Test
+  void rebalance_keepsMinimum() {
+    long[] limits = {1850, 150};
+    long[] used = {1850, 150};
+    long[] misses = {50, 0};
+    assertArrayEquals(new long[] {1900, 100}, CacheBudget.rebalance(limits, used, misses, 100, 100));
+    long[] limits2 = {1900, 100};
+    assertArrayEquals(limits2, CacheBudget.rebalance(limits2, used, misses, 100, 100));
+  }
+
+  @Test
+  void rebalance_ignoresCachesWhichAreNotFull() {
+    long[] limits = {1000, 1000};
+    long[] used = {500, 200};
+    long[] misses = {50, 10};
+    assertArrayEquals(limits, CacheBudget.rebalance(limits, used, misses, 100, 100));
+  }
+
+  @Test
+  void rebalance_requiresSignificantDifference() {
+    long[] limits = {1000, 1000};
+    long[] used = {1000, 1000};
+    long[] misses = {50, 45};
+    assertArrayEquals(limits, CacheBudget.rebalance(limits, used, misses, 100, 100));
+    misses[0] = 100;
+    assertArrayEquals(new long[] {1100, 900}, CacheBudget.rebalance(limits, used, misses, 100, 100));
+  }
+
+  @Test
+  void rebalance_preservesTotal() {
+    long[] limits = {3000, 2000, 1000};
+    long[] used = {3000, 1000, 1000};
+    long[] misses = {10, 0, 80};
+    long[] updated = CacheBudget.rebalance(limits, used, misses, 500, 700);
+    assertEquals(6000, updated[0] + updated[1] + updated[2]);
+    assertEquals(1700, updated[2]);
+    assertEquals(1300, updated[1]);
+  }
+
+  @Test
+  void rebalance_appliesEntryLimitOnceSizeIsKnown() {
+    Cache a = newCache("test-budget-a");
+    Cache b = newCache("test-budget-b");
+    long entries = a.getCacheConfiguration().getMaxEntriesLocalHeap();
+    CacheBudget budget = new CacheBudget(100000, new HashSet<>(Arrays.asList("test-budget-a", "test-budget-b")), 0.05, 0.05);
+    budget.add(a);
+    budget.add(b);
+    assertEquals(50000, budget.getLimit("test-budget-a"));
+    // Registered while empty: the entry size is unknown
+    assertEquals(entries, a.getCacheConfiguration().getMaxEntriesLocalHeap());
+    byte[] body = "Hello World".getBytes(StandardCharsets.UTF_8);
+    for (int i = 0; i < 10; i++) {
+      a.put(new Element("k"+i, new StaticResource(200, "image/png", body, false, 1000L, "max-age=60", 0L)));
+    }
+    budget.rebalance();
+    CacheUsage usage = CacheUsage.forCache(a);
+    long average = usage.getBytes() / usage.getCount();
+    assertTrue(average > 0);
+    assertEquals(budget.getLimit("test-budget-a") / average, a.getCacheConfiguration().getMaxEntriesLocalHeap());
+    assertEquals(entries, b.getCacheConfiguration().getMaxEntriesLocalHeap());
+  }
+
+  @Test
+  void parseBytes() {
+    assertEquals(1000, CacheBudget.parseBytes("1000"));
+    assertEquals(2048, CacheBudget.parseBytes("2k"));
+    assertEquals(256L * 1024 * 1024, CacheBudget.parseBytes(" 256M "));
+    assertEquals(4L * 1024 * 1024 * 1024, CacheBudget.parseBytes("4g"));
+    assertThrows(NumberFormatException.class, () -> CacheBudget.parseBytes("lots"));
+  }
+
+  private static Cache newCache(String name) {
+    CacheManager manager = CacheManager.getInstance();
+    if (manager.cacheExists(name)) {
+      manager.removeCache(name);
+    }
+    manager.addCache(name);
+    return manager.getCache(name);
+  }
+
+}
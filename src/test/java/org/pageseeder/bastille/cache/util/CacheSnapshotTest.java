@@ -0,0 +1,200 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+
+class CacheSnapshotTest {
+
+  private static final byte[] BODY = "Hello World".getBytes(StandardCharsets.UTF_8);
+
+  @TempDir
+  File tempDir;
+
+  @Test
+  void write_open_take() throws IOException {
+    Cache cache = newCache("test-snapshot", 0);
+    cache.put(new Element("resource", new StaticResource(200, "text/plain", BODY, false, 1000L, "max-age=60", 0L)));
+    cache.put(new Element("string", "text"));
+    cache.put(new Element("serialized", 42));
+    cache.put(new Element(7, "not a string key"));
+    cache.put(new Element("null", null));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertEquals(3, CacheSnapshot.write(cache, out));
+
+    CacheSnapshot snapshot = CacheSnapshot.open(ByteBuffer.wrap(out.toByteArray()));
+    assertEquals(3, snapshot.size());
+    CacheSnapshot.Entry resource = snapshot.take("resource");
+    assertNotNull(resource);
+    assertTrue(resource.value() instanceof StaticResource);
+    assertArrayEquals(BODY, ((StaticResource)resource.value()).getBody(false));
+    assertTrue(resource.updated() > 0);
+    CacheSnapshot.Entry string = snapshot.take("string");
+    assertNotNull(string);
+    assertEquals("text", string.value());
+    CacheSnapshot.Entry serialized = snapshot.take("serialized");
+    assertNotNull(serialized);
+    assertEquals(42, serialized.value());
+    assertNull(snapshot.take(7));
+    assertEquals(0, snapshot.size());
+  }
+
+  @Test
+  void write_file() throws IOException {
+    Cache cache = newCache("test-snapshot-file", 0);
+    cache.put(new Element("string", "text"));
+    File file = new File(this.tempDir, "test.snapshot");
+    assertEquals(1, CacheSnapshot.write(cache, file));
+    assertFalse(new File(this.tempDir, "test.snapshot.tmp").exists());
+    try (CacheSnapshot snapshot = CacheSnapshot.open(file)) {
+      CacheSnapshot.Entry entry = snapshot.take("string");
+      assertNotNull(entry);
+      assertEquals("text", entry.value());
+    }
+  }
+
+  @Test
+  void open_readsOnlyIndex() throws IOException {
+    Cache cache = newCache("test-snapshot-lazy", 0);
+    cache.put(new Element("string", "text"));
+    cache.put(new Element("serialized", 42));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CacheSnapshot.write(cache, out);
+    byte[] bytes = out.toByteArray();
+    // Corrupt the serialized value: the snapshot still opens, the value fails when taken
+    for (int i = 0; i < bytes.length - 1; i++) {
+      if (bytes[i] == (byte)0xAC && bytes[i+1] == (byte)0xED) {
+        bytes[i] = 0;
+        break;
+      }
+    }
+    CacheSnapshot snapshot = CacheSnapshot.open(ByteBuffer.wrap(bytes));
+    assertEquals(2, snapshot.size());
+    assertThrows(IOException.class, () -> snapshot.take("serialized"));
+    assertEquals(1, snapshot.size());
+    assertNull(snapshot.take("serialized"));
+    assertNull(snapshot.take("unknown"));
+    snapshot.discard("string");
+    assertNull(snapshot.take("string"));
+    assertEquals(0, snapshot.size());
+  }
+
+  @Test
+  void open_invalid() {
+    assertThrows(IOException.class, () -> CacheSnapshot.open(ByteBuffer.wrap(new byte[] {1, 2, 3})));
+    assertThrows(IOException.class, () -> CacheSnapshot.open(ByteBuffer.wrap(new byte[64])));
+  }
+
+  @Test
+  void restore_discardsRemovedEntries() {
+    Cache cache = newCache("test-snapshot-restore", 0);
+    CacheSnapshots saved = new CacheSnapshots(this.tempDir, Collections.singleton("test-snapshot-restore"));
+    assertNull(saved.restoreEntry(cache, "a", entry -> true));
+    cache.put(new Element("a", "A"));
+    cache.put(new Element("b", "B"));
+    cache.put(new Element("c", "C"));
+    saved.saveAll();
+
+    // After a restart
+    Cache restarted = newCache("test-snapshot-restore", 0);
+    CacheSnapshots snapshots = new CacheSnapshots(this.tempDir, Collections.singleton("test-snapshot-restore"));
+    assertNull(snapshots.restoreEntry(restarted, "unknown", entry -> true));
+    assertEquals(3, snapshots.getRestorable());
+    restarted.put(new Element("b", "B2"));
+    restarted.remove("b");
+    assertEquals(2, snapshots.getRestorable());
+    assertNull(snapshots.restoreEntry(restarted, "b", entry -> true));
+    assertNull(snapshots.restoreEntry(restarted, "c", entry -> false));
+    Element a = snapshots.restoreEntry(restarted, "a", entry -> true);
+    assertNotNull(a);
+    assertEquals("A", a.getObjectValue());
+    assertSame(a, restarted.get("a"));
+    assertEquals(0, snapshots.getRestorable());
+    // Other caches are not restored
+    assertNull(snapshots.restoreEntry(newCache("test-snapshot-other", 0), "a", entry -> true));
+  }
+
+  @Test
+  void add_opensSnapshotBeforeFirstMiss() {
+    Cache cache = newCache("test-snapshot-add", 0);
+    CacheSnapshots saved = new CacheSnapshots(this.tempDir, Collections.singleton("test-snapshot-add"));
+    saved.add(cache);
+    cache.put(new Element("a", "A"));
+    saved.saveAll();
+
+    // After a restart
+    Cache restarted = newCache("test-snapshot-add", 0);
+    CacheSnapshots snapshots = new CacheSnapshots(this.tempDir, Collections.singleton("test-snapshot-add"));
+    assertEquals(0, snapshots.getRestorable());
+    snapshots.add(restarted);
+    assertEquals(1, snapshots.getRestorable());
+    // Removed before it was ever requested
+    restarted.put(new Element("a", "A2"));
+    restarted.remove("a");
+    assertEquals(0, snapshots.getRestorable());
+  }
+
+  @Test
+  void restore_keepsTimeToLive() throws InterruptedException {
+    Cache cache = newCache("test-snapshot-ttl", 0);
+    CacheSnapshots saved = new CacheSnapshots(this.tempDir, Collections.singleton("test-snapshot-ttl"));
+    saved.restoreEntry(cache, "a", entry -> true);
+    cache.put(new Element("a", "A"));
+    saved.saveAll();
+    Thread.sleep(1100);
+
+    // Older than the time to live of the cache
+    Cache expiring = newCache("test-snapshot-ttl", 1);
+    CacheSnapshots snapshots = new CacheSnapshots(this.tempDir, Collections.singleton("test-snapshot-ttl"));
+    assertNull(snapshots.restoreEntry(expiring, "a", entry -> true));
+    assertNull(expiring.get("a"));
+
+    // Restored with the time to live it had left
+    Cache restarted = newCache("test-snapshot-ttl", 60);
+    snapshots = new CacheSnapshots(this.tempDir, Collections.singleton("test-snapshot-ttl"));
+    Element a = snapshots.restoreEntry(restarted, "a", entry -> true);
+    assertNotNull(a);
+    assertTrue(a.getTimeToLive() > 0 && a.getTimeToLive() < 60);
+  }
+
+  /**
+   * Creates a new cache in the default cache manager.
+   */
+  private static Cache newCache(String name, long ttl) {
+    CacheManager manager = CacheManager.getInstance();
+    if (manager.cacheExists(name)) {
+      manager.removeCache(name);
+    }
+    manager.addCache(new Cache(new CacheConfiguration(name, 100).timeToLiveSeconds(ttl)));
+    return manager.getCache(name);
+  }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheUsageTest {
+
+  @Test
+  void add_accountsForKeyAndValue() {
+    CacheUsage usage = new CacheUsage();
+    usage.add("a", new byte[100]);
+    assertEquals(ByteSizes.of("a") + ByteSizes.of(new byte[100]), usage.getBytes());
+    assertEquals(1, usage.getCount());
+  }
+
+  @Test
+  void add_replacesPreviousSize() {
+    CacheUsage usage = new CacheUsage();
+    usage.add("a", new byte[1000]);
+    usage.add("a", new byte[10]);
+    assertEquals(ByteSizes.of("a") + ByteSizes.of(new byte[10]), usage.getBytes());
+    assertEquals(1, usage.getCount());
+  }
+
+  @Test
+  void add_countsUnsizedValues() {
+    CacheUsage usage = new CacheUsage();
+    usage.add("a", Integer.valueOf(1));
+    assertEquals(1, usage.getUnsized());
+    assertEquals(ByteSizes.of("a"), usage.getBytes());
+    usage.add("a", "x");
+    assertEquals(0, usage.getUnsized());
+  }
+
+  @Test
+  void remove_andClear() {
+    CacheUsage usage = new CacheUsage();
+    usage.add("a", new byte[100]);
+    usage.add("b", Integer.valueOf(1));
+    usage.add("c", "value");
+    usage.remove("a");
+    usage.remove("z");
+    assertEquals(2, usage.getCount());
+    usage.clear();
+    assertEquals(0, usage.getBytes());
+    assertEquals(0, usage.getUnsized());
+    assertEquals(0, usage.getCount());
+  }
+
+}
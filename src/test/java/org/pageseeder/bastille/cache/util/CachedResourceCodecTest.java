@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachedResourceCodecTest {
+
+  private static final byte[] BODY = "Hello World".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  void staticResource_roundTrip() throws IOException {
+    StaticResource resource = new StaticResource(200, "image/png", BODY, false, 1234000L, "max-age=60", 5678000L);
+    CachedResource decoded = CachedResourceCodec.decode(CachedResourceCodec.encode(resource));
+    assertTrue(decoded instanceof StaticResource);
+    StaticResource r = (StaticResource)decoded;
+    assertEquals(200, r.getStatusCode());
+    assertEquals("image/png", r.getContentType());
+    assertEquals(1234000L, r.getLastModified());
+    assertEquals("max-age=60", r.getCacheControl());
+    assertEquals(5678000L, r.getExpires());
+    assertFalse(r.isStoredGzipped());
+    assertArrayEquals(BODY, r.getBody(false));
+    assertEquals(resource.getETag(true), r.getETag(true));
+  }
+
+  @Test
+  void staticResource_gzipped() throws IOException {
+    byte[] gzipped = GZIPUtils.gzip(BODY);
+    StaticResource resource = new StaticResource(200, null, gzipped, true, 1000L, "no-cache", 0L);
+    StaticResource r = (StaticResource)CachedResourceCodec.decode(CachedResourceCodec.encode(resource));
+    assertNull(r.getContentType());
+    assertTrue(r.hasGzippedBody());
+    assertArrayEquals(gzipped, r.getBody(true));
+    assertArrayEquals(BODY, r.getBody(false));
+  }
+
+  @Test
+  void staticResource_surrogateKey() throws IOException {
+    StaticResource resource = new StaticResource(200, "image/png", BODY, false, 1000L, "no-cache", 0L, "news home");
+    StaticResource r = (StaticResource)CachedResourceCodec.decode(CachedResourceCodec.encode(resource));
+    assertEquals("news home", r.getSurrogateKey());
+    assertEquals(resource.getHeaders(false), r.getHeaders(false));
+    assertNull(((StaticResource)CachedResourceCodec.decode(CachedResourceCodec.encode(
+        new StaticResource(200, "image/png", BODY, false, 1000L, "no-cache", 0L)))).getSurrogateKey());
+  }
+
+  @Test
+  void genericResource_roundTrip() throws IOException {
+    GenericResource resource = new GenericResource(200, "text/plain", false, BODY, headers());
+    GenericResource r = (GenericResource)CachedResourceCodec.decode(CachedResourceCodec.encode(resource));
+    assertEquals("text/plain", r.getContentType());
+    assertEquals(headers(), r.getHeaders(false));
+    assertArrayEquals(BODY, r.getBody(false));
+    assertEquals(1234000L, r.getLastModified());
+  }
+
+  @Test
+  void genericResource_longHeader() throws IOException {
+    StringBuilder link = new StringBuilder();
+    while (link.length() < 70_000) {
+      link.append("</style/é").append(link.length()).append(".css>; rel=preload, ");
+    }
+    List<HttpHeader<? extends Serializable>> headers = new ArrayList<>();
+    headers.add(new HttpHeader<>("Link", link.toString()));
+    GenericResource resource = new GenericResource(200, "text/plain", false, BODY, headers);
+    GenericResource r = (GenericResource)CachedResourceCodec.decode(CachedResourceCodec.encode(resource));
+    assertEquals(headers, r.getHeaders(false));
+  }
+
+  @Test
+  void serialization_usesProxy() throws IOException, ClassNotFoundException {
+    GenericResource resource = new GenericResource(200, "text/plain", false, BODY, headers());
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(resource);
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      Object o = in.readObject();
+      assertTrue(o instanceof GenericResource);
+      assertEquals(headers(), ((GenericResource)o).getHeaders(false));
+    }
+  }
+
+  @Test
+  void decode_unsupportedVersion() {
+    assertThrows(IOException.class, () -> CachedResourceCodec.decode(new byte[] { 99, 1 }));
+  }
+
+  private static List<HttpHeader<? extends Serializable>> headers() {
+    List<HttpHeader<? extends Serializable>> headers = new ArrayList<>();
+    headers.add(new HttpHeader<>("ETag", "\"abc\""));
+    headers.add(new HttpHeader<>("Last-Modified", 1234000L));
+    headers.add(new HttpHeader<>("X-Custom", "a"));
+    headers.add(new HttpHeader<>("X-Custom", "b"));
+    headers.add(new HttpHeader<>("X-Count", 3));
+    return headers;
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentTransformersTest {
+
+  private static final byte[] CSS = "a { b: c; }".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  void parse_null_returnsNone() {
+    assertSame(ContentTransformers.NONE, ContentTransformers.parse(null));
+    assertSame(ContentTransformers.NONE, ContentTransformers.parse("  "));
+  }
+
+  @Test
+  void parse_unknownMediaType_isIgnored() {
+    assertSame(ContentTransformers.NONE, ContentTransformers.parse("image/png"));
+  }
+
+  @Test
+  void isTransformable_ignoresParametersAndCase() {
+    ContentTransformers transformers = ContentTransformers.parse("text/css, application/javascript");
+    assertTrue(transformers.isTransformable("text/css"));
+    assertTrue(transformers.isTransformable("Text/CSS; charset=UTF-8"));
+    assertTrue(transformers.isTransformable("application/javascript"));
+    assertFalse(transformers.isTransformable("text/javascript"));
+    assertFalse(transformers.isTransformable(null));
+  }
+
+  @Test
+  void transform_builtin() {
+    ContentTransformers transformers = ContentTransformers.parse("text/css");
+    assertArrayEquals("a{b:c}".getBytes(StandardCharsets.UTF_8), transformers.transform(CSS, "text/css;charset=utf-8"));
+  }
+
+  @Test
+  void transform_otherMediaType_unchanged() {
+    ContentTransformers transformers = ContentTransformers.parse("text/css");
+    assertSame(CSS, transformers.transform(CSS, "text/plain"));
+    assertSame(CSS, transformers.transform(CSS, null));
+  }
+
+  @Test
+  void transform_gzipped_unchanged() throws IOException {
+    ContentTransformers transformers = ContentTransformers.parse("text/css");
+    byte[] gzipped = GZIPUtils.gzip(CSS);
+    assertSame(gzipped, transformers.transform(gzipped, "text/css"));
+  }
+
+  @Test
+  void transform_failure_unchanged() {
+    ContentTransformers transformers = ContentTransformers.parse("text/css");
+    byte[] invalid = "a { b: c } /* unterminated".getBytes(StandardCharsets.UTF_8);
+    assertSame(invalid, transformers.transform(invalid, "text/css"));
+  }
+
+  @Test
+  void transform_customClass() {
+    ContentTransformers transformers = ContentTransformers.parse("text/plain=" + Upper.class.getName());
+    assertArrayEquals("ABC".getBytes(StandardCharsets.UTF_8),
+        transformers.transform("abc".getBytes(StandardCharsets.UTF_8), "text/plain"));
+  }
+
+  public static final class Upper implements ContentTransformer {
+    @Override
+    public byte[] transform(byte[] content, String contentType) {
+      return new String(content, StandardCharsets.UTF_8).toUpperCase().getBytes(StandardCharsets.UTF_8);
+    }
+  }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrequencySketchTest {
+
+  @Test
+  void frequency_unknownIsZero() {
+    FrequencySketch sketch = new FrequencySketch(1024);
+    assertEquals(0, sketch.frequency("GET_/index.html"));
+  }
+
+  @Test
+  void increment_countsAndSaturates() {
+    FrequencySketch sketch = new FrequencySketch(1024);
+    for (int i = 0; i < 5; i++) {
+      sketch.increment("GET_/a");
+    }
+    assertEquals(5, sketch.frequency("GET_/a"));
+    for (int i = 0; i < 20; i++) {
+      sketch.increment("GET_/a");
+    }
+    assertEquals(15, sketch.frequency("GET_/a"));
+  }
+
+  @Test
+  void reset_halvesCounters() {
+    FrequencySketch sketch = new FrequencySketch(1024);
+    for (int i = 0; i < 8; i++) {
+      sketch.increment("GET_/a");
+    }
+    sketch.reset();
+    assertEquals(4, sketch.frequency("GET_/a"));
+  }
+
+  @Test
+  void increment_hotKeysStandOut() {
+    FrequencySketch sketch = new FrequencySketch(512);
+    for (int i = 0; i < 5000; i++) {
+      sketch.increment("GET_/crawl/"+i);
+      if (i % 10 == 0) {
+        sketch.increment("GET_/hot");
+      }
+    }
+    assertTrue(sketch.frequency("GET_/hot") > sketch.frequency("GET_/crawl/4999"));
+  }
+
+}
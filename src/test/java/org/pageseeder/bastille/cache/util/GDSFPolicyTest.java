@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GDSFPolicyTest {
+
+  @Test
+  void priority_unknownIsClock() {
+    GDSFPolicy policy = new GDSFPolicy();
+    assertEquals(0.0, policy.priority("GET_/a", 1));
+    policy.inflate(2.5);
+    assertEquals(2.5, policy.priority("GET_/a", 10));
+  }
+
+  @Test
+  void priority_favoursExpensiveResources() {
+    GDSFPolicy policy = new GDSFPolicy();
+    policy.record("GET_/slow", 3_000_000_000L, 1000);
+    policy.record("GET_/fast", 3_000_000L, 1000);
+    assertTrue(policy.priority("GET_/slow", 1) > policy.priority("GET_/fast", 1));
+  }
+
+  @Test
+  void priority_favoursSmallResources() {
+    GDSFPolicy policy = new GDSFPolicy();
+    policy.record("GET_/small", 1_000_000L, 100);
+    policy.record("GET_/large", 1_000_000L, 100_000);
+    assertTrue(policy.priority("GET_/small", 1) > policy.priority("GET_/large", 1));
+  }
+
+  @Test
+  void priority_favoursPopularResources() {
+    GDSFPolicy policy = new GDSFPolicy();
+    policy.record("GET_/a", 1_000_000L, 1000);
+    assertTrue(policy.priority("GET_/a", 10) > policy.priority("GET_/a", 1));
+  }
+
+  @Test
+  void inflate_onlyIncreases() {
+    GDSFPolicy policy = new GDSFPolicy();
+    policy.inflate(5);
+    policy.inflate(3);
+    assertEquals(5.0, policy.getClock());
+  }
+
+  @Test
+  void touch_agesEntriesWithClock() {
+    GDSFPolicy policy = new GDSFPolicy();
+    policy.record("GET_/a", 1_000_000L, 1000);
+    double before = policy.priority("GET_/a", 1);
+    policy.inflate(1000);
+    assertTrue(policy.priority("GET_/a", 1) < 1000);
+    policy.touch("GET_/a");
+    assertEquals(1000 + before, policy.priority("GET_/a", 1), 1e-9);
+    assertEquals(1, policy.size());
+  }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.Serializable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeaderBlockTest {
+
+  @Test
+  void build_empty() {
+    assertSame(HeaderBlock.EMPTY, new HeaderBlock.Builder().build());
+  }
+
+  @Test
+  void build_formatsDates() {
+    HeaderBlock block = new HeaderBlock.Builder().dateHeader("Last-Modified", 0L).build();
+    assertEquals(1, block.size());
+    assertEquals("Last-Modified", block.name(0));
+    assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", block.value(0));
+  }
+
+  @Test
+  void build_tracksRepeatedNames() {
+    HeaderBlock.Builder builder = new HeaderBlock.Builder();
+    assertFalse(builder.contains("Vary"));
+    builder.header("Vary", "Accept-Encoding");
+    assertTrue(builder.contains("vary"));
+    builder.header("vary", "Accept-Language");
+    assertEquals(2, builder.build().size());
+  }
+
+  @Test
+  void format_headerTypes() {
+    assertEquals("abc", HeaderBlock.format(new HttpHeader<Serializable>("X-Test", "abc")));
+    assertEquals("42", HeaderBlock.format(new HttpHeader<Serializable>("X-Test", 42)));
+    assertEquals("Thu, 01 Jan 1970 00:00:01 GMT", HeaderBlock.format(new HttpHeader<Serializable>("Date", 1000L)));
+  }
+
+}
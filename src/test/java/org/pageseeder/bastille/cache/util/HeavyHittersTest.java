@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeavyHittersTest {
+
+  @Test
+  void top_ranksByMetric() {
+    HeavyHitters hitters = new HeavyHitters("test", 16, 60_000);
+    for (int i = 0; i < 5; i++) {
+      hitters.record("GET_/popular", 100, 0, 1000);
+    }
+    hitters.record("GET_/large", 100_000, 0, 1000);
+    hitters.record("GET_/slow", 10, 2_000_000_000L, 1000);
+    assertEquals("GET_/popular", hitters.top(HeavyHitters.Metric.REQUESTS, 1, 1000).get(0).key());
+    assertEquals(5, hitters.top(HeavyHitters.Metric.REQUESTS, 1, 1000).get(0).count());
+    assertEquals("GET_/large", hitters.top(HeavyHitters.Metric.BYTES, 1, 1000).get(0).key());
+    assertEquals("GET_/slow", hitters.top(HeavyHitters.Metric.BUILD_TIME, 1, 1000).get(0).key());
+    assertEquals(1, hitters.top(HeavyHitters.Metric.BUILD_TIME, 10, 1000).size());
+  }
+
+  @Test
+  void top_keepsHeavyHittersWithFewCounters() {
+    HeavyHitters hitters = new HeavyHitters("test", 4, 60_000);
+    for (int i = 0; i < 1000; i++) {
+      hitters.record("GET_/hot", 0, 0, 1000);
+      hitters.record("GET_/cold/" + i, 0, 0, 1000);
+    }
+    List<HeavyHitters.HotKey> top = hitters.top(HeavyHitters.Metric.REQUESTS, 1, 1000);
+    assertEquals("GET_/hot", top.get(0).key());
+    // The count overestimates by at most the error
+    assertTrue(top.get(0).count() - top.get(0).error() <= 1000);
+    assertTrue(top.get(0).count() >= 1000);
+  }
+
+  @Test
+  void top_slidesWindow() {
+    HeavyHitters hitters = new HeavyHitters("test", 16, 50_000);
+    hitters.record("GET_/old", 0, 0, 1000);
+    hitters.record("GET_/old", 0, 0, 1000);
+    hitters.record("GET_/new", 0, 0, 30_000);
+    assertEquals("GET_/old", hitters.top(HeavyHitters.Metric.REQUESTS, 1, 30_000).get(0).key());
+    assertEquals(2, hitters.top(HeavyHitters.Metric.REQUESTS, 10, 30_000).size());
+    // The first slice is out of the window
+    assertEquals("GET_/new", hitters.top(HeavyHitters.Metric.REQUESTS, 1, 55_000).get(0).key());
+    assertEquals(1, hitters.top(HeavyHitters.Metric.REQUESTS, 10, 55_000).size());
+    assertTrue(hitters.top(HeavyHitters.Metric.REQUESTS, 10, 200_000).isEmpty());
+  }
+
+  @Test
+  void recordBytes() {
+    HeavyHitters hitters = new HeavyHitters("test", 16, 60_000);
+    hitters.record("GET_/a", 0, 0, 1000);
+    hitters.recordBytes("GET_/a", 100, 1000);
+    hitters.recordBytes("GET_/a", 0, 1000);
+    hitters.record("GET_/a", 0, 0, 1000);
+    assertEquals(2, hitters.top(HeavyHitters.Metric.REQUESTS, 1, 1000).get(0).count());
+    assertEquals(100, hitters.top(HeavyHitters.Metric.BYTES, 1, 1000).get(0).count());
+  }
+
+  @Test
+  void reset() {
+    HeavyHitters hitters = new HeavyHitters("test", 16, 60_000);
+    hitters.record("GET_/a", 10, 10, 1000);
+    hitters.reset();
+    assertTrue(hitters.top(HeavyHitters.Metric.REQUESTS, 10, 1000).isEmpty());
+  }
+
+  @Test
+  void metric_forName() {
+    assertEquals(HeavyHitters.Metric.BUILD_TIME, HeavyHitters.Metric.forName("build-time"));
+    assertEquals("build-time", HeavyHitters.Metric.BUILD_TIME.label());
+    assertNull(HeavyHitters.Metric.forName("latency"));
+  }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpDatesTest {
+
+  /** Sun, 06 Nov 1994 08:49:37 GMT */
+  private static final long RFC_EXAMPLE = 784111777000L;
+
+  @Test
+  void format_imfFixdate() {
+    assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", HttpDates.format(RFC_EXAMPLE));
+    assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", HttpDates.format(RFC_EXAMPLE + 999));
+  }
+
+  @Test
+  void format_memoizedWithinSecond() {
+    assertSame(HttpDates.format(RFC_EXAMPLE), HttpDates.format(RFC_EXAMPLE + 500));
+  }
+
+  @Test
+  void parse_allFormats() {
+    assertEquals(RFC_EXAMPLE, HttpDates.parse("Sun, 06 Nov 1994 08:49:37 GMT"));
+    assertEquals(RFC_EXAMPLE, HttpDates.parse("Sunday, 06-Nov-94 08:49:37 GMT"));
+    assertEquals(RFC_EXAMPLE, HttpDates.parse("Sun Nov  6 08:49:37 1994"));
+  }
+
+  @Test
+  void parse_invalid() {
+    assertEquals(-1L, HttpDates.parse(null));
+    assertEquals(-1L, HttpDates.parse(""));
+    assertEquals(-1L, HttpDates.parse("yesterday"));
+    assertEquals(-1L, HttpDates.parse("Xyz, 06 Nov 1994 08:49:37 GMT"));
+  }
+
+  @Test
+  void roundTrip() {
+    long now = (System.currentTimeMillis() / 1000) * 1000;
+    assertEquals(now, HttpDates.parse(HttpDates.format(now)));
+  }
+
+}
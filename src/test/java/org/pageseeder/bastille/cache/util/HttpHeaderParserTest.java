@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpHeaderParserTest {
+
+  @Test
+  void ifNoneMatch_single() {
+    assertTrue(HttpHeaderParser.matchesIfNoneMatch("\"abc\"", "\"abc\""));
+    assertFalse(HttpHeaderParser.matchesIfNoneMatch("\"abc\"", "\"abd\""));
+    assertFalse(HttpHeaderParser.matchesIfNoneMatch("\"abc\"", "\"abc-gzip\""));
+  }
+
+  @Test
+  void ifNoneMatch_list() {
+    assertTrue(HttpHeaderParser.matchesIfNoneMatch("\"a\", \"b\",\"c\"", "\"c\""));
+    assertTrue(HttpHeaderParser.matchesIfNoneMatch("\"a\" , \"b\"", "\"b\""));
+    assertFalse(HttpHeaderParser.matchesIfNoneMatch("\"a\", \"b\"", "\"ab\""));
+  }
+
+  @Test
+  void ifNoneMatch_weak() {
+    assertTrue(HttpHeaderParser.matchesIfNoneMatch("W/\"abc\"", "\"abc\""));
+    assertTrue(HttpHeaderParser.matchesIfNoneMatch("\"x\", W/\"abc\"", "W/\"abc\""));
+    assertTrue(HttpHeaderParser.matchesIfNoneMatch("\"abc\"", "W/\"abc\""));
+  }
+
+  @Test
+  void ifNoneMatch_wildcard() {
+    assertTrue(HttpHeaderParser.matchesIfNoneMatch("*", "\"abc\""));
+    assertFalse(HttpHeaderParser.matchesIfNoneMatch(null, "\"abc\""));
+    assertFalse(HttpHeaderParser.matchesIfNoneMatch("\"abc\"", null));
+  }
+
+  @Test
+  void acceptsGzip() {
+    assertTrue(HttpHeaderParser.acceptsGzip("gzip, deflate, br"));
+    assertTrue(HttpHeaderParser.acceptsGzip("deflate, GZIP;q=0.5"));
+    assertTrue(HttpHeaderParser.acceptsGzip("x-gzip"));
+    assertTrue(HttpHeaderParser.acceptsGzip("*"));
+    assertFalse(HttpHeaderParser.acceptsGzip("gzip;q=0"));
+    assertFalse(HttpHeaderParser.acceptsGzip("gzip; q=0.000, *"));
+    assertFalse(HttpHeaderParser.acceptsGzip("*;q=0"));
+    assertFalse(HttpHeaderParser.acceptsGzip("identity"));
+    assertFalse(HttpHeaderParser.acceptsGzip((String)null));
+  }
+
+  @Test
+  void getQuality() {
+    assertEquals(1.0, HttpHeaderParser.getQuality("gzip", "gzip"), 0.0001);
+    assertEquals(0.8, HttpHeaderParser.getQuality("br;q=1.0, gzip;q=0.8", "gzip"), 0.0001);
+    assertEquals(0.123, HttpHeaderParser.getQuality("gzip;level=1;q=0.123", "gzip"), 0.0001);
+    assertEquals(-1.0, HttpHeaderParser.getQuality("br", "gzip"), 0.0001);
+    assertEquals(-1.0, HttpHeaderParser.getQuality("xgzip", "gzip"), 0.0001);
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvalidationIndexTest {
+
+  @Test
+  void keysWithPrefix_matchesSegments() {
+    InvalidationIndex index = new InvalidationIndex();
+    index.add("GET_/docs/index.html", null);
+    index.add("GET_/docs/a/b.html", null);
+    index.add("GET_/docs.html", null);
+    index.add("GET_/about", null);
+    assertEquals(2, index.keysWithPrefix("/docs").size());
+    assertEquals(2, index.keysWithPrefix("/docs/").size());
+    assertEquals(1, index.keysWithPrefix("/docs/a").size());
+    assertEquals(4, index.keysWithPrefix("/").size());
+    assertTrue(index.keysWithPrefix("/none").isEmpty());
+  }
+
+  @Test
+  void remove_unindexes() {
+    InvalidationIndex index = new InvalidationIndex();
+    index.add("GET_/docs/index.html", null);
+    index.remove("GET_/docs/index.html");
+    assertTrue(index.keysWithPrefix("/docs").isEmpty());
+    index.remove("GET_/unknown");
+  }
+
+  @Test
+  void keysWithTag_fromSurrogateKey() {
+    InvalidationIndex index = new InvalidationIndex();
+    index.add("GET_/a", tagged("news  home"));
+    index.add("GET_/b", tagged("news"));
+    assertEquals(2, index.keysWithTag("news").size());
+    assertEquals(1, index.keysWithTag("home").size());
+    assertEquals(2, index.getTagCount());
+    // Retagged
+    index.add("GET_/a", tagged("sport"));
+    assertEquals(1, index.keysWithTag("news").size());
+    assertTrue(index.keysWithTag("home").isEmpty());
+    index.remove("GET_/b");
+    assertTrue(index.keysWithTag("news").isEmpty());
+    assertEquals(1, index.getTagCount());
+  }
+
+  @Test
+  void pathOf() {
+    assertEquals("/docs/index.html", InvalidationIndex.pathOf("GET_/docs/index.html"));
+    assertEquals("/x_/y", InvalidationIndex.pathOf("HEAD_/x_/y"));
+    assertEquals("plain", InvalidationIndex.pathOf("plain"));
+  }
+
+  private static CachedResource tagged(String tags) {
+    List<HttpHeader<? extends Serializable>> headers = new ArrayList<>();
+    headers.add(new HttpHeader<>(InvalidationIndex.SURROGATE_KEY, tags));
+    return new GenericResource(200, "text/html", new byte[0], false, headers);
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JSMinifierTest {
+
+  private static String minify(String js) throws IOException {
+    return new String(JSMinifier.minify(js.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void minify_removesWhitespace() throws IOException {
+    assertEquals("var a=1;function f(x){return x+a;}", minify("var a = 1;\nfunction f( x ) {\n  return x + a;\n}"));
+  }
+
+  @Test
+  void minify_removesComments() throws IOException {
+    assertEquals("var a=1;var b=2;", minify("// first\nvar a = 1; /* second */\nvar b = 2;"));
+  }
+
+  @Test
+  void minify_keepsNewlinesRequiredBySemicolonInsertion() throws IOException {
+    assertEquals("var a=1\nvar b=2", minify("var a = 1\nvar b = 2"));
+  }
+
+  @Test
+  void minify_preservesStrings() throws IOException {
+    assertEquals("var s=\"a  // b /* c */\";", minify("var s = \"a  // b /* c */\";"));
+    assertEquals("var s='it\\'s  ok';", minify("var s = 'it\\'s  ok';"));
+  }
+
+  @Test
+  void minify_preservesTemplateLiterals() throws IOException {
+    assertEquals("var s=`a  ${b}  c`;", minify("var s = `a  ${b}  c`;"));
+  }
+
+  @Test
+  void minify_preservesRegularExpressions() throws IOException {
+    assertEquals("var r=/a\\/ [/] b/g;", minify("var r = /a\\/ [/] b/g;"));
+    assertEquals("s.replace(/ +/g,' ');", minify("s.replace(/ +/g, ' ');"));
+  }
+
+  @Test
+  void minify_preservesSpacesBetweenArithmeticOperators() throws IOException {
+    assertEquals("a=b+ +c;", minify("a = b + +c;"));
+    assertEquals("a=b- -c;", minify("a = b - -c;"));
+  }
+
+  @Test
+  void minify_preservesNonAsciiBytes() throws IOException {
+    assertEquals("var s=\"→ é\";", minify("var s = \"→ é\";"));
+  }
+
+  @Test
+  void minify_empty() throws IOException {
+    assertEquals("", minify(""));
+  }
+
+  @Test
+  void minify_unterminatedComment_throws() {
+    assertThrows(IOException.class, () -> minify("var a; /* oops"));
+  }
+
+  @Test
+  void minify_unterminatedString_throws() {
+    assertThrows(IOException.class, () -> minify("var a = 'oops;"));
+  }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+  @Test
+  void empty() {
+    LatencyHistogram histogram = new LatencyHistogram("test");
+    assertEquals("test", histogram.name());
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.mean());
+    assertEquals(0, histogram.percentile(99));
+  }
+
+  @Test
+  void record_countMeanMax() {
+    LatencyHistogram histogram = new LatencyHistogram("test");
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(300));
+    assertEquals(2, histogram.count());
+    assertEquals(200, histogram.mean());
+    assertEquals(300, histogram.max());
+  }
+
+  @Test
+  void percentile_upperBoundOfBucket() {
+    LatencyHistogram histogram = new LatencyHistogram("test");
+    for (int i = 0; i < 99; i++) {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(10));
+    }
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+    assertEquals(16, histogram.percentile(50));
+    assertEquals(16, histogram.percentile(99));
+    assertEquals(50000, histogram.percentile(100));
+  }
+
+  @Test
+  void reset() {
+    LatencyHistogram histogram = new LatencyHistogram("test");
+    histogram.record(1000);
+    histogram.reset();
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.max());
+  }
+
+}
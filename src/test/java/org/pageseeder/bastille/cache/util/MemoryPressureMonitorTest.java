@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+import org.pageseeder.bastille.cache.util.MemoryPressureMonitor.Action;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+
+class MemoryPressureMonitorTest {
+
+  @Test
+  void decide_shedsAboveHighWatermark() {
+    assertEquals(Action.SHED, MemoryPressureMonitor.decide(0.9, 0.85, 0.7, false, true));
+    assertEquals(Action.SHED, MemoryPressureMonitor.decide(0.9, 0.85, 0.7, true, true));
+  }
+
+  @Test
+  void decide_waitsForCooldown() {
+    assertEquals(Action.NONE, MemoryPressureMonitor.decide(0.9, 0.85, 0.7, true, false));
+  }
+
+  @Test
+  void decide_restoresBelowLowWatermark() {
+    assertEquals(Action.RESTORE, MemoryPressureMonitor.decide(0.5, 0.85, 0.7, true, false));
+    assertEquals(Action.NONE, MemoryPressureMonitor.decide(0.5, 0.85, 0.7, false, true));
+  }
+
+  @Test
+  void decide_keepsStateBetweenWatermarks() {
+    assertEquals(Action.NONE, MemoryPressureMonitor.decide(0.8, 0.85, 0.7, true, true));
+    assertEquals(Action.NONE, MemoryPressureMonitor.decide(0.8, 0.85, 0.7, false, true));
+  }
+
+  @Test
+  void shed_lowersCapacityUntilRestored() {
+    CacheManager manager = CacheManager.getInstance();
+    if (manager.cacheExists("test-pressure")) {
+      manager.removeCache("test-pressure");
+    }
+    manager.addCache(new Cache(new CacheConfiguration("test-pressure", 1000)));
+    Cache cache = manager.getCache("test-pressure");
+    long capacity = cache.getCacheConfiguration().getMaxEntriesLocalHeap();
+    for (int i = 0; i < 100; i++) {
+      cache.put(new Element("k"+i, "v"+i));
+    }
+    MemoryPressureMonitor monitor = new MemoryPressureMonitor(0.85, 0.7, 0.25, 0);
+    try {
+      monitor.shed();
+      assertTrue(monitor.isUnderPressure());
+      assertEquals(75, cache.getCacheConfiguration().getMaxEntriesLocalHeap());
+      // The eviction of the cache removes the entries beyond the new capacity from the heap
+      for (int i = 0; i < 25; i++) {
+        cache.put(new Element("n"+i, "v"+i));
+      }
+      assertEquals(75, cache.getSize());
+    } finally {
+      monitor.restore();
+    }
+    assertFalse(monitor.isUnderPressure());
+    assertEquals(capacity, cache.getCacheConfiguration().getMaxEntriesLocalHeap());
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MissRatioCurveTest {
+
+  @Test
+  void missRatio_noSamples() {
+    MissRatioCurve curve = new MissRatioCurve("test", 1, 100);
+    assertEquals(1.0, curve.getMissRatio(1000));
+    assertTrue(curve.getPoints().isEmpty());
+  }
+
+  @Test
+  void missRatio_cyclicAccesses() {
+    MissRatioCurve curve = new MissRatioCurve("test", 1, 100);
+    for (int round = 0; round < 10; round++) {
+      for (int i = 0; i < 10; i++) {
+        curve.record("GET_/" + i);
+      }
+    }
+    assertEquals(100, curve.getReferences());
+    // An LRU cache smaller than the loop always misses
+    assertEquals(1.0, curve.getMissRatio(8), 1e-9);
+    // A cache large enough only has cold misses
+    assertEquals(0.1, curve.getMissRatio(10), 1e-9);
+    assertEquals(0.1, curve.getMissRatio(1000), 1e-9);
+  }
+
+  @Test
+  void missRatio_repeatedAccess() {
+    MissRatioCurve curve = new MissRatioCurve("test", 1, 100);
+    for (int i = 0; i < 100; i++) {
+      curve.record("GET_/a");
+    }
+    assertEquals(0.01, curve.getMissRatio(1), 1e-9);
+  }
+
+  @Test
+  void record_compactsTimes() {
+    MissRatioCurve curve = new MissRatioCurve("test", 1, 16);
+    for (int round = 0; round < 10000; round++) {
+      for (int i = 0; i < 5; i++) {
+        curve.record("GET_/" + i);
+      }
+    }
+    assertEquals(1.0, curve.getMissRatio(4), 1e-9);
+    assertEquals(5.0 / 50000, curve.getMissRatio(5), 1e-9);
+  }
+
+  @Test
+  void record_boundsTrackedKeys() {
+    MissRatioCurve curve = new MissRatioCurve("test", 1, 100);
+    for (int i = 0; i < 10000; i++) {
+      curve.record("GET_/" + i);
+    }
+    assertTrue(curve.getSampleRate() < 0.1);
+    assertTrue(curve.getReferences() < 10000);
+  }
+
+  @Test
+  void bucket_upperBoundCoversDistance() {
+    for (int d = 0; d < 100000; d += 7) {
+      assertTrue(d < MissRatioCurve.upperBound(MissRatioCurve.bucket(d)));
+    }
+  }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import net.sf.ehcache.Element;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NearCacheTest {
+
+  @Test
+  void promote_thenGet() {
+    NearCache near = new NearCache(10);
+    Element element = new Element("GET_/a", "a");
+    assertNull(near.lookup("GET_/a"));
+    assertTrue(near.promote("GET_/a", element, near.stamp()));
+    assertSame(element, near.lookup("GET_/a"));
+    assertEquals(1, near.size());
+  }
+
+  @Test
+  void promote_rejectedAfterInvalidation() {
+    NearCache near = new NearCache(10);
+    long stamp = near.stamp();
+    near.invalidate("GET_/b");
+    assertFalse(near.promote("GET_/a", new Element("GET_/a", "a"), stamp));
+    assertNull(near.lookup("GET_/a"));
+  }
+
+  @Test
+  void invalidate_removesElement() {
+    NearCache near = new NearCache(10);
+    near.promote("GET_/a", new Element("GET_/a", "a"), near.stamp());
+    near.promote("GET_/b", new Element("GET_/b", "b"), near.stamp());
+    near.invalidate("GET_/a");
+    assertNull(near.lookup("GET_/a"));
+    assertNotNull(near.lookup("GET_/b"));
+    near.invalidateAll();
+    assertEquals(0, near.size());
+  }
+
+  @Test
+  void promote_boundedByCapacity() {
+    NearCache near = new NearCache(4);
+    for (int i = 0; i < 20; i++) {
+      near.promote("GET_/" + i, new Element("GET_/" + i, "x"), near.stamp());
+      assertTrue(near.size() <= 4);
+    }
+    assertNotNull(near.lookup("GET_/19"));
+  }
+
+  @Test
+  void promote_keepsReferencedElements() {
+    NearCache near = new NearCache(2);
+    near.promote("GET_/hot", new Element("GET_/hot", "hot"), near.stamp());
+    near.promote("GET_/a", new Element("GET_/a", "a"), near.stamp());
+    for (int i = 0; i < 10; i++) {
+      assertNotNull(near.lookup("GET_/hot"));
+      near.promote("GET_/x" + i, new Element("GET_/x" + i, "x"), near.stamp());
+    }
+    assertNotNull(near.lookup("GET_/hot"));
+  }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestTraceTest {
+
+  @Test
+  void startEnd_bindsToThread() {
+    assertNull(RequestTrace.current());
+    RequestTrace trace = RequestTrace.start(true, true);
+    assertSame(trace, RequestTrace.current());
+    trace.end();
+    assertNull(RequestTrace.current());
+  }
+
+  @Test
+  void startEnd_nested() {
+    RequestTrace outer = RequestTrace.start(true, false);
+    RequestTrace inner = RequestTrace.start(false, true);
+    assertSame(inner, RequestTrace.current());
+    inner.end();
+    assertSame(outer, RequestTrace.current());
+    outer.end();
+    assertNull(RequestTrace.current());
+  }
+
+  @Test
+  void serverTiming_onlyRecordedMetrics() {
+    RequestTrace trace = RequestTrace.start(true, false);
+    try {
+      assertEquals("", trace.toServerTiming());
+      trace.lookup(1500000L);
+      trace.build(12000000L);
+      assertEquals("cache;dur=1.500, build;dur=12.000", trace.toServerTiming());
+    } finally {
+      trace.end();
+    }
+  }
+
+  @Test
+  void outcome_defaultsToHit() {
+    RequestTrace trace = RequestTrace.start(false, true);
+    try {
+      assertEquals(RequestTrace.Outcome.HIT, trace.outcome());
+      trace.outcome(RequestTrace.Outcome.MISS);
+      assertEquals(RequestTrace.Outcome.MISS, trace.outcome());
+    } finally {
+      trace.end();
+    }
+  }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResourceValidatorTest {
+
+  private static final byte[] BODY = { 1, 2, 3 };
+
+  @Test
+  void of_staticResource() {
+    StaticResource resource = new StaticResource(200, "image/png", BODY, false, 5000L, "max-age=60", 0L);
+    ResourceValidator validator = ResourceValidator.of(resource, 10000L, 1000L, 1L);
+    assertNotNull(validator);
+    assertEquals("\"5\"", validator.getETag(false));
+    assertEquals("\"5-gzip\"", validator.getETag(true));
+    assertEquals(5000L, validator.getLastModified());
+    assertEquals(1000L, validator.getCreated());
+    assertFalse(validator.hasGzippedBody());
+    assertEquals(4, validator.getHeaders(false).size());
+  }
+
+  @Test
+  void of_otherResources() {
+    assertNull(ResourceValidator.of(null, 0L, 0L, 1L));
+    assertNull(ResourceValidator.of("text", 0L, 0L, 1L));
+    assertNull(ResourceValidator.of(new StaticResource(404, "image/png", BODY, false, 5000L, "no-cache", 0L), 0L, 0L, 1L));
+    assertNull(ResourceValidator.of(new GenericResource(200, "text/plain", false, BODY, Collections.emptyList()), 0L, 0L, 1L));
+  }
+
+  @Test
+  void isExpired() {
+    StaticResource resource = new StaticResource(200, "image/png", BODY, false, 5000L, "max-age=60", 0L);
+    ResourceValidator validator = ResourceValidator.of(resource, 10000L, 1000L, 1L);
+    assertNotNull(validator);
+    assertFalse(validator.isExpired(9999L));
+    assertTrue(validator.isExpired(10000L));
+  }
+
+}
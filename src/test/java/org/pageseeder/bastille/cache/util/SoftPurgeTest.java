@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.bastille.cache.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.config.CacheConfiguration;
+
+class SoftPurgeTest {
+
+  @Test
+  void forCache() {
+    SoftPurge purge = SoftPurge.forCache(new Cache(new CacheConfiguration("test-soft-purge-registry", 10)));
+    assertSame(purge, SoftPurge.get("test-soft-purge-registry"));
+    assertSame(purge, SoftPurge.forCache(new Cache(new CacheConfiguration("test-soft-purge-registry", 10))));
+    assertNull(SoftPurge.get("test-soft-purge-unknown"));
+  }
+
+  @Test
+  void purgeAll() {
+    SoftPurge purge = newPurge("test-soft-purge-all");
+    long stamped = purge.getGeneration();
+    assertFalse(purge.isStale("a", stamped));
+    long generation = purge.purgeAll();
+    assertEquals(stamped + 1, generation);
+    assertEquals(generation, purge.getGeneration());
+    assertTrue(purge.isStale("a", stamped));
+    assertTrue(purge.isStale("b", stamped));
+    // Rebuilt after the purge, regardless of the clock
+    assertFalse(purge.isStale("a", generation));
+  }
+
+  @Test
+  void purge() {
+    SoftPurge purge = newPurge("test-soft-purge-key");
+    long stamped = purge.getGeneration();
+    long generation = purge.purge("a");
+    assertEquals(stamped + 1, generation);
+    assertTrue(purge.isStale("a", stamped));
+    assertFalse(purge.isStale("b", stamped));
+    assertFalse(purge.isStale("a", generation));
+    // Purging another key does not affect elements rebuilt since
+    purge.purge("b");
+    assertFalse(purge.isStale("a", generation));
+    assertTrue(purge.isStale("b", generation));
+  }
+
+  @Test
+  void purge_duringBuild() {
+    SoftPurge purge = newPurge("test-soft-purge-build");
+    long stamped = purge.getGeneration();
+    purge.purge("a");
+    purge.purgeAll();
+    assertTrue(purge.isStale("a", stamped));
+    assertFalse(purge.isStale("a", purge.getGeneration()));
+  }
+
+  @Test
+  void startRevalidation() {
+    SoftPurge purge = newPurge("test-soft-purge-revalidation");
+    assertTrue(purge.startRevalidation("a"));
+    assertFalse(purge.startRevalidation("a"));
+    assertTrue(purge.startRevalidation("b"));
+    assertEquals(2, purge.getRevalidating());
+    purge.endRevalidation("a");
+    assertEquals(1, purge.getRevalidating());
+    assertTrue(purge.startRevalidation("a"));
+  }
+
+  @Test
+  void startRevalidation_concurrent() throws InterruptedException {
+    SoftPurge purge = newPurge("test-soft-purge-concurrent");
+    int threads = 8;
+    AtomicInteger claimed = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] workers = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      workers[i] = new Thread(() -> {
+        try {
+          start.await();
+          if (purge.startRevalidation("a")) {
+            claimed.incrementAndGet();
+          }
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      workers[i].start();
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    assertEquals(1, claimed.get());
+  }
+
+  private static SoftPurge newPurge(String name) {
+    return SoftPurge.forCache(new Cache(new CacheConfiguration(name, 10)));
+  }
+
+}